@@ -0,0 +1,28 @@
+package in.ac.iitd.db362.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line (benchmark regex, -p, -f, -prof, ...) and always
+ * adds the GC profiler, so every score comes with its allocation rate (gc.alloc.rate.norm is bytes allocated per
+ * operation) and GC counts. Add -prof jfr for a Flight Recorder file per fork, which includes the index lookup and
+ * split events.
+ *
+ * java -jar target/benchmarks.jar LookupBenchmark -p distribution=ZIPFIAN
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,67 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materializing the rows of one bitmap key set in 1%, 10% or 50% of the rows: the List returning search(), the
+ * allocation free search(key, buffer) and count().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitmapDensityBenchmark {
+
+    private static final int HOT = 1;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double density;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private BitmapIndex<Integer> bitmap;
+    private int[] buffer;
+
+    @Setup
+    public void setUp() {
+        bitmap = new BitmapIndex<>(Integer.class, "key", rows);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < rows; i++) {
+            bitmap.insert(random.nextDouble() < density ? HOT : 0, i);
+        }
+        buffer = new int[bitmap.count(HOT)];
+    }
+
+    @Benchmark
+    public List<Integer> search() {
+        return bitmap.search(HOT);
+    }
+
+    @Benchmark
+    public int searchIntoBuffer() {
+        return bitmap.search(HOT, buffer);
+    }
+
+    @Benchmark
+    public int count() {
+        return bitmap.count(HOT);
+    }
+}
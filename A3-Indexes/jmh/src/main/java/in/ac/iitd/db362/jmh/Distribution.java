@@ -0,0 +1,90 @@
+package in.ac.iitd.db362.jmh;
+
+import java.util.SplittableRandom;
+
+/**
+ * Key distributions the benchmarks are parameterized with. Keys are ints in [0, n).
+ */
+public enum Distribution {
+
+    /** 0, 1, 2, ... n-1: every key once, inserted in order */
+    SEQUENTIAL,
+
+    /** n keys drawn uniformly at random from [0, n) */
+    UNIFORM,
+
+    /** n keys drawn from a Zipfian distribution over [0, n) with skew ZIPF_THETA; small keys are the hot ones */
+    ZIPFIAN;
+
+    // Skew of the Zipfian distribution, as in YCSB
+    public static final double ZIPF_THETA = 0.99;
+
+    /**
+     * @return count keys from [0, n) following this distribution; the same seed gives the same keys
+     */
+    public int[] keys(int count, int n, long seed) {
+        int[] keys = new int[count];
+        SplittableRandom random = new SplittableRandom(seed);
+        switch (this) {
+            case SEQUENTIAL:
+                for (int i = 0; i < count; i++) {
+                    keys[i] = i % n;
+                }
+                break;
+            case UNIFORM:
+                for (int i = 0; i < count; i++) {
+                    keys[i] = random.nextInt(n);
+                }
+                break;
+            case ZIPFIAN:
+                Zipf zipf = new Zipf(n, ZIPF_THETA);
+                for (int i = 0; i < count; i++) {
+                    keys[i] = zipf.next(random);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + this);
+        }
+        return keys;
+    }
+
+    /**
+     * Zipfian generator of Gray et al. ("Quickly generating billion-record synthetic databases"): one pass to
+     * compute zeta(n), then constant time per key.
+     */
+    private static class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return Math.min(1, n - 1);
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+
+/**
+ * Builds the indexes under benchmark.
+ */
+final class Indexes {
+
+    // A bitmap index keeps one bitmap of every row per key, so it only makes sense on few distinct keys: keys are
+    // folded onto this many before they are inserted into (or looked up in) a bitmap index
+    static final int BITMAP_CARDINALITY = 100;
+
+    private Indexes() {
+    }
+
+    /**
+     * @param kind BPlusTree, Hash or Bitmap
+     */
+    static ScannableIndex<Integer> create(String kind, String attribute, int rows) {
+        switch (kind) {
+            case "BPlusTree":
+                return new BPlusTreeIndex<>(Integer.class, attribute);
+            case "Hash":
+                return new ExtendibleHashing<>(Integer.class, attribute);
+            case "Bitmap":
+                return new BitmapIndex<>(Integer.class, attribute, rows);
+            default:
+                throw new IllegalArgumentException("Unknown index " + kind);
+        }
+    }
+
+    /**
+     * @return the key as stored in an index of the given kind
+     */
+    static int key(String kind, int key) {
+        return "Bitmap".equals(kind) ? key % BITMAP_CARDINALITY : key;
+    }
+
+    /**
+     * Inserts keys[i] with rowId i.
+     */
+    static ScannableIndex<Integer> build(String kind, String attribute, int[] keys) {
+        ScannableIndex<Integer> index = create(kind, attribute, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            index.insert(key(kind, keys[i]), i);
+        }
+        return index;
+    }
+}
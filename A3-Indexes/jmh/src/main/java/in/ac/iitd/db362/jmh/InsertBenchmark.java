@@ -0,0 +1,51 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build an index from scratch by inserting rows keys one by one (insert throughput is rows / score).
+ * Every invocation builds a new index, so a run is a handful of single shots; pass -p rows=100000000 (and a heap
+ * to match, e.g. -jvmArgs -Xmx48g) for the largest size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class InsertBenchmark {
+
+    @Param({"BPlusTree", "Hash", "Bitmap"})
+    public String index;
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    public Distribution distribution;
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private int[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = distribution.keys(rows, rows, 42);
+    }
+
+    @Benchmark
+    public ScannableIndex<Integer> insert() {
+        return Indexes.build(index, "key", keys);
+    }
+}
@@ -0,0 +1,74 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.parser.Lexer;
+import in.ac.iitd.db362.parser.Token;
+import in.ac.iitd.db362.parser.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single pass Lexer the Parser uses against the regex based Tokenizer it replaced, on queries of a given number
+ * of predicates (all in the subset of the language both understand).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int predicates;
+
+    private String query;
+    private final Lexer lexer = new Lexer();
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < predicates; i++) {
+            if (i > 0) {
+                builder.append(i % 2 == 0 ? " AND " : " OR ");
+            }
+            switch (i % 4) {
+                case 0:
+                    builder.append("customer_id = ").append(1000 + i);
+                    break;
+                case 1:
+                    builder.append("(price >= 12.5 AND price < 99.99)");
+                    break;
+                case 2:
+                    builder.append("store_id IN (1, 2, 3)");
+                    break;
+                default:
+                    builder.append("quantity BETWEEN 2 AND 10");
+                    break;
+            }
+        }
+        query = builder.toString();
+    }
+
+    @Benchmark
+    public int lexer() {
+        lexer.tokenize(query);
+        return lexer.size();
+    }
+
+    @Benchmark
+    public List<Token> tokenizer() {
+        return Tokenizer.tokenize(query);
+    }
+}
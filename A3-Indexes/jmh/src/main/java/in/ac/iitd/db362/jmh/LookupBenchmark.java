@@ -0,0 +1,60 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups (search(key)) on an index of rows keys. Probed keys follow the same distribution as the stored
+ * ones, so Zipfian runs mostly hit the hot keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LookupBenchmark {
+
+    private static final int PROBES = 1 << 12;
+
+    @Param({"BPlusTree", "Hash", "Bitmap"})
+    public String index;
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    public Distribution distribution;
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private ScannableIndex<Integer> built;
+    private int[] probes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        built = Indexes.build(index, "key", distribution.keys(rows, rows, 42));
+        probes = distribution.keys(PROBES, rows, 7);
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = Indexes.key(index, probes[i]);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> search() {
+        next = (next + 1) & (PROBES - 1);
+        return built.search(probes[next]);
+    }
+}
@@ -0,0 +1,100 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.MemoryManager;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.parser.QueryNode;
+import in.ac.iitd.db362.processor.QueryCache;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boolean queries evaluated end to end by QueryEvaluator (planning, access path choice, bitmap merging) over a
+ * table of rows rows with a B+ tree on a, a hash index on b and a bitmap index on c (BITMAP_CARDINALITY keys).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class QueryEvaluatorBenchmark {
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    public Distribution distribution;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"point", "conjunction", "disjunction", "mixed"})
+    public String query;
+
+    // false measures every evaluation; true lets repeated queries be answered by the QueryCache
+    @Param({"false", "true"})
+    public boolean cache;
+
+    private Catalog catalog;
+    private QueryNode node;
+    private long cacheBudget;
+    private long memoryBudget;
+
+    @Setup
+    public void setUp() {
+        cacheBudget = QueryCache.MEMORY_BUDGET;
+        memoryBudget = MemoryManager.MEMORY_BUDGET;
+        QueryCache.MEMORY_BUDGET = cache ? cacheBudget : 0;
+        // keep every index resident, spilling is not what is measured here
+        MemoryManager.MEMORY_BUDGET = Long.MAX_VALUE;
+
+        catalog = Catalog.getInstance("jmh");
+        catalog.clear();
+        catalog.addIndex("a", Indexes.build("BPlusTree", "a", distribution.keys(rows, rows, 1)));
+        catalog.addIndex("b", Indexes.build("Hash", "b", distribution.keys(rows, rows, 2)));
+        catalog.addIndex("c", Indexes.build("Bitmap", "c", Distribution.UNIFORM.keys(rows, rows, 3)));
+
+        int tenth = rows / 10;
+        switch (query) {
+            case "point":
+                node = Parser.parse("b = " + tenth);
+                break;
+            case "conjunction":
+                node = Parser.parse("a < " + tenth + " AND c = 3");
+                break;
+            case "disjunction":
+                node = Parser.parse("b = " + tenth + " OR c IN (1, 2)");
+                break;
+            case "mixed":
+                node = Parser.parse("(a BETWEEN " + tenth + " AND " + 2 * tenth + " OR b = " + tenth
+                        + ") AND NOT c = 5");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown query " + query);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Catalog.dropTable("jmh");
+        QueryCache.MEMORY_BUDGET = cacheBudget;
+        MemoryManager.MEMORY_BUDGET = memoryBudget;
+    }
+
+    @Benchmark
+    public List<Integer> evaluate() {
+        return QueryEvaluator.evaluateQuery(catalog, node, rows - 1);
+    }
+}
@@ -0,0 +1,65 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.parser.QueryNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BETWEEN predicates of a given width (in keys) evaluated by the B+ tree, the only index with range lookups.
+ * Predicates are parsed up front, so only the index is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RangeScanBenchmark {
+
+    private static final int PREDICATES = 1 << 10;
+
+    @Param({"SEQUENTIAL", "UNIFORM", "ZIPFIAN"})
+    public Distribution distribution;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"10", "1000", "100000"})
+    public int width;
+
+    private BPlusTreeIndex<Integer> tree;
+    private QueryNode[] predicates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        tree = (BPlusTreeIndex<Integer>) Indexes.build("BPlusTree", "key", distribution.keys(rows, rows, 42));
+        SplittableRandom random = new SplittableRandom(7);
+        predicates = new QueryNode[PREDICATES];
+        for (int i = 0; i < PREDICATES; i++) {
+            int start = random.nextInt(Math.max(1, rows - width));
+            predicates[i] = Parser.parse("key BETWEEN " + start + " AND " + (start + width - 1));
+        }
+    }
+
+    @Benchmark
+    public List<Integer> scan() {
+        next = (next + 1) & (PREDICATES - 1);
+        return tree.evaluate(predicates[next]);
+    }
+}
@@ -0,0 +1,95 @@
+package in.ac.iitd.db362.jmh;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.WriteAheadLog;
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Inserts from 8 threads into a catalog's index, in memory only (under the catalog's write lock, as the log
+ * applies them) or through the WriteAheadLog, which returns once the insert is durable. The gap between the two is
+ * the price of durability; group commit keeps it small by sharing each force between the waiting threads. The log
+ * goes to java.io.tmpdir, so run on the disk of interest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Threads(8)
+public class WalInsertBenchmark {
+
+    @Param({"BPlusTree", "Hash"})
+    public String index;
+
+    @Param({"memory", "wal"})
+    public String durability;
+
+    private final AtomicInteger rowIds = new AtomicInteger();
+    private Catalog catalog;
+    private ScannableIndex<Integer> built;
+    private Path directory;
+    private WriteAheadLog log;
+
+    @Setup
+    public void setUp() throws IOException {
+        catalog = Catalog.getInstance("wal-benchmark");
+        catalog.clear();
+        built = Indexes.create(index, "key", 0);
+        catalog.addIndex("key", built);
+        if ("wal".equals(durability)) {
+            directory = Files.createTempDirectory("wal-benchmark");
+            log = WriteAheadLog.open(directory, catalog);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+            System.out.println("Commits " + log.getCommitCount() + ", syncs " + log.getSyncCount());
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+        Catalog.dropTable("wal-benchmark");
+    }
+
+    @Benchmark
+    public void insert() throws IOException {
+        int rowId = rowIds.getAndIncrement();
+        if (log != null) {
+            log.insert("key", rowId, rowId);
+            return;
+        }
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            built.insert(rowId, rowId);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IndexScan;
+import in.ac.iitd.db362.storage.ColumnScan;
+
+/**
+ * The way the catalog decided to evaluate a predicate: which index to call evaluate() on, what that is expected
+ * to cost and how many rows it is expected to return.
+ */
+public class AccessPath {
+
+    private final Index<?> index;
+    private final double cost;
+    private final double estimatedRows;
+
+    AccessPath(Index<?> index, double cost, double estimatedRows) {
+        this.index = index;
+        this.cost = cost;
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * @return the index to evaluate the predicate with (an IndexScan or ColumnScan for full scans)
+     */
+    public Index<?> getIndex() {
+        return index;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public double getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public boolean isScan() {
+        return index instanceof IndexScan || index instanceof ColumnScan;
+    }
+
+    @Override
+    public String toString() {
+        return index.prettyName() + " (cost " + String.format("%.1f", cost)
+                + ", ~" + String.format("%.1f", estimatedRows) + " rows)";
+    }
+}
@@ -2,90 +2,516 @@ package in.ac.iitd.db362.catalog;
 
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 
 import in.ac.iitd.db362.index.Index;
-import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
-import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
-import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.IndexScan;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.index.bplustree.CompositeBPlusTreeIndex;
+import in.ac.iitd.db362.metrics.MetricsRegistry;
 import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.QueryNode;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnScan;
+import in.ac.iitd.db362.storage.ColumnarTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
- * A simple catalog that stores which indexes are available for which attributes
- * Catalog is implemented as a singleton class. For now, we only focus on processing one CSV file at a time!
- * Note: DO NOT CHANGE ANYTHING IN THIS FILE
+ * A simple catalog that stores which indexes are available for which attributes of a table.
+ * There is one catalog per table (one CSV file), so indexes are keyed by (table, attribute): getInstance(table)
+ * returns the table's catalog, and getInstance() the catalog of DEFAULT_TABLE.
+ *
+ * Catalogs are safe to use from many threads: indexes are kept in concurrent maps of copy-on-write lists, so
+ * resolving the indexes of an attribute never blocks, even while another table (or this one) is being loaded.
+ * Each table has its own read/write lock, which only orders queries against rows being added to that table.
+ * Indexes are chosen per predicate by a cost model fed with each index's statistics (see CostModel).
+ * If the parser retained a columnar copy of the file, attributes without an index can still be queried by scanning
+ * their column, and the column scan competes with the indexes on cost.
+ * An index over several attributes (a CompositeBPlusTreeIndex) is registered under its attribute set, e.g.
+ * "customer_id,purchase_amount"; the QueryPlanner answers matching conjunctions with it.
  */
 public class Catalog {
 
-    private Catalog(){};
+    protected static final Logger logger = LogManager.getLogger();
 
-    private static Catalog instance = null;
+    // Table of the catalog returned by getInstance()
+    public static final String DEFAULT_TABLE = "default";
 
-    public static synchronized Catalog getInstance() {
-        if (instance == null) {
-            instance = new Catalog();
+    // Map: table -> its catalog
+    private static final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+
+    private Catalog(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the catalog of DEFAULT_TABLE
+     */
+    public static Catalog getInstance() {
+        return getInstance(DEFAULT_TABLE);
+    }
+
+    /**
+     * @param table a table name, or null for DEFAULT_TABLE
+     * @return the catalog of the table, created (empty) on first use
+     */
+    public static Catalog getInstance(String table) {
+        return catalogs.computeIfAbsent(table == null ? DEFAULT_TABLE : table, Catalog::new);
+    }
+
+    /**
+     * @return the tables that have a catalog
+     */
+    public static Set<String> getTableNames() {
+        return Collections.unmodifiableSet(catalogs.keySet());
+    }
+
+    /**
+     * Clears the table's catalog and forgets it. Queries already holding the catalog keep working on it, but
+     * getInstance(table) returns a new, empty catalog from now on.
+     * @return false if the table had no catalog
+     */
+    public static boolean dropTable(String table) {
+        Catalog catalog = catalogs.remove(table);
+        if (catalog == null) {
+            return false;
         }
-        return instance;
+        catalog.clear();
+        return true;
     }
 
-    // Map: attribute -> list of available indexes.
-    private Map<String, List<Index>> catalogMap = new HashMap<>();
+    private final String name;
+
+    // Map: attribute -> list of available indexes (copy-on-write, so readers never see a list being modified)
+    private final Map<String, List<Index>> catalogMap = new ConcurrentHashMap<>();
+
+    // Columnar copy of the file, null unless the parser was asked to retain one
+    private volatile ColumnarTable table;
+
+    // Bumped whenever the set of indexes (or the table) changes
+    private final AtomicLong generation = new AtomicLong();
+
+    // Read while a query is evaluated, written while rows are added to a followed file's indexes
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Told about every evaluated predicate, null if none is attached
+    private volatile IndexAdvisor advisor;
+
+    // Composite indexes built from the retained columns -> number of rows of the columns they hold
+    private final Map<CompositeBPlusTreeIndex, Integer> compositeRows = new ConcurrentHashMap<>();
+
+    // Indexes loaded from or saved to a snapshot -> checksum of the CSV file the snapshot was built from
+    private final Map<Index, Long> snapshotChecksums = new ConcurrentHashMap<>();
 
     /**
      * Registers an index for the given attribute.
      */
     public void addIndex(String attribute, Index index) {
-        catalogMap.computeIfAbsent(attribute, k -> new ArrayList<>()).add(index);
+        catalogMap.computeIfAbsent(attribute, k -> new CopyOnWriteArrayList<>()).add(index);
+        generation.incrementAndGet();
+        MetricsRegistry.getInstance().register(name, lock, index);
+        MemoryManager.getInstance().register(this, attribute, index);
     }
 
     /**
-     * Retrieves all indexes available for the given attribute.
+     * Unregisters an index of the given attribute.
+     * @return false if it was not registered
      */
-    public List<Index> getIndexes(String attribute) {
-        return catalogMap.getOrDefault(attribute, Collections.emptyList());
+    public boolean removeIndex(String attribute, Index index) {
+        List<Index> indexes = catalogMap.get(attribute);
+        if (indexes == null || !indexes.remove(index)) {
+            return false;
+        }
+        generation.incrementAndGet();
+        compositeRows.remove(index);
+        snapshotChecksums.remove(index);
+        MemoryManager.getInstance().unregister(index);
+        MetricsRegistry.getInstance().unregister(index);
+        return true;
     }
 
     /**
-     * Get an appropriate index for the given attribute and operator based on a simple heuristic:
-     *
-     * If the operator is LT, GT, or RANGE, then use a B+ tree index.
-     * If the operator is EQUALS, then prefer a Bitmap index; if not available, then a Hash index;
-     * if that isn’t available, then a B+ tree index.
-     *
+     * Builds a composite B+ tree over the attributes (most significant first) from the retained columns and
+     * registers it under its attribute set. Rows appended to a followed file later on are added to it by
+     * updateCompositeIndexes().
+     * @throws IllegalStateException if no columns were retained
      */
-    public Index getIndex(String attribute, Operator operator) {
-        List<Index> indexes = getIndexes(attribute);
-        if (operator == Operator.LT || operator == Operator.GT || operator == Operator.RANGE) {
-            // Look for a BPlusTreeIndex.
-            for (Index idx : indexes) {
-                if (idx instanceof BPlusTreeIndex) {
-                    return idx;
+    public CompositeBPlusTreeIndex addCompositeIndex(List<String> attributes) {
+        ColumnarTable table = this.table;
+        if (table == null) {
+            throw new IllegalStateException("Table " + name + " has no retained columns to build a composite index from");
+        }
+        List<Class<?>> types = new ArrayList<>();
+        for (String attribute : attributes) {
+            Column column = table.getColumn(attribute);
+            if (column == null) {
+                throw new IllegalArgumentException("Table " + name + " has no retained column " + attribute);
+            }
+            types.add(column.getType());
+        }
+        CompositeBPlusTreeIndex index = new CompositeBPlusTreeIndex(attributes, types);
+        // a followed file does not append rows in between, see updateCompositeIndexes()
+        Lock lock = this.lock.readLock();
+        lock.lock();
+        try {
+            compositeRows.put(index, fill(index, table, 0));
+            addIndex(index.getAttribute(), index);
+        } finally {
+            lock.unlock();
+        }
+        return index;
+    }
+
+    /**
+     * Adds the rows appended to the retained columns since the last call to the composite indexes built by
+     * addCompositeIndex(). Called with the write lock held, after rows were appended.
+     */
+    public void updateCompositeIndexes() {
+        ColumnarTable table = this.table;
+        if (table == null) {
+            return;
+        }
+        for (Map.Entry<CompositeBPlusTreeIndex, Integer> entry : compositeRows.entrySet()) {
+            MemoryManager.getInstance().ensureResident(entry.getKey());
+            entry.setValue(fill(entry.getKey(), table, entry.getValue()));
+        }
+    }
+
+    /* inserts rows from..n of the columns, skipping rows with a missing value; returns n */
+    private static int fill(CompositeBPlusTreeIndex index, ColumnarTable table, int from) {
+        List<String> attributes = index.getAttributes();
+        Column[] columns = new Column[attributes.size()];
+        int n = Integer.MAX_VALUE;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.getColumn(attributes.get(i));
+            n = Math.min(n, columns[i].size());
+        }
+        Object[] values = new Object[columns.length];
+        rows:
+        for (int row = from; row < n; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = columns[i].get(row);
+                if (values[i] == null) {
+                    continue rows;
                 }
             }
-        } else if (operator == Operator.EQUALS) {
-            // Prefer a BitmapIndex.
-            for (Index idx : indexes) {
-                if (idx instanceof BitmapIndex) {
-                    return idx;
+            index.insert(index.key(values), row);
+        }
+        return n;
+    }
+
+    /**
+     * @return the indexes of the table that carry included columns (see IncludedColumns), reloading those that were
+     * spilled to disk
+     */
+    public List<ScannableIndex<?>> getCoveringIndexes() {
+        List<ScannableIndex<?>> covering = new ArrayList<>();
+        for (List<Index> indexes : catalogMap.values()) {
+            for (Index index : indexes) {
+                if (index instanceof ScannableIndex && ((ScannableIndex<?>) index).getIncludedColumns() != null) {
+                    MemoryManager.getInstance().ensureResident(index);
+                    covering.add((ScannableIndex<?>) index);
                 }
             }
-            // Then try a HashIndex.
-            for (Index idx : indexes) {
-                if (idx instanceof ExtendibleHashing) {
-                    return idx;
+        }
+        return covering;
+    }
+
+    /**
+     * @return the composite indexes of the table, reloading those that were spilled to disk
+     */
+    public List<CompositeBPlusTreeIndex> getCompositeIndexes() {
+        List<CompositeBPlusTreeIndex> composites = new ArrayList<>();
+        for (List<Index> indexes : catalogMap.values()) {
+            for (Index index : indexes) {
+                if (index instanceof CompositeBPlusTreeIndex) {
+                    MemoryManager.getInstance().ensureResident(index);
+                    composites.add((CompositeBPlusTreeIndex) index);
                 }
             }
-            // Fall back to a BPlusTreeIndex if available.
-            for (Index idx : indexes) {
-                if (idx instanceof BPlusTreeIndex) {
-                    return idx;
+        }
+        return composites;
+    }
+
+    /**
+     * Records that the index matches a snapshot built from a CSV file with the given checksum (see
+     * IndexSnapshot.checksum()).
+     */
+    public void setSnapshotChecksum(Index index, long checksum) {
+        snapshotChecksums.put(index, checksum);
+    }
+
+    /**
+     * @return checksum of the CSV file the snapshot of the index was built from, or null if it has no snapshot
+     */
+    public Long getSnapshotChecksum(Index index) {
+        return snapshotChecksums.get(index);
+    }
+
+    /**
+     * Registers the columnar copy of the file; predicates may then be evaluated by scanning its columns.
+     */
+    public void setTable(ColumnarTable table) {
+        this.table = table;
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return the name of the table this catalog describes
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the columnar copy of the file, or null if none was retained
+     */
+    public ColumnarTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the attributes that have indexes registered
+     */
+    public Set<String> getAttributes() {
+        Set<String> attributes = new TreeSet<>();
+        catalogMap.forEach((attribute, indexes) -> {
+            if (!indexes.isEmpty()) {
+                attributes.add(attribute);
+            }
+        });
+        return attributes;
+    }
+
+    /**
+     * Retrieves all indexes available for the given attribute, reloading those that were spilled to disk.
+     */
+    public List<Index> getIndexes(String attribute) {
+        List<Index> indexes = catalogMap.getOrDefault(attribute, Collections.emptyList());
+        MemoryManager memory = MemoryManager.getInstance();
+        for (Index index : indexes) {
+            memory.ensureResident(index);
+        }
+        return indexes;
+    }
+
+    /* the indexes registered on the attribute, spilled ones included and not reloaded */
+    List<Index> getRegisteredIndexes(String attribute) {
+        return catalogMap.getOrDefault(attribute, Collections.emptyList());
+    }
+
+    /**
+     * Same as getIndexes, but the list is the catalog's own, so indexes added to the attribute later on show up in
+     * it. Loaders of appended rows use it to also fill indexes created after them (e.g. by the IndexAdvisor).
+     */
+    public List<Index> getLiveIndexes(String attribute) {
+        return catalogMap.computeIfAbsent(attribute, k -> new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * Attaches an advisor that records the predicates evaluated on this table, or detaches it (null).
+     */
+    public void setAdvisor(IndexAdvisor advisor) {
+        this.advisor = advisor;
+    }
+
+    /**
+     * @return the attached advisor, or null
+     */
+    public IndexAdvisor getAdvisor() {
+        return advisor;
+    }
+
+    /**
+     * Get an appropriate index for the given attribute and operator. Without a literal, selectivity falls back to
+     * the cost model's defaults; prefer getIndex(QueryNode) when the predicate is known.
+     */
+    public Index getIndex(String attribute, Operator operator) {
+        AccessPath path = getAccessPath(attribute, operator, null, null);
+        return path == null ? null : path.getIndex();
+    }
+
+    /**
+     * Get the cheapest index (or index scan) for evaluating the given predicate.
+     * @return null if there is neither an index nor a retained column for the predicate's attribute
+     */
+    public Index getIndex(QueryNode node) {
+        AccessPath path = getAccessPath(node);
+        return path == null ? null : path.getIndex();
+    }
+
+    /**
+     * Choose the cheapest access path for the given predicate.
+     * @return null if there is neither an index nor a retained column for the predicate's attribute
+     */
+    public AccessPath getAccessPath(QueryNode node) {
+        if (node.operator == Operator.IN) {
+            return getAccessPath(node.attribute, Operator.IN, node.values.size(),
+                    stats -> CostModel.estimateRows(node.values, stats));
+        }
+        return getAccessPath(node.attribute, node.operator, node.value, node.secondValue);
+    }
+
+    /**
+     * Costs every index on the attribute, both through its own lookup and as a full scan over its entries, and
+     * returns the cheapest. A scan is always possible, so any index on the attribute can serve any predicate.
+     * A retained column of the attribute is costed as a scan too. Spilled indexes are costed from the statistics
+     * they had when spilled; only the index of the chosen path is reloaded.
+     */
+    public AccessPath getAccessPath(String attribute, Operator operator, String value, String secondValue) {
+        return getAccessPath(attribute, operator, 1,
+                stats -> CostModel.estimateRows(operator, value, secondValue, stats));
+    }
+
+    AccessPath getAccessPath(String attribute, Operator operator, int probes,
+                                     ToDoubleFunction<IndexStatistics> estimateRows) {
+        AccessPath best = estimateAccessPath(attribute, operator, probes, estimateRows);
+        if (best != null) {
+            Index chosen = best.getIndex();
+            MemoryManager.getInstance().ensureResident(
+                    chosen instanceof IndexScan ? ((IndexScan<?>) chosen).getIndex() : chosen);
+            logger.debug("Access path for {}.{} {}: {}", name, attribute, operator, best);
+        }
+        return best;
+    }
+
+    /*
+     * Same as getAccessPath, for costing only (e.g. by the IndexAdvisor): spilled indexes are costed from the
+     * statistics they had when spilled, and none is reloaded, the chosen one included
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    AccessPath estimateAccessPath(String attribute, Operator operator, int probes,
+                                  ToDoubleFunction<IndexStatistics> estimateRows) {
+        AccessPath best = null;
+        ColumnarTable table = this.table;
+        MemoryManager memory = MemoryManager.getInstance();
+        for (Index idx : catalogMap.getOrDefault(attribute, Collections.emptyList())) {
+            if (!(idx instanceof ScannableIndex)) {
+                continue;
+            }
+            ScannableIndex<?> index = (ScannableIndex<?>) idx;
+            IndexStatistics stats = memory.getStatistics(index);
+            double rows = estimateRows.applyAsDouble(stats);
+
+            double lookupCost = CostModel.lookupCost(index, operator, stats, rows, probes);
+            if (best == null || lookupCost < best.getCost()) {
+                best = new AccessPath(index, lookupCost, rows);
+            }
+            double scanCost = CostModel.scanCost(index, stats, rows);
+            if (scanCost < best.getCost()) {
+                best = new AccessPath(new IndexScan(index), scanCost, rows);
+            }
+        }
+        Column column = table == null ? null : table.getColumn(attribute);
+        if (column != null) {
+            IndexStatistics stats = column.getStatistics();
+            double rows = estimateRows.applyAsDouble(stats);
+            double scanCost = CostModel.columnScanCost(stats, rows);
+            if (best == null || scanCost < best.getCost()) {
+                best = new AccessPath(new ColumnScan(column), scanCost, rows);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Type of the keys indexed on the attribute, used to compare literals without touching an index.
+     * @return null if there is neither an index nor a retained column for the attribute
+     */
+    public Class<?> getKeyType(String attribute) {
+        ColumnarTable table = this.table;
+        // spilled indexes keep their key type, no need to reload them
+        for (Index index : catalogMap.getOrDefault(attribute, Collections.emptyList())) {
+            if (index instanceof ScannableIndex) {
+                return ((ScannableIndex<?>) index).getKeyType();
+            }
+        }
+        Column column = table == null ? null : table.getColumn(attribute);
+        return column == null ? null : column.getType();
+    }
+
+    /**
+     * @return the lock that queries hold for reading and loaders of appended rows hold for writing
+     */
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Runs the action under the read lock. An action that needs an index spilled to disk (see MemoryManager) is
+     * abandoned: the read lock is released, the index is reloaded under the write lock and the action runs again.
+     * When called with the read lock already held, the outermost call does the reloading.
+     */
+    public <T> T withReadLock(Supplier<T> action) {
+        while (true) {
+            Index<?> spilled;
+            Lock read = lock.readLock();
+            read.lock();
+            try {
+                return action.get();
+            } catch (SpilledIndexException e) {
+                if (lock.getReadHoldCount() > 1) {
+                    throw e;
                 }
+                spilled = e.getIndex();
+            } finally {
+                read.unlock();
             }
+            MemoryManager.getInstance().makeResident(spilled);
         }
-        return null; // No appropriate index found.
+    }
+
+    /**
+     * @return a counter that changes whenever an index is added, spilled to disk or the catalog is cleared
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /* called by the MemoryManager once an index of the table is spilled: plans kept across queries are stale */
+    void indexSpilled() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Total number of inserts and deletes seen by the indexes on the attribute, plus the rows appended to its
+     * retained column. Within one generation it only
+     * grows (spilling and reloading an index count as modifications), so a cached result over the attribute is stale
+     * as soon as this changes.
+     */
+    public long getModificationCount(String attribute) {
+        long count = 0;
+        ColumnarTable table = this.table;
+        for (Index index : catalogMap.getOrDefault(attribute, Collections.emptyList())) {
+            if (index instanceof ScannableIndex) {
+                count += ((ScannableIndex<?>) index).getModificationCount();
+            }
+        }
+        Column column = table == null ? null : table.getColumn(attribute);
+        return column == null ? count : count + column.size();
     }
 
     public void clear() {
+        for (List<Index> indexes : catalogMap.values()) {
+            for (Index index : indexes) {
+                MemoryManager.getInstance().unregister(index);
+                MetricsRegistry.getInstance().unregister(index);
+            }
+        }
         catalogMap.clear();
+        compositeRows.clear();
+        snapshotChecksums.clear();
+        table = null;
+        generation.incrementAndGet();
     }
 }
 
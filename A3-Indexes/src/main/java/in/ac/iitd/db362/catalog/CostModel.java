@@ -0,0 +1,187 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Operator;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Cost model used by the catalog to choose an access path for a predicate.
+ *
+ * Costs are measured in "entries touched": following a pointer to a node or bucket, reading a key/rowId entry and
+ * reading a bitmap word all count as one. Selectivity is estimated from the index statistics assuming keys are
+ * spread uniformly between the smallest and largest key.
+ */
+public class CostModel {
+
+    // Fallback selectivities when a literal cannot be placed between min and max (e.g. strings)
+    static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+    static final double DEFAULT_BETWEEN_SELECTIVITY = 1.0 / 4;
+
+    // Cost of comparing one value of a retained column, relative to touching an index entry
+    static final double COLUMN_SCAN_ENTRY_COST = 0.25;
+
+    private CostModel() {
+    }
+
+    /**
+     * Estimated number of rows that satisfy the predicate.
+     */
+    public static double estimateRows(Operator operator, String value, String secondValue, IndexStatistics stats) {
+        return selectivity(operator, value, secondValue, stats) * stats.getEntryCount();
+    }
+
+    /**
+     * Estimated number of rows that carry one of the listed values (IN).
+     */
+    public static double estimateRows(List<String> values, IndexStatistics stats) {
+        double rows = 0;
+        for (String value : values) {
+            rows += estimateRows(Operator.EQUALS, value, null, stats);
+        }
+        return Math.min(rows, stats.getEntryCount());
+    }
+
+    /**
+     * Estimated fraction of entries that satisfy the predicate. For IN, this is the fraction for one listed value.
+     */
+    public static double selectivity(Operator operator, String value, String secondValue, IndexStatistics stats) {
+        if (stats.getEntryCount() == 0) {
+            return 0;
+        }
+        double min = keyToDouble(stats.getMinKey());
+        double max = keyToDouble(stats.getMaxKey());
+        double v = literalToDouble(stats.getMinKey(), value);
+        boolean interpolate = !Double.isNaN(min) && !Double.isNaN(max) && !Double.isNaN(v) && max > min;
+
+        switch (operator) {
+            case EQUALS:
+            case IN:
+                if (interpolate && (v < min || v > max)) {
+                    return 0;
+                }
+                return 1.0 / Math.max(1, stats.getDistinctKeys());
+            case NE:
+                return 1 - selectivity(Operator.EQUALS, value, null, stats);
+            case LT:
+            case LE:
+                return interpolate ? clamp((v - min) / (max - min)) : DEFAULT_RANGE_SELECTIVITY;
+            case GT:
+            case GE:
+                return interpolate ? clamp((max - v) / (max - min)) : DEFAULT_RANGE_SELECTIVITY;
+            case RANGE:
+                double v2 = literalToDouble(stats.getMinKey(), secondValue);
+                if (interpolate && !Double.isNaN(v2)) {
+                    return clamp((Math.min(v2, max) - Math.max(v, min)) / (max - min));
+                }
+                return DEFAULT_BETWEEN_SELECTIVITY;
+            default:
+                throw new IllegalArgumentException("Not a predicate operator: " + operator);
+        }
+    }
+
+    /**
+     * Cost of answering the predicate with the index's own lookup, or +infinity if the index cannot serve it.
+     */
+    public static double lookupCost(ScannableIndex<?> index, Operator operator, IndexStatistics stats, double rows) {
+        return lookupCost(index, operator, stats, rows, 1);
+    }
+
+    /**
+     * Same as above for a predicate that needs several probes (the values of an IN list).
+     */
+    public static double lookupCost(ScannableIndex<?> index, Operator operator, IndexStatistics stats, double rows,
+                                    int probes) {
+        if (operator == Operator.NE) {
+            // all but one key: no index does better than a scan
+            return Double.POSITIVE_INFINITY;
+        }
+        boolean equality = operator == Operator.EQUALS || operator == Operator.IN;
+        if (index instanceof BPlusTreeIndex) {
+            // Descend once per probe (at most), then walk leaves that are on average half full
+            double leafCapacity = Math.max(1, ((BPlusTreeIndex<?>) index).getOrder() / 2.0);
+            return probes * stats.getHeight() + Math.ceil(rows / leafCapacity) + rows;
+        } else if (index instanceof ExtendibleHashing) {
+            if (!equality) {
+                return Double.POSITIVE_INFINITY;
+            }
+            // One bucket per probe, plus overflow buckets when a key has more duplicates than fit in one
+            return probes + Math.floor(rows / ExtendibleHashing.BUCKET_SIZE) + rows;
+        } else if (index instanceof BitmapIndex) {
+            if (!equality) {
+                return Double.POSITIVE_INFINITY;
+            }
+            // Every word of each key's bitmap is read, whatever the number of matches
+            return probes * bitmapWords(stats) + rows;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Cost of answering the predicate by scanning every entry of the index.
+     */
+    public static double scanCost(ScannableIndex<?> index, IndexStatistics stats, double rows) {
+        if (index instanceof BitmapIndex) {
+            // Every key's bitmap is walked
+            return stats.getDistinctKeys() * bitmapWords(stats) + stats.getEntryCount() + rows;
+        }
+        return stats.getEntryCount() + rows;
+    }
+
+    /**
+     * Cost of answering the predicate by scanning a retained column. A column entry is a primitive compared in a
+     * tight loop, so it counts as a fraction of an index entry.
+     */
+    public static double columnScanCost(IndexStatistics stats, double rows) {
+        return stats.getEntryCount() * COLUMN_SCAN_ENTRY_COST + rows;
+    }
+
+    private static double bitmapWords(IndexStatistics stats) {
+        if (stats.getBitmapDensity() <= 0) {
+            return 1;
+        }
+        return Math.ceil(stats.getEntryCount() / stats.getBitmapDensity() / 64);
+    }
+
+    private static double clamp(double fraction) {
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    /**
+     * Maps a key onto a number line, so that selectivity can be interpolated. Returns NaN for keys that have no
+     * meaningful distance (strings).
+     */
+    private static double keyToDouble(Object key) {
+        if (key instanceof Integer || key instanceof Double) {
+            return ((Number) key).doubleValue();
+        } else if (key instanceof LocalDate) {
+            return ((LocalDate) key).toEpochDay();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Same as keyToDouble for a literal of the same type as sample. Returns NaN if there is no literal or it does
+     * not parse.
+     */
+    private static double literalToDouble(Object sample, String literal) {
+        if (literal == null) {
+            return Double.NaN;
+        }
+        try {
+            if (sample instanceof Integer || sample instanceof Double) {
+                return Double.parseDouble(literal);
+            } else if (sample instanceof LocalDate) {
+                return LocalDate.parse(literal).toEpochDay();
+            }
+        } catch (RuntimeException e) {
+            // unparsable literal, fall back to default selectivity
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,510 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IndexScan;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.QueryNode;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnarTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Chooses the indexes of a table from its workload, instead of relying on the indexesToCreate map given to the
+ * CSVParser. Attach it with Catalog.setAdvisor(); evaluatePredicate() then records every predicate it evaluates:
+ * its attribute, operator and the number of rows it returned.
+ *
+ * Each advise() round costs the recorded predicates on every attribute twice: against the access paths the catalog
+ * has now, and with each candidate index (B+Tree, Hash, Bitmap) added. The candidate's statistics are derived from
+ * the retained column of the attribute (entries, distinct values, min and max), so only attributes with a retained
+ * column can get an index. Candidates that save more per round than building them costs are built from the column,
+ * most benefit per byte first, while the advisor's indexes fit in MEMORY_BUDGET. Indexes the advisor built are
+ * dropped again once they have not served a predicate for UNUSED_ROUNDS rounds; indexes it did not build are never
+ * touched. Recorded counts halve after every round, so the advisor follows a changing workload.
+ *
+ * Decisions are logged and kept for getReport(). After start(), advise() runs every ADVISE_INTERVAL_MILLIS on a
+ * background thread.
+ */
+public class IndexAdvisor implements AutoCloseable {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    // Approximate number of bytes the indexes built by the advisor may take.
+    public static long MEMORY_BUDGET = 256L << 20;
+
+    // How often the advisor runs once started.
+    public static long ADVISE_INTERVAL_MILLIS = 1000;
+
+    // Rounds without a use after which an index built by the advisor is dropped.
+    public static int UNUSED_ROUNDS = 3;
+
+    // Number of decisions kept for the report.
+    public static int REPORT_SIZE = 100;
+
+    // Cost of building an index from a column, in entries touched per row
+    static final double BUILD_COST_PER_ENTRY = 1.0;
+
+    // Rough heap footprint of an index, per entry (boxed key, boxed rowId and references) or per bitmap bit
+    static final double BPLUSTREE_ENTRY_BYTES = 48;
+    static final double HASH_ENTRY_BYTES = 40;
+    static final double BITMAP_BYTES_PER_ROW = 1.0 / 8;
+
+    public enum Action { BUILD, DROP, SKIP }
+
+    /**
+     * One decision of the advisor, with the estimates it was based on.
+     */
+    public static class Decision {
+        private final long round;
+        private final Action action;
+        private final String attribute;
+        private final String indexType;
+        private final double benefit;
+        private final long bytes;
+        private final String reason;
+
+        Decision(long round, Action action, String attribute, String indexType, double benefit, long bytes,
+                 String reason) {
+            this.round = round;
+            this.action = action;
+            this.attribute = attribute;
+            this.indexType = indexType;
+            this.benefit = benefit;
+            this.bytes = bytes;
+            this.reason = reason;
+        }
+
+        public long getRound() {
+            return round;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return BPlusTree, Hash or Bitmap, as in the indexesToCreate map of the CSVParser
+         */
+        public String getIndexType() {
+            return indexType;
+        }
+
+        /**
+         * @return estimated entries touched saved per round (before the counts halve)
+         */
+        public double getBenefit() {
+            return benefit;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "round " + round + ": " + action + " " + indexType + " on " + attribute
+                    + String.format(" (benefit %.1f, %d bytes): ", benefit, bytes) + reason;
+        }
+    }
+
+    /* predicates recorded on one attribute with one operator */
+    private static class Workload {
+        double count;
+        double rows;
+        double probes;
+    }
+
+    /* an index built by the advisor */
+    private static class Built {
+        final String attribute;
+        final String indexType;
+        final long bytes;
+        volatile long lastUsedRound;
+
+        Built(String attribute, String indexType, long bytes, long round) {
+            this.attribute = attribute;
+            this.indexType = indexType;
+            this.bytes = bytes;
+            this.lastUsedRound = round;
+        }
+    }
+
+    /* a candidate index costed in one round */
+    private static class Candidate {
+        final String attribute;
+        final String indexType;
+        final double benefit;
+        final long bytes;
+
+        Candidate(String attribute, String indexType, double benefit, long bytes) {
+            this.attribute = attribute;
+            this.indexType = indexType;
+            this.benefit = benefit;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final String[] INDEX_TYPES = {"BPlusTree", "Hash", "Bitmap"};
+
+    private final Catalog catalog;
+    // attribute -> operator -> recorded predicates
+    private final Map<String, Map<Operator, Workload>> workload = new ConcurrentHashMap<>();
+    private final Map<Index<?>, Built> built = new ConcurrentHashMap<>();
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private volatile long round;
+    private long bytes;
+    private ScheduledExecutorService executor;
+
+    public IndexAdvisor(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Records a predicate evaluated with the given index (or index/column scan).
+     * @param rows the number of rows it returned
+     */
+    public void record(QueryNode node, Index<?> index, int rows) {
+        Map<Operator, Workload> operators = workload.computeIfAbsent(node.attribute,
+                k -> new EnumMap<>(Operator.class));
+        synchronized (operators) {
+            Workload w = operators.computeIfAbsent(node.operator, k -> new Workload());
+            w.count++;
+            w.rows += rows;
+            w.probes += node.operator == Operator.IN ? node.values.size() : 1;
+        }
+        Index<?> used = index instanceof IndexScan ? ((IndexScan<?>) index).getIndex() : index;
+        Built b = built.get(used);
+        if (b != null) {
+            b.lastUsedRound = round;
+        }
+    }
+
+    /**
+     * Runs one round: drops unused indexes, then builds the beneficial ones that fit in the budget.
+     * @return the decisions of this round
+     */
+    public synchronized List<Decision> advise() {
+        long current = ++round;
+        List<Decision> made = new ArrayList<>();
+        dropUnused(current, made);
+
+        ColumnarTable table = catalog.getTable();
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, Map<Operator, Workload>> entry : workload.entrySet()) {
+            String attribute = entry.getKey();
+            Map<Operator, Workload> operators;
+            synchronized (entry.getValue()) {
+                operators = snapshotAndDecay(entry.getValue());
+            }
+            Column column = table == null ? null : table.getColumn(attribute);
+            Candidate best = bestCandidate(attribute, operators, column);
+            if (best == null) {
+                continue;
+            }
+            if (column == null) {
+                made.add(new Decision(current, Action.SKIP, attribute, best.indexType, best.benefit, best.bytes,
+                        "no retained column to build the index from"));
+                continue;
+            }
+            candidates.add(best);
+        }
+
+        candidates.sort(Comparator.comparingDouble(c -> -c.benefit / Math.max(1, c.bytes)));
+        for (Candidate candidate : candidates) {
+            if (bytes + candidate.bytes > MEMORY_BUDGET) {
+                made.add(new Decision(current, Action.SKIP, candidate.attribute, candidate.indexType,
+                        candidate.benefit, candidate.bytes, "does not fit in the memory budget"));
+                continue;
+            }
+            build(candidate, table.getColumn(candidate.attribute), current);
+            made.add(new Decision(current, Action.BUILD, candidate.attribute, candidate.indexType,
+                    candidate.benefit, candidate.bytes, "saves more per round than building it costs"));
+        }
+
+        for (Decision decision : made) {
+            logger.info("Index advisor on " + catalog.getName() + ", " + decision);
+            decisions.addLast(decision);
+            while (decisions.size() > Math.max(0, REPORT_SIZE)) {
+                decisions.removeFirst();
+            }
+        }
+        return made;
+    }
+
+    /* drops the advisor's indexes that went unused, then the least recently used ones while over budget */
+    private void dropUnused(long current, List<Decision> made) {
+        List<Map.Entry<Index<?>, Built>> byLastUse = new ArrayList<>(built.entrySet());
+        byLastUse.sort(Comparator.comparingLong(e -> e.getValue().lastUsedRound));
+        for (Map.Entry<Index<?>, Built> entry : byLastUse) {
+            Built b = entry.getValue();
+            String reason;
+            if (current - b.lastUsedRound > UNUSED_ROUNDS) {
+                reason = "not used for " + (current - b.lastUsedRound - 1) + " rounds";
+            } else if (bytes > MEMORY_BUDGET) {
+                reason = "over the memory budget, least recently used";
+            } else {
+                continue;
+            }
+            catalog.removeIndex(b.attribute, entry.getKey());
+            built.remove(entry.getKey());
+            bytes -= b.bytes;
+            made.add(new Decision(current, Action.DROP, b.attribute, b.indexType, 0, b.bytes, reason));
+        }
+    }
+
+    private static Map<Operator, Workload> snapshotAndDecay(Map<Operator, Workload> operators) {
+        Map<Operator, Workload> snapshot = new EnumMap<>(Operator.class);
+        for (Map.Entry<Operator, Workload> entry : operators.entrySet()) {
+            Workload w = entry.getValue();
+            Workload copy = new Workload();
+            copy.count = w.count;
+            copy.rows = w.rows;
+            copy.probes = w.probes;
+            snapshot.put(entry.getKey(), copy);
+            w.count /= 2;
+            w.rows /= 2;
+            w.probes /= 2;
+        }
+        return snapshot;
+    }
+
+    /*
+     * The candidate index that saves the most over the current access paths, if it saves more than building it
+     * costs. Without a column the candidate is costed from the statistics of an existing index, if any.
+     */
+    private Candidate bestCandidate(String attribute, Map<Operator, Workload> operators, Column column) {
+        IndexStatistics stats = column != null ? column.getStatistics() : indexStatistics(attribute);
+        if (stats == null || stats.getEntryCount() == 0) {
+            return null;
+        }
+        int rowCount = column != null ? column.size() : stats.getEntryCount();
+        List<String> existing = new ArrayList<>();
+        for (Index index : catalog.getRegisteredIndexes(attribute)) {
+            existing.add(indexType(index));
+        }
+
+        Candidate best = null;
+        for (String indexType : INDEX_TYPES) {
+            if (existing.contains(indexType)) {
+                continue;
+            }
+            ScannableIndex<?> prototype = prototype(indexType, column);
+            IndexStatistics candidateStats = candidateStatistics(indexType, stats, rowCount);
+            double benefit = 0;
+            for (Map.Entry<Operator, Workload> entry : operators.entrySet()) {
+                Workload w = entry.getValue();
+                if (w.count <= 0) {
+                    continue;
+                }
+                double rows = w.rows / w.count;
+                int probes = (int) Math.max(1, Math.round(w.probes / w.count));
+                double currentCost = currentCost(attribute, entry.getKey(), rows, probes);
+                double candidateCost = Math.min(
+                        CostModel.lookupCost(prototype, entry.getKey(), candidateStats, rows, probes),
+                        CostModel.scanCost(prototype, candidateStats, rows));
+                if (candidateCost < currentCost && !Double.isInfinite(currentCost)) {
+                    benefit += w.count * (currentCost - candidateCost);
+                }
+            }
+            if (benefit > stats.getEntryCount() * BUILD_COST_PER_ENTRY
+                    && (best == null || benefit > best.benefit)) {
+                best = new Candidate(attribute, indexType, benefit, estimateBytes(indexType, stats, rowCount));
+            }
+        }
+        return best;
+    }
+
+    /* cost of the access path the catalog would choose now, +infinity if it has none; nothing is reloaded */
+    private double currentCost(String attribute, Operator operator, double rows, int probes) {
+        AccessPath path = catalog.estimateAccessPath(attribute, operator, probes, stats -> rows);
+        return path == null ? Double.POSITIVE_INFINITY : path.getCost();
+    }
+
+    /* statistics of an existing index on the attribute, as of the spill for a spilled one */
+    private IndexStatistics indexStatistics(String attribute) {
+        for (Index index : catalog.getRegisteredIndexes(attribute)) {
+            if (index instanceof ScannableIndex) {
+                return MemoryManager.getInstance().getStatistics((ScannableIndex<?>) index);
+            }
+        }
+        return null;
+    }
+
+    /* statistics the candidate would report once built */
+    private static IndexStatistics candidateStatistics(String indexType, IndexStatistics stats, int rowCount) {
+        int entries = stats.getEntryCount();
+        switch (indexType) {
+            case "BPlusTree": {
+                double fanout = Math.max(2, BPlusTreeIndex.ORDER / 2.0);
+                int height = 1 + (int) Math.ceil(Math.log(Math.max(2, entries)) / Math.log(fanout));
+                return new IndexStatistics(entries, stats.getDistinctKeys(), height, 0, stats.getMinKey(),
+                        stats.getMaxKey());
+            }
+            case "Bitmap":
+                return new IndexStatistics(entries, stats.getDistinctKeys(), 1,
+                        (double) entries / Math.max(1, rowCount), stats.getMinKey(), stats.getMaxKey());
+            default:
+                return new IndexStatistics(entries, stats.getDistinctKeys(), 1, 0, stats.getMinKey(),
+                        stats.getMaxKey());
+        }
+    }
+
+    private static long estimateBytes(String indexType, IndexStatistics stats, int rowCount) {
+        switch (indexType) {
+            case "BPlusTree":
+                return (long) (stats.getEntryCount() * BPLUSTREE_ENTRY_BYTES);
+            case "Hash":
+                return (long) (stats.getEntryCount() * HASH_ENTRY_BYTES);
+            default:
+                return (long) (stats.getDistinctKeys() * (rowCount * BITMAP_BYTES_PER_ROW + 64));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ScannableIndex<?> prototype(String indexType, Column column) {
+        Class type = column != null ? column.getType() : Integer.class;
+        return newIndex(indexType, type, "", 0);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ScannableIndex<?> newIndex(String indexType, Class type, String attribute, int maxRowId) {
+        switch (indexType) {
+            case "BPlusTree":
+                return new BPlusTreeIndex(type, attribute);
+            case "Hash":
+                return new ExtendibleHashing(type, attribute);
+            default:
+                return new BitmapIndex(type, attribute, maxRowId);
+        }
+    }
+
+    private static String indexType(Index<?> index) {
+        if (index instanceof BPlusTreeIndex) {
+            return "BPlusTree";
+        } else if (index instanceof ExtendibleHashing) {
+            return "Hash";
+        } else if (index instanceof BitmapIndex) {
+            return "Bitmap";
+        }
+        return index.getClass().getSimpleName();
+    }
+
+    /*
+     * Builds the index from the column and registers it. The catalog's read lock keeps a followed file from
+     * appending rows in between, and the loader picks the index up for the rows appended afterwards.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void build(Candidate candidate, Column column, long current) {
+        Lock lock = catalog.getLock().readLock();
+        lock.lock();
+        try {
+            int size = column.size();
+            Index index = newIndex(candidate.indexType, column.getType(), candidate.attribute, Math.max(0, size - 1));
+            for (int row = 0; row < size; row++) {
+                Object value = column.get(row);
+                if (value != null) {
+                    index.insert(value, row);
+                }
+            }
+            built.put(index, new Built(candidate.attribute, candidate.indexType, candidate.bytes, current));
+            bytes += candidate.bytes;
+            catalog.addIndex(candidate.attribute, index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the most recent decisions (at most REPORT_SIZE), oldest first
+     */
+    public synchronized List<Decision> getDecisions() {
+        return new ArrayList<>(decisions);
+    }
+
+    /**
+     * @return the recent decisions and the indexes the advisor currently holds, one per line
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder("Index advisor on " + catalog.getName() + " after " + round
+                + " rounds, " + bytes + " of " + MEMORY_BUDGET + " bytes in use\n");
+        Map<String, List<String>> held = new LinkedHashMap<>();
+        for (Built b : built.values()) {
+            held.computeIfAbsent(b.attribute, k -> new ArrayList<>()).add(b.indexType);
+        }
+        report.append("Built indexes: ").append(held).append('\n');
+        for (Decision decision : decisions) {
+            report.append(decision).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return approximate number of bytes taken by the indexes the advisor built
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Runs advise() every ADVISE_INTERVAL_MILLIS on a background thread. Failed rounds are logged.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "index-advisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                advise();
+            } catch (RuntimeException e) {
+                logger.error("Index advisor round failed on " + catalog.getName(), e);
+            }
+        }, ADVISE_INTERVAL_MILLIS, ADVISE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background rounds. The indexes built so far stay in the catalog.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = executor;
+            executor = null;
+        }
+        if (stopping != null) {
+            stopping.shutdownNow();
+        }
+    }
+}
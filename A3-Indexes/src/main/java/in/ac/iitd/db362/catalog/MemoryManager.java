@@ -0,0 +1,481 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.CompositeKey;
+import in.ac.iitd.db362.index.IncludedColumns;
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the indexes of all tables within one heap budget. Every index registered with a catalog is registered here
+ * too, with its estimated footprint (ScannableIndex.getMemoryUsage()) and the last time it was used.
+ *
+ * enforceBudget() spills the least recently used indexes until the resident ones fit in MEMORY_BUDGET: the entries
+ * of a spilled index are written to a file in SPILL_DIRECTORY and the index is cleared in place, so every holder of
+ * the index keeps a valid reference. The statistics of a spilled index are kept, so the catalog costs it without
+ * reloading it; the catalog reloads a spilled index (re-inserting the entries from the file) once it is chosen as
+ * an access path or handed out. An index is only spilled while its table's write
+ * lock is free (it is tried, never waited for), so no query or load is using it. Reloads insert into the index, so
+ * they happen under the write lock too, never while a reader (a query, the metrics) walks it; a query that needs a
+ * spilled index while holding the read lock backs off and retries (see Catalog.withReadLock()).
+ * The CSVParser holds the write lock while it loads a file. The budget is enforced after an index is registered,
+ * after a CSV file is loaded and after every follow poll.
+ *
+ * Whole indexes are the unit of eviction: the indexes have no notion of pages, and cost estimates rely on their
+ * statistics being those of the complete index.
+ */
+public class MemoryManager {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    // Approximate number of bytes all resident indexes may take together.
+    public static long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+
+    // Directory that spilled indexes are written to.
+    public static String SPILL_DIRECTORY = System.getProperty("java.io.tmpdir");
+
+    private static final MemoryManager instance = new MemoryManager();
+
+    public static MemoryManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Memory metrics of one registered index.
+     */
+    public static class IndexMemory {
+        private final String table;
+        private final String attribute;
+        private final String index;
+        private final long bytes;
+        private final boolean spilled;
+        private final long spillFileBytes;
+        private final long lastAccess;
+
+        IndexMemory(String table, String attribute, String index, long bytes, boolean spilled, long spillFileBytes,
+                    long lastAccess) {
+            this.table = table;
+            this.attribute = attribute;
+            this.index = index;
+            this.bytes = bytes;
+            this.spilled = spilled;
+            this.spillFileBytes = spillFileBytes;
+            this.lastAccess = lastAccess;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return the index's prettyName()
+         */
+        public String getIndex() {
+            return index;
+        }
+
+        /**
+         * @return estimated heap bytes when resident (as last measured, if spilled)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public boolean isSpilled() {
+            return spilled;
+        }
+
+        public long getSpillFileBytes() {
+            return spillFileBytes;
+        }
+
+        /**
+         * @return a logical clock value; larger is more recent
+         */
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        @Override
+        public String toString() {
+            return table + "." + attribute + " " + index + ": " + bytes + " bytes"
+                    + (spilled ? ", spilled (" + spillFileBytes + " bytes on disk)" : "");
+        }
+    }
+
+    /* bookkeeping for one registered index */
+    private static class Entry {
+        final Catalog catalog;
+        final String attribute;
+        final ScannableIndex<?> index;
+        volatile long bytes;
+        volatile long lastAccess;
+        volatile Path spillFile;    // non-null while spilled
+        long spillFileBytes;
+        int spilledEntries;
+        volatile IndexStatistics statistics;    // as of the spill, non-null while spilled
+
+        Entry(Catalog catalog, String attribute, ScannableIndex<?> index) {
+            this.catalog = catalog;
+            this.attribute = attribute;
+            this.index = index;
+        }
+    }
+
+    private final Map<Index<?>, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    private MemoryManager() {
+    }
+
+    /**
+     * Starts accounting for an index of the catalog, then enforces the budget.
+     */
+    void register(Catalog catalog, String attribute, Index<?> index) {
+        if (!(index instanceof ScannableIndex)) {
+            return;
+        }
+        Entry entry = new Entry(catalog, attribute, (ScannableIndex<?>) index);
+        entry.bytes = entry.index.getMemoryUsage();
+        entry.lastAccess = clock.incrementAndGet();
+        entries.put(index, entry);
+        enforceBudget();
+    }
+
+    /**
+     * Stops accounting for an index and deletes its spill file, if any.
+     */
+    void unregister(Index<?> index) {
+        Entry entry = entries.remove(index);
+        if (entry != null) {
+            synchronized (entry) {
+                deleteSpillFile(entry);
+            }
+        }
+    }
+
+    /**
+     * Reloads the index if it was spilled, under its table's write lock, and marks it as just used.
+     * @throws SpilledIndexException if the index is spilled and the calling thread holds the table's read lock but
+     * not its write lock, or is a fork-join task of a query (whose caller holds the read lock)
+     */
+    void ensureResident(Index<?> index) {
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            return;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        if (entry.spillFile == null) {
+            return;
+        }
+        ReadWriteLock tableLock = entry.catalog.getLock();
+        if (tableLock instanceof ReentrantReadWriteLock) {
+            ReentrantReadWriteLock reentrant = (ReentrantReadWriteLock) tableLock;
+            // a read lock cannot be upgraded; waiting for the write lock here would deadlock
+            if (!reentrant.isWriteLockedByCurrentThread()
+                    && (reentrant.getReadHoldCount() > 0 || ForkJoinTask.inForkJoinPool())) {
+                throw new SpilledIndexException(index);
+            }
+        }
+        reloadUnderWriteLock(entry);
+    }
+
+    /**
+     * Same as ensureResident(), for a thread that holds no lock of the index's table (and may be a fork-join
+     * worker running a whole query, see Catalog.withReadLock()).
+     */
+    void makeResident(Index<?> index) {
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            return;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        if (entry.spillFile != null) {
+            reloadUnderWriteLock(entry);
+        }
+    }
+
+    private void reloadUnderWriteLock(Entry entry) {
+        Lock lock = entry.catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            synchronized (entry) {
+                if (entry.spillFile != null) {
+                    reload(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the statistics of the index, as of the spill if it is spilled; the index is not reloaded
+     */
+    IndexStatistics getStatistics(ScannableIndex<?> index) {
+        Entry entry = entries.get(index);
+        IndexStatistics statistics = entry == null ? null : entry.statistics;
+        return statistics != null ? statistics : index.getStatistics();
+    }
+
+    /**
+     * Spills least recently used indexes until the resident ones fit in MEMORY_BUDGET. Indexes whose table is busy
+     * (its write lock is not free) are skipped.
+     * @return number of indexes spilled
+     */
+    public synchronized int enforceBudget() {
+        List<Entry> resident = new ArrayList<>();
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.spillFile == null) {
+                entry.bytes = entry.index.getMemoryUsage();
+                total += entry.bytes;
+                resident.add(entry);
+            }
+        }
+        if (total <= MEMORY_BUDGET) {
+            return 0;
+        }
+        resident.sort(Comparator.comparingLong(e -> e.lastAccess));
+        int spilled = 0;
+        for (Entry entry : resident) {
+            if (total <= MEMORY_BUDGET) {
+                break;
+            }
+            ReadWriteLock tableLock = entry.catalog.getLock();
+            if (tableLock instanceof ReentrantReadWriteLock
+                    && ((ReentrantReadWriteLock) tableLock).isWriteLockedByCurrentThread()) {
+                // the calling thread is loading this table
+                continue;
+            }
+            Lock lock = tableLock.writeLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                synchronized (entry) {
+                    if (entry.spillFile == null && entries.get(entry.index) == entry) {
+                        long bytes = entry.index.getMemoryUsage();
+                        spill(entry);
+                        total -= bytes;
+                        spilled++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (total > MEMORY_BUDGET) {
+            logger.warn("Resident indexes take " + total + " bytes, over the budget of " + MEMORY_BUDGET);
+        }
+        return spilled;
+    }
+
+    private void spill(Entry entry) {
+        try {
+            Path file = Files.createTempFile(Paths.get(SPILL_DIRECTORY), "index-" + entry.attribute + "-", ".spill");
+            int[] count = {0};
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                IncludedColumns included = entry.index.getIncludedColumns();
+                entry.index.forEachEntry((key, rowId) -> {
+                    try {
+                        writeKey(out, key);
+                        out.writeInt(rowId);
+                        if (included != null) {
+                            writeIncluded(out, included, rowId);
+                        }
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            entry.statistics = entry.index.getStatistics();
+            entry.index.clear();
+            entry.spillFile = file;
+            entry.spillFileBytes = Files.size(file);
+            entry.spilledEntries = count[0];
+            // a kept plan (see PreparedQuery) would probe the cleared index through its access path
+            entry.catalog.indexSpilled();
+            spills.incrementAndGet();
+            logger.info("Spilled " + entry.index.prettyName() + " of " + entry.catalog.getName() + " (" + count[0]
+                    + " entries, " + entry.bytes + " bytes) to " + file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill " + entry.index.prettyName(), e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void reload(Entry entry) {
+        Path file = entry.spillFile;
+        Index index = entry.index;
+        Class<?> type = entry.index.getKeyType();
+        IncludedColumns included = entry.index.getIncludedColumns();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (int i = 0; i < entry.spilledEntries; i++) {
+                Object key = readKey(in, type);
+                int rowId = in.readInt();
+                index.insert(key, rowId);
+                if (included != null) {
+                    readIncluded(in, included, rowId);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reload " + entry.index.prettyName() + " from " + file, e);
+        }
+        deleteSpillFile(entry);
+        entry.bytes = entry.index.getMemoryUsage();
+        reloads.incrementAndGet();
+        logger.info("Reloaded " + entry.index.prettyName() + " of " + entry.catalog.getName() + " from " + file);
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof Integer) {
+            out.writeInt((Integer) key);
+        } else if (key instanceof Double) {
+            out.writeDouble((Double) key);
+        } else if (key instanceof LocalDate) {
+            out.writeLong(((LocalDate) key).toEpochDay());
+        } else if (key instanceof CompositeKey) {
+            // components are tagged with their type, since the index only knows its key type as CompositeKey
+            CompositeKey composite = (CompositeKey) key;
+            out.writeByte(composite.size());
+            for (int i = 0; i < composite.size(); i++) {
+                Object component = composite.get(i);
+                out.writeByte(component instanceof Integer ? 'I' : component instanceof Double ? 'D'
+                        : component instanceof LocalDate ? 'L' : 'S');
+                writeKey(out, component);
+            }
+        } else {
+            out.writeUTF(String.valueOf(key));
+        }
+    }
+
+    private static Object readKey(DataInputStream in, Class<?> type) throws IOException {
+        if (type == Integer.class) {
+            return in.readInt();
+        } else if (type == Double.class) {
+            return in.readDouble();
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(in.readLong());
+        } else if (type == CompositeKey.class) {
+            Object[] components = new Object[in.readUnsignedByte()];
+            for (int i = 0; i < components.length; i++) {
+                byte tag = in.readByte();
+                components[i] = readKey(in, tag == 'I' ? Integer.class : tag == 'D' ? Double.class
+                        : tag == 'L' ? LocalDate.class : String.class);
+            }
+            return new CompositeKey(components);
+        }
+        return in.readUTF();
+    }
+
+    /* the included columns of a covering index (the first is the key, which insert() restores) */
+    private static void writeIncluded(DataOutputStream out, IncludedColumns included, int rowId) throws IOException {
+        for (int column = 1; column < included.getNames().size(); column++) {
+            Object value = included.get(rowId, column);
+            out.writeBoolean(value != null);
+            if (value != null) {
+                writeKey(out, value);
+            }
+        }
+    }
+
+    private static void readIncluded(DataInputStream in, IncludedColumns included, int rowId) throws IOException {
+        for (int column = 1; column < included.getNames().size(); column++) {
+            if (in.readBoolean()) {
+                included.set(rowId, column, readKey(in, included.getTypes().get(column)));
+            }
+        }
+    }
+
+    private static void deleteSpillFile(Entry entry) {
+        Path file = entry.spillFile;
+        entry.spillFile = null;
+        entry.spillFileBytes = 0;
+        entry.spilledEntries = 0;
+        entry.statistics = null;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete spill file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return memory metrics of every registered index
+     */
+    public List<IndexMemory> getIndexMemory() {
+        List<IndexMemory> metrics = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                metrics.add(new IndexMemory(entry.catalog.getName(), entry.attribute, entry.index.prettyName(),
+                        entry.bytes, entry.spillFile != null, entry.spillFileBytes, entry.lastAccess));
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return estimated heap bytes of the resident indexes, as last measured
+     */
+    public long getResidentBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.spillFile == null) {
+                total += entry.bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return true if the index is registered and currently spilled to disk
+     */
+    public boolean isSpilled(Index<?> index) {
+        Entry entry = entries.get(index);
+        return entry != null && entry.spillFile != null;
+    }
+
+    public long getSpillCount() {
+        return spills.get();
+    }
+
+    public long getReloadCount() {
+        return reloads.get();
+    }
+}
@@ -0,0 +1,22 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.Index;
+
+/**
+ * Thrown by MemoryManager.ensureResident() when a spilled index is needed by a thread that cannot take the table's
+ * write lock to reload it, because it (or the query it works for) holds the read lock. Catalog.withReadLock()
+ * catches it, releases the read lock, reloads the index and runs the action again.
+ */
+class SpilledIndexException extends IllegalStateException {
+
+    private final transient Index<?> index;
+
+    SpilledIndexException(Index<?> index) {
+        super(index.prettyName() + " is spilled and can only be reloaded under the write lock");
+        this.index = index;
+    }
+
+    Index<?> getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,604 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.CompositeKey;
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IndexSnapshot;
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log in front of the indexes of a catalog, so that inserts and deletes survive a crash without
+ * rebuilding the indexes from the CSV file (which may no longer hold the rows that arrived since).
+ *
+ * insert() and delete() append a record to the log, apply it to every index on the attribute and return once the
+ * record is on disk. Records are appended and applied under the catalog's write lock, so the log order is the order
+ * the indexes saw; the wait for the disk happens after the lock is released. Writers waiting at the same time share
+ * one FileChannel.force (group commit): the first becomes the leader and writes and forces everything appended so
+ * far, the others wait for it and return if it covered their record. A bulk writer may append many records with
+ * appendInsert()/appendDelete() and call sync() once. A query may see an update before it is durable.
+ *
+ * The log is a sequence of segments (wal-N.log). A checkpoint saves every index of the catalog as a snapshot (see
+ * IndexSnapshot) into checkpoint-N, then atomically replaces the checkpoint manifest, which names the snapshots and the
+ * first segment to replay, and starts that segment; older segments and snapshots are deleted only once the snapshots,
+ * the manifest and the directories holding them have been forced to disk. A checkpoint is taken when a segment grows
+ * past CHECKPOINT_BYTES, when the log is opened and on checkpoint(). Recovery (open()) loads the snapshots and replays
+ * only the segments after them. A record is framed by its length and a CRC32C; a torn record at the end of the last
+ * segment (a crash during a write) is cut off.
+ *
+ * Included columns of covering indexes are not logged; a recovered covering index carries the values it had at
+ * the last checkpoint.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    // A checkpoint is taken once the current segment grows past this many bytes.
+    public static long CHECKPOINT_BYTES = 64L << 20;
+
+    private static final int MAGIC = 0x57414C31;     // "WAL1"
+    private static final short VERSION = 1;
+    private static final String MANIFEST = "checkpoint";
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final byte INSERT = 'I';
+    private static final byte DELETE = 'D';
+
+    private final Path directory;
+    private final Catalog catalog;
+
+    // guarded by this: records appended but not yet written, and the log position after them
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private long appendedLsn;
+    private long segmentBytes;
+    private boolean checkpointDue;
+    private boolean closed;
+
+    // guarded by flushLock: the segment records are written to
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+
+    // guarded by durable: the log position known to be on disk, and whether a leader is writing
+    private final Object durable = new Object();
+    private long durableLsn;
+    private boolean flushing;
+
+    private volatile IOException failure;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+
+    private WriteAheadLog(Path directory, Catalog catalog) {
+        this.directory = directory;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Opens the log in the directory and recovers the catalog from it: the indexes of the last checkpoint are
+     * loaded (into the catalog's indexes at the same attribute and position, or registered if there are none), the
+     * segments after it are replayed, and a new checkpoint is taken. Without a checkpoint, the log is replayed onto
+     * the indexes the catalog already holds.
+     */
+    public static WriteAheadLog open(Path directory, Catalog catalog) throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory, catalog);
+        log.recover();
+        return log;
+    }
+
+    /**
+     * Inserts the key with the rowId into every index on the attribute and waits until the insert is durable.
+     */
+    public void insert(String attribute, Object key, int rowId) throws IOException {
+        sync(appendInsert(attribute, key, rowId));
+    }
+
+    /**
+     * Deletes the key from every index on the attribute and waits until the delete is durable.
+     */
+    public void delete(String attribute, Object key) throws IOException {
+        sync(appendDelete(attribute, key));
+    }
+
+    /**
+     * Same as insert(), without waiting for the disk.
+     * @return the log position to pass to sync()
+     */
+    public long appendInsert(String attribute, Object key, int rowId) throws IOException {
+        return log(INSERT, attribute, key, rowId);
+    }
+
+    /**
+     * Same as delete(), without waiting for the disk.
+     * @return the log position to pass to sync()
+     */
+    public long appendDelete(String attribute, Object key) throws IOException {
+        return log(DELETE, attribute, key, 0);
+    }
+
+    /**
+     * Waits until the log is on disk up to the position, writing and forcing it unless another writer does.
+     */
+    public void sync(long lsn) throws IOException {
+        synchronized (durable) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    durable.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the log");
+                }
+            }
+            if (durableLsn >= lsn) {
+                return;
+            }
+            flushing = true;
+        }
+        long flushed = 0;
+        try {
+            flushed = flush();
+        } finally {
+            synchronized (durable) {
+                durableLsn = Math.max(durableLsn, flushed);
+                flushing = false;
+                durable.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Saves every index of the catalog as a snapshot and starts a new segment, so that recovery only replays the
+     * records appended from now on. Queries and writers wait while the snapshots are written.
+     */
+    public void checkpoint() throws IOException {
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            long flushed = flush();
+            synchronized (durable) {
+                durableLsn = Math.max(durableLsn, flushed);
+                durable.notifyAll();
+            }
+
+            long next = segment + 1;
+            Path snapshots = directory.resolve("checkpoint-" + next);
+            Files.createDirectories(snapshots);
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(manifest);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(next);
+            List<String> attributes = new ArrayList<>(catalog.getAttributes());
+            int entries = 0;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            for (String attribute : attributes) {
+                List<Index> indexes = catalog.getIndexes(attribute);
+                for (int position = 0; position < indexes.size(); position++) {
+                    if (!(indexes.get(position) instanceof ScannableIndex)) {
+                        continue;
+                    }
+                    String name = entries + ".idx";
+                    IndexSnapshot.save((ScannableIndex<?>) indexes.get(position), snapshots.resolve(name));
+                    bodyOut.writeUTF(attribute);
+                    bodyOut.writeInt(position);
+                    bodyOut.writeUTF(name);
+                    entries++;
+                }
+            }
+            out.writeInt(entries);
+            body.writeTo(out);
+            CRC32C crc = new CRC32C();
+            crc.update(manifest.toByteArray());
+            out.writeLong(crc.getValue());
+            // the snapshots are forced by IndexSnapshot.save; their names must be durable before the manifest is
+            syncDirectory(snapshots);
+            syncDirectory(directory);
+            Path temp = directory.resolve(MANIFEST + ".tmp");
+            try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(manifest.toByteArray());
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+                file.force(true);
+            }
+            Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            // the new manifest is in place: switch to the next segment and drop what the checkpoint supersedes
+            flushLock.lock();
+            try {
+                channel.close();
+                channel = openSegment(next);
+                segment = next;
+            } finally {
+                flushLock.unlock();
+            }
+            synchronized (this) {
+                segmentBytes = 0;
+                checkpointDue = false;
+            }
+            // the rename and the new segment survive a power loss before anything they supersede is deleted
+            syncDirectory(directory);
+            deleteBefore(next);
+            checkpoints.incrementAndGet();
+            logger.info("Checkpointed " + entries + " indexes of " + catalog.getName() + " to " + snapshots);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of records appended
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * @return number of FileChannel.force calls made for commits; less than the commit count when commits were
+     * grouped
+     */
+    public long getSyncCount() {
+        return syncs.get();
+    }
+
+    public long getCheckpointCount() {
+        return checkpoints.get();
+    }
+
+    /**
+     * Makes every appended record durable and closes the current segment. No checkpoint is taken.
+     */
+    @Override
+    public void close() throws IOException {
+        long lsn;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lsn = appendedLsn;
+        }
+        sync(lsn);
+        flushLock.lock();
+        try {
+            channel.close();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private long log(byte op, String attribute, Object key, int rowId) throws IOException {
+        if (failure != null) {
+            throw new IllegalStateException("The log failed to write and cannot take more records", failure);
+        }
+        boolean checkpoint;
+        long lsn;
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            List<Index> indexes = catalog.getIndexes(attribute);
+            if (indexes.isEmpty()) {
+                throw new IllegalArgumentException("No index on " + attribute);
+            }
+            for (Index index : indexes) {
+                if (index instanceof ScannableIndex && !((ScannableIndex<?>) index).getKeyType().isInstance(key)) {
+                    throw new IllegalArgumentException("Key " + key + " does not fit the " + index.prettyName()
+                            + " on " + attribute);
+                }
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("The log is closed");
+                }
+                record.reset();
+                recordOut.writeByte(op);
+                recordOut.writeUTF(attribute);
+                writeKey(recordOut, key);
+                if (op == INSERT) {
+                    recordOut.writeInt(rowId);
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(record.toByteArray());
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(record.size());
+                out.writeInt((int) crc.getValue());
+                record.writeTo(out);
+                appendedLsn += 8 + record.size();
+                segmentBytes += 8 + record.size();
+                lsn = appendedLsn;
+                checkpoint = segmentBytes >= CHECKPOINT_BYTES && !checkpointDue;
+                checkpointDue |= checkpoint;
+            }
+            apply(op, key, rowId, indexes);
+        } finally {
+            lock.unlock();
+        }
+        commits.incrementAndGet();
+        if (checkpoint) {
+            checkpoint();
+        }
+        return lsn;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void apply(byte op, Object key, int rowId, List<Index> indexes) {
+        for (Index index : indexes) {
+            if (op == INSERT) {
+                ((Index<Object>) index).insert(key, rowId);
+            } else {
+                ((Index<Object>) index).delete(key);
+            }
+        }
+    }
+
+    /* writes the pending records and forces them to disk; returns the log position they reach */
+    private long flush() throws IOException {
+        flushLock.lock();
+        try {
+            byte[] batch;
+            long upTo;
+            synchronized (this) {
+                batch = pending.toByteArray();
+                pending.reset();
+                upTo = appendedLsn;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            syncs.incrementAndGet();
+            return upTo;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            long first = 0;
+            Path manifest = directory.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                first = restore(manifest);
+            }
+            List<Long> segments = new ArrayList<>();
+            for (long s : segments()) {
+                if (s >= first) {
+                    segments.add(s);
+                }
+            }
+            long replayed = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                replayed += replay(segments.get(i), i == segments.size() - 1);
+            }
+            segment = segments.isEmpty() ? first : segments.get(segments.size() - 1);
+            channel = openSegment(segment);
+            segmentBytes = channel.size();
+            logger.info("Recovered " + catalog.getName() + " from " + directory + ", replayed " + replayed
+                    + " records");
+            checkpoint();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* loads the snapshots named by the manifest; returns the first segment to replay */
+    private long restore(Path manifest) throws IOException {
+        byte[] bytes = Files.readAllBytes(manifest);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 8));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < 8 || in.readInt() != MAGIC
+                || ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+            throw new IOException("Corrupt checkpoint manifest " + manifest);
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + manifest);
+        }
+        long first = in.readLong();
+        Path snapshots = directory.resolve("checkpoint-" + first);
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            String attribute = in.readUTF();
+            int position = in.readInt();
+            Path file = snapshots.resolve(in.readUTF());
+            List<Index> indexes = catalog.getIndexes(attribute);
+            if (position < indexes.size() && indexes.get(position) instanceof ScannableIndex) {
+                ((ScannableIndex<?>) indexes.get(position)).load(file);
+            } else {
+                catalog.addIndex(attribute, IndexSnapshot.load(file));
+            }
+        }
+        return first;
+    }
+
+    /* applies the records of a segment; a torn record ends the log if this is the last segment */
+    private long replay(long s, boolean last) throws IOException {
+        Path file = segmentFile(s);
+        long records = 0;
+        long valid = 0;
+        String torn = null;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            DataInputStream in = new DataInputStream(stream);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    torn = "bad record length " + length;
+                    break;
+                }
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    torn = "truncated record";
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    torn = "checksum mismatch";
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte op = record.readByte();
+                String attribute = record.readUTF();
+                Object key = readKey(record);
+                apply(op, key, op == INSERT ? record.readInt() : 0, catalog.getIndexes(attribute));
+                valid += 8 + length;
+                records++;
+            }
+        }
+        if (torn != null) {
+            if (!last) {
+                throw new IOException("Corrupt log segment " + file + " at byte " + valid + ": " + torn);
+            }
+            logger.warn("Cutting off the end of " + file + " at byte " + valid + ": " + torn);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(valid);
+            }
+        }
+        return records;
+    }
+
+    private FileChannel openSegment(long s) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentFile(s), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        segmentChannel.position(segmentChannel.size());
+        return segmentChannel;
+    }
+
+    private Path segmentFile(long s) {
+        return directory.resolve("wal-" + s + ".log");
+    }
+
+    /* numbers of the segments in the directory, ascending */
+    private List<Long> segments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("wal-\\d+\\.log"))
+                    .forEach(name -> segments.add(Long.parseLong(name.substring(4, name.length() - 4))));
+        }
+        segments.sort(Comparator.naturalOrder());
+        return segments;
+    }
+
+    /* forces the entries of a directory (files created, renamed or deleted in it) to disk */
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /* deletes the segments and snapshot directories older than the checkpoint starting at segment next */
+    private void deleteBefore(long next) throws IOException {
+        for (long s : segments()) {
+            if (s < next) {
+                Files.deleteIfExists(segmentFile(s));
+            }
+        }
+        List<Path> old = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().matches("checkpoint-\\d+"))
+                    .filter(file -> !file.getFileName().toString().equals("checkpoint-" + next))
+                    .forEach(old::add);
+        }
+        for (Path snapshots : old) {
+            try (Stream<Path> files = Files.list(snapshots)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(snapshots);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) key);
+        } else if (key instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) key);
+        } else if (key instanceof LocalDate) {
+            out.writeByte('L');
+            out.writeLong(((LocalDate) key).toEpochDay());
+        } else if (key instanceof String) {
+            out.writeByte('S');
+            out.writeUTF((String) key);
+        } else if (key instanceof CompositeKey && !((CompositeKey) key).isBound()) {
+            CompositeKey composite = (CompositeKey) key;
+            out.writeByte('C');
+            out.writeByte(composite.size());
+            for (int i = 0; i < composite.size(); i++) {
+                writeKey(out, composite.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported key " + key);
+        }
+    }
+
+    private static Object readKey(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case 'I': return in.readInt();
+            case 'D': return in.readDouble();
+            case 'L': return LocalDate.ofEpochDay(in.readLong());
+            case 'S': return in.readUTF();
+            case 'C':
+                Object[] components = new Object[in.readUnsignedByte()];
+                for (int i = 0; i < components.length; i++) {
+                    components[i] = readKey(in);
+                }
+                return new CompositeKey(components);
+            default: throw new IOException("Unknown key tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package in.ac.iitd.db362.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Growable bit vector backed by 64 bit words. This is the storage behind the BitmapIndex.
+ *
+ * Set bits are visited a word at a time: Long.numberOfTrailingZeros finds the lowest set bit and word & (word - 1)
+ * clears it, so iterating costs one step per set bit (plus one per word) instead of one per row. None of the
+ * iteration methods allocate.
+ */
+public class Bitmap {
+
+    // Bitmaps grow by (at least) this many bits at a time. Must be a multiple of 64.
+    public static int CHUNK_SIZE = 1024;
+
+    private long[] words;
+
+    /**
+     * Constructor
+     * @param capacity number of bits to reserve up front (rounded up to a whole chunk)
+     */
+    public Bitmap(int capacity) {
+        this.words = new long[roundToChunk(Math.max(capacity, 1) / 64 + 1)];
+    }
+
+    private static int roundToChunk(int words) {
+        int chunkWords = CHUNK_SIZE / 64;
+        return ((words + chunkWords - 1) / chunkWords) * chunkWords;
+    }
+
+    /**
+     * Grows the bitmap so that it can hold the given bit. It grows by half its size (but by at least one chunk) so
+     * that streaming appends cost amortized O(1) copies per bit.
+     */
+    private void ensureCapacity(int bit) {
+        int needed = (bit >>> 6) + 1;
+        if (needed <= words.length) {
+            return;
+        }
+        int grown = words.length + Math.max(words.length >> 1, CHUNK_SIZE / 64);
+        words = Arrays.copyOf(words, roundToChunk(Math.max(needed, grown)));
+    }
+
+    public void set(int bit) {
+        if (bit < 0) {
+            throw new IllegalArgumentException("Negative bit index: " + bit);
+        }
+        ensureCapacity(bit);
+        words[bit >>> 6] |= 1L << bit;
+    }
+
+    public void clear(int bit) {
+        int w = bit >>> 6;
+        if (bit >= 0 && w < words.length) {
+            words[w] &= ~(1L << bit);
+        }
+    }
+
+    public boolean get(int bit) {
+        int w = bit >>> 6;
+        return bit >= 0 && w < words.length && (words[w] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets every bit in [from, to).
+     */
+    public void set(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        ensureCapacity(to - 1);
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int i = first + 1; i < last; i++) {
+            words[i] = -1L;
+        }
+        words[last] |= lastMask;
+    }
+
+    /**
+     * Keeps only the bits that are also set in other.
+     */
+    public void and(Bitmap other) {
+        int n = Math.min(words.length, other.words.length);
+        for (int i = 0; i < n; i++) {
+            words[i] &= other.words[i];
+        }
+        Arrays.fill(words, n, words.length, 0L);
+    }
+
+    /**
+     * Sets every bit that is set in other.
+     */
+    public void or(Bitmap other) {
+        if (other.words.length > words.length) {
+            words = Arrays.copyOf(words, other.words.length);
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    /**
+     * Clears every bit that is set in other.
+     */
+    public void andNot(Bitmap other) {
+        int n = Math.min(words.length, other.words.length);
+        for (int i = 0; i < n; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /*
+     * Word range variants of and/or/andNot, used to split a merge of large bitmaps into independent tasks. They only
+     * touch words [fromWord, toWord) of this bitmap, and never grow it; call ensureWords() first.
+     */
+
+    public void and(Bitmap other, int fromWord, int toWord) {
+        int n = Math.min(toWord, Math.min(words.length, other.words.length));
+        for (int i = fromWord; i < n; i++) {
+            words[i] &= other.words[i];
+        }
+        if (n < toWord) {
+            Arrays.fill(words, Math.max(fromWord, n), Math.min(toWord, words.length), 0L);
+        }
+    }
+
+    public void or(Bitmap other, int fromWord, int toWord) {
+        int n = Math.min(toWord, Math.min(words.length, other.words.length));
+        for (int i = fromWord; i < n; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public void andNot(Bitmap other, int fromWord, int toWord) {
+        int n = Math.min(toWord, Math.min(words.length, other.words.length));
+        for (int i = fromWord; i < n; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * Grows the bitmap so that it holds at least the given number of words.
+     */
+    public void ensureWords(int count) {
+        if (count > words.length) {
+            words = Arrays.copyOf(words, roundToChunk(count));
+        }
+    }
+
+    /**
+     * @return number of 64 bit words backing the bitmap
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Bitmap copy() {
+        Bitmap copy = new Bitmap(0);
+        copy.words = words.clone();
+        return copy;
+    }
+
+    /**
+     * @return number of set bits
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of bits set in both this bitmap and mask
+     */
+    public int cardinality(Bitmap mask) {
+        long[] m = mask.words;
+        int n = Math.min(words.length, m.length);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += Long.bitCount(words[i] & m[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Calls the consumer with every set bit in ascending order.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                consumer.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with every bit set in both this bitmap and mask, in ascending order.
+     */
+    public void forEach(Bitmap mask, IntConsumer consumer) {
+        long[] m = mask.words;
+        int n = Math.min(words.length, m.length);
+        for (int i = 0; i < n; i++) {
+            long word = words[i] & m[i];
+            while (word != 0) {
+                consumer.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Writes every bit set in both this bitmap and mask into buffer, in ascending order, starting at offset.
+     * Size the buffer with cardinality(mask).
+     * @return the number of entries written
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small
+     */
+    public int fill(Bitmap mask, int[] buffer, int offset) {
+        long[] m = mask.words;
+        int n = Math.min(words.length, m.length);
+        int pos = offset;
+        for (int i = 0; i < n; i++) {
+            long word = words[i] & m[i];
+            while (word != 0) {
+                buffer[pos++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return pos - offset;
+    }
+
+    /**
+     * @return number of bits this bitmap can hold without growing
+     */
+    public int capacity() {
+        return words.length << 6;
+    }
+}
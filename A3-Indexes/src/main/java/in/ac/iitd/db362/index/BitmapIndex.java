@@ -1,5 +1,6 @@
 package in.ac.iitd.db362.index;
 
+import in.ac.iitd.db362.metrics.IndexMetrics;
 import in.ac.iitd.db362.parser.Operator;
 import in.ac.iitd.db362.parser.QueryNode;
 import org.apache.logging.log4j.LogManager;
@@ -9,96 +10,201 @@ import org.apache.logging.log4j.Logger;
 import java.util.ArrayList;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Starter code for a BitMap Index
- * Bitmap indexes are typically used for equality queries and rely on a BitSet.
+ * Bitmap indexes are typically used for equality queries and rely on a BitSet. Each key owns a Bitmap
+ * (64 bit words, iterated a set bit at a time).
  *
  * @param <T> The type of the key.
  */
-public class BitmapIndex<T> implements Index<T> {
+public class BitmapIndex<T> implements ScannableIndex<T> {
 
     protected static final Logger logger = LogManager.getLogger();
 
     private final Class<T> type;
 
     private String attribute;
+
+    // Largest rowId inserted so far (or the initial capacity hint given at construction)
     private int maxRowId;
 
-    private Map<T, int[]> bitmaps;
+    private Map<T, Bitmap> bitmaps;
+
+    // Existence bitmap: bit i is set iff row i has been inserted and not deleted since.
+    // This is what disambiguates "row does not match" from "row does not exist" once rows are deleted.
+    private Bitmap live;
+
+    // Key bounds for the catalog's cost model; they are not tightened on delete
+    private T minKey;
+    private T maxKey;
+
+    private long modificationCount;
+
+    private final IndexMetrics metrics;
 
     /**
      * Constructor
      *
      * @param type
      * @param attribute
-     * @param maxRowId
+     * @param maxRowId initial capacity hint; bitmaps grow on demand when larger rowIds are inserted
      */
-<<<<<<< Updated upstream
     public BitmapIndex(Class<T> type, String attribute, int maxRowId) {
         this.type = type;
-=======
-    public BitmapIndex(String attribute, int maxRowId) {
-        System.out.println("Initializing BitmapIndex for attribute: " + attribute + " with maxRowId: " + maxRowId);
->>>>>>> Stashed changes
         this.attribute = attribute;
         this.maxRowId = maxRowId;
         bitmaps = new HashMap<>();
+        live = new Bitmap(maxRowId + 1);
+        metrics = new IndexMetrics("Bitmap", attribute);
     }
 
     /**
      * Create a empty bitmap for a given key
      * @param key
      */
-    private void createBitmapForKey(T key) {
-        int arraySize = (maxRowId + 31) / 32;
-        bitmaps.putIfAbsent(key, new int[arraySize]);
-        System.out.println("Created new bitmap for key: " + key);
+    private Bitmap createBitmapForKey(T key) {
+        return bitmaps.computeIfAbsent(key, k -> new Bitmap(live.capacity()));
     }
 
 
     /**
      * This has been done for you.
+     * Bitmaps grow on demand, so rows can keep being appended after the index has been built.
      * @param key The attribute value.
      * @param rowId The row ID associated with the key.
      */
     public void insert(T key, int rowId) {
-        System.out.println("Inserting into BitmapIndex - Key: " + key + " | RowID: " + rowId);
-        createBitmapForKey(key);
-        int index = rowId / 32;
-        int bitPosition = rowId % 32;
-        bitmaps.get(key)[index] |= (1 << bitPosition);
-        System.out.println("Updated Bitmap for " + key + ": " + bitmaps.get(key)[index] + " (Index: " + index + ", Bit: " + bitPosition + ")");
+        createBitmapForKey(key).set(rowId);
+        modificationCount++;
+        live.set(rowId);
+        maxRowId = Math.max(maxRowId, rowId);
+        if (minKey == null || compareKey(key, minKey) < 0) {
+            minKey = key;
+        }
+        if (maxKey == null || compareKey(key, maxKey) > 0) {
+            maxKey = key;
+        }
     }
 
 
     @Override
     /**
-     * This is only for completeness. Although one can delete a key, it will mess up rowIds
-     * If a record is deleted, then an unset bit may lead to ambiguity (is false vs not exists)
+     * Deletes all rows that carry the given key: their bits are cleared in the existence bitmap and the key's bitmap
+     * is dropped. Since deleted rows are tracked explicitly, an unset bit is no longer ambiguous.
+     * @return true if the key was present
      */
     public boolean delete(T key) {
-        return false;
+        Bitmap bitmap = bitmaps.remove(key);
+        if (bitmap == null) {
+            return false;
+        }
+        live.andNot(bitmap);
+        modificationCount++;
+        return true;
+    }
+
+    /**
+     * Tombstones a single row. The row no longer matches any key, but its rowId stays reserved so that
+     * rowIds of the remaining rows are unaffected. Its bit is also cleared in its key's bitmap (a key left without
+     * rows is dropped), so a later insert of the rowId under another key does not match the old key again.
+     * @param rowId
+     * @return true if the row was live
+     */
+    public boolean deleteRow(int rowId) {
+        if (!isLive(rowId)) {
+            return false;
+        }
+        live.clear(rowId);
+        // the row's key is not known: clear it wherever it is set
+        Iterator<Bitmap> it = bitmaps.values().iterator();
+        while (it.hasNext()) {
+            Bitmap bitmap = it.next();
+            if (bitmap.get(rowId)) {
+                bitmap.clear(rowId);
+                if (bitmap.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        modificationCount++;
+        return true;
+    }
+
+    /**
+     * @param rowId
+     * @return true if the row has been inserted and not deleted
+     */
+    public boolean isLive(int rowId) {
+        return live.get(rowId);
+    }
+
+    /**
+     * @return the largest rowId seen by this index
+     */
+    public int getMaxRowId() {
+        return maxRowId;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public List<Integer> evaluate(QueryNode node) {
-        logger.info("Evaluating predicate using Bitmap index on attribute " + attribute + " for operator " + node.operator);
+        logger.debug("Evaluating predicate using Bitmap index on attribute {} for operator {}", attribute, node.operator);
+        long start = metrics.startLookup();
+        List<Integer> result = lookup(node);
+        metrics.endLookup(start, node.operator, result.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> lookup(QueryNode node) {
         // TODO: implement me
         if (node.operator == Operator.EQUALS) {
-            Object parsedKey = parseKey(node.value);
+            // a prepared query has already converted its literal to the key type
+            Object parsedKey = node.key != null ? node.key : parseKey(node.value);
             // unchecked at compile time, but will see that it holds in runtime (manual correctness)
             return search((T) parsedKey);
         }
+        if (node.operator == Operator.IN) {
+            Bitmap union = union(node);
+            List<Integer> result = new ArrayList<>(union.cardinality(live));
+            union.forEach(live, result::add);
+            return result;
+        }
         return new ArrayList<>();
     }
 
+    /* OR of the bitmaps of every key in an IN list */
+    @SuppressWarnings("unchecked")
+    private Bitmap union(QueryNode node) {
+        Bitmap union = new Bitmap(live.capacity());
+        for (int i = 0; i < node.values.size(); i++) {
+            Object key = node.keys != null ? node.keys.get(i) : parseKey(node.values.get(i));
+            Bitmap bitmap = bitmaps.get((T) key);
+            metrics.nodeVisit();
+            if (bitmap != null) {
+                union.or(bitmap);
+            }
+        }
+        return union;
+    }
+
     // We don't know the type of key unless at runtime
     private Object parseKey(String key) {
-        System.out.println("Parsing key: " + key);
+        // The declared key type wins; sniffing the literal would turn "10000" into an Integer on a double column
+        if (type == Integer.class) {
+            return Integer.parseInt(key);
+        } else if (type == Double.class) {
+            return Double.parseDouble(key);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(key);
+        } else if (type == String.class) {
+            return key;
+        }
         if (key.matches("-?\\d+")) {
             return Integer.parseInt(key);
         } else if (key.matches("-?\\d+\\.\\d+")) {
@@ -116,37 +222,130 @@ public class BitmapIndex<T> implements Index<T> {
 
     @Override
     public List<Integer> search(T key) {
-    //TODO: Implement me!
-        System.out.println("Searching BitmapIndex for key: " + key);
-        List<Integer> result = new ArrayList<>();
-        // retrieve bitmap for the given key
-        int[] bitmap = bitmaps.get(key);
+        Bitmap bitmap = bitmaps.get(key);
+        metrics.nodeVisit();
         if (bitmap == null) {
-            System.out.println("Key " + key + " not found in BitmapIndex.");
-            return result;
-        }
-        System.out.println("Bitmap state for key '" + key + "': " + java.util.Arrays.toString(bitmap));
-        for(int i = 0; i < bitmap.length; i++) {
-            int bits = bitmap[i];
-            if(bits == 0) {
-                continue;
-            }
-            for (int j = 0; j < 32; j++) {
-                if ((bits & (1 << j)) != 0) {
-                    // Calculate the rowId from the index and bit position.
-                    int rowId = i * 32 + j;
-                    // Ensure we don't return rowIds that are out of bounds.
-                    if (rowId <= maxRowId) {
-                        result.add(rowId);
-                        System.out.println("Bit set found - RowID: " + rowId);
-                    }
-                }
-            }
+            return new ArrayList<>();
         }
-        System.out.println("Search complete for key " + key + ". Found RowIDs: " + result);
+        List<Integer> result = new ArrayList<>(bitmap.cardinality(live));
+        bitmap.forEach(live, result::add);
         return result;
     }
 
+    /**
+     * Allocation free variant of search: writes the live rowIds for the key into buffer in ascending order.
+     * Size the buffer with count(key).
+     * @return number of rowIds written
+     */
+    public int search(T key, int[] buffer) {
+        Bitmap bitmap = bitmaps.get(key);
+        return bitmap == null ? 0 : bitmap.fill(live, buffer, 0);
+    }
+
+    /**
+     * Calls the consumer with every live rowId for the key, in ascending order.
+     */
+    public void forEach(T key, IntConsumer consumer) {
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.forEach(live, consumer);
+        }
+    }
+
+    /**
+     * Keeps only the candidate rows that satisfy the given equality (or IN) predicate, by intersecting them with the
+     * key's bitmap word by word instead of materializing every row of the key.
+     */
+    @SuppressWarnings("unchecked")
+    public void retainMatching(QueryNode node, Bitmap candidates) {
+        if (node.operator == Operator.IN) {
+            candidates.and(union(node));
+            candidates.and(live);
+            return;
+        }
+        if (node.operator != Operator.EQUALS) {
+            throw new IllegalArgumentException("Bitmap index can only test equality predicates");
+        }
+        Bitmap bitmap = bitmaps.get((T) (node.key != null ? node.key : parseKey(node.value)));
+        if (bitmap == null) {
+            candidates.and(new Bitmap(0));
+            return;
+        }
+        candidates.and(bitmap);
+        candidates.and(live);
+    }
+
+    /**
+     * @return number of live rows carrying the key
+     */
+    public int count(T key) {
+        Bitmap bitmap = bitmaps.get(key);
+        return bitmap == null ? 0 : bitmap.cardinality(live);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareKey(T key1, T key2) {
+        metrics.keyComparison();
+        return Integer.signum(((Comparable<T>) key1).compareTo(key2));
+    }
+
+    @Override
+    public String getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public Class<T> getKeyType() {
+        return type;
+    }
+
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    @Override
+    public IndexStatistics getStatistics() {
+        int entryCount = live.cardinality();
+        double density = (double) entryCount / live.capacity();
+        return new IndexStatistics(entryCount, bitmaps.size(), 1, density, minKey, maxKey);
+    }
+
+    /**
+     * The existence bitmap plus, per key, its map entry, the key and its bitmap words
+     */
+    @Override
+    public long getMemoryUsage() {
+        long bytes = MemoryUsage.OBJECT_HEADER + live.wordCount() * 8L;
+        for (Map.Entry<T, Bitmap> entry : bitmaps.entrySet()) {
+            bytes += MemoryUsage.MAP_ENTRY + MemoryUsage.ofKey(entry.getKey()) + MemoryUsage.OBJECT_HEADER
+                    + MemoryUsage.ofArray(entry.getValue().wordCount(), 8);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void clear() {
+        bitmaps = new HashMap<>();
+        live = new Bitmap(0);
+        minKey = null;
+        maxKey = null;
+        modificationCount++;
+    }
+
+    @Override
+    public void forEachEntry(ObjIntConsumer<? super T> consumer) {
+        for (Map.Entry<T, Bitmap> entry : bitmaps.entrySet()) {
+            T key = entry.getKey();
+            entry.getValue().forEach(live, rowId -> consumer.accept(key, rowId));
+        }
+    }
+
+    @Override
+    public IndexMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public String prettyName() {
         return "BitMap Index";
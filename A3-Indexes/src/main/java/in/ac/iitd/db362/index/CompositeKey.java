@@ -0,0 +1,108 @@
+package in.ac.iitd.db362.index;
+
+import java.util.Arrays;
+
+/**
+ * Key of an index over several attributes: a tuple of Integer, Double, String or LocalDate components, compared
+ * lexicographically (first component first).
+ *
+ * A key may also be a bound over all keys that start with a given prefix: lowerBound(prefix) sorts before every key
+ * starting with the prefix and upperBound(prefix) after every such key, as if an extra component of -inf or +inf
+ * followed the prefix. A bound never equals a key, so a range between two bounds does not depend on inclusiveness.
+ */
+public final class CompositeKey implements Comparable<CompositeKey> {
+
+    private final Object[] values;
+    private final int bound;    // -1 lower bound, 1 upper bound, 0 a key
+
+    private CompositeKey(Object[] values, int bound) {
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Composite key components must not be null: "
+                        + Arrays.toString(values));
+            }
+        }
+        this.values = values;
+        this.bound = bound;
+    }
+
+    public CompositeKey(Object... values) {
+        this(values.clone(), 0);
+    }
+
+    /**
+     * @return a key smaller than every key that starts with the prefix
+     */
+    public static CompositeKey lowerBound(Object... prefix) {
+        return new CompositeKey(prefix.clone(), -1);
+    }
+
+    /**
+     * @return a key larger than every key that starts with the prefix
+     */
+    public static CompositeKey upperBound(Object... prefix) {
+        return new CompositeKey(prefix.clone(), 1);
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Object get(int i) {
+        return values[i];
+    }
+
+    public boolean isBound() {
+        return bound != 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(CompositeKey other) {
+        int n = Math.min(values.length, other.values.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = ((Comparable<Object>) values[i]).compareTo(other.values[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (values.length == other.values.length) {
+            return Integer.compare(bound, other.bound);
+        }
+        // one is a prefix of the other: a bound sorts by its direction, a plain shorter key first
+        if (values.length < other.values.length) {
+            return bound > 0 ? 1 : -1;
+        }
+        return other.bound > 0 ? -1 : 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CompositeKey)) {
+            return false;
+        }
+        CompositeKey other = (CompositeKey) o;
+        return bound == other.bound && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(values) + bound;
+    }
+
+    // e.g. "(10, 250.0)", or "(10, -inf)" for lowerBound(10)
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("(");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append(values[i]);
+        }
+        if (bound != 0) {
+            s.append(values.length > 0 ? ", " : "").append(bound < 0 ? "-inf" : "+inf");
+        }
+        return s.append(')').toString();
+    }
+}
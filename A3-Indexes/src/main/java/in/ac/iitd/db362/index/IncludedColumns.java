@@ -0,0 +1,181 @@
+package in.ac.iitd.db362.index;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column values carried by a covering index next to its entries, so that a query that only needs the indexed
+ * attribute and these columns can be answered from the index alone (an index-only scan), without the retained
+ * columns or the CSV file.
+ *
+ * Column 0 is the indexed attribute itself, filled by the index on insert; the included columns follow, filled by
+ * the loader. Values are kept by rowId in primitive arrays: ints for Integer, epoch days for LocalDate, dictionary
+ * codes for String and doubles for Double, with one bit per row telling whether the row has a value. The arrays
+ * live beside the tree or the hash directory rather than in its leaves and buckets, since those classes are shared
+ * with the starter code; lookups still never leave the index.
+ */
+public class IncludedColumns {
+
+    private final List<String> names;
+    private final List<Class<?>> types;
+    private final int[][] ints;         // per column, null for Double columns
+    private final double[][] doubles;   // per column, null unless a Double column
+    private final long[][] present;     // per column, bit rowId set if the row has a value
+    private final List<List<String>> dictionaries = new ArrayList<>();
+    private final List<Map<String, Integer>> codes = new ArrayList<>();
+    private int capacity;
+
+    /**
+     * @param names the indexed attribute, then the included columns
+     * @param types the type of each (Integer, Double, String or LocalDate)
+     */
+    public IncludedColumns(List<String> names, List<Class<?>> types) {
+        if (names.isEmpty() || names.size() != types.size()) {
+            throw new IllegalArgumentException("Need a type for every column: " + names + " " + types);
+        }
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+        int n = names.size();
+        ints = new int[n][];
+        doubles = new double[n][];
+        present = new long[n][];
+        for (int i = 0; i < n; i++) {
+            dictionaries.add(types.get(i) == String.class ? new ArrayList<>() : null);
+            codes.add(types.get(i) == String.class ? new HashMap<>() : null);
+        }
+        clear();
+    }
+
+    /**
+     * @return the indexed attribute, then the included columns
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<Class<?>> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return position of the column, or -1 if it is not carried
+     */
+    public int indexOf(String column) {
+        return names.indexOf(column);
+    }
+
+    /**
+     * Stores the value of a column for the row; null removes it.
+     */
+    public void set(int rowId, int column, Object value) {
+        if (value == null) {
+            if (rowId < capacity) {
+                present[column][rowId >>> 6] &= ~(1L << rowId);
+            }
+            return;
+        }
+        ensureCapacity(rowId + 1);
+        Class<?> type = types.get(column);
+        if (type == Double.class) {
+            doubles[column][rowId] = (Double) value;
+        } else if (type == Integer.class) {
+            ints[column][rowId] = (Integer) value;
+        } else if (type == LocalDate.class) {
+            ints[column][rowId] = (int) ((LocalDate) value).toEpochDay();
+        } else {
+            ints[column][rowId] = code(column, (String) value);
+        }
+        present[column][rowId >>> 6] |= 1L << rowId;
+    }
+
+    /**
+     * @return the value of the column for the row, or null if the row has none
+     */
+    public Object get(int rowId, int column) {
+        if (rowId < 0 || rowId >= capacity || (present[column][rowId >>> 6] & (1L << rowId)) == 0) {
+            return null;
+        }
+        Class<?> type = types.get(column);
+        if (type == Double.class) {
+            return doubles[column][rowId];
+        } else if (type == Integer.class) {
+            return ints[column][rowId];
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(ints[column][rowId]);
+        }
+        return dictionaries.get(column).get(ints[column][rowId]);
+    }
+
+    /**
+     * Forgets every value of the row.
+     */
+    public void remove(int rowId) {
+        for (int column = 0; column < names.size(); column++) {
+            set(rowId, column, null);
+        }
+    }
+
+    /**
+     * Forgets every value and releases the arrays.
+     */
+    public void clear() {
+        capacity = 0;
+        for (int i = 0; i < names.size(); i++) {
+            ints[i] = types.get(i) == Double.class ? null : new int[0];
+            doubles[i] = types.get(i) == Double.class ? new double[0] : null;
+            present[i] = new long[0];
+            if (dictionaries.get(i) != null) {
+                dictionaries.get(i).clear();
+                codes.get(i).clear();
+            }
+        }
+    }
+
+    /**
+     * @return estimated heap bytes of the arrays and the dictionaries
+     */
+    public long getMemoryUsage() {
+        long bytes = MemoryUsage.OBJECT_HEADER;
+        for (int i = 0; i < names.size(); i++) {
+            bytes += MemoryUsage.ofArray(capacity, types.get(i) == Double.class ? 8 : 4);
+            bytes += MemoryUsage.ofArray(present[i].length, 8);
+            if (dictionaries.get(i) != null) {
+                for (String value : dictionaries.get(i)) {
+                    bytes += MemoryUsage.REFERENCE + MemoryUsage.MAP_ENTRY + MemoryUsage.ofKey(value);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private int code(int column, String value) {
+        Integer code = codes.get(column).get(value);
+        if (code == null) {
+            code = dictionaries.get(column).size();
+            dictionaries.get(column).add(value);
+            codes.get(column).put(value, code);
+        }
+        return code;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        int grown = Math.max(rows, Math.max(64, capacity + (capacity >> 1)));
+        for (int i = 0; i < names.size(); i++) {
+            if (ints[i] != null) {
+                ints[i] = Arrays.copyOf(ints[i], grown);
+            } else {
+                doubles[i] = Arrays.copyOf(doubles[i], grown);
+            }
+            present[i] = Arrays.copyOf(present[i], (grown + 63) >>> 6);
+        }
+        capacity = grown;
+    }
+}
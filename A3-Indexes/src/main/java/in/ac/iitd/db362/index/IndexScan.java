@@ -0,0 +1,160 @@
+package in.ac.iitd.db362.index;
+
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.QueryNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Full scan over the entries of an index. The catalog hands this out when scanning is cheaper than the index's own
+ * lookup, or when the index cannot serve the operator at all (e.g. a range predicate on a hash index).
+ * Inserts and deletes go to the underlying index.
+ *
+ * @param <T> The type of the key.
+ */
+public class IndexScan<T> implements Index<T> {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    private final ScannableIndex<T> index;
+
+    public IndexScan(ScannableIndex<T> index) {
+        this.index = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<Integer> evaluate(QueryNode node) {
+        logger.debug("Evaluating predicate by scanning {} on attribute {} for operator {}", index.prettyName(),
+                index.getAttribute(), node.operator);
+        List<Integer> result = new ArrayList<>();
+        if (node.operator == Operator.IN) {
+            Set<T> keys = new HashSet<>();
+            for (int i = 0; i < node.values.size(); i++) {
+                keys.add(node.keys != null ? (T) node.keys.get(i) : parseKey(node.values.get(i)));
+            }
+            index.forEachEntry((key, rowId) -> {
+                if (keys.contains(key)) {
+                    result.add(rowId);
+                }
+            });
+            return result;
+        }
+        // a prepared query has already converted its literals to the key type
+        T value = node.key != null ? (T) node.key : parseKey(node.value);
+        switch (node.operator) {
+            case EQUALS:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) == 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case NE:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) != 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case LT:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) < 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case LE:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) <= 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case GT:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) > 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case GE:
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) >= 0) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            case RANGE:
+                T upper = node.secondKey != null ? (T) node.secondKey : parseKey(node.secondValue);
+                int minLower = node.lowerInclusive ? 0 : 1;
+                int maxUpper = node.upperInclusive ? 0 : -1;
+                index.forEachEntry((key, rowId) -> {
+                    if (compareKey(key, value) >= minLower && compareKey(key, upper) <= maxUpper) {
+                        result.add(rowId);
+                    }
+                });
+                break;
+            default:
+                throw new IllegalArgumentException("Not a predicate operator: " + node.operator);
+        }
+        return result;
+    }
+
+    @Override
+    public void insert(T key, int rowId) {
+        index.insert(key, rowId);
+    }
+
+    @Override
+    public boolean delete(T key) {
+        return index.delete(key);
+    }
+
+    @Override
+    public List<Integer> search(T key) {
+        List<Integer> result = new ArrayList<>();
+        index.forEachEntry((k, rowId) -> {
+            if (compareKey(k, key) == 0) {
+                result.add(rowId);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the index being scanned
+     */
+    public ScannableIndex<T> getIndex() {
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T parseKey(String key) {
+        Class<T> type = index.getKeyType();
+        if (type == Integer.class) {
+            return (T) Integer.valueOf(key);
+        } else if (type == Double.class) {
+            return (T) Double.valueOf(key);
+        } else if (type == LocalDate.class) {
+            return (T) LocalDate.parse(key);
+        }
+        return (T) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareKey(T key1, T key2) {
+        return ((Comparable<T>) key1).compareTo(key2);
+    }
+
+    @Override
+    public String prettyName() {
+        return "Scan of " + index.prettyName();
+    }
+}
@@ -0,0 +1,574 @@
+package in.ac.iitd.db362.index;
+
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.bplustree.CompositeBPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of B+ tree, hash and bitmap indexes, so that a process can load its indexes instead of parsing
+ * the CSV file again. No Java serialization is involved:
+ *
+ *   magic "DB36", version (short), kind (B+ tree, composite B+ tree, hash or bitmap), attribute, key type,
+ *   checksum of the source file, index spec (as given to the CSVParser), kind specific fields (the maxRowId of a
+ *   bitmap, the attributes and types of a composite key), the included columns of a covering index,
+ *   then the entries as runs of one key followed by its rowIds, and a CRC32C of everything before it.
+ *
+ * Integers are varints (zigzag encoded where they may be negative) and the rowIds of a run are stored as deltas,
+ * so dense runs take about a byte per row. Strings are UTF-8. Snapshots are written to a temporary file, forced
+ * to disk and moved in place, and read with sequential FileChannel reads: once to verify the checksum, then to
+ * insert the entries. A snapshot of a newer VERSION is refused.
+ */
+public final class IndexSnapshot {
+
+    public static final int MAGIC = 0x44423336;     // "DB36"
+    public static final short VERSION = 1;
+
+    private static final byte B_PLUS_TREE = 'B';
+    private static final byte COMPOSITE = 'C';
+    private static final byte HASH = 'H';
+    private static final byte BITMAP = 'M';
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * What a snapshot describes, read from its first bytes.
+     */
+    public static final class Header {
+        private short version;
+        private byte kind;
+        private String attribute;
+        private Class<?> keyType;
+        private long sourceChecksum;
+        private String spec;
+        private int maxRowId;
+        private final List<String> compositeAttributes = new ArrayList<>();
+        private final List<Class<?>> compositeTypes = new ArrayList<>();
+        private final List<String> includedNames = new ArrayList<>();
+        private final List<Class<?>> includedTypes = new ArrayList<>();
+
+        public short getVersion() {
+            return version;
+        }
+
+        /**
+         * @return "BPlusTree", "CompositeBPlusTree", "Hash" or "Bitmap"
+         */
+        public String getKind() {
+            switch (kind) {
+                case B_PLUS_TREE: return "BPlusTree";
+                case COMPOSITE: return "CompositeBPlusTree";
+                case HASH: return "Hash";
+                default: return "Bitmap";
+            }
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        public Class<?> getKeyType() {
+            return keyType;
+        }
+
+        /**
+         * @return checksum of the file the index was built from (see checksum()), 0 if unknown
+         */
+        public long getSourceChecksum() {
+            return sourceChecksum;
+        }
+
+        /**
+         * @return the index spec the index was built from, e.g. "BPlusTree INCLUDE (store_id)", or ""
+         */
+        public String getSpec() {
+            return spec;
+        }
+    }
+
+    /**
+     * Same as below, for an index not built from a file.
+     */
+    public static void save(ScannableIndex<?> index, Path file) throws IOException {
+        save(index, file, 0, "");
+    }
+
+    /**
+     * Writes a snapshot of the index, replacing the file.
+     * @param sourceChecksum checksum of the file the index was built from
+     * @param spec how the index was requested, so that a different request does not reuse it
+     */
+    public static void save(ScannableIndex<?> index, Path file, long sourceChecksum, String spec) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES);
+                CRC32C crc = new CRC32C();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+                writeHeader(out, index, sourceChecksum, spec);
+                writeEntries(out, index);
+                out.flush();
+                new DataOutputStream(raw).writeLong(crc.getValue());
+                raw.flush();
+                // on disk before the rename makes it visible, so a crash never leaves a torn snapshot in place
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the header of a snapshot without checking the rest of the file.
+     * @throws IOException if the file is not a snapshot, or of a newer version
+     */
+    public static Header readHeader(Path file) throws IOException {
+        try (Input in = new Input(file)) {
+            return readHeader(in);
+        }
+    }
+
+    /**
+     * Creates an index from a snapshot.
+     * @throws IOException if the file is not a valid snapshot (bad checksum, newer version, truncated)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static ScannableIndex<?> load(Path file) throws IOException {
+        verify(file);
+        try (Input in = new Input(file)) {
+            Header header = readHeader(in);
+            IncludedColumns included = header.includedNames.isEmpty() ? null
+                    : new IncludedColumns(header.includedNames, header.includedTypes);
+            ScannableIndex index;
+            switch (header.kind) {
+                case B_PLUS_TREE:
+                    index = new BPlusTreeIndex(header.keyType, header.attribute, included);
+                    break;
+                case COMPOSITE:
+                    index = new CompositeBPlusTreeIndex(header.compositeAttributes, header.compositeTypes);
+                    break;
+                case HASH:
+                    index = new ExtendibleHashing(header.keyType, header.attribute, included);
+                    break;
+                default:
+                    index = new BitmapIndex(header.keyType, header.attribute, header.maxRowId);
+            }
+            readEntries(in, header, index);
+            return index;
+        }
+    }
+
+    /**
+     * Replaces the entries of an index with those of a snapshot of the same kind, attribute and key type.
+     * @throws IOException if the file is not a valid snapshot, or not one of such an index
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static void load(ScannableIndex<?> index, Path file) throws IOException {
+        verify(file);
+        try (Input in = new Input(file)) {
+            Header header = readHeader(in);
+            IncludedColumns included = index.getIncludedColumns();
+            boolean sameIncluded = included == null ? header.includedNames.isEmpty()
+                    : included.getNames().equals(header.includedNames);
+            if (header.kind != kind(index) || !header.attribute.equals(index.getAttribute())
+                    || header.keyType != index.getKeyType() || !sameIncluded) {
+                throw new IOException("Snapshot " + file + " of a " + header.getKind() + " index on "
+                        + header.attribute + " does not fit " + index.prettyName() + " on " + index.getAttribute());
+            }
+            index.clear();
+            readEntries(in, header, (ScannableIndex) index);
+        }
+    }
+
+    /**
+     * @return a checksum of the file contents (CRC32C and length), read with sequential FileChannel reads
+     */
+    public static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return size << 32 | crc.getValue();
+    }
+
+    private static byte kind(ScannableIndex<?> index) {
+        if (index instanceof CompositeBPlusTreeIndex) {
+            return COMPOSITE;
+        } else if (index instanceof BPlusTreeIndex) {
+            return B_PLUS_TREE;
+        } else if (index instanceof ExtendibleHashing) {
+            return HASH;
+        } else if (index instanceof BitmapIndex) {
+            return BITMAP;
+        }
+        throw new IllegalArgumentException("Cannot snapshot a " + index.prettyName());
+    }
+
+    private static void writeHeader(DataOutputStream out, ScannableIndex<?> index, long sourceChecksum, String spec)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        byte kind = kind(index);
+        out.writeByte(kind);
+        writeString(out, index.getAttribute());
+        out.writeByte(tag(index.getKeyType()));
+        out.writeLong(sourceChecksum);
+        writeString(out, spec == null ? "" : spec);
+        if (kind == BITMAP) {
+            writeVarint(out, ((BitmapIndex<?>) index).getMaxRowId());
+        } else if (kind == COMPOSITE) {
+            CompositeBPlusTreeIndex composite = (CompositeBPlusTreeIndex) index;
+            writeVarint(out, composite.getAttributes().size());
+            for (int i = 0; i < composite.getAttributes().size(); i++) {
+                writeString(out, composite.getAttributes().get(i));
+                out.writeByte(tag(composite.getTypes().get(i)));
+            }
+        }
+        IncludedColumns included = index.getIncludedColumns();
+        writeVarint(out, included == null ? 0 : included.getNames().size());
+        for (int i = 0; included != null && i < included.getNames().size(); i++) {
+            writeString(out, included.getNames().get(i));
+            out.writeByte(tag(included.getTypes().get(i)));
+        }
+    }
+
+    private static Header readHeader(Input in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not an index snapshot: " + in.file);
+        }
+        Header header = new Header();
+        header.version = in.getShort();
+        if (header.version > VERSION || header.version < 1) {
+            throw new IOException("Unsupported snapshot version " + header.version + " in " + in.file);
+        }
+        header.kind = in.get();
+        if (header.kind != B_PLUS_TREE && header.kind != COMPOSITE && header.kind != HASH && header.kind != BITMAP) {
+            throw new IOException("Unknown index kind " + header.kind + " in " + in.file);
+        }
+        header.attribute = in.getString();
+        header.keyType = type(in.get());
+        header.sourceChecksum = in.getLong();
+        header.spec = in.getString();
+        if (header.kind == BITMAP) {
+            header.maxRowId = (int) in.getVarint();
+        } else if (header.kind == COMPOSITE) {
+            int n = (int) in.getVarint();
+            for (int i = 0; i < n; i++) {
+                header.compositeAttributes.add(in.getString());
+                header.compositeTypes.add(type(in.get()));
+            }
+        }
+        int included = (int) in.getVarint();
+        for (int i = 0; i < included; i++) {
+            header.includedNames.add(in.getString());
+            header.includedTypes.add(type(in.get()));
+        }
+        return header;
+    }
+
+    /* runs of (key, rowIds); rowIds are zigzag deltas, each followed by the row's included values if any */
+    private static void writeEntries(DataOutputStream out, ScannableIndex<?> index) throws IOException {
+        long[] runs = {0};
+        Object[] previous = {null};
+        index.forEachEntry((key, rowId) -> {
+            if (runs[0] == 0 || !key.equals(previous[0])) {
+                runs[0]++;
+                previous[0] = key;
+            }
+        });
+        writeVarint(out, runs[0]);
+
+        IncludedColumns included = index.getIncludedColumns();
+        List<Integer> rowIds = new ArrayList<>();
+        Object[] current = {null};
+        try {
+            index.forEachEntry((key, rowId) -> {
+                if (!rowIds.isEmpty() && !key.equals(current[0])) {
+                    writeRun(out, current[0], rowIds, included);
+                    rowIds.clear();
+                }
+                current[0] = key;
+                rowIds.add(rowId);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!rowIds.isEmpty()) {
+            writeRun(out, current[0], rowIds, included);
+        }
+    }
+
+    private static void writeRun(DataOutputStream out, Object key, List<Integer> rowIds, IncludedColumns included) {
+        try {
+            writeKey(out, key);
+            writeVarint(out, rowIds.size());
+            int previous = 0;
+            for (int rowId : rowIds) {
+                writeVarint(out, zigzag(rowId - previous));
+                previous = rowId;
+                for (int column = 1; included != null && column < included.getNames().size(); column++) {
+                    // the key (column 0) is restored by insert()
+                    Object value = included.get(rowId, column);
+                    out.writeBoolean(value != null);
+                    if (value != null) {
+                        writeKey(out, value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readEntries(Input in, Header header, ScannableIndex<Object> index) throws IOException {
+        IncludedColumns included = index.getIncludedColumns();
+        long runs = in.getVarint();
+        for (long run = 0; run < runs; run++) {
+            Object key = readKey(in, header.keyType);
+            long count = in.getVarint();
+            int rowId = 0;
+            for (long i = 0; i < count; i++) {
+                rowId += unzigzag(in.getVarint());
+                index.insert(key, rowId);
+                for (int column = 1; included != null && column < header.includedNames.size(); column++) {
+                    if (in.get() != 0) {
+                        included.set(rowId, column, readKey(in, header.includedTypes.get(column)));
+                    }
+                }
+            }
+        }
+    }
+
+    /* checks the trailing CRC32C against the rest of the file */
+    private static void verify(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            long remaining = size - 8;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Truncated snapshot " + file);
+                }
+                buffer.flip();
+                crc.update(buffer);
+                remaining -= read;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            while (trailer.hasRemaining() && channel.read(trailer) > 0) {
+                // read the last 8 bytes
+            }
+            trailer.flip();
+            if (trailer.remaining() != 8 || trailer.getLong() != crc.getValue()) {
+                throw new IOException("Checksum mismatch in snapshot " + file);
+            }
+        }
+    }
+
+    private static byte tag(Class<?> type) {
+        if (type == Integer.class) {
+            return 'I';
+        } else if (type == Double.class) {
+            return 'D';
+        } else if (type == LocalDate.class) {
+            return 'L';
+        } else if (type == String.class) {
+            return 'S';
+        } else if (type == CompositeKey.class) {
+            return 'C';
+        }
+        throw new IllegalArgumentException("Unsupported key type " + type);
+    }
+
+    private static Class<?> type(byte tag) throws IOException {
+        switch (tag) {
+            case 'I': return Integer.class;
+            case 'D': return Double.class;
+            case 'L': return LocalDate.class;
+            case 'S': return String.class;
+            case 'C': return CompositeKey.class;
+            default: throw new IOException("Unknown key type tag " + tag);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof Integer) {
+            writeVarint(out, zigzag((Integer) key));
+        } else if (key instanceof Double) {
+            out.writeDouble((Double) key);
+        } else if (key instanceof LocalDate) {
+            writeVarint(out, zigzag(((LocalDate) key).toEpochDay()));
+        } else if (key instanceof String) {
+            writeString(out, (String) key);
+        } else if (key instanceof CompositeKey) {
+            CompositeKey composite = (CompositeKey) key;
+            writeVarint(out, composite.size());
+            for (int i = 0; i < composite.size(); i++) {
+                out.writeByte(tag(composite.get(i).getClass()));
+                writeKey(out, composite.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported key " + key);
+        }
+    }
+
+    private static Object readKey(Input in, Class<?> type) throws IOException {
+        if (type == Integer.class) {
+            return (int) unzigzag(in.getVarint());
+        } else if (type == Double.class) {
+            return in.getDouble();
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(unzigzag(in.getVarint()));
+        } else if (type == String.class) {
+            return in.getString();
+        }
+        Object[] components = new Object[(int) in.getVarint()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = readKey(in, type(in.get()));
+        }
+        return new CompositeKey(components);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Sequential reads of a file through a heap buffer.
+     */
+    private static final class Input implements AutoCloseable {
+        final Path file;
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        Input(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        /* makes at least n bytes available */
+        void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Truncated snapshot " + file);
+                }
+            }
+            buffer.flip();
+        }
+
+        byte get() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        short getShort() throws IOException {
+            ensure(2);
+            return buffer.getShort();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        double getDouble() throws IOException {
+            ensure(8);
+            return buffer.getDouble();
+        }
+
+        long getVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in snapshot " + file);
+        }
+
+        String getString() throws IOException {
+            int length = (int) getVarint();
+            if (length < 0 || length > buffer.capacity()) {
+                throw new IOException("Malformed string in snapshot " + file);
+            }
+            ensure(length);
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
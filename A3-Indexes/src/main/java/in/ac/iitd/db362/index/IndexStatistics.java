@@ -0,0 +1,54 @@
+package in.ac.iitd.db362.index;
+
+/**
+ * Snapshot of the statistics an index keeps about its contents.
+ * The catalog's cost model uses these to estimate predicate selectivity and access path cost.
+ */
+public class IndexStatistics {
+
+    private final int entryCount;     // number of (key, rowId) entries
+    private final int distinctKeys;   // number of distinct keys
+    private final int height;         // nodes visited to reach an entry (1 for hash and bitmap indexes)
+    private final double bitmapDensity; // set bits / allocated bits; 0 for non-bitmap indexes
+    private final Object minKey;      // smallest key seen, null if empty
+    private final Object maxKey;      // largest key seen, null if empty
+
+    public IndexStatistics(int entryCount, int distinctKeys, int height, double bitmapDensity, Object minKey, Object maxKey) {
+        this.entryCount = entryCount;
+        this.distinctKeys = distinctKeys;
+        this.height = height;
+        this.bitmapDensity = bitmapDensity;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getDistinctKeys() {
+        return distinctKeys;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getBitmapDensity() {
+        return bitmapDensity;
+    }
+
+    public Object getMinKey() {
+        return minKey;
+    }
+
+    public Object getMaxKey() {
+        return maxKey;
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + entryCount + ", distinctKeys=" + distinctKeys + ", height=" + height
+                + ", bitmapDensity=" + bitmapDensity + ", min=" + minKey + ", max=" + maxKey;
+    }
+}
@@ -0,0 +1,49 @@
+package in.ac.iitd.db362.index;
+
+import java.time.LocalDate;
+
+/**
+ * Rough heap sizes of the objects indexes are made of, for ScannableIndex.getMemoryUsage(). They assume a 64 bit
+ * JVM with compressed references off (the larger case): 16 byte object headers and 8 byte references.
+ */
+public final class MemoryUsage {
+
+    public static final long OBJECT_HEADER = 16;
+    public static final long REFERENCE = 8;
+    public static final long ARRAY_HEADER = 16;
+
+    // An ArrayList: the list object plus its backing array header
+    public static final long LIST = OBJECT_HEADER + 8 + ARRAY_HEADER;
+
+    // A HashMap entry plus its table slot
+    public static final long MAP_ENTRY = 48;
+
+    private MemoryUsage() {
+    }
+
+    /**
+     * @return heap bytes of a boxed key (Integer, Double, LocalDate, String or a CompositeKey of those)
+     */
+    public static long ofKey(Object key) {
+        if (key instanceof CompositeKey) {
+            CompositeKey composite = (CompositeKey) key;
+            long bytes = OBJECT_HEADER + REFERENCE + 8 + ofArray(composite.size(), (int) REFERENCE);
+            for (int i = 0; i < composite.size(); i++) {
+                bytes += ofKey(composite.get(i));
+            }
+            return bytes;
+        } else if (key instanceof String) {
+            return OBJECT_HEADER + 8 + ARRAY_HEADER + ((String) key).length();
+        } else if (key instanceof LocalDate) {
+            return 24;
+        }
+        return 16;
+    }
+
+    /**
+     * @return heap bytes of an array of the given length and element size
+     */
+    public static long ofArray(int length, int elementBytes) {
+        return ARRAY_HEADER + (long) length * elementBytes;
+    }
+}
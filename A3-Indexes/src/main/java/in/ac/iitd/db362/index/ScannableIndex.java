@@ -0,0 +1,80 @@
+package in.ac.iitd.db362.index;
+
+import in.ac.iitd.db362.metrics.IndexMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Capabilities the catalog needs on top of Index (whose signature is fixed): statistics for the cost model and a
+ * full scan over all entries, so that an index can also serve predicates it has no native lookup for.
+ * @param <T> The type of the key stored in the index.
+ */
+public interface ScannableIndex<T> extends Index<T> {
+
+    /**
+     * @return the attribute this index is built on
+     */
+    String getAttribute();
+
+    /**
+     * @return the declared type of the keys
+     */
+    Class<T> getKeyType();
+
+    /**
+     * @return current statistics for this index
+     */
+    IndexStatistics getStatistics();
+
+    /**
+     * @return number of inserts and successful deletes so far; cached query results over this index are only valid
+     * while it is unchanged
+     */
+    long getModificationCount();
+
+    /**
+     * Calls the consumer with every (key, rowId) entry in the index. The order is unspecified.
+     */
+    void forEachEntry(ObjIntConsumer<? super T> consumer);
+
+    /**
+     * @return estimated heap bytes held by the index (nodes, buckets, bitmaps and the keys in them)
+     */
+    long getMemoryUsage();
+
+    /**
+     * Removes every entry and releases the memory behind them. Statistics start over, while the modification count
+     * keeps growing. Used to spill an index to disk (see MemoryManager), which re-inserts the entries on reload.
+     */
+    void clear();
+
+    /**
+     * @return the counters this index keeps about lookups, node visits, comparisons and splits
+     */
+    IndexMetrics getMetrics();
+
+    /**
+     * @return the column values this index carries by rowId (see IncludedColumns), or null if it is not a covering
+     * index
+     */
+    default IncludedColumns getIncludedColumns() {
+        return null;
+    }
+
+    /**
+     * Writes the entries of this index to a snapshot file (see IndexSnapshot), replacing it.
+     */
+    default void save(Path file) throws IOException {
+        IndexSnapshot.save(this, file);
+    }
+
+    /**
+     * Replaces the entries of this index with those of a snapshot written by save() from an index of the same kind.
+     * @throws IOException if the file is not a valid snapshot of such an index
+     */
+    default void load(Path file) throws IOException {
+        IndexSnapshot.load(this, file);
+    }
+}
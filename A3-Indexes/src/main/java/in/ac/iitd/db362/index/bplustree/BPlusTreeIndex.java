@@ -1,6 +1,11 @@
 package in.ac.iitd.db362.index.bplustree;
 
-import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.CompositeKey;
+import in.ac.iitd.db362.index.IncludedColumns;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.MemoryUsage;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.metrics.IndexMetrics;
 import in.ac.iitd.db362.parser.Operator;
 import in.ac.iitd.db362.parser.QueryNode;
 import org.apache.logging.log4j.LogManager;
@@ -9,13 +14,14 @@ import org.apache.logging.log4j.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.time.LocalDate;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Starter code for BPlusTree Implementation
  * @param <T> The type of the key.
  */
 // Testing incomplete + doubts! (plus implement delete and binary search)
-public class BPlusTreeIndex<T> implements Index<T> {
+public class BPlusTreeIndex<T> implements ScannableIndex<T> {
 
     protected static final Logger logger = LogManager.getLogger();
 
@@ -24,6 +30,8 @@ public class BPlusTreeIndex<T> implements Index<T> {
     // Set to 3 for testing (originally 10)
     public static int ORDER = 10;
 
+    private final Class<T> type;
+
     // The attribute being indexed
     private String attribute;
 
@@ -31,40 +39,79 @@ public class BPlusTreeIndex<T> implements Index<T> {
     private Node<T, Integer> root;
     private final int order; // Maximum children per node
 
+    // Statistics for the catalog's cost model
+    private int entryCount;
+    private int distinctKeys;
+    private long modificationCount;
+
+    private final IndexMetrics metrics;
+
+    // Values of the key and the included columns by rowId, null unless this is a covering index
+    private final IncludedColumns included;
+
     /** Constructor to initialize the B+ Tree with a given order */
-    public BPlusTreeIndex(String attribute) {
-        System.out.println("Initializing BPlusTree with order " + ORDER);
+    public BPlusTreeIndex(Class<T> type, String attribute) {
+        this(type, attribute, null);
+    }
+
+    /**
+     * Constructor of a covering index, which also carries the values of the included columns (see IncludedColumns)
+     * @param included columns after the first (the attribute itself), or null for a plain index
+     */
+    public BPlusTreeIndex(Class<T> type, String attribute, IncludedColumns included) {
+        logger.debug("Initializing BPlusTree with order {}", ORDER);
+        if (included != null && !attribute.equals(included.getNames().get(0))) {
+            throw new IllegalArgumentException("Included columns of " + attribute + " must start with it: "
+                    + included.getNames());
+        }
+        this.type = type;
         this.attribute = attribute;
         this.order = ORDER;
         this.root = new Node<>();
         this.root.isLeaf = true;
+        this.metrics = new IndexMetrics("BPlusTree", attribute);
+        this.included = included;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public List<Integer> evaluate(QueryNode node) {
-        logger.info("Evaluating predicate using B+ Tree index on attribute " + attribute + " for operator " + node.operator);
-        System.out.println("Evaluating query: " + node.operator + " " + node.value);
+        logger.debug("Evaluating predicate using B+ Tree index on attribute {} for operator {}", attribute, node.operator);
+        long start = metrics.startLookup();
+        List<Integer> resultSet = lookup(node);
+        metrics.endLookup(start, node.operator, resultSet.size());
+        return resultSet;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> lookup(QueryNode node) {
         List<Integer> resultSet = new ArrayList<>();
-        T parsedKey = (T) parseKey(node.value);
+        if (node.operator == Operator.IN) {
+            List<T> keys = new ArrayList<>();
+            for (int i = 0; i < node.values.size(); i++) {
+                keys.add((T) (node.keys != null ? node.keys.get(i) : parseKey(node.values.get(i))));
+            }
+            return searchAll(keys);
+        }
+        // a prepared query has already converted its literals to the key type
+        T parsedKey = (T) (node.key != null ? node.key : parseKey(node.value));
 
         if (node.operator == Operator.EQUALS) {
             return search(parsedKey);
-        } else if (node.operator == Operator.LT) {
+        } else if (node.operator == Operator.LT || node.operator == Operator.LE) {
             T minKey = getMinKey();
             if(minKey == null) {
                 return resultSet;
             }
-            return rangeQuery(minKey, true, parsedKey, false);
-        } else if (node.operator == Operator.GT) {
+            return rangeQuery(minKey, true, parsedKey, node.operator == Operator.LE);
+        } else if (node.operator == Operator.GT || node.operator == Operator.GE) {
             T maxKey = getMaxKey();
             if(maxKey == null) {
                 return resultSet;
             }
-            return rangeQuery(parsedKey, false, maxKey, true);
+            return rangeQuery(parsedKey, node.operator == Operator.GE, maxKey, true);
         } else if (node.operator == Operator.RANGE) {
-            T parsedEndKey = (T) parseKey(node.secondValue);
-            return rangeQuery(parsedKey, false, parsedEndKey, false);
+            T parsedEndKey = (T) (node.secondKey != null ? node.secondKey : parseKey(node.secondValue));
+            return rangeQuery(parsedKey, node.lowerInclusive, parsedEndKey, node.upperInclusive);
         } else {
             return resultSet;
         }
@@ -72,6 +119,16 @@ public class BPlusTreeIndex<T> implements Index<T> {
 
     // We don't know the type of key unless at runtime
     private Object parseKey(String key) {
+        // The declared key type wins; sniffing the literal would turn "10000" into an Integer on a double column
+        if (type == Integer.class) {
+            return Integer.parseInt(key);
+        } else if (type == Double.class) {
+            return Double.parseDouble(key);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(key);
+        } else if (type == String.class) {
+            return key;
+        }
         if (key.matches("-?\\d+")) {
             return Integer.parseInt(key);
         } else if (key.matches("-?\\d+\\.\\d+")) {
@@ -112,7 +169,10 @@ public class BPlusTreeIndex<T> implements Index<T> {
     @Override
     public void insert(T key, int rowId) {
         //TODO: Implement me!
-        System.out.println("Inserting key: " + key + ", RowID: " + rowId);
+        modificationCount++;
+        if (included != null) {
+            included.set(rowId, 0, key);
+        }
 
         // Inserting the first record i.e. root does not have any keys
         if (root.keys == null) {
@@ -120,7 +180,8 @@ public class BPlusTreeIndex<T> implements Index<T> {
             root.values = new ArrayList<>();
             root.keys.add(key);
             root.values.add(rowId);
-            System.out.println("Inserted in root: " + root.keys);
+            entryCount++;
+            distinctKeys++;
             return;
         }
 
@@ -133,8 +194,7 @@ public class BPlusTreeIndex<T> implements Index<T> {
 
         while(!current_node.isLeaf) {
             int offset = getOffset_non_leaf(key, current_node.keys);
-            System.out.println("Traversing internal node: " + current_node.keys + ", taking child at offset " + offset);
-            current_node = current_node.getChild(offset);
+            current_node = child(current_node, offset);
             path.add(current_node);
         }
         // Easy case - no overflow
@@ -148,7 +208,6 @@ public class BPlusTreeIndex<T> implements Index<T> {
 
     /* Insert a key in some leaf node */
     private void insertIntoLeaf(Node<T, Integer> leaf_node, T key, int rowId) {
-        System.out.println("Inserting into leaf: " + key);
         if(leaf_node.keys == null) {
             leaf_node.keys = new ArrayList<>();
             leaf_node.values = new ArrayList<>();
@@ -158,9 +217,24 @@ public class BPlusTreeIndex<T> implements Index<T> {
         while(index < leaf_node.keys.size() && compareKey(leaf_node.keys.get(index), key) < 0) {
             index++;
         }
+        // Insertion descends right on equal separators, so an existing duplicate of key is always in this leaf
+        if (index == leaf_node.keys.size() || compareKey(leaf_node.keys.get(index), key) != 0) {
+            distinctKeys++;
+        }
+        entryCount++;
         leaf_node.keys.add(index, key);
         leaf_node.values.add(index, rowId);
-        System.out.println("Leaf after insert: " + leaf_node.keys);
+    }
+
+    /* getChild() and getNext() of a node on a lookup or insert path, counted as node visits */
+    private Node<T, Integer> child(Node<T, Integer> node, int offset) {
+        metrics.nodeVisit();
+        return node.getChild(offset);
+    }
+
+    private Node<T, Integer> next(Node<T, Integer> node) {
+        metrics.nodeVisit();
+        return node.getNext();
     }
 
     /* Check for overflow */
@@ -185,6 +259,7 @@ public class BPlusTreeIndex<T> implements Index<T> {
         // Get the next pointers correctly - it is disappointing that there is a getNext() but no setNext()
         new_leaf_node.next = leaf.getNext();
         leaf.next = new_leaf_node;
+        metrics.split("leaf");
 
         T keyToProp = new_leaf_node.keys.get(0);
         path.remove(path.size()-1);
@@ -210,11 +285,9 @@ public class BPlusTreeIndex<T> implements Index<T> {
 
     /* Insert a key into it's parent - occurs due to overflow */
     private void insertIntoParent(Node<T, Integer> parent, T key, Node<T, Integer> leftChild, Node<T, Integer> rightChild, List<Node<T, Integer>> path) {
-        int index = 0;
-        // Find correct insertion index using linear search for now (convert to binary search later)
-        while(index < parent.keys.size() && compareKey(parent.keys.get(index), key) < 0) {
-            index++;
-        }
+        // The new child goes right after the one that split; searching by key would put it left of separators equal
+        // to key when duplicates span several children, e.g. when the entries are inserted in key order
+        int index = parent.children.indexOf(leftChild);
         parent.keys.add(index, key);
         parent.children.add(index + 1, rightChild);
 
@@ -228,6 +301,7 @@ public class BPlusTreeIndex<T> implements Index<T> {
         Node<T, Integer> newNode = new Node<>();
         newNode.isLeaf = false;
         int n = node.keys.size();
+        metrics.split("internal");
 
         // Confusion between the following two ways: (going with (1) for now)
         // (1) mid is done on the basis of the applet i.e. split with higher keys in right but take the first key of the right node to it's  parent
@@ -236,9 +310,9 @@ public class BPlusTreeIndex<T> implements Index<T> {
         T keyToProp = node.keys.get(mid);
 
         newNode.keys = new ArrayList<>(node.keys.subList(mid + 1, n));
-        newNode.children = new ArrayList<>(node.children.subList(mid+1, n));
+        newNode.children = new ArrayList<>(node.children.subList(mid + 1, n + 1));
         node.keys.subList(mid, n).clear();
-        node.children.subList(mid+1, n).clear();
+        node.children.subList(mid + 1, n + 1).clear();
 
         path.remove(path.size()-1);
 
@@ -271,33 +345,89 @@ public class BPlusTreeIndex<T> implements Index<T> {
     public List<Integer> search(T key) {
         //TODO: Implement me!
         //Note: When searching for a key, use Node's getChild() and getNext() methods. Some test cases may fail otherwise!
-        //Assuming no duplicates for my implementation, will always return list with at most a single value
-        System.out.println("Searching for key: " + key);
         List<Integer> resultSet = new ArrayList<>();
         if(root.keys == null) {
-            System.out.println("Search failed, tree is empty.");
             return resultSet; //Edge case when there are no keys in the B+ Tree
         }
+        // Duplicates of a key may spill over into the following leaves, so start at the leftmost leaf that can
+        // hold the key and follow the leaf chain
         Node <T, Integer> current_node = root;
         while(!current_node.isLeaf) {
             List<T> nl_keys = current_node.keys;
-            int nl_offset = getOffset_non_leaf(key, nl_keys);
-            System.out.println("Traversing internal node: " + current_node.keys + ", taking child at offset " + nl_offset);
-            current_node = current_node.getChild(nl_offset);
-        }
-        List<T> l_keys = current_node.keys;
-        List<Integer> l_values = current_node.values;
-        int l_offset = getOffset_leaf(key, l_keys);
-        if(l_offset == -1) {
-            System.out.println("Key not found in leaf node.");
-            return resultSet;
+            int nl_offset = getOffset_nl_range(key, nl_keys);
+            current_node = child(current_node, nl_offset);
+        }
+        while (current_node != null) {
+            List<T> l_keys = current_node.keys;
+            List<Integer> l_values = current_node.values;
+            for (int i = 0; i < l_keys.size(); i++) {
+                int cmp = compareKey(l_keys.get(i), key);
+                if (cmp > 0) {
+                    return resultSet;
+                }
+                if (cmp == 0) {
+                    resultSet.add(l_values.get(i));
+                }
+            }
+            current_node = next(current_node);
         }
-        else {
-            int value = l_values.get(l_offset);
-            resultSet.add(value);
-            System.out.println("Key found at leaf: " + current_node.keys + " -> RowID: " + resultSet);
+        return resultSet;
+    }
+
+    /**
+     * Looks up several keys in one pass. The keys are visited in sorted order, walking the leaf chain from one key to
+     * the next; the tree is only descended again when a key lies beyond the current leaf and the one after it.
+     * @return rowIds of all keys, grouped by key in ascending key order
+     */
+    List<Integer> searchAll(List<T> keys) {
+        List<Integer> resultSet = new ArrayList<>();
+        if (root.keys == null || keys.isEmpty()) {
             return resultSet;
         }
+        List<T> sorted = new ArrayList<>(keys);
+        sorted.sort(this::compareKey);
+
+        Node<T, Integer> leaf = null;
+        T previous = null;
+        for (T key : sorted) {
+            if (previous != null && compareKey(previous, key) == 0) {
+                continue;
+            }
+            previous = key;
+            if (leaf == null || isBeyond(key, leaf)) {
+                Node<T, Integer> next = leaf == null ? null : next(leaf);
+                leaf = next != null && !isBeyond(key, next) ? next : findLeaf(key);
+            }
+            // Duplicates of a key may spill over into the following leaves
+            scan:
+            for (Node<T, Integer> current = leaf; current != null; current = next(current)) {
+                leaf = current;
+                for (int i = 0; i < current.keys.size(); i++) {
+                    int cmp = compareKey(current.keys.get(i), key);
+                    if (cmp > 0) {
+                        break scan;
+                    }
+                    if (cmp == 0) {
+                        resultSet.add(current.values.get(i));
+                    }
+                }
+            }
+        }
+        return resultSet;
+    }
+
+    /* true if every key in the leaf is smaller than key */
+    private boolean isBeyond(T key, Node<T, Integer> leaf) {
+        return leaf.keys.isEmpty() || compareKey(key, leaf.keys.get(leaf.keys.size() - 1)) > 0;
+    }
+
+    /* leftmost leaf that may hold the key */
+    private Node<T, Integer> findLeaf(T key) {
+        Node<T, Integer> current = root;
+        while (!current.isLeaf) {
+            current = child(current, getOffset_nl_range(key, current.keys));
+        }
+        return current;
     }
 
     /**
@@ -320,51 +450,27 @@ public class BPlusTreeIndex<T> implements Index<T> {
         while(!current_node.isLeaf) {
             List<T> nl_keys = current_node.keys;
             int offset = getOffset_nl_range(startKey, nl_keys);
-            current_node = current_node.getChild(offset);
+            current_node = child(current_node, offset);
         }
 
-        boolean done = false;
-        while(!done && current_node != null) {
+        // Keys may repeat across leaves, so keep following the leaf chain until a key beyond endKey shows up
+        while (current_node != null) {
             List<T> keys = current_node.keys;
-            int n = keys.size();
             List<Integer> values = current_node.values;
-
-            // If the leaf node doesn't have any key >= startKey, ignore this leaf
-            if(compareKey(keys.get(n-1), startKey) < 0) {
-                current_node = current_node.getNext();
-                continue;
-            }
-
-            int k_index = 0; //k_index is the smallest key with key >= startKey
-            // Find the first key that is >= startKey
-            while (k_index < n && compareKey(keys.get(k_index), startKey) < 0) {
-                k_index++;
-            }
-            // Handle Inclusivity, if exact match found
-            if (k_index < n && compareKey(keys.get(k_index), startKey) == 0 && !startInclusive) {
-                k_index++; // Skip if startInclusive is false
-            }
-            // Optimized insertion, linear scan only required in first and last leaf
-            if (compareKey(keys.get(n - 1), endKey) < 0) {
-                // If last key < endKey, add all remaining values
-                resultSet.addAll(values.subList(k_index, n));
-            } else {
-                // Otherwise, collect values selectively
-                while (k_index < n && compareKey(keys.get(k_index), endKey) <= 0) {
-                    if (compareKey(keys.get(k_index), endKey) == 0 && !endInclusive) {
-                        done = true;
-                        break;
-                    }
-                    resultSet.add(values.get(k_index));
-                    k_index++;
+            int n = keys.size();
+            for (int k_index = 0; k_index < n; k_index++) {
+                T k = keys.get(k_index);
+                int cmpStart = compareKey(k, startKey);
+                if (cmpStart < 0 || (cmpStart == 0 && !startInclusive)) {
+                    continue;
                 }
+                int cmpEnd = compareKey(k, endKey);
+                if (cmpEnd > 0 || (cmpEnd == 0 && !endInclusive)) {
+                    return resultSet;
+                }
+                resultSet.add(values.get(k_index));
             }
-            // This condition is valid as we don't have duplicate search keys
-            if (compareKey(keys.get(n - 1), endKey) >= 0) {
-                done = true;
-            } else {
-                current_node = current_node.getNext();
-            }
+            current_node = next(current_node);
         }
         return resultSet;
     }
@@ -410,6 +516,84 @@ public class BPlusTreeIndex<T> implements Index<T> {
         return height;
     }
 
+    @Override
+    public String getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public Class<T> getKeyType() {
+        return type;
+    }
+
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    @Override
+    public IndexStatistics getStatistics() {
+        return new IndexStatistics(entryCount, distinctKeys, getHeight() + 1, 0, getMinKey(), getMaxKey());
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return getMemoryUsage(root) + (included == null ? 0 : included.getMemoryUsage());
+    }
+
+    private long getMemoryUsage(Node<T, Integer> node) {
+        long bytes = MemoryUsage.OBJECT_HEADER + 4 * MemoryUsage.REFERENCE;
+        if (node.keys != null) {
+            bytes += MemoryUsage.LIST + node.keys.size() * MemoryUsage.REFERENCE;
+            for (T key : node.keys) {
+                bytes += MemoryUsage.ofKey(key);
+            }
+        }
+        if (node.values != null) {
+            // boxed rowIds
+            bytes += MemoryUsage.LIST + node.values.size() * (MemoryUsage.REFERENCE + 16);
+        }
+        if (node.children != null) {
+            bytes += MemoryUsage.LIST + node.children.size() * MemoryUsage.REFERENCE;
+            for (Node<T, Integer> child : node.children) {
+                bytes += getMemoryUsage(child);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void clear() {
+        root = new Node<>();
+        root.isLeaf = true;
+        entryCount = 0;
+        distinctKeys = 0;
+        modificationCount++;
+        if (included != null) {
+            included.clear();
+        }
+    }
+
+    /**
+     * Walks the leaf chain from the leftmost leaf, so entries come in key order
+     */
+    @Override
+    public void forEachEntry(ObjIntConsumer<? super T> consumer) {
+        if (root.keys == null) {
+            return;
+        }
+        Node<T, Integer> current = root;
+        while (!current.isLeaf) {
+            current = current.getChild(0);
+        }
+        while (current != null) {
+            for (int i = 0; i < current.keys.size(); i++) {
+                consumer.accept(current.keys.get(i), current.values.get(i));
+            }
+            current = current.getNext();
+        }
+    }
+
     /**
      * Funtion that returns the order of the BPlusTree
      * Note: Do not remove this function!
@@ -420,29 +604,7 @@ public class BPlusTreeIndex<T> implements Index<T> {
     }
 
     /*
-    * Helper method to get the offset of the required key in leaf node
-    * @return offset if key exists, else returns -1
-     */
-    private int getOffset_leaf(T key, List<T> keys) {
-        // Implementing linear search for now, will convert to binary search if time permits
-        int offset = 0;
-        int n = keys.size();
-        for(int i = 0; i < n; i++) {
-            if(compareKey(key, keys.get(i)) == 0) {
-                offset = i;
-                return offset;
-            }
-            if(compareKey(key, keys.get(i)) < 0) {
-                offset = -1;
-                return offset;
-            }
-        }
-        offset = -1;
-        return offset;
-    }
-
-    /*
-    * Helper method to get the offset of the required child in a non leaf node in SEARCH
+    * Helper method to get the offset of the required child in a non leaf node in INSERT
     * @return offset of the child pointer which has key (keys in pi < ki <= keys in pi+1)
      */
     private int getOffset_non_leaf(T key, List<T> keys) {
@@ -460,24 +622,18 @@ public class BPlusTreeIndex<T> implements Index<T> {
     }
 
     /*
-     * Helper method to get the offset of the required child in a non leaf node in RANGE QUERY
-     * @return offset of the child pointer which has key (keys in pi < ki <= keys in pi+1)
+     * Helper method to get the offset of the required child in a non leaf node in SEARCH and RANGE QUERY
+     * @return offset of the leftmost child pointer that may hold key; duplicates of a separator key can sit on
+     * both sides of it, so on equality we go left and let the caller follow the leaf chain
      */
     private int getOffset_nl_range(T key, List<T> keys) {
         // Implementing linear search for now, will convert to binary search if time permits
         int offset = 0;
-        // Find the smallest i such that key ≤ keys[i]
+        // Find the smallest i such that key <= keys[i]
         while (offset < keys.size() && compareKey(key, keys.get(offset)) > 0) {
             offset++;
         }
-        if (offset == keys.size()) {
-            return keys.size();
-        } else if (compareKey(key, keys.get(offset)) == 0) {
-            // If key == keys[i], return the next pointer
-            return offset + 1;
-        } else {
-            return offset;
-        }
+        return offset;
     }
 
 
@@ -486,6 +642,7 @@ public class BPlusTreeIndex<T> implements Index<T> {
      * @return -1 if key1 < key2, 0 if equal, 1 if key1 > key2
      */
     private int compareKey(T key1, T key2) {
+        metrics.keyComparison();
         // We have left the "numeric" type comparisons, but I think we need to handle them as well...
         if (key1 instanceof Integer && key2 instanceof Integer) {
             return Integer.signum(((Integer) key1).compareTo((Integer) key2));
@@ -499,6 +656,9 @@ public class BPlusTreeIndex<T> implements Index<T> {
         else if (key1 instanceof LocalDate && key2 instanceof LocalDate) {
             return Integer.signum(((LocalDate) key1).compareTo((LocalDate) key2));
         }
+        else if (key1 instanceof CompositeKey && key2 instanceof CompositeKey) {
+            return Integer.signum(((CompositeKey) key1).compareTo((CompositeKey) key2));
+        }
         else {
             throw new IllegalArgumentException("Unsupported key types: " + key1.getClass() + " and " + key2.getClass());
         }
@@ -506,6 +666,16 @@ public class BPlusTreeIndex<T> implements Index<T> {
 
 
 
+    @Override
+    public IndexMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public IncludedColumns getIncludedColumns() {
+        return included;
+    }
+
     @Override
     public String prettyName() {
         return "B+Tree Index";
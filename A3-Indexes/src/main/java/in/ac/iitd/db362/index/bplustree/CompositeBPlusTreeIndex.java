@@ -0,0 +1,90 @@
+package in.ac.iitd.db362.index.bplustree;
+
+import in.ac.iitd.db362.index.CompositeKey;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * B+ tree over an ordered tuple of attributes, e.g. (customer_id, purchase_amount). Keys are CompositeKeys, so the
+ * tree is sorted by the first attribute, then the second, and so on, and every conjunction of equalities on a prefix
+ * of the attributes, optionally followed by a range on the next one, is a single range of keys.
+ *
+ * The index is registered in the catalog under its attribute set, the attribute names joined by commas (see
+ * attributeName()), and is queried with RANGE predicates on that name whose key and secondKey are CompositeKey bounds
+ * (see QueryPlanner).
+ */
+public class CompositeBPlusTreeIndex extends BPlusTreeIndex<CompositeKey> {
+
+    private final List<String> attributes;
+    private final List<Class<?>> types;
+
+    /**
+     * @param attributes the indexed attributes, most significant first
+     * @param types the key type of each attribute (Integer, Double, String or LocalDate)
+     */
+    public CompositeBPlusTreeIndex(List<String> attributes, List<Class<?>> types) {
+        super(CompositeKey.class, attributeName(attributes));
+        if (attributes.size() < 2 || attributes.size() != types.size()) {
+            throw new IllegalArgumentException("Need two or more attributes, each with a type: " + attributes
+                    + " " + types);
+        }
+        this.attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+    }
+
+    /**
+     * @return the name an index over the attributes is registered under, e.g. "customer_id,purchase_amount"
+     */
+    public static String attributeName(List<String> attributes) {
+        return String.join(",", attributes);
+    }
+
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    public List<Class<?>> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the key of a row with the given attribute values, in attribute order
+     */
+    public CompositeKey key(Object... values) {
+        if (values.length != attributes.size()) {
+            throw new IllegalArgumentException("Expected " + attributes.size() + " values for " + getAttribute()
+                    + ", got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!types.get(i).isInstance(values[i])) {
+                throw new IllegalArgumentException("Value " + values[i] + " of " + attributes.get(i) + " is not a "
+                        + types.get(i).getSimpleName());
+            }
+        }
+        return new CompositeKey(values);
+    }
+
+    /**
+     * Converts a literal to the key type of the i-th attribute.
+     * @throws RuntimeException if the literal does not parse
+     */
+    public Object parseComponent(int i, String literal) {
+        Class<?> type = types.get(i);
+        if (type == Integer.class) {
+            return Integer.parseInt(literal);
+        } else if (type == Double.class) {
+            return Double.parseDouble(literal);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(literal);
+        }
+        return literal;
+    }
+
+    @Override
+    public String prettyName() {
+        return "Composite B+Tree Index";
+    }
+}
@@ -23,7 +23,7 @@ public class Node<K, V> {
      * @return return child node
      */
     Node<K,V> getChild(int offset) {
-        logger.trace("Called getChild( " + offset + " )");
+        logger.trace("Called getChild( {} )", offset);
         assert !isLeaf;
         return this.children.get(offset);
     }
@@ -33,8 +33,10 @@ public class Node<K, V> {
      * @return next leaf node
      */
     Node<K,V> getNext() {
-        logger.trace("Called getNext()");
-        logger.trace("Last <K,V>: " + "<" + (K)this.keys.get(keys.size()-1) + "," + (V)this.values.get(keys.size()-1) + ">");
+        if (logger.isTraceEnabled()) {
+            logger.trace("Called getNext()");
+            logger.trace("Last <K,V>: " + "<" + (K)this.keys.get(keys.size()-1) + "," + (V)this.values.get(keys.size()-1) + ">");
+        }
         assert isLeaf;
         return this.next;
     }
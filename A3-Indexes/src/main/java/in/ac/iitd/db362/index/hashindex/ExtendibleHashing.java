@@ -1,20 +1,30 @@
 package in.ac.iitd.db362.index.hashindex;
 
-import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IncludedColumns;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.MemoryUsage;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.metrics.IndexMetrics;
 import in.ac.iitd.db362.parser.Operator;
 import in.ac.iitd.db362.parser.QueryNode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
 
 
 /**
  * Starter code for Extendible Hashing
  * @param <T> The type of the key.
  */
-public class ExtendibleHashing<T> implements Index<T> {
+public class ExtendibleHashing<T> implements ScannableIndex<T> {
 
     protected static final Logger logger = LogManager.getLogger();
 
@@ -31,14 +41,41 @@ public class ExtendibleHashing<T> implements Index<T> {
 
     private int globalDepth;
 
+    // Number of hash bits that can tell keys apart; keys that agree on all of them go to overflow buckets
+    private static final int MAX_DEPTH = 31;
+
     // directory is the bucket address table backed by an array of bucket pointers
     // the array offset (can be computed using the provided hashing scheme) allows accessing the bucket
     private Bucket<T>[] directory;
 
+    // Statistics for the catalog's cost model
+    private int entryCount;
+    private int distinctKeys;
+    private long modificationCount;
+    private T minKey;
+    private T maxKey;
+
+    private final IndexMetrics metrics;
+
+    // Values of the key and the included columns by rowId, null unless this is a covering index
+    private final IncludedColumns included;
 
     /** Constructor */
-    @SuppressWarnings("unchecked")
     public ExtendibleHashing(Class<T> type, String attribute) {
+        this(type, attribute, null);
+    }
+
+    /**
+     * Constructor of a covering index, which also carries the values of the included columns (see IncludedColumns)
+     * @param included columns after the first (the attribute itself), or null for a plain index
+     */
+    @SuppressWarnings("unchecked")
+    public ExtendibleHashing(Class<T> type, String attribute, IncludedColumns included) {
+        if (included != null && !attribute.equals(included.getNames().get(0))) {
+            throw new IllegalArgumentException("Included columns of " + attribute + " must start with it: "
+                    + included.getNames());
+        }
+        this.included = included;
         this.type = type;
         this.globalDepth = INITIAL_GLOBAL_DEPTH;
         int directorySize = 1 << globalDepth;
@@ -47,17 +84,33 @@ public class ExtendibleHashing<T> implements Index<T> {
             directory[i] = new Bucket<>(globalDepth);
         }
         this.attribute = attribute;
+        this.metrics = new IndexMetrics("Hash", attribute);
     }
 
-    // This is a basic hash implementation, it does not assume duplicates and is based on the extended hashing mechanism discussed in class
-    // Also, overflow buckets are not used in this case - simplified implementation
-    @SuppressWarnings("unchecked")
+    // This is a basic hash implementation based on the extended hashing mechanism discussed in class
+    // Duplicates that cannot be separated by splitting spill into overflow buckets chained through Bucket.next
     @Override
     public List<Integer> evaluate(QueryNode node) {
-        logger.info("Evaluating predicate using Hash index on attribute " + attribute + " for operator " + node.operator);
+        logger.debug("Evaluating predicate using Hash index on attribute {} for operator {}", attribute, node.operator);
+        long start = metrics.startLookup();
+        List<Integer> result = lookup(node);
+        metrics.endLookup(start, node.operator, result == null ? 0 : result.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> lookup(QueryNode node) {
         // TODO: Implement me!
+        if (node.operator == Operator.IN) {
+            List<T> keys = new ArrayList<>();
+            for (int i = 0; i < node.values.size(); i++) {
+                keys.add((T) (node.keys != null ? node.keys.get(i) : parseKey(node.values.get(i))));
+            }
+            return searchAll(keys);
+        }
         if (node.operator == Operator.EQUALS) {
-            Object parsedKey = parseKey(node.value);
+            // a prepared query has already converted its literal to the key type
+            Object parsedKey = node.key != null ? node.key : parseKey(node.value);
             // unchecked at compile time, but will see that it holds in runtime (manual correctness)
             return search((T) parsedKey);
         }
@@ -66,6 +119,16 @@ public class ExtendibleHashing<T> implements Index<T> {
 
     // We don't know the type of key unless at runtime
     private Object parseKey(String key) {
+        // The declared key type wins; sniffing the literal would turn "10000" into an Integer on a double column
+        if (type == Integer.class) {
+            return Integer.parseInt(key);
+        } else if (type == Double.class) {
+            return Double.parseDouble(key);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(key);
+        } else if (type == String.class) {
+            return key;
+        }
         if (key.matches("-?\\d+")) {
             return Integer.parseInt(key);
         } else if (key.matches("-?\\d+\\.\\d+")) {
@@ -84,10 +147,20 @@ public class ExtendibleHashing<T> implements Index<T> {
     @Override
     public void insert(T key, int rowId) {
         // TODO: Implement insertion logic with bucket splitting and/or doubling the address table
+        modificationCount++;
+        if (included != null) {
+            included.set(rowId, 0, key);
+        }
         int d_index = getDirectoryIndexHelper(key, globalDepth);
         Bucket<T> d_bucket = directory[d_index];
+        updateStatistics(d_bucket, key);
 
         while(!insertIntoBucket(d_bucket, key, rowId)) {
+            if (!canSplit(d_bucket, key)) {
+                // Every entry has the same hash as the new key (e.g. duplicates), splitting would never make room
+                insertIntoOverflow(d_bucket, key, rowId);
+                return;
+            }
             if(d_bucket.localDepth == globalDepth) {
                 doubleDirectory();
             }
@@ -100,6 +173,29 @@ public class ExtendibleHashing<T> implements Index<T> {
 
     }
 
+    /* count the new entry; duplicates of key can only live in the bucket (chain) key hashes to */
+    private void updateStatistics(Bucket<T> bucket, T key) {
+        if (!containsKey(bucket, key)) {
+            distinctKeys++;
+        }
+        entryCount++;
+        if (minKey == null || compareKey(key, minKey) < 0) {
+            minKey = key;
+        }
+        if (maxKey == null || compareKey(key, maxKey) > 0) {
+            maxKey = key;
+        }
+    }
+
+    private boolean containsKey(Bucket<T> bucket, T key) {
+        for (Bucket<T> b = bucket; b != null; b = b.next) {
+            if (findInBucket(b, key) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /* helper to insert into a bucket */
     private boolean insertIntoBucket(Bucket<T> bucket, T key, int rowId) {
         int n = bucket.size;
@@ -113,6 +209,27 @@ public class ExtendibleHashing<T> implements Index<T> {
         return false;
     }
 
+    /* helper to insert into the first bucket of an overflow chain that has room, appending a new one if needed */
+    private void insertIntoOverflow(Bucket<T> bucket, T key, int rowId) {
+        while (!insertIntoBucket(bucket, key, rowId)) {
+            if (bucket.next == null) {
+                bucket.next = new Bucket<>(bucket.localDepth);
+            }
+            bucket = bucket.next;
+        }
+    }
+
+    /* a split only helps if some entry of the bucket differs from the new key in its (full) hash */
+    private boolean canSplit(Bucket<T> bucket, T key) {
+        int hash = getDirectoryIndexHelper(key, MAX_DEPTH);
+        for (int i = 0; i < bucket.size; i++) {
+            if (getDirectoryIndexHelper(bucket.keys[i], MAX_DEPTH) != hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /* doubles the directory and re-assigns all the bucket pointers */
     @SuppressWarnings("unchecked")
     private void doubleDirectory() {
@@ -125,6 +242,7 @@ public class ExtendibleHashing<T> implements Index<T> {
         }
         directory = newDirectory;
         globalDepth++;
+        metrics.directoryDoubling();
     }
 
     private void handleBucketSplit(int d_index) {
@@ -134,16 +252,20 @@ public class ExtendibleHashing<T> implements Index<T> {
         int newLD = bucket_to_split.localDepth;
 
         Bucket<T> newBucket = new Bucket<>(newLD);
+        metrics.split("bucket");
 
-        // collect keys and values from the bucket - to be used later
+        // collect keys and values from the bucket (and its overflow chain) - to be used later
         List<T> o_keys = new ArrayList<>();
         List<Integer> o_values = new ArrayList<>();
-        for (int i = 0; i < bucket_to_split.size; i++) {
-            o_keys.add(bucket_to_split.keys[i]);
-            o_values.add(bucket_to_split.values[i]);
+        for (Bucket<T> b = bucket_to_split; b != null; b = b.next) {
+            for (int i = 0; i < b.size; i++) {
+                o_keys.add(b.keys[i]);
+                o_values.add(b.values[i]);
+            }
         }
 
         bucket_to_split.size = 0;
+        bucket_to_split.next = null;
 
         // re-assign directory points
         int dir_n = directory.length;
@@ -160,7 +282,7 @@ public class ExtendibleHashing<T> implements Index<T> {
             int o_rowId = o_values.get(i);
             int newIndex = getDirectoryIndexHelper(o_key, globalDepth);
             Bucket<T> n_bucket = directory[newIndex];
-            insertIntoBucket(n_bucket, o_key, o_rowId);
+            insertIntoOverflow(n_bucket, o_key, o_rowId);
         }
     }
 
@@ -172,38 +294,86 @@ public class ExtendibleHashing<T> implements Index<T> {
         int index = getDirectoryIndexHelper(key, globalDepth);
         Bucket<T> bucket = directory[index];
 
-        // Find the key in the bucket
+        // Find the key in the bucket or its overflow chain
         int pos = -1;
-        for (int i = 0; i < bucket.size; i++) {
-            if (compareKey(bucket.keys[i], key) == 0) {
-                pos = i;
+        while (bucket != null) {
+            pos = findInBucket(bucket, key);
+            if (pos != -1) {
                 break;
             }
+            bucket = bucket.next;
         }
         if (pos == -1) {
             // Key not found i.e. deletion unsuccessful
             return false;
         }
 
+        if (included != null) {
+            included.remove(bucket.values[pos]);
+        }
         // Remove the key by shifting subsequent keys left
         for (int i = pos; i < bucket.size - 1; i++) {
             bucket.keys[i] = bucket.keys[i + 1];
             bucket.values[i] = bucket.values[i + 1];
         }
         bucket.size--;
+        entryCount--;
+        modificationCount++;
+        if (!containsKey(directory[index], key)) {
+            distinctKeys--;
+        }
         return true;
     }
 
 
+    /* position of key in the bucket (ignoring its overflow chain), or -1 */
+    private int findInBucket(Bucket<T> bucket, T key) {
+        for (int i = 0; i < bucket.size; i++) {
+            if (compareKey(bucket.keys[i], key) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public List<Integer> search(T key) {
         // TODO: Implement search logic
         int d_index = getDirectoryIndexHelper(key, globalDepth);
-        Bucket<T> d_bucket = directory[d_index];
         List<Integer> result = new ArrayList<>();
-        for (int i = 0; i < d_bucket.size; i++) {
-            if (d_bucket.keys[i].equals(key)) {
-                result.add(d_bucket.values[i]);
+        for (Bucket<T> d_bucket = directory[d_index]; d_bucket != null; d_bucket = d_bucket.next) {
+            metrics.nodeVisit();
+            metrics.keyComparisons(d_bucket.size);
+            for (int i = 0; i < d_bucket.size; i++) {
+                if (d_bucket.keys[i].equals(key)) {
+                    result.add(d_bucket.values[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up several keys with one pass over each bucket chain: keys are batched by the bucket they hash to, so a
+     * chain holding several of them is read once.
+     * @return rowIds of all keys, in no particular order
+     */
+    public List<Integer> searchAll(List<T> keys) {
+        Map<Bucket<T>, Set<T>> batches = new IdentityHashMap<>();
+        for (T key : keys) {
+            batches.computeIfAbsent(directory[getDirectoryIndexHelper(key, globalDepth)], b -> new HashSet<>()).add(key);
+        }
+        List<Integer> result = new ArrayList<>();
+        for (Map.Entry<Bucket<T>, Set<T>> batch : batches.entrySet()) {
+            Set<T> wanted = batch.getValue();
+            for (Bucket<T> bucket = batch.getKey(); bucket != null; bucket = bucket.next) {
+                metrics.nodeVisit();
+                metrics.keyComparisons(bucket.size);
+                for (int i = 0; i < bucket.size; i++) {
+                    if (wanted.contains(bucket.keys[i])) {
+                        result.add(bucket.values[i]);
+                    }
+                }
             }
         }
         return result;
@@ -231,6 +401,7 @@ public class ExtendibleHashing<T> implements Index<T> {
 
     /* comparison function (same as the one in BPlusTreeIndex.java) */
     private int compareKey(T key1, T key2) {
+        metrics.keyComparison();
         if (key1 instanceof Integer && key2 instanceof Integer) {
             return Integer.signum(((Integer) key1).compareTo((Integer) key2));
         } else if (key1 instanceof Double && key2 instanceof Double) {
@@ -245,6 +416,86 @@ public class ExtendibleHashing<T> implements Index<T> {
         }
     }
 
+    @Override
+    public String getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public Class<T> getKeyType() {
+        return type;
+    }
+
+    /**
+     * Min and max are bounds: they are not tightened on delete
+     */
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    @Override
+    public IndexStatistics getStatistics() {
+        return new IndexStatistics(entryCount, distinctKeys, 1, 0, minKey, maxKey);
+    }
+
+    /**
+     * The directory plus every bucket (each shared bucket once) with its keys
+     */
+    @Override
+    public long getMemoryUsage() {
+        long bytes = MemoryUsage.ofArray(directory.length, (int) MemoryUsage.REFERENCE);
+        long bucketBytes = MemoryUsage.OBJECT_HEADER + 3 * MemoryUsage.REFERENCE + 8
+                + MemoryUsage.ofArray(BUCKET_SIZE, (int) MemoryUsage.REFERENCE) + MemoryUsage.ofArray(BUCKET_SIZE, 4);
+        for (int i = 0; i < directory.length; i++) {
+            Bucket<T> bucket = directory[i];
+            if (i >= (1 << bucket.localDepth)) {
+                continue;
+            }
+            for (Bucket<T> b = bucket; b != null; b = b.next) {
+                bytes += bucketBytes;
+                for (int j = 0; j < b.size; j++) {
+                    bytes += MemoryUsage.ofKey(b.keys[j]);
+                }
+            }
+        }
+        return included == null ? bytes : bytes + included.getMemoryUsage();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void clear() {
+        globalDepth = INITIAL_GLOBAL_DEPTH;
+        directory = new Bucket[1 << globalDepth];
+        for (int i = 0; i < directory.length; i++) {
+            directory[i] = new Bucket<>(globalDepth);
+        }
+        entryCount = 0;
+        distinctKeys = 0;
+        minKey = null;
+        maxKey = null;
+        modificationCount++;
+        if (included != null) {
+            included.clear();
+        }
+    }
+
+    @Override
+    public void forEachEntry(ObjIntConsumer<? super T> consumer) {
+        for (int i = 0; i < directory.length; i++) {
+            Bucket<T> bucket = directory[i];
+            // A bucket of local depth d is shared by all slots that agree on the low d bits; visit it from the first
+            if (i >= (1 << bucket.localDepth)) {
+                continue;
+            }
+            for (Bucket<T> b = bucket; b != null; b = b.next) {
+                for (int j = 0; j < b.size; j++) {
+                    consumer.accept(b.keys[j], b.values[j]);
+                }
+            }
+        }
+    }
+
     /**
      * Note: Do not remove this function!
      * @return
@@ -292,6 +543,33 @@ public class ExtendibleHashing<T> implements Index<T> {
         }
     }
 
+    /**
+     * @return number of buckets (overflow buckets included) holding 0, 1, ... BUCKET_SIZE entries
+     */
+    public long[] getBucketOccupancy() {
+        long[] occupancy = new long[BUCKET_SIZE + 1];
+        for (int i = 0; i < directory.length; i++) {
+            Bucket<T> bucket = directory[i];
+            if (i >= (1 << bucket.localDepth)) {
+                continue;
+            }
+            for (Bucket<T> b = bucket; b != null; b = b.next) {
+                occupancy[b.size]++;
+            }
+        }
+        return occupancy;
+    }
+
+    @Override
+    public IndexMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public IncludedColumns getIncludedColumns() {
+        return included;
+    }
+
     @Override
     public String prettyName() {
         return "Hash Index";
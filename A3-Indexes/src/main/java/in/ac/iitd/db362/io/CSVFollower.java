@@ -0,0 +1,118 @@
+package in.ac.iitd.db362.io;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.MemoryManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the indexes of a CSV file current while rows are appended to it. Created by CSVParser.followCSV(), which
+ * loads the rows already in the file.
+ *
+ * Every poll() loads the complete rows appended since the previous one, with the next rowIds, into the same indexes
+ * (and retained columns); a row that is still being written (no newline yet) is left for the next poll. A poll holds
+ * the catalog's write lock while it loads, so a query sees either none or all of its rows; what was appended since
+ * the previous poll is usually small and is loaded on the polling thread, so queries are not held up for long. A
+ * poll that finds nothing new takes no lock. After start(), the file is polled every POLL_INTERVAL_MILLIS on a
+ * background thread, so appended rows become visible within about that delay.
+ */
+public class CSVFollower implements AutoCloseable {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    // How often a followed file is checked for appended rows.
+    public static long POLL_INTERVAL_MILLIS = 200;
+
+    private final ParallelCSVLoader loader;
+    private final Catalog catalog;
+    private final String filePath;
+    private ScheduledExecutorService poller;
+
+    CSVFollower(ParallelCSVLoader loader, Catalog catalog, String filePath) {
+        this.loader = loader;
+        this.catalog = catalog;
+        this.filePath = filePath;
+    }
+
+    /**
+     * Loads the rows appended since the previous poll.
+     * @return the number of rows loaded
+     */
+    public synchronized int poll() throws IOException {
+        long end = loader.available(true);
+        if (end <= loader.getPosition()) {
+            return 0;
+        }
+        // composite indexes are brought up to date under the same lock, so queries see the rows in all indexes at once
+        Lock lock = catalog.getLock().writeLock();
+        int rows;
+        lock.lock();
+        try {
+            rows = loader.load(end);
+            if (rows > 0) {
+                catalog.updateCompositeIndexes();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (rows > 0) {
+            logger.info("Loaded " + rows + " appended rows from " + filePath + ", " + loader.getRowCount() + " in total");
+            MemoryManager.getInstance().enforceBudget();
+        }
+        return rows;
+    }
+
+    /**
+     * Starts polling the file in the background. Failed polls are logged and retried on the next tick.
+     */
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "csv-follower");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to load appended rows from " + filePath + ": " + e.getMessage());
+            }
+        }, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of rows loaded so far; the largest rowId is one less
+     */
+    public synchronized int getRowCount() {
+        return loader.getRowCount();
+    }
+
+    /**
+     * Stops polling. Rows already loaded stay in the indexes.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = poller;
+            poller = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+            try {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
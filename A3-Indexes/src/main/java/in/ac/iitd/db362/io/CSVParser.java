@@ -1,15 +1,25 @@
 package in.ac.iitd.db362.io;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.locks.Lock;
 
 import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.MemoryManager;
+import in.ac.iitd.db362.index.IncludedColumns;
 import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.IndexSnapshot;
+import in.ac.iitd.db362.index.ScannableIndex;
 import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
 import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
 import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnarTable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -20,12 +30,31 @@ import org.apache.logging.log4j.Logger;
  *
  * The API accepts a map that specifies, for each attribute, which index types to create.
  * Supported index types include "BPlusTree", "Hash", and "Bitmap".
+ * A B+ tree or hash index may also carry the values of other columns, e.g. "BPlusTree INCLUDE (purchase_amount,
+ * store_id)", so that queries reading only those columns are answered from the index (see IncludedColumns).
  * As rows are read, values are converted to the appropriate type and inserted into the index.
+ * With a single byte delimiter the file is memory-mapped and read with a CSVReader, which understands quoted fields;
+ * files of at least PARALLEL_THRESHOLD bytes are loaded by LOAD_THREADS threads (see ParallelCSVLoader). Other
+ * delimiters are treated as a regular expression and split line by line.
+ * Optionally, every column is also retained as a typed in-memory copy (see ColumnarTable), so that attributes
+ * without an index can still be queried.
  */
 public class CSVParser {
 
     protected static final Logger logger = LogManager.getLogger();
 
+    // Files of at least this many bytes are loaded in parallel.
+    public static long PARALLEL_THRESHOLD = 64L << 20;
+
+    // Number of threads that parse and insert during a parallel load.
+    public static int LOAD_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Number of parsed chunks that may wait for each index builder during a load.
+    public static int BUILD_QUEUE_CAPACITY = 4;
+
+    // Bytes per chunk of a parallel load (a chunk is extended to the next newline).
+    public static int CHUNK_BYTES = 16 << 20;
+
     // Helper class to store header metadata.
     private static class ColumnMeta {
         String name;
@@ -47,6 +76,152 @@ public class CSVParser {
      * @param maxRowId         Maximum row id (used to create Bitmap indexes).
      */
     public static void parseCSV(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate, int maxRowId) {
+        parseCSV(filePath, delimiter, catalog, indexesToCreate, maxRowId, false);
+    }
+
+    /**
+     * Same as above; if retainColumns is set, a columnar copy of every column is kept and registered with the
+     * catalog.
+     */
+    public static void parseCSV(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate, int maxRowId,
+                                boolean retainColumns) {
+        load(filePath, delimiter, catalog, indexesToCreate, maxRowId, retainColumns, false);
+    }
+
+    /**
+     * Same as above, but indexes are first looked up in snapshotDirectory (see IndexSnapshot). A snapshot built
+     * from the same index spec and the same file contents (see IndexSnapshot.checksum()) is loaded instead of
+     * parsing the file; missing, stale or unreadable snapshots are rebuilt from the file and written back. The
+     * catalog records the checksum each snapshot was built from. The file is still read if columns are retained.
+     */
+    public static void parseCSV(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate, int maxRowId,
+                                boolean retainColumns, Path snapshotDirectory) {
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            loadWithSnapshots(filePath, delimiter, catalog, indexesToCreate, maxRowId, retainColumns, snapshotDirectory);
+        } finally {
+            lock.unlock();
+            MemoryManager.getInstance().enforceBudget();
+        }
+    }
+
+    private static void loadWithSnapshots(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate,
+                                          int maxRowId, boolean retainColumns, Path snapshotDirectory) {
+        long checksum;
+        try {
+            checksum = IndexSnapshot.checksum(Paths.get(filePath));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, List<String>> stale = new LinkedHashMap<>();
+        Map<String, List<ScannableIndex<?>>> fresh = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : indexesToCreate.entrySet()) {
+            for (String spec : entry.getValue()) {
+                ScannableIndex<?> index = readSnapshot(snapshotFile(snapshotDirectory, entry.getKey(), spec), spec, checksum);
+                if (index != null) {
+                    fresh.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(index);
+                } else {
+                    stale.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(spec);
+                }
+            }
+        }
+
+        if (!stale.isEmpty() || retainColumns) {
+            Map<String, Integer> existing = new HashMap<>();
+            for (String attribute : stale.keySet()) {
+                existing.put(attribute, catalog.getIndexes(attribute).size());
+            }
+            loadFile(filePath, delimiter, catalog, stale, maxRowId, retainColumns, false);
+            for (Map.Entry<String, List<String>> entry : stale.entrySet()) {
+                List<Index> indexes = catalog.getIndexes(entry.getKey());
+                // loadFile adds one index per spec of a known type, in order
+                Iterator<Index> built = indexes.subList(existing.get(entry.getKey()), indexes.size()).iterator();
+                for (String spec : entry.getValue()) {
+                    String type = indexType(spec);
+                    if (!built.hasNext() || !(type.equalsIgnoreCase("BPlusTree") || type.equalsIgnoreCase("Hash")
+                            || type.equalsIgnoreCase("Bitmap"))) {
+                        continue;
+                    }
+                    Index index = built.next();
+                    Path file = snapshotFile(snapshotDirectory, entry.getKey(), spec);
+                    try {
+                        IndexSnapshot.save((ScannableIndex<?>) index, file, checksum, spec.trim());
+                        catalog.setSnapshotChecksum(index, checksum);
+                        logger.info("Saved a snapshot of the " + type + " index on " + entry.getKey() + " to " + file);
+                    } catch (IOException e) {
+                        logger.warn("Cannot save snapshot " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<ScannableIndex<?>>> entry : fresh.entrySet()) {
+            for (ScannableIndex<?> index : entry.getValue()) {
+                catalog.addIndex(entry.getKey(), index);
+                catalog.setSnapshotChecksum(index, checksum);
+            }
+        }
+    }
+
+    /* e.g. "amount.bplustree.idx", with a hash of the spec if it includes columns */
+    private static Path snapshotFile(Path directory, String attribute, String spec) {
+        String name = attribute + "." + indexType(spec).toLowerCase();
+        if (!indexType(spec).equals(spec.trim())) {
+            name += "." + Integer.toHexString(spec.trim().hashCode());
+        }
+        return directory.resolve(name + ".idx");
+    }
+
+    /* the index of the snapshot if it was built from the same spec and file contents, null otherwise */
+    private static ScannableIndex<?> readSnapshot(Path file, String spec, long checksum) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            IndexSnapshot.Header header = IndexSnapshot.readHeader(file);
+            if (header.getSourceChecksum() != checksum || !header.getSpec().equals(spec.trim())) {
+                logger.info("Snapshot " + file + " is stale, rebuilding it");
+                return null;
+            }
+            ScannableIndex<?> index = IndexSnapshot.load(file);
+            logger.info("Loaded a " + index.prettyName() + " on " + header.getAttribute() + " from " + file);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot read snapshot " + file + ", rebuilding it: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Same as parseCSV, but only loads complete rows and returns a follower that loads the rows appended to the file
+     * later on (call start() on it to poll in the background).
+     * @param delimiter a single character
+     * @return null if the file has no header
+     */
+    public static CSVFollower followCSV(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate,
+                                        int maxRowId, boolean retainColumns) {
+        if (!isByteDelimiter(delimiter)) {
+            throw new IllegalArgumentException("Following a file needs a single character delimiter, got " + delimiter);
+        }
+        return load(filePath, delimiter, catalog, indexesToCreate, maxRowId, retainColumns, true);
+    }
+
+    private static CSVFollower load(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate,
+                                    int maxRowId, boolean retainColumns, boolean follow) {
+        // queries on the table wait for its indexes to be complete, and its indexes are not spilled while they fill
+        Lock lock = catalog.getLock().writeLock();
+        lock.lock();
+        try {
+            return loadFile(filePath, delimiter, catalog, indexesToCreate, maxRowId, retainColumns, follow);
+        } finally {
+            lock.unlock();
+            MemoryManager.getInstance().enforceBudget();
+        }
+    }
+
+    private static CSVFollower loadFile(String filePath, String delimiter, Catalog catalog, Map<String, List<String>> indexesToCreate,
+                                        int maxRowId, boolean retainColumns, boolean follow) {
 
         logger.info("Parsing CSV file");
 
@@ -58,7 +233,7 @@ public class CSVParser {
             String headerLine = br.readLine();
             if (headerLine == null) {
                 logger.error("Empty CSV file.");
-                return;
+                return null;
             }
             // Parse header; expected format for each token: "attributeName:attributeType"
             String[] headerTokens = headerLine.split(delimiter);
@@ -81,15 +256,19 @@ public class CSVParser {
                 if (indexesToCreate.containsKey(col.name)) {
                     List<String> indexTypes = indexesToCreate.get(col.name);
                     for (String idxType : indexTypes) {
-                        idxType = idxType.trim();
+                        IncludedColumns included = includedColumns(col.name, idxType, columns);
+                        idxType = indexType(idxType);
+                        if (included != null && idxType.equalsIgnoreCase("Bitmap")) {
+                            logger.warn("A Bitmap index cannot include columns, ignoring them: " + included.getNames());
+                        }
                         switch (col.type) {
                             case "integer":
                                 // Use Integer for integer type.
                                 if (idxType.equalsIgnoreCase("BPlusTree")) {
-                                    catalog.addIndex(col.name, new BPlusTreeIndex<Integer>(Integer.class, col.name));
+                                    catalog.addIndex(col.name, new BPlusTreeIndex<Integer>(Integer.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Hash")) {
-                                    catalog.addIndex(col.name, new ExtendibleHashing<Integer>(Integer.class, col.name));
+                                    catalog.addIndex(col.name, new ExtendibleHashing<Integer>(Integer.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Bitmap")) {
                                     catalog.addIndex(col.name, new BitmapIndex<Integer>(Integer.class, col.name, maxRowId));
@@ -99,10 +278,10 @@ public class CSVParser {
                             case "double":
                                 // Use Double for double type.
                                 if (idxType.equalsIgnoreCase("BPlusTree")) {
-                                    catalog.addIndex(col.name, new BPlusTreeIndex<Double>(Double.class, col.name));
+                                    catalog.addIndex(col.name, new BPlusTreeIndex<Double>(Double.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Hash")) {
-                                    catalog.addIndex(col.name, new ExtendibleHashing<Double>(Double.class, col.name));
+                                    catalog.addIndex(col.name, new ExtendibleHashing<Double>(Double.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Bitmap")) {
                                     catalog.addIndex(col.name, new BitmapIndex<Double>(Double.class, col.name, maxRowId));
@@ -111,10 +290,10 @@ public class CSVParser {
                                 break;
                             case "string":
                                 if (idxType.equalsIgnoreCase("BPlusTree")) {
-                                    catalog.addIndex(col.name, new BPlusTreeIndex<String>(String.class, col.name));
+                                    catalog.addIndex(col.name, new BPlusTreeIndex<String>(String.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Hash")) {
-                                    catalog.addIndex(col.name, new ExtendibleHashing<String>(String.class, col.name));
+                                    catalog.addIndex(col.name, new ExtendibleHashing<String>(String.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Bitmap")) {
                                     catalog.addIndex(col.name, new BitmapIndex<String>(String.class, col.name, maxRowId));
@@ -123,10 +302,10 @@ public class CSVParser {
                                 break;
                             case "date":
                                 if (idxType.equalsIgnoreCase("BPlusTree")) {
-                                    catalog.addIndex(col.name, new BPlusTreeIndex<LocalDate>(LocalDate.class, col.name));
+                                    catalog.addIndex(col.name, new BPlusTreeIndex<LocalDate>(LocalDate.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Hash")) {
-                                    catalog.addIndex(col.name, new ExtendibleHashing<LocalDate>(LocalDate.class, col.name));
+                                    catalog.addIndex(col.name, new ExtendibleHashing<LocalDate>(LocalDate.class, col.name, included));
                                     logger.info("Initialized a " + idxType + " Index on " + col.name + " of type " + col.type);
                                 } else if (idxType.equalsIgnoreCase("Bitmap")) {
                                     catalog.addIndex(col.name, new BitmapIndex<LocalDate>(LocalDate.class, col.name, maxRowId));
@@ -140,13 +319,42 @@ public class CSVParser {
                 }
             }
 
+            ColumnarTable table = null;
+            List<Column> retained = new ArrayList<>();
+            if (retainColumns) {
+                table = new ColumnarTable(filePath);
+                for (ColumnMeta col : columns) {
+                    retained.add(table.addColumn(col.name, columnType(col.type)));
+                }
+            }
+
             logger.info("Initialized all indexes. Now parsing the file and creating the indexes");
+            if (isByteDelimiter(delimiter)) {
+                ParallelCSVLoader loader = mappedLoader(filePath, delimiter.charAt(0), columns, catalog, indexesToCreate,
+                        retained);
+                if (table != null) {
+                    catalog.setTable(table);
+                }
+                if (follow) {
+                    CSVFollower follower = new CSVFollower(loader, catalog, filePath);
+                    follower.poll();
+                    logger.info("CSV parsing complete, following the file. Total rows processed: " + loader.getRowCount());
+                    return follower;
+                }
+                int rowCount = loader.load(loader.available(false));
+                logger.info("CSV parsing complete. Total rows processed: " + rowCount);
+                return null;
+            }
             // Process each row and insert values into the corresponding indexes.
             int rowId = 0;
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.trim().isEmpty()) continue; // skip empty lines
                 String[] tokens = line.split(delimiter);
+                for (int i = 0; i < retained.size(); i++) {
+                    // a missing value is kept as invalid, so that all columns stay aligned on rowId
+                    retained.get(i).append(i < tokens.length ? tokens[i].trim() : null);
+                }
                 for (int i = 0; i < tokens.length && i < columns.size(); i++) {
                     ColumnMeta col = columns.get(i);
                     if (indexesToCreate.containsKey(col.name)) {
@@ -177,9 +385,17 @@ public class CSVParser {
                                         logger.error("Unsupported type for conversion: " + col.type);
                                 }
                             } catch (Exception e) {
-                                logger.error("Error converting value '" + rawValue + "' for attribute " + col.name);
+                                // an empty field is a missing value, not an error
+                                if (!rawValue.isEmpty()) {
+                                    logger.error("Error converting value '" + rawValue + "' for attribute " + col.name);
+                                }
                                 continue;
                             }
+                            IncludedColumns included = idx instanceof ScannableIndex
+                                    ? ((ScannableIndex<?>) idx).getIncludedColumns() : null;
+                            if (included != null) {
+                                include(included, tokens, columns, rowId);
+                            }
                         }
 
                         // For each index already created for this attribute, insert the value.
@@ -194,9 +410,139 @@ public class CSVParser {
                 }
                 rowId++;
             }
+            if (table != null) {
+                catalog.setTable(table);
+            }
             logger.info("CSV parsing complete. Total rows processed: " + rowId);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return null;
+    }
+
+    /* "BPlusTree INCLUDE (a, b)" -> "BPlusTree" */
+    private static String indexType(String spec) {
+        int include = spec.toUpperCase().indexOf(" INCLUDE");
+        return (include < 0 ? spec : spec.substring(0, include)).trim();
+    }
+
+    /* "BPlusTree INCLUDE (a, b)" -> the attribute, a and b with their types; null without INCLUDE */
+    private static IncludedColumns includedColumns(String attribute, String spec, List<ColumnMeta> columns) {
+        int include = spec.toUpperCase().indexOf(" INCLUDE");
+        if (include < 0) {
+            return null;
+        }
+        String list = spec.substring(include + " INCLUDE".length()).trim();
+        if (list.startsWith("(") && list.endsWith(")")) {
+            list = list.substring(1, list.length() - 1);
+        }
+        List<String> names = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
+        names.add(attribute);
+        types.add(columnType(columnMeta(attribute, columns).type));
+        for (String name : list.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty() && !names.contains(name)) {
+                names.add(name);
+                types.add(columnType(columnMeta(name, columns).type));
+            }
+        }
+        return new IncludedColumns(names, types);
+    }
+
+    private static ColumnMeta columnMeta(String name, List<ColumnMeta> columns) {
+        for (ColumnMeta col : columns) {
+            if (col.name.equals(name)) {
+                return col;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + name);
+    }
+
+    /* stores the included columns of a row (column 0 is the key, set by the index itself) */
+    private static void include(IncludedColumns included, String[] tokens, List<ColumnMeta> columns, int rowId) {
+        for (int i = 1; i < included.getNames().size(); i++) {
+            String name = included.getNames().get(i);
+            for (int f = 0; f < columns.size(); f++) {
+                if (columns.get(f).name.equals(name)) {
+                    Object value = f < tokens.length ? convert(tokens[f].trim(), included.getTypes().get(i)) : null;
+                    included.set(rowId, i, value);
+                    break;
+                }
+            }
+        }
+    }
+
+    /* the value, or null if it is missing or does not convert */
+    private static Object convert(String raw, Class<?> type) {
+        try {
+            if (type == Integer.class) {
+                return Integer.parseInt(raw);
+            } else if (type == Double.class) {
+                return Double.parseDouble(raw);
+            } else if (type == LocalDate.class) {
+                return LocalDate.parse(raw);
+            }
+            return raw;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /* a single ASCII character other than the ones that end rows or quote fields is read as a literal byte */
+    private static boolean isByteDelimiter(String delimiter) {
+        return delimiter.length() == 1 && delimiter.charAt(0) < 128 && "\n\r\"".indexOf(delimiter.charAt(0)) < 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ParallelCSVLoader mappedLoader(String filePath, char delimiter, List<ColumnMeta> columns, Catalog catalog,
+                                                  Map<String, List<String>> indexesToCreate, List<Column> retained) {
+        int n = columns.size();
+        String[] names = new String[n];
+        Class<?>[] types = new Class<?>[n];
+        List<Index>[] indexes = new List[n];
+        Column[] columnsToFill = new Column[n];
+        // columns carried by covering indexes are parsed too, even if nothing else needs them
+        Set<String> included = new HashSet<>();
+        for (ColumnMeta col : columns) {
+            for (Index index : catalog.getIndexes(col.name)) {
+                if (index instanceof ScannableIndex && ((ScannableIndex<?>) index).getIncludedColumns() != null) {
+                    included.addAll(((ScannableIndex<?>) index).getIncludedColumns().getNames());
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            ColumnMeta col = columns.get(i);
+            names[i] = col.name;
+            columnsToFill[i] = retained.isEmpty() ? null : retained.get(i);
+            if (indexesToCreate.containsKey(col.name)) {
+                indexes[i] = catalog.getIndexes(col.name);
+            } else if (columnsToFill[i] != null) {
+                // indexes may be built from the retained column later on; appended rows must reach them too
+                indexes[i] = catalog.getLiveIndexes(col.name);
+            } else {
+                indexes[i] = Collections.emptyList();
+            }
+            // indexes are only created for supported types, and retaining a column of another type fails earlier
+            if (!indexes[i].isEmpty() || columnsToFill[i] != null || included.contains(col.name)) {
+                types[i] = columnType(col.type);
+            }
+        }
+        return new ParallelCSVLoader(Paths.get(filePath), (byte) delimiter, names, types, indexes, columnsToFill);
+    }
+
+    private static Class<?> columnType(String type) {
+        switch (type) {
+            case "integer":
+                return Integer.class;
+            case "double":
+                return Double.class;
+            case "date":
+                return LocalDate.class;
+            case "string":
+                return String.class;
+            default:
+                throw new IllegalArgumentException("Unsupported attribute type: " + type);
+        }
     }
 }
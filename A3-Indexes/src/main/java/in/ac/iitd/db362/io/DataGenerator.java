@@ -0,0 +1,279 @@
+package in.ac.iitd.db362.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic purchase tables with the header and value shapes of purchase-data.csv, at any scale, to test and
+ * benchmark the indexes on more than the 200 row fixture. The file only depends on the settings and the seed.
+ *
+ * - scale: the table has scale * ROWS_PER_SCALE rows
+ * - customers, stores: number of distinct customer_id and store_id keys (customers defaults to one per row)
+ * - skew: Zipf exponent for customer_id, store_id and product_category, in [0, 1); 0 is uniform, 0.99 is the usual
+ *   heavy skew. Low keys are the hot ones.
+ * - correlation: in [0, 1], how much purchase_amount follows customer_rating (0 independent, 1 a linear function)
+ * - nullRate: fraction of fields other than customer_id that are left empty. The loaders treat an empty number or
+ *   date as a missing value, so the row is not in that attribute's indexes; an empty name or category is indexed as
+ *   the empty string
+ *
+ * customer_name is a function of customer_id, so the two always agree.
+ *
+ * Usage: DataGenerator output.csv [scale=1] [seed=42] [customers=..] [stores=50] [skew=0] [correlation=0] [nullRate=0]
+ */
+public class DataGenerator {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    public static final String HEADER = "customer_id:integer,customer_name:string,purchase_amount:double,"
+            + "purchase_date:date,product_category:string,customer_rating:double,store_id:integer";
+
+    public static final int ROWS_PER_SCALE = 1_000_000;
+
+    static final String[] CATEGORIES = {"Books", "Clothing", "Electronics", "Furniture", "Toys", "Appliances"};
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas",
+            "Sarah", "Charles", "Karen", "Debra", "Shane", "Aditi", "Rahul", "Priya", "Arjun", "Meera", "Vikram"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Wright", "Myers", "Delgado", "Sharma", "Gupta", "Singh", "Iyer", "Rao",
+            "Nguyen", "Kim", "Lopez", "Clark", "Lewis", "Walker"};
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+    private static final int DATE_RANGE_DAYS = 5 * 365;
+    private static final double MIN_AMOUNT = 5000;
+    private static final double MAX_AMOUNT = 100000;
+
+    private long seed = 42;
+    private double scale = 1;
+    private int customers;
+    private int stores = 50;
+    private double skew;
+    private double correlation;
+    private double nullRate;
+
+    public DataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DataGenerator scale(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * @param customers number of distinct customer_ids, 0 for one per row
+     */
+    public DataGenerator customers(int customers) {
+        if (customers < 0) {
+            throw new IllegalArgumentException("Number of customers must not be negative: " + customers);
+        }
+        this.customers = customers;
+        return this;
+    }
+
+    public DataGenerator stores(int stores) {
+        if (stores < 1) {
+            throw new IllegalArgumentException("Need at least one store: " + stores);
+        }
+        this.stores = stores;
+        return this;
+    }
+
+    public DataGenerator skew(double skew) {
+        if (skew < 0 || skew >= 1) {
+            throw new IllegalArgumentException("Skew must be in [0, 1): " + skew);
+        }
+        this.skew = skew;
+        return this;
+    }
+
+    public DataGenerator correlation(double correlation) {
+        if (correlation < 0 || correlation > 1) {
+            throw new IllegalArgumentException("Correlation must be in [0, 1]: " + correlation);
+        }
+        this.correlation = correlation;
+        return this;
+    }
+
+    public DataGenerator nullRate(double nullRate) {
+        if (nullRate < 0 || nullRate > 1) {
+            throw new IllegalArgumentException("Null rate must be in [0, 1]: " + nullRate);
+        }
+        this.nullRate = nullRate;
+        return this;
+    }
+
+    public int getRows() {
+        return (int) Math.max(1, Math.round(scale * ROWS_PER_SCALE));
+    }
+
+    /**
+     * Writes the table (header first) to the file, replacing it.
+     * @return number of rows written
+     */
+    public int write(Path file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Same as above to any writer, which is left open.
+     */
+    public int write(Writer out) throws IOException {
+        int rows = getRows();
+        SplittableRandom random = new SplittableRandom(seed);
+        // nulls are drawn from their own stream, so the null rate does not change the values of the other fields
+        SplittableRandom nulls = random.split();
+        Zipf customerIds = new Zipf(customers == 0 ? rows : customers, skew);
+        Zipf storeIds = new Zipf(stores, skew);
+        Zipf categories = new Zipf(CATEGORIES.length, skew);
+
+        out.write(HEADER);
+        out.write('\n');
+        StringBuilder row = new StringBuilder(128);
+        for (int i = 0; i < rows; i++) {
+            row.setLength(0);
+            int customerId = customerIds.next(random) + 1;
+            double rating = random.nextDouble();
+            double amount = correlation * rating + (1 - correlation) * random.nextDouble();
+            int day = random.nextInt(DATE_RANGE_DAYS);
+            String category = CATEGORIES[categories.next(random)];
+            int storeId = storeIds.next(random) + 1;
+
+            row.append(customerId).append(',');
+            if (present(nulls)) {
+                row.append(name(customerId));
+            }
+            row.append(',');
+            if (present(nulls)) {
+                appendCents(row, Math.round((MIN_AMOUNT + amount * (MAX_AMOUNT - MIN_AMOUNT)) * 100));
+            }
+            row.append(',');
+            if (present(nulls)) {
+                row.append(FIRST_DATE.plusDays(day));
+            }
+            row.append(',');
+            if (present(nulls)) {
+                row.append(category);
+            }
+            row.append(',');
+            if (present(nulls)) {
+                appendCents(row, Math.round((1 + rating * 4) * 100));
+            }
+            row.append(',');
+            if (present(nulls)) {
+                row.append(storeId);
+            }
+            row.append('\n');
+            out.append(row);
+        }
+        logger.info("Generated " + rows + " purchase rows (seed " + seed + ", skew " + skew + ")");
+        return rows;
+    }
+
+    /* false with probability nullRate, i.e. when the next field is to be left empty */
+    private boolean present(SplittableRandom nulls) {
+        return nullRate == 0 || nulls.nextDouble() >= nullRate;
+    }
+
+    static String name(int customerId) {
+        int h = customerId * 0x9E3779B1;
+        return FIRST_NAMES[Math.floorMod(h, FIRST_NAMES.length)] + " "
+                + LAST_NAMES[Math.floorMod(h >>> 8, LAST_NAMES.length)];
+    }
+
+    /* appends cents / 100 with exactly two decimals */
+    private static void appendCents(StringBuilder out, long cents) {
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /**
+     * Zipfian ranks in [0, n) following Gray et al., "Quickly generating billion-record synthetic databases": one
+     * pass to compute zeta(n), then constant time per value. An exponent of 0 is uniform.
+     */
+    static class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = n < 3 ? 0 : (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            if (n < 3) {
+                // the closed form needs n > 2; pick from the exact probabilities
+                return n == 1 || u * zetan < 1 ? 0 : 1;
+            }
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DataGenerator output.csv [scale=1] [seed=42] [customers=0] [stores=50] "
+                    + "[skew=0] [correlation=0] [nullRate=0]");
+            System.exit(1);
+        }
+        DataGenerator generator = new DataGenerator();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected key=value: " + args[i]);
+            }
+            switch (option[0]) {
+                case "scale": generator.scale(Double.parseDouble(option[1])); break;
+                case "seed": generator.seed(Long.parseLong(option[1])); break;
+                case "customers": generator.customers(Integer.parseInt(option[1])); break;
+                case "stores": generator.stores(Integer.parseInt(option[1])); break;
+                case "skew": generator.skew(Double.parseDouble(option[1])); break;
+                case "correlation": generator.correlation(Double.parseDouble(option[1])); break;
+                case "nullRate": generator.nullRate(Double.parseDouble(option[1])); break;
+                default: throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        generator.write(Paths.get(args[0]));
+    }
+}
@@ -0,0 +1,527 @@
+package in.ac.iitd.db362.io;
+
+import in.ac.iitd.db362.index.IncludedColumns;
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.storage.Column;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the rows of a CSV file into already created indexes (and retained columns), with one or more threads.
+ *
+ * The file is memory-mapped in chunks of about CSVParser.CHUNK_BYTES, each ending on a row boundary, and the chunks are
+ * parsed by worker threads with a CSVReader into per-column primitive arrays of converted values, which are only boxed
+ * as they are inserted into an index. Row boundaries are newlines outside quoted fields; the quotes before a boundary
+ * are counted 8 bytes at a time, which assumes quotes only appear in quoted fields (RFC 4180).
+ *
+ * Parsed chunks are handed out in file order to a pipeline of builders: every index (and every retained column) has
+ * a dedicated builder thread that takes chunks from its own bounded queue of CSVParser.BUILD_QUEUE_CAPACITY and
+ * inserts their rows. Each index is only touched by its builder, so the indexes need no locking and end up the same
+ * whatever the number of threads, while independent indexes are built concurrently and a slow index does not hold up
+ * the others until its queue is full. Parsing stays at most one chunk per thread ahead of the queues. A load of a
+ * single chunk, such as the rows appended to a followed file between two polls, skips the pipeline and is parsed
+ * and inserted on the calling thread.
+ *
+ * Rows are split as String.split did in the line based parser: blank lines are skipped, every field is trimmed and
+ * trailing empty fields are ignored.
+ */
+class ParallelCSVLoader {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    private final Path file;
+    private final byte delimiter;
+    private final String[] names;      // attribute per field position
+    private final Class<?>[] types;    // key type per field position, null if the field is not loaded
+    private final List<Index>[] indexes;
+    private final Column[] retained;   // retained column per field position, null if none
+
+    private FileChannel channel;       // open during load()
+    private long position;             // first byte not loaded yet, 0 before the header is skipped
+    private int rowCount;              // rows loaded so far, i.e. the rowId of the next row
+
+    /**
+     * @param names     attribute of each field position
+     * @param types     key type of each field position, or null to skip the field
+     * @param indexes   indexes to insert each field into (may be empty)
+     * @param retained  column to append each field to, or null
+     */
+    ParallelCSVLoader(Path file, byte delimiter, String[] names, Class<?>[] types, List<Index>[] indexes,
+                      Column[] retained) {
+        this.file = file;
+        this.delimiter = delimiter;
+        this.names = names;
+        this.types = types;
+        this.indexes = indexes;
+        this.retained = retained;
+    }
+
+    /**
+     * Parsed rows of one chunk, kept unboxed per field: ints[field] for Integer fields, days[field] (epoch days) for
+     * LocalDate fields, doubles[field] for Double fields and strings[field] for String fields. Bit row of
+     * missing[field] is set if the value is missing or invalid. Values are only boxed when inserted into an index.
+     */
+    private static class Chunk {
+        final Class<?>[] types;
+        final int[][] ints;
+        final long[][] days;
+        final double[][] doubles;
+        final String[][] strings;
+        final long[][] missing;
+        int rows;
+
+        Chunk(Class<?>[] types, int capacity) {
+            this.types = types;
+            ints = new int[types.length][];
+            days = new long[types.length][];
+            doubles = new double[types.length][];
+            strings = new String[types.length][];
+            missing = new long[types.length][];
+            grow(capacity);
+        }
+
+        void grow(int capacity) {
+            for (int f = 0; f < types.length; f++) {
+                if (types[f] == Integer.class) {
+                    ints[f] = ints[f] == null ? new int[capacity] : Arrays.copyOf(ints[f], capacity);
+                } else if (types[f] == LocalDate.class) {
+                    days[f] = days[f] == null ? new long[capacity] : Arrays.copyOf(days[f], capacity);
+                } else if (types[f] == Double.class) {
+                    doubles[f] = doubles[f] == null ? new double[capacity] : Arrays.copyOf(doubles[f], capacity);
+                } else if (types[f] == String.class) {
+                    strings[f] = strings[f] == null ? new String[capacity] : Arrays.copyOf(strings[f], capacity);
+                }
+                if (types[f] != null) {
+                    int words = (capacity + 63) >>> 6;
+                    missing[f] = missing[f] == null ? new long[words] : Arrays.copyOf(missing[f], words);
+                }
+            }
+        }
+
+        void setMissing(int field, int row) {
+            missing[field][row >>> 6] |= 1L << row;
+        }
+
+        boolean isMissing(int field, int row) {
+            return (missing[field][row >>> 6] & (1L << row)) != 0;
+        }
+
+        /* the value boxed as an index key, or null if it is missing */
+        Object get(int field, int row) {
+            if (isMissing(field, row)) {
+                return null;
+            }
+            Class<?> type = types[field];
+            if (type == Integer.class) {
+                return ints[field][row];
+            } else if (type == LocalDate.class) {
+                return LocalDate.ofEpochDay(days[field][row]);
+            } else if (type == Double.class) {
+                return doubles[field][row];
+            }
+            return strings[field][row];
+        }
+
+        /* appends the value to a retained column without boxing it */
+        void appendTo(Column column, int field, int row) {
+            Class<?> type = types[field];
+            if (isMissing(field, row)) {
+                column.appendKey(null);
+            } else if (type == Integer.class) {
+                column.appendInt(ints[field][row]);
+            } else if (type == LocalDate.class) {
+                column.appendInt(Math.toIntExact(days[field][row]));
+            } else if (type == Double.class) {
+                column.appendDouble(doubles[field][row]);
+            } else {
+                column.appendKey(strings[field][row]);
+            }
+        }
+    }
+
+    /**
+     * Finds the rows that were not loaded yet: on the first call every row after the header, then the rows appended
+     * since the previous load. Takes no lock, so that a follower can tell that nothing was appended without holding
+     * up queries.
+     * @param completeRowsOnly if set, a last row that does not end with a newline yet is left for a later load
+     * @return the end of the rows to pass to load(), getPosition() if there are none
+     */
+    long available(boolean completeRowsOnly) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.channel = channel;
+            long size = channel.size();
+            if (position == 0) {
+                long header = nextRow(0, 0, size);
+                if (completeRowsOnly && !endsRow(header)) {
+                    return 0;   // the header itself is still being written
+                }
+                position = header;
+            }
+            if (size < position) {
+                throw new IllegalStateException("File " + file + " shrank from " + position + " to " + size + " bytes");
+            }
+            if (size == position) {
+                return position;
+            }
+            return completeRowsOnly ? lastRowEnd(position, size) : size;
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * @return the first byte not loaded yet
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Loads the rows up to end, as found by available(); the caller holds whatever lock queries need. Up to one chunk
+     * (e.g. the rows appended to a followed file since the previous poll) is parsed and inserted on the calling
+     * thread. Larger loads go through the pipeline, with CSVParser.LOAD_THREADS parsers if they are of at least
+     * CSVParser.PARALLEL_THRESHOLD bytes.
+     * @return the number of rows loaded
+     */
+    int load(long end) throws IOException {
+        if (end <= position) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.channel = channel;
+            int rows;
+            if (end - position <= Math.max(1, CSVParser.CHUNK_BYTES)) {
+                rows = loadOnCallingThread(end);
+            } else {
+                int threads = end - position >= CSVParser.PARALLEL_THRESHOLD ? Math.max(1, CSVParser.LOAD_THREADS) : 1;
+                rows = load(end, threads);
+            }
+            position = end;
+            rowCount += rows;
+            return rows;
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * @return number of rows loaded so far
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /* a single chunk: no threads to start, the builders insert it in turn */
+    private int loadOnCallingThread(long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+        Batch batch = new Batch(parse(buffer), rowCount);
+        for (Builder builder : builders()) {
+            builder.build(batch);
+        }
+        return batch.chunk.rows;
+    }
+
+    private int load(long end, int threads) throws IOException {
+        List<Builder> builders = builders();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        ExecutorService builderThreads = Executors.newFixedThreadPool(Math.max(1, builders.size()));
+        try {
+            for (Builder builder : builders) {
+                builderThreads.execute(builder);
+            }
+            int rowId = rowCount;
+            long next = position;
+            Deque<Future<Chunk>> parsing = new ArrayDeque<>();
+            while (true) {
+                while (parsing.size() < threads && next < end) {
+                    next = submit(parsers, next, end, parsing);
+                }
+                if (parsing.isEmpty()) {
+                    break;
+                }
+                Batch batch = new Batch(await(parsing.poll()), rowId);
+                rowId += batch.chunk.rows;
+                for (Builder builder : builders) {
+                    builder.queue.put(batch);
+                }
+            }
+            for (Builder builder : builders) {
+                builder.queue.put(Batch.END);
+            }
+            builderThreads.shutdown();
+            builderThreads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (Builder builder : builders) {
+                if (builder.failure != null) {
+                    throw builder.failure;
+                }
+            }
+            return rowId - rowCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } finally {
+            parsers.shutdownNow();
+            builderThreads.shutdownNow();
+        }
+    }
+
+    /**
+     * A parsed chunk on its way to the builders, with the rowId of its first row.
+     */
+    private static class Batch {
+        static final Batch END = new Batch(null, -1);
+
+        final Chunk chunk;
+        final int firstRowId;
+
+        Batch(Chunk chunk, int firstRowId) {
+            this.chunk = chunk;
+            this.firstRowId = firstRowId;
+        }
+    }
+
+    /**
+     * Inserts every batch of its queue into one index or retained column. After a failure it keeps draining the
+     * queue, so that the parser stage never blocks on it.
+     */
+    private static class Builder implements Runnable {
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(Math.max(1, CSVParser.BUILD_QUEUE_CAPACITY));
+        final int field;
+        final Index index;      // null when filling a column
+        final Column column;
+        final IncludedColumns included;     // of a covering index, else null
+        final int[] includedFields;         // field position of each included column (the first is the key)
+        volatile RuntimeException failure;
+
+        Builder(int field, Index index, Column column, int[] includedFields) {
+            this.field = field;
+            this.index = index;
+            this.column = column;
+            this.included = index instanceof ScannableIndex ? ((ScannableIndex<?>) index).getIncludedColumns() : null;
+            this.includedFields = includedFields;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Batch batch = queue.take(); batch != Batch.END; batch = queue.take()) {
+                    if (failure == null) {
+                        try {
+                            build(batch);
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void build(Batch batch) {
+            Chunk chunk = batch.chunk;
+            int rows = chunk.rows;
+            if (index != null) {
+                for (int row = 0; row < rows; row++) {
+                    if (!chunk.isMissing(field, row)) {
+                        index.insert(chunk.get(field, row), batch.firstRowId + row);
+                        for (int i = 1; included != null && i < includedFields.length; i++) {
+                            included.set(batch.firstRowId + row, i, chunk.get(includedFields[i], row));
+                        }
+                    }
+                }
+            } else {
+                for (int row = 0; row < rows; row++) {
+                    chunk.appendTo(column, field, row);
+                }
+            }
+        }
+    }
+
+    private List<Builder> builders() {
+        List<Builder> builders = new ArrayList<>();
+        for (int f = 0; f < types.length; f++) {
+            if (types[f] == null) {
+                continue;
+            }
+            for (Index index : indexes[f]) {
+                builders.add(new Builder(f, index, null, includedFields(index)));
+            }
+            if (retained[f] != null) {
+                builders.add(new Builder(f, null, retained[f], null));
+            }
+        }
+        return builders;
+    }
+
+    /* field positions of the columns a covering index carries, null for other indexes */
+    private int[] includedFields(Index index) {
+        IncludedColumns included = index instanceof ScannableIndex ? ((ScannableIndex<?>) index).getIncludedColumns()
+                : null;
+        if (included == null) {
+            return null;
+        }
+        int[] fields = new int[included.getNames().size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = Arrays.asList(names).indexOf(included.getNames().get(i));
+            if (fields[i] < 0 || types[fields[i]] == null) {
+                throw new IllegalArgumentException("Included column " + included.getNames().get(i) + " of "
+                        + ((ScannableIndex<?>) index).getAttribute() + " is not in the file");
+            }
+        }
+        return fields;
+    }
+
+    private boolean endsRow(long position) throws IOException {
+        if (position == 0) {
+            return false;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, position - 1);
+        return last.get(0) == '\n';
+    }
+
+    /* end of the last complete row in [from, size): after the last newline outside quoted fields, or from */
+    private long lastRowEnd(long from, long size) throws IOException {
+        if (size == from) {
+            return from;
+        }
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, from, size - from);
+        long quotes = CSVReader.countQuotes(region, 0, region.limit());
+        for (int i = region.limit() - 1; i >= 0; i--) {
+            byte b = region.get(i);
+            if (b == '\n' && quotes % 2 == 0) {
+                return from + i + 1;
+            } else if (b == '"') {
+                quotes--;
+            }
+        }
+        return from;
+    }
+
+    /* maps and submits the parsing of the chunk starting at position, returns where the next one starts */
+    private long submit(ExecutorService pool, long position, long end, Deque<Future<Chunk>> parsing) throws IOException {
+        long next = nextRow(position, Math.min(end, position + Math.max(1, CSVParser.CHUNK_BYTES)), end);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, next - position);
+        parsing.add(pool.submit(() -> parse(buffer)));
+        return next;
+    }
+
+    private static <V> V await(Future<V> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /*
+     * Start of the first row at or after nominal, for a chunk that starts a row at from: the position after the next
+     * newline that is not inside a quoted field, or size if there is none. Quotes before nominal are only counted.
+     */
+    private long nextRow(long from, long nominal, long size) throws IOException {
+        boolean quoted = false;
+        if (nominal > from) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, from, nominal - from);
+            quoted = CSVReader.countQuotes(region, 0, region.limit()) % 2 == 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = nominal;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private Chunk parse(ByteBuffer buffer) {
+        int capacity = 1024;
+        Chunk chunk = new Chunk(types, capacity);
+        CSVReader reader = new CSVReader(buffer, delimiter);
+        while (reader.nextRow()) {
+            if (reader.isBlankRow()) {
+                continue;
+            }
+            // like String.split, trailing empty fields are not fields at all
+            int fields = reader.fieldCount();
+            while (fields > 0 && reader.isEmpty(fields - 1)) {
+                fields--;
+            }
+            fields = Math.min(fields, types.length);
+            int row = chunk.rows++;
+            if (row == capacity) {
+                capacity += capacity >> 1;
+                chunk.grow(capacity);
+            }
+            for (int f = 0; f < types.length; f++) {
+                if (types[f] == null) {
+                    continue;
+                }
+                if (f >= fields || !convert(reader, f, chunk, row)) {
+                    chunk.setMissing(f, row);
+                    if (f < fields && !indexes[f].isEmpty() && !reader.isEmpty(f)) {
+                        logger.error("Error converting value '" + reader.getString(f) + "' for attribute " + names[f]);
+                    }
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /* stores the converted field in the chunk; false if it does not convert */
+    private static boolean convert(CSVReader reader, int field, Chunk chunk, int row) {
+        Class<?> type = chunk.types[field];
+        try {
+            if (type == Integer.class) {
+                chunk.ints[field][row] = reader.getInt(field);
+            } else if (type == Double.class) {
+                chunk.doubles[field][row] = reader.getDouble(field);
+            } else if (type == LocalDate.class) {
+                chunk.days[field][row] = reader.getEpochDay(field);
+            } else {
+                chunk.strings[field][row] = reader.getString(field);
+            }
+            return true;
+        } catch (NumberFormatException | DateTimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package in.ac.iitd.db362.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event committed for every predicate an index evaluates, when the event is enabled in the recording.
+ */
+@Name("in.ac.iitd.db362.IndexLookup")
+@Label("Index Lookup")
+@Category({"DB362", "Index"})
+@Description("A predicate evaluated by an index")
+@StackTrace(false)
+public class IndexLookupEvent extends Event {
+
+    @Label("Index")
+    String index;
+
+    @Label("Attribute")
+    String attribute;
+
+    @Label("Operator")
+    String operator;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
@@ -0,0 +1,160 @@
+package in.ac.iitd.db362.metrics;
+
+import in.ac.iitd.db362.parser.Operator;
+import jdk.jfr.EventType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters an index keeps about the work it does: nodes (or buckets) visited, key comparisons, splits, directory
+ * doublings, and the number and latency of the predicates it evaluated. Counters are LongAdders, so queries running
+ * in parallel update them without contending; nothing is formatted or logged on the way.
+ *
+ * Lookups and splits are also committed as Flight Recorder events (IndexLookupEvent, IndexSplitEvent) while a
+ * recording enables them. The counters are exposed over JMX by MetricsRegistry.
+ */
+public class IndexMetrics {
+
+    // When false, indexes skip all counting and timing.
+    public static volatile boolean ENABLED = true;
+
+    private static final EventType LOOKUP_EVENT = EventType.getEventType(IndexLookupEvent.class);
+    private static final EventType SPLIT_EVENT = EventType.getEventType(IndexSplitEvent.class);
+
+    private final String index;
+    private final String attribute;
+
+    private final LongAdder nodeVisits = new LongAdder();
+    private final LongAdder keyComparisons = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder directoryDoublings = new LongAdder();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+
+    /**
+     * @param index kind of index (BPlusTree, Hash, Bitmap), as reported in events
+     */
+    public IndexMetrics(String index, String attribute) {
+        this.index = index;
+        this.attribute = attribute;
+    }
+
+    public void nodeVisit() {
+        if (ENABLED) {
+            nodeVisits.increment();
+        }
+    }
+
+    public void keyComparison() {
+        if (ENABLED) {
+            keyComparisons.increment();
+        }
+    }
+
+    /**
+     * Counts comparisons done in bulk, e.g. the keys of a bucket checked against a set of wanted keys.
+     */
+    public void keyComparisons(int count) {
+        if (ENABLED) {
+            keyComparisons.add(count);
+        }
+    }
+
+    /**
+     * Counts a node or bucket split.
+     * @param kind what was split, e.g. "leaf" or "bucket"
+     */
+    public void split(String kind) {
+        if (ENABLED) {
+            splits.increment();
+            commitSplit(kind);
+        }
+    }
+
+    public void directoryDoubling() {
+        if (ENABLED) {
+            directoryDoublings.increment();
+            commitSplit("directory");
+        }
+    }
+
+    private void commitSplit(String kind) {
+        if (SPLIT_EVENT.isEnabled()) {
+            IndexSplitEvent event = new IndexSplitEvent();
+            event.index = index;
+            event.attribute = attribute;
+            event.kind = kind;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the start time to pass to endLookup()
+     */
+    public long startLookup() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a predicate evaluated since start.
+     * @param rows number of rows returned
+     */
+    public void endLookup(long start, Operator operator, int rows) {
+        if (!ENABLED) {
+            return;
+        }
+        long latency = System.nanoTime() - start;
+        lookupLatency.record(latency);
+        if (LOOKUP_EVENT.isEnabled()) {
+            IndexLookupEvent event = new IndexLookupEvent();
+            event.index = index;
+            event.attribute = attribute;
+            event.operator = String.valueOf(operator);
+            event.rows = rows;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return kind of index (BPlusTree, Hash, Bitmap)
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public long getNodeVisits() {
+        return nodeVisits.sum();
+    }
+
+    public long getKeyComparisons() {
+        return keyComparisons.sum();
+    }
+
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    public long getDirectoryDoublings() {
+        return directoryDoublings.sum();
+    }
+
+    public long getLookups() {
+        return lookupLatency.getCount();
+    }
+
+    public LatencyHistogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    public void reset() {
+        nodeVisits.reset();
+        keyComparisons.reset();
+        splits.reset();
+        directoryDoublings.reset();
+        lookupLatency.reset();
+    }
+}
@@ -0,0 +1,29 @@
+package in.ac.iitd.db362.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event committed when an index grows its structure: a B+Tree node split, a hash bucket split or a
+ * hash directory doubling.
+ */
+@Name("in.ac.iitd.db362.IndexSplit")
+@Label("Index Split")
+@Category({"DB362", "Index"})
+@Description("A node or bucket split, or a directory doubling")
+@StackTrace(false)
+public class IndexSplitEvent extends Event {
+
+    @Label("Index")
+    String index;
+
+    @Label("Attribute")
+    String attribute;
+
+    @Label("Kind")
+    String kind;
+}
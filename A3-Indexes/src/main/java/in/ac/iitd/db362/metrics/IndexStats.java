@@ -0,0 +1,140 @@
+package in.ac.iitd.db362.metrics;
+
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.index.ScannableIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * IndexStatsMXBean of one registered index. Statistics and memory usage walk the index, so they are read under the
+ * table's read lock; a spilled index (see MemoryManager) reports itself empty until it is reloaded.
+ */
+class IndexStats implements IndexStatsMXBean {
+
+    private final String table;
+    private final ReadWriteLock lock;
+    private final ScannableIndex<?> index;
+
+    IndexStats(String table, ReadWriteLock lock, ScannableIndex<?> index) {
+        this.table = table;
+        this.lock = lock;
+        this.index = index;
+    }
+
+    private IndexStatistics statistics() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return index.getStatistics();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String getAttribute() {
+        return index.getAttribute();
+    }
+
+    @Override
+    public String getIndex() {
+        return index.prettyName();
+    }
+
+    @Override
+    public int getEntryCount() {
+        return statistics().getEntryCount();
+    }
+
+    @Override
+    public int getDistinctKeys() {
+        return statistics().getDistinctKeys();
+    }
+
+    @Override
+    public int getHeight() {
+        return statistics().getHeight();
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return index.getMemoryUsage();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public long getNodeVisits() {
+        return index.getMetrics().getNodeVisits();
+    }
+
+    @Override
+    public long getKeyComparisons() {
+        return index.getMetrics().getKeyComparisons();
+    }
+
+    @Override
+    public long getSplits() {
+        return index.getMetrics().getSplits();
+    }
+
+    @Override
+    public long getDirectoryDoublings() {
+        return index.getMetrics().getDirectoryDoublings();
+    }
+
+    @Override
+    public long getLookups() {
+        return index.getMetrics().getLookups();
+    }
+
+    @Override
+    public double getLookupLatencyMeanNanos() {
+        return index.getMetrics().getLookupLatency().getMean();
+    }
+
+    @Override
+    public long getLookupLatencyP50Nanos() {
+        return index.getMetrics().getLookupLatency().getPercentile(0.5);
+    }
+
+    @Override
+    public long getLookupLatencyP99Nanos() {
+        return index.getMetrics().getLookupLatency().getPercentile(0.99);
+    }
+
+    @Override
+    public long[] getLookupLatencyHistogram() {
+        return index.getMetrics().getLookupLatency().getBuckets();
+    }
+
+    @Override
+    public long[] getBucketOccupancy() {
+        if (!(index instanceof ExtendibleHashing)) {
+            return new long[0];
+        }
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return ((ExtendibleHashing<?>) index).getBucketOccupancy();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void resetMetrics() {
+        index.getMetrics().reset();
+    }
+}
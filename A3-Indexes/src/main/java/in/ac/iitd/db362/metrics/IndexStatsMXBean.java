@@ -0,0 +1,51 @@
+package in.ac.iitd.db362.metrics;
+
+/**
+ * JMX view of one index: its statistics, memory footprint and IndexMetrics counters.
+ * Registered by MetricsRegistry under in.ac.iitd.db362:type=Index,table=...,attribute=...,index=...
+ */
+public interface IndexStatsMXBean {
+
+    String getTable();
+
+    String getAttribute();
+
+    String getIndex();
+
+    int getEntryCount();
+
+    int getDistinctKeys();
+
+    int getHeight();
+
+    long getMemoryUsage();
+
+    long getNodeVisits();
+
+    long getKeyComparisons();
+
+    long getSplits();
+
+    long getDirectoryDoublings();
+
+    long getLookups();
+
+    double getLookupLatencyMeanNanos();
+
+    long getLookupLatencyP50Nanos();
+
+    long getLookupLatencyP99Nanos();
+
+    /**
+     * @return lookups per power-of-two latency bucket (see LatencyHistogram)
+     */
+    long[] getLookupLatencyHistogram();
+
+    /**
+     * @return for hash indexes, the number of buckets holding 0, 1, ... BUCKET_SIZE entries (overflow buckets
+     * included); empty for other indexes
+     */
+    long[] getBucketOccupancy();
+
+    void resetMetrics();
+}
@@ -0,0 +1,85 @@
+package in.ac.iitd.db362.metrics;
+
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.ScannableIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Publishes an IndexStatsMXBean for every index registered with a catalog on the platform MBean server, named
+ * in.ac.iitd.db362:type=Index,table=...,attribute=...,index=...,id=... (id tells apart indexes of the same kind on
+ * the same attribute). The catalog registers and unregisters indexes along with the MemoryManager.
+ */
+public class MetricsRegistry {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    public static final String DOMAIN = "in.ac.iitd.db362";
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Map<Index<?>, ObjectName> names = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Publishes the index of the given table. Indexes that are not ScannableIndexes keep no metrics and are ignored.
+     * @param lock the table's lock, taken for reading when the MBean walks the index
+     */
+    public void register(String table, ReadWriteLock lock, Index<?> index) {
+        if (!(index instanceof ScannableIndex)) {
+            return;
+        }
+        ScannableIndex<?> scannable = (ScannableIndex<?>) index;
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Index"
+                    + ",table=" + ObjectName.quote(table)
+                    + ",attribute=" + ObjectName.quote(scannable.getAttribute())
+                    + ",index=" + scannable.getMetrics().getIndex()
+                    + ",id=" + ids.incrementAndGet());
+            server.registerMBean(new IndexStats(table, lock, scannable), name);
+            names.put(index, name);
+        } catch (JMException e) {
+            // monitoring is best effort, the index works without it
+            logger.warn("Could not register metrics of " + index.prettyName() + " on " + table, e);
+        }
+    }
+
+    /**
+     * Withdraws the MBean of the index, if it was published.
+     */
+    public void unregister(Index<?> index) {
+        ObjectName name = names.remove(index);
+        if (name == null) {
+            return;
+        }
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            logger.warn("Could not unregister " + name, e);
+        }
+    }
+
+    /**
+     * @return the name the index's MBean is published under, or null if it is not
+     */
+    public ObjectName getObjectName(Index<?> index) {
+        return names.get(index);
+    }
+}
@@ -0,0 +1,192 @@
+package in.ac.iitd.db362.parser;
+
+import java.util.Arrays;
+
+// Hand-written single pass lexer for the query language, used by the Parser.
+//
+// Tokens are kept in parallel arrays (type, start and end offset into the query) that are reused from one query to
+// the next, so once the arrays have grown to fit the longest query, lexing allocates nothing. A lexeme is only
+// copied out of the query (text()) when the parser needs it for the parse tree.
+//
+// It accepts the same tokens as the regex based Tokenizer, with two differences: AND, OR and NOT are only keywords
+// when they are a whole word (ORDER is an identifier, not OR followed by DER), and trailing whitespace is allowed.
+// Like all keywords, IN and BETWEEN are case sensitive.
+// It also knows '?', the parameter placeholder of prepared queries.
+public class Lexer {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private String source;
+    private TokenType[] types = new TokenType[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * Splits the query into tokens, replacing the tokens of the previous query. The last token is always EOF.
+     * @throws RuntimeException on a character that cannot start a token
+     */
+    public void tokenize(String input) {
+        source = input;
+        count = 0;
+        int n = input.length();
+        int pos = 0;
+        while (true) {
+            while (pos < n && Character.isWhitespace(input.charAt(pos))) {
+                pos++;
+            }
+            if (pos == n) {
+                add(TokenType.EOF, n, n);
+                return;
+            }
+            int start = pos;
+            char c = input.charAt(pos);
+            switch (c) {
+                case '(':
+                    add(TokenType.LPAREN, start, ++pos);
+                    break;
+                case ')':
+                    add(TokenType.RPAREN, start, ++pos);
+                    break;
+                case ',':
+                    add(TokenType.COMMA, start, ++pos);
+                    break;
+                case '=':
+                    add(TokenType.EQ, start, ++pos);
+                    break;
+                case '<':
+                    if (pos + 1 < n && input.charAt(pos + 1) == '=') {
+                        pos += 2;
+                        add(TokenType.LE, start, pos);
+                    } else {
+                        add(TokenType.LT, start, ++pos);
+                    }
+                    break;
+                case '>':
+                    if (pos + 1 < n && input.charAt(pos + 1) == '=') {
+                        pos += 2;
+                        add(TokenType.GE, start, pos);
+                    } else {
+                        add(TokenType.GT, start, ++pos);
+                    }
+                    break;
+                case '!':
+                    if (pos + 1 < n && input.charAt(pos + 1) == '=') {
+                        pos += 2;
+                        add(TokenType.NE, start, pos);
+                    } else {
+                        throw new RuntimeException("Unexpected character at position " + pos);
+                    }
+                    break;
+                case '?':
+                    add(TokenType.PARAM, start, ++pos);
+                    break;
+                case '"':
+                    int close = input.indexOf('"', start + 1);
+                    if (close < 0) {
+                        throw new RuntimeException("Unterminated string at position " + start);
+                    }
+                    pos = close + 1;
+                    add(TokenType.STRING, start, pos);
+                    break;
+                default:
+                    if (isDigit(c)) {
+                        pos = skipDigits(input, pos);
+                        // a fraction needs at least one digit after the point
+                        if (pos + 1 < n && input.charAt(pos) == '.' && isDigit(input.charAt(pos + 1))) {
+                            pos = skipDigits(input, pos + 1);
+                        }
+                        add(TokenType.NUMBER, start, pos);
+                    } else if (isIdentifierStart(c)) {
+                        pos++;
+                        while (pos < n && isIdentifierPart(input.charAt(pos))) {
+                            pos++;
+                        }
+                        add(keywordOrIdentifier(input, start, pos), start, pos);
+                    } else {
+                        throw new RuntimeException("Unexpected character at position " + pos);
+                    }
+            }
+        }
+    }
+
+    private void add(TokenType type, int start, int end) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[count] = type;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static TokenType keywordOrIdentifier(String input, int start, int end) {
+        int length = end - start;
+        if (length == 3 && input.startsWith("AND", start)) {
+            return TokenType.AND;
+        } else if (length == 2 && input.startsWith("OR", start)) {
+            return TokenType.OR;
+        } else if (length == 3 && input.startsWith("NOT", start)) {
+            return TokenType.NOT;
+        } else if (length == 2 && input.startsWith("IN", start)) {
+            return TokenType.IN;
+        } else if (length == 7 && input.startsWith("BETWEEN", start)) {
+            return TokenType.BETWEEN;
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    private static int skipDigits(String input, int pos) {
+        while (pos < input.length() && isDigit(input.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    /**
+     * @return number of tokens, including the trailing EOF
+     */
+    public int size() {
+        return count;
+    }
+
+    public TokenType type(int i) {
+        return types[i];
+    }
+
+    /**
+     * @return offset of the token's first character in the query
+     */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @return offset just past the token's last character
+     */
+    public int end(int i) {
+        return ends[i];
+    }
+
+    /**
+     * @return a copy of the token's lexeme (string literals keep their quotes)
+     */
+    public String text(int i) {
+        return source.substring(starts[i], ends[i]);
+    }
+}
@@ -1,7 +1,7 @@
 package in.ac.iitd.db362.parser;
 
 // Supported operators
+// BETWEEN is parsed into a RANGE with inclusive bounds, and NE into NOT EQUALS by QueryRewriter
 public enum Operator {
-    AND, OR, NOT, EQUALS, LT, GT, RANGE
+    AND, OR, NOT, EQUALS, LT, GT, RANGE, LE, GE, NE, IN
 }
-
@@ -1,7 +1,6 @@
 package in.ac.iitd.db362.parser;
 
-
-import java.util.List;
+import java.util.ArrayList;
 
 // Recursive descent parsing following the grammar:
 //
@@ -10,33 +9,72 @@ import java.util.List;
 // Factor     -> NOT Factor | '(' Expression ')' | Predicate
 // Predicate  -> RangePredicate | SimplePredicate
 //
-// RangePredicate  : NUMBER '<' IDENTIFIER '<' NUMBER
-// SimplePredicate : IDENTIFIER ( '=' | '<' | '>' ) Literal
-// Literal         : NUMBER | STRING | IDENTIFIER
+// RangePredicate  : Bound ( '<' | '<=' ) IDENTIFIER ( '<' | '<=' ) Bound
+// SimplePredicate : IDENTIFIER ( '=' | '!=' | '<' | '<=' | '>' | '>=' ) Literal
+//                 | IDENTIFIER [NOT] IN '(' Constant ( ',' Constant )* ')'
+//                 | IDENTIFIER [NOT] BETWEEN Literal AND Literal
+// Literal         : Constant | '?'
+// Constant        : NUMBER | STRING | IDENTIFIER
+// Bound           : NUMBER | '?'
+//
+// BETWEEN includes both bounds, i.e. x BETWEEN 1 AND 5 is the same as 1 <= x <= 5.
+//
+// '?' is a parameter of a prepared query (see PreparedQuery); parameters are numbered from 0 in order of appearance.
 public class Parser {
 
-    List<Token> tokens;
+    // Every thread reuses its lexer, and with it the token buffers
+    private static final ThreadLocal<Lexer> LEXER = ThreadLocal.withInitial(Lexer::new);
+
+    Lexer lexer;
     int pos = 0;
+    int parameterCount = 0;
 
-    public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    public Parser(Lexer lexer) {
+        this.lexer = lexer;
     }
 
-    Token peek() {
-        return tokens.get(pos);
+    TokenType peek() {
+        return lexer.type(pos);
+    }
+
+    // Returns the index of the consumed token; its lexeme is lexer.text(index)
+    int consume(TokenType type) {
+        if (peek() != type) {
+            throw new RuntimeException("Expected token " + type + " but found " + peek()
+                    + " at position " + lexer.start(pos));
+        }
+        return pos++;
     }
 
-    Token consume(TokenType type) {
-        Token token = peek();
-        if (token.type != type) {
-            throw new RuntimeException("Expected token " + type + " but found " + token.type);
+    /**
+     * @return number of '?' parameters seen so far
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    // Consumes a literal of one of the given types; a '?' becomes the next parameter
+    private String literal(QueryNode node, boolean second, TokenType... types) {
+        for (TokenType type : types) {
+            if (peek() == type) {
+                int token = consume(type);
+                if (type != TokenType.PARAM) {
+                    return lexer.text(token);
+                }
+                if (second) {
+                    node.secondParameter = parameterCount;
+                } else {
+                    node.parameter = parameterCount;
+                }
+                parameterCount++;
+                return "?" + parameterCount;
+            }
         }
-        pos++;
-        return token;
+        return null;
     }
 
     boolean match(TokenType type) {
-        if (peek().type == type) {
+        if (peek() == type) {
             pos++;
             return true;
         }
@@ -46,7 +84,7 @@ public class Parser {
     // Expression -> Term (OR Term)*
     public QueryNode parseExpression() {
         QueryNode node = parseTerm();
-        while (peek().type == TokenType.OR) {
+        while (peek() == TokenType.OR) {
             consume(TokenType.OR);
             QueryNode right = parseTerm();
             node = new QueryNode(Operator.OR, node, right);
@@ -57,7 +95,7 @@ public class Parser {
     // Term -> Factor (AND Factor)*
     QueryNode parseTerm() {
         QueryNode node = parseFactor();
-        while (peek().type == TokenType.AND) {
+        while (peek() == TokenType.AND) {
             consume(TokenType.AND);
             QueryNode right = parseFactor();
             node = new QueryNode(Operator.AND, node, right);
@@ -67,11 +105,11 @@ public class Parser {
 
     // Factor -> NOT Factor | '(' Expression ')' | Predicate
     QueryNode parseFactor() {
-        if (peek().type == TokenType.NOT) {
+        if (peek() == TokenType.NOT) {
             consume(TokenType.NOT);
             QueryNode node = parseFactor();
             return new QueryNode(Operator.NOT, node);
-        } else if (peek().type == TokenType.LPAREN) {
+        } else if (peek() == TokenType.LPAREN) {
             consume(TokenType.LPAREN);
             QueryNode node = parseExpression();
             consume(TokenType.RPAREN);
@@ -83,19 +121,20 @@ public class Parser {
 
     // Predicate -> RangePredicate | SimplePredicate
     QueryNode parsePredicate() {
-        // Check for range predicate: NUMBER '<' IDENTIFIER '<' NUMBER
-        if (peek().type == TokenType.NUMBER) {
-            Token numToken = consume(TokenType.NUMBER);
-            if (peek().type == TokenType.LT) {
-                consume(TokenType.LT);
-                if (peek().type == TokenType.IDENTIFIER) {
-                    Token attrToken = consume(TokenType.IDENTIFIER);
-                    if (peek().type == TokenType.LT) {
-                        consume(TokenType.LT);
-                        if (peek().type == TokenType.NUMBER) {
-                            Token numToken2 = consume(TokenType.NUMBER);
-                            QueryNode node = new QueryNode(Operator.RANGE, attrToken.text, numToken.text);
-                            node.secondValue = numToken2.text;
+        // Check for range predicate: Bound ( '<' | '<=' ) IDENTIFIER ( '<' | '<=' ) Bound
+        if (peek() == TokenType.NUMBER || peek() == TokenType.PARAM) {
+            QueryNode node = new QueryNode(Operator.RANGE, (String) null, null);
+            node.value = literal(node, false, TokenType.NUMBER, TokenType.PARAM);
+            if (peek() == TokenType.LT || peek() == TokenType.LE) {
+                node.lowerInclusive = peek() == TokenType.LE;
+                consume(peek());
+                if (peek() == TokenType.IDENTIFIER) {
+                    node.attribute = lexer.text(consume(TokenType.IDENTIFIER));
+                    if (peek() == TokenType.LT || peek() == TokenType.LE) {
+                        node.upperInclusive = peek() == TokenType.LE;
+                        consume(peek());
+                        node.secondValue = literal(node, true, TokenType.NUMBER, TokenType.PARAM);
+                        if (node.secondValue != null) {
                             return node;
                         } else {
                             throw new RuntimeException("Expected NUMBER in range predicate");
@@ -109,43 +148,88 @@ public class Parser {
             } else {
                 throw new RuntimeException("Unexpected token after NUMBER. For range predicates, use the form: NUMBER < attribute < NUMBER");
             }
-        } else if (peek().type == TokenType.IDENTIFIER) {
-            // Simple predicate: IDENTIFIER ( '=' | '<' | '>' ) Literal
-            Token attrToken = consume(TokenType.IDENTIFIER);
-            Token opToken = peek();
+        } else if (peek() == TokenType.IDENTIFIER) {
+            String attribute = lexer.text(consume(TokenType.IDENTIFIER));
+            boolean negated = match(TokenType.NOT);
+            if (peek() == TokenType.IN || peek() == TokenType.BETWEEN) {
+                QueryNode node = peek() == TokenType.IN ? parseInList(attribute) : parseBetween(attribute);
+                return negated ? new QueryNode(Operator.NOT, node) : node;
+            } else if (negated) {
+                throw new RuntimeException("Expected IN or BETWEEN after NOT");
+            }
+            // Simple predicate: IDENTIFIER ( '=' | '!=' | '<' | '<=' | '>' | '>=' ) Literal
+            TokenType opToken = peek();
             Operator op;
-            if (opToken.type == TokenType.EQ) {
+            if (opToken == TokenType.EQ) {
                 op = Operator.EQUALS;
-                consume(TokenType.EQ);
-            } else if (opToken.type == TokenType.LT) {
+            } else if (opToken == TokenType.NE) {
+                op = Operator.NE;
+            } else if (opToken == TokenType.LT) {
                 op = Operator.LT;
-                consume(TokenType.LT);
-            } else if (opToken.type == TokenType.GT) {
+            } else if (opToken == TokenType.LE) {
+                op = Operator.LE;
+            } else if (opToken == TokenType.GT) {
                 op = Operator.GT;
-                consume(TokenType.GT);
+            } else if (opToken == TokenType.GE) {
+                op = Operator.GE;
             } else {
                 throw new RuntimeException("Expected a relational operator after attribute");
             }
-            // Literal: NUMBER, STRING, or IDENTIFIER
-            Token literalToken = peek();
-            if (literalToken.type == TokenType.NUMBER) {
-                consume(TokenType.NUMBER);
-            } else if (literalToken.type == TokenType.STRING) {
-                consume(TokenType.STRING);
-            } else if (literalToken.type == TokenType.IDENTIFIER) {
-                consume(TokenType.IDENTIFIER);
-            } else {
+            consume(opToken);
+            // Literal: NUMBER, STRING, IDENTIFIER or a parameter
+            QueryNode node = new QueryNode(op, attribute, null);
+            node.value = literal(node, false, TokenType.NUMBER, TokenType.STRING, TokenType.IDENTIFIER,
+                    TokenType.PARAM);
+            if (node.value == null) {
                 throw new RuntimeException("Expected a literal after relational operator");
             }
-            return new QueryNode(op, attrToken.text, literalToken.text);
+            return node;
         } else {
-            throw new RuntimeException("Unexpected token in predicate: " + peek());
+            throw new RuntimeException("Unexpected token in predicate: " + peek() + "(" + lexer.text(pos) + ")"
+                    + " at position " + lexer.start(pos));
+        }
+    }
+
+    // IN '(' Constant ( ',' Constant )* ')'
+    QueryNode parseInList(String attribute) {
+        consume(TokenType.IN);
+        consume(TokenType.LPAREN);
+        QueryNode node = new QueryNode(Operator.IN, attribute, null);
+        node.values = new ArrayList<>();
+        do {
+            String value = literal(node, false, TokenType.NUMBER, TokenType.STRING, TokenType.IDENTIFIER);
+            if (value == null) {
+                throw new RuntimeException("Expected a literal in IN list at position " + lexer.start(pos));
+            }
+            node.values.add(value);
+        } while (match(TokenType.COMMA));
+        consume(TokenType.RPAREN);
+        return node;
+    }
+
+    // BETWEEN Literal AND Literal
+    QueryNode parseBetween(String attribute) {
+        consume(TokenType.BETWEEN);
+        QueryNode node = new QueryNode(Operator.RANGE, attribute, null);
+        node.lowerInclusive = true;
+        node.upperInclusive = true;
+        node.value = literal(node, false, TokenType.NUMBER, TokenType.STRING, TokenType.IDENTIFIER, TokenType.PARAM);
+        if (node.value == null) {
+            throw new RuntimeException("Expected a literal after BETWEEN");
+        }
+        consume(TokenType.AND);
+        node.secondValue = literal(node, true, TokenType.NUMBER, TokenType.STRING, TokenType.IDENTIFIER,
+                TokenType.PARAM);
+        if (node.secondValue == null) {
+            throw new RuntimeException("Expected a literal after AND in BETWEEN");
         }
+        return node;
     }
 
     public static QueryNode parse(String query) {
-        List<Token> tokens = Tokenizer.tokenize(query);
-        Parser parser = new Parser(tokens);
+        Lexer lexer = LEXER.get();
+        lexer.tokenize(query);
+        Parser parser = new Parser(lexer);
         return parser.parseExpression();
     }
 
@@ -162,6 +246,8 @@ public class Parser {
             if (node.right != null) {
                 printParseTree(node.right, depth + 1);
             }
+        } else if (node.operator == Operator.IN) {
+            System.out.println(indent + node.operator + " " + node.attribute + " " + node.values);
         } else { // simple predicate
             System.out.println(indent + node.operator + " " + node.attribute + " " + node.value);
         }
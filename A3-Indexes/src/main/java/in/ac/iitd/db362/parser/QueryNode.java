@@ -1,12 +1,27 @@
 package in.ac.iitd.db362.parser;
 
+import java.util.ArrayList;
+import java.util.List;
+
 // Parse tree node.
 public class QueryNode {
     public Operator operator;
     public String attribute;  // for predicates: the column name
+    public String table;      // for predicates: the table of the column (see Catalog.getInstance(String)), or null
     public String value;      // for simple predicates: literal value;
     // for range predicates: lower bound
     public String secondValue; // for range predicates: upper bound
+    public boolean lowerInclusive; // for range predicates: whether value itself matches (false for parsed ranges)
+    public boolean upperInclusive; // for range predicates: whether secondValue itself matches (false for parsed ranges)
+    // Parameters of prepared queries ('?' in the query): index of the parameter that supplies value / secondValue,
+    // or -1 for a literal
+    public int parameter = -1;
+    public int secondParameter = -1;
+    // value / secondValue already converted to the index's key type, or null; indexes then skip parsing the literal
+    public Object key;
+    public Object secondKey;
+    public List<String> values; // for IN predicates: the listed literals
+    public List<Object> keys;   // for IN predicates: values converted to the key type, or null
     public QueryNode left;
     public QueryNode right;
 
@@ -29,4 +44,50 @@ public class QueryNode {
         this.operator = operator;
         this.left = node;
     }
+
+    /**
+     * @return a deep copy of the tree rooted at this node
+     */
+    public QueryNode copy() {
+        QueryNode copy = new QueryNode(operator, attribute, value);
+        copy.table = table;
+        copy.secondValue = secondValue;
+        copy.lowerInclusive = lowerInclusive;
+        copy.upperInclusive = upperInclusive;
+        copy.parameter = parameter;
+        copy.secondParameter = secondParameter;
+        copy.key = key;
+        copy.secondKey = secondKey;
+        copy.values = values == null ? null : new ArrayList<>(values);
+        copy.keys = keys == null ? null : new ArrayList<>(keys);
+        copy.left = left == null ? null : left.copy();
+        copy.right = right == null ? null : right.copy();
+        return copy;
+    }
+
+    /**
+     * @return true if a parameter of this predicate has not been bound to a value yet
+     */
+    public boolean hasUnboundParameter() {
+        return (parameter >= 0 && key == null) || (secondParameter >= 0 && secondKey == null);
+    }
+
+    // Canonical text form, e.g. "(a EQUALS 1 AND NOT b EQUALS 2)"; structurally equal trees print the same
+    @Override
+    public String toString() {
+        switch (operator) {
+            case AND:
+            case OR:
+                return "(" + left + " " + operator + " " + right + ")";
+            case NOT:
+                return "NOT " + left;
+            case IN:
+                return attribute + " IN " + values;
+            case RANGE:
+                return value + (lowerInclusive ? " <= " : " < ") + attribute + (upperInclusive ? " <= " : " < ")
+                        + secondValue;
+            default:
+                return attribute + " " + operator + " " + value;
+        }
+    }
 }
@@ -0,0 +1,376 @@
+package in.ac.iitd.db362.parser;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Rewrites a parse tree into an equivalent one that needs fewer index traversals. Runs after parseExpression(),
+// before the tree is evaluated.
+//
+// 1. NOT is pushed down to the predicates with De Morgan's laws. NOT of a comparison becomes the complementary
+//    comparison (NOT x < 5 -> x >= 5, NOT 1 < x < 5 -> x <= 1 OR x >= 5), so the only negations left are
+//    NOT (x = v) and NOT (x IN (...)), which the evaluator subtracts from its candidates instead of materializing a
+//    complement. x != v becomes NOT (x = v).
+// 2. Comparisons on the same attribute inside an AND are merged into one predicate
+//    (x > 5 AND x < 10 AND x < 8 -> 5 < x < 8). Literals are compared according to the attribute's key type;
+//    attributes of unknown type are left alone.
+// 3. Equalities and IN lists on the same attribute inside an OR are merged into one IN list
+//    (x = 1 OR x IN (2, 3) -> x IN (1, 2, 3)), which the indexes answer in a single operation. IN lists are sorted and
+//    deduplicated, and an IN list with a single value becomes an equality.
+// 4. Duplicate operands of an AND/OR are dropped.
+public class QueryRewriter {
+
+    private QueryRewriter() {
+    }
+
+    /**
+     * @param keyTypes maps an attribute to the type of its keys, or null if unknown
+     */
+    public static QueryNode rewrite(QueryNode node, Function<String, Class<?>> keyTypes) {
+        return simplify(pushNot(node, false), keyTypes);
+    }
+
+    // Returns node (negated if negate is set) with every NOT pushed down to an equality predicate
+    static QueryNode pushNot(QueryNode node, boolean negate) {
+        switch (node.operator) {
+            case AND:
+            case OR:
+                Operator op = node.operator;
+                if (negate) {
+                    op = op == Operator.AND ? Operator.OR : Operator.AND;
+                }
+                return new QueryNode(op, pushNot(node.left, negate), pushNot(node.right, negate));
+            case NOT:
+                return pushNot(node.left, !negate);
+            case EQUALS:
+                QueryNode eq = predicate(Operator.EQUALS, node.attribute, Bound.lower(node));
+                return negate ? new QueryNode(Operator.NOT, eq) : eq;
+            case NE:
+                QueryNode equal = predicate(Operator.EQUALS, node.attribute, Bound.lower(node));
+                return negate ? equal : new QueryNode(Operator.NOT, equal);
+            case IN:
+                QueryNode in = new QueryNode(Operator.IN, node.attribute, null);
+                in.values = new ArrayList<>(node.values);
+                in.keys = node.keys == null ? null : new ArrayList<>(node.keys);
+                return negate ? new QueryNode(Operator.NOT, in) : in;
+            case LT:
+                return predicate(negate ? Operator.GE : Operator.LT, node.attribute, Bound.lower(node));
+            case LE:
+                return predicate(negate ? Operator.GT : Operator.LE, node.attribute, Bound.lower(node));
+            case GT:
+                return predicate(negate ? Operator.LE : Operator.GT, node.attribute, Bound.lower(node));
+            case GE:
+                return predicate(negate ? Operator.LT : Operator.GE, node.attribute, Bound.lower(node));
+            case RANGE:
+                if (!negate) {
+                    return range(node.attribute, Bound.lower(node), node.lowerInclusive, Bound.upper(node),
+                            node.upperInclusive);
+                }
+                QueryNode below = predicate(node.lowerInclusive ? Operator.LT : Operator.LE, node.attribute,
+                        Bound.lower(node));
+                QueryNode above = predicate(node.upperInclusive ? Operator.GT : Operator.GE, node.attribute,
+                        Bound.upper(node));
+                return new QueryNode(Operator.OR, below, above);
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + node.operator);
+        }
+    }
+
+    // Flattens AND/OR chains, drops duplicate operands and merges comparisons in conjunctions
+    static QueryNode simplify(QueryNode node, Function<String, Class<?>> keyTypes) {
+        if (node.operator == Operator.NOT) {
+            return new QueryNode(Operator.NOT, simplify(node.left, keyTypes));
+        }
+        if (node.operator == Operator.IN) {
+            return inList(node.attribute, node.values, node.keys, keyTypes);
+        }
+        if (node.operator != Operator.AND && node.operator != Operator.OR) {
+            return node;
+        }
+        List<QueryNode> operands = new ArrayList<>();
+        flatten(node, node.operator, operands, keyTypes);
+        if (node.operator == Operator.AND) {
+            operands = mergeComparisons(operands, keyTypes);
+        } else {
+            operands = mergeEqualities(operands, keyTypes);
+        }
+
+        Map<String, QueryNode> distinct = new LinkedHashMap<>();
+        for (QueryNode operand : operands) {
+            distinct.putIfAbsent(operand.toString(), operand);
+        }
+        QueryNode result = null;
+        for (QueryNode operand : distinct.values()) {
+            result = result == null ? operand : new QueryNode(node.operator, result, operand);
+        }
+        return result;
+    }
+
+    private static void flatten(QueryNode node, Operator operator, List<QueryNode> operands,
+                                Function<String, Class<?>> keyTypes) {
+        if (node.operator == operator) {
+            flatten(node.left, operator, operands, keyTypes);
+            flatten(node.right, operator, operands, keyTypes);
+        } else {
+            operands.add(simplify(node, keyTypes));
+        }
+    }
+
+    // Replaces all comparisons on an attribute by a single predicate; other operands are kept in place
+    private static List<QueryNode> mergeComparisons(List<QueryNode> operands, Function<String, Class<?>> keyTypes) {
+        Map<String, List<QueryNode>> byAttribute = new LinkedHashMap<>();
+        for (QueryNode operand : operands) {
+            if (isComparison(operand)) {
+                byAttribute.computeIfAbsent(operand.attribute, k -> new ArrayList<>()).add(operand);
+            }
+        }
+        List<QueryNode> result = new ArrayList<>();
+        for (QueryNode operand : operands) {
+            if (!isComparison(operand)) {
+                result.add(operand);
+                continue;
+            }
+            List<QueryNode> group = byAttribute.get(operand.attribute);
+            if (group == null) {
+                continue; // already merged
+            }
+            Comparator<String> order = literalOrder(keyTypes.apply(operand.attribute));
+            QueryNode merged = group.size() > 1 && order != null ? merge(group, order) : null;
+            if (merged != null) {
+                result.add(merged);
+                byAttribute.remove(operand.attribute);
+            } else {
+                result.add(operand);
+            }
+        }
+        return result;
+    }
+
+    // Replaces all equalities and IN lists on an attribute by a single IN list; other operands are kept in place
+    private static List<QueryNode> mergeEqualities(List<QueryNode> operands, Function<String, Class<?>> keyTypes) {
+        Map<String, List<QueryNode>> byAttribute = new LinkedHashMap<>();
+        for (QueryNode operand : operands) {
+            if (isEquality(operand)) {
+                byAttribute.computeIfAbsent(operand.attribute, k -> new ArrayList<>()).add(operand);
+            }
+        }
+        List<QueryNode> result = new ArrayList<>();
+        for (QueryNode operand : operands) {
+            List<QueryNode> group = isEquality(operand) ? byAttribute.remove(operand.attribute) : null;
+            if (!isEquality(operand) || (group != null && group.size() == 1)) {
+                result.add(operand);
+            } else if (group != null) {
+                List<String> values = new ArrayList<>();
+                List<Object> keys = new ArrayList<>();
+                for (QueryNode node : group) {
+                    if (node.operator == Operator.EQUALS) {
+                        values.add(node.value);
+                        keys.add(node.key);
+                    } else {
+                        values.addAll(node.values);
+                        for (int i = 0; i < node.values.size(); i++) {
+                            keys.add(node.keys == null ? null : node.keys.get(i));
+                        }
+                    }
+                }
+                // keys are all or nothing
+                result.add(inList(operand.attribute, values, keys.contains(null) ? null : keys, keyTypes));
+            }
+            // else: merged into the IN list of an earlier operand
+        }
+        return result;
+    }
+
+    private static boolean isEquality(QueryNode node) {
+        return (node.operator == Operator.EQUALS || node.operator == Operator.IN) && !node.hasUnboundParameter();
+    }
+
+    // An IN list with its values sorted and deduplicated, or an equality if only one value is left
+    private static QueryNode inList(String attribute, List<String> values, List<Object> keys,
+                                    Function<String, Class<?>> keyTypes) {
+        Comparator<String> order = literalOrder(keyTypes.apply(attribute));
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            positions.add(i);
+        }
+        try {
+            positions.sort(Comparator.comparing(values::get, order == null ? Comparator.naturalOrder() : order));
+        } catch (RuntimeException e) {
+            // a literal does not parse as the key type; the index will report it
+            order = null;
+            positions.sort(Comparator.comparing(values::get));
+        }
+        QueryNode node = new QueryNode(Operator.IN, attribute, null);
+        node.values = new ArrayList<>();
+        node.keys = keys == null ? null : new ArrayList<>();
+        String previous = null;
+        for (int i : positions) {
+            String value = values.get(i);
+            boolean duplicate = previous != null
+                    && (order == null ? previous.equals(value) : order.compare(previous, value) == 0);
+            if (!duplicate) {
+                node.values.add(value);
+                if (keys != null) {
+                    node.keys.add(keys.get(i));
+                }
+                previous = value;
+            }
+        }
+        if (node.values.size() == 1) {
+            return predicate(Operator.EQUALS, attribute,
+                    new Bound(node.values.get(0), -1, keys == null ? null : node.keys.get(0)));
+        }
+        return node;
+    }
+
+    private static boolean isComparison(QueryNode node) {
+        switch (node.operator) {
+            case EQUALS:
+            case LT:
+            case LE:
+            case GT:
+            case GE:
+            case RANGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Intersects the comparisons of one attribute. Returns null if a literal does not parse as the key type or is an
+    // unbound parameter.
+    private static QueryNode merge(List<QueryNode> group, Comparator<String> literalOrder) {
+        for (QueryNode node : group) {
+            if (node.hasUnboundParameter()) {
+                return null;
+            }
+        }
+        Comparator<Bound> order = (a, b) -> literalOrder.compare(a.literal, b.literal);
+        String attribute = group.get(0).attribute;
+        Bound lower = null, upper = null, equal = null;
+        boolean lowerInclusive = false, upperInclusive = false, empty = false;
+        try {
+            for (QueryNode node : group) {
+                switch (node.operator) {
+                    case EQUALS:
+                        if (equal != null && order.compare(equal, Bound.lower(node)) != 0) {
+                            empty = true;
+                        }
+                        equal = Bound.lower(node);
+                        break;
+                    case GT:
+                    case GE:
+                    case RANGE:
+                        boolean inclusive = node.operator == Operator.GE
+                                || (node.operator == Operator.RANGE && node.lowerInclusive);
+                        int cmp = lower == null ? 1 : order.compare(Bound.lower(node), lower);
+                        if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                            lower = Bound.lower(node);
+                            lowerInclusive = inclusive;
+                        }
+                        if (node.operator != Operator.RANGE) {
+                            break;
+                        }
+                        // the upper bound of a range is handled like LT/LE
+                    case LT:
+                    case LE:
+                        Bound bound = node.operator == Operator.RANGE ? Bound.upper(node) : Bound.lower(node);
+                        boolean upperIncl = node.operator == Operator.LE
+                                || (node.operator == Operator.RANGE && node.upperInclusive);
+                        int c = upper == null ? -1 : order.compare(bound, upper);
+                        if (c < 0 || (c == 0 && !upperIncl)) {
+                            upper = bound;
+                            upperInclusive = upperIncl;
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Not a comparison: " + node.operator);
+                }
+            }
+            if (equal != null) {
+                if (lower != null) {
+                    int cmp = order.compare(equal, lower);
+                    empty |= cmp < 0 || (cmp == 0 && !lowerInclusive);
+                }
+                if (upper != null) {
+                    int cmp = order.compare(equal, upper);
+                    empty |= cmp > 0 || (cmp == 0 && !upperInclusive);
+                }
+                // x > v AND x < v matches nothing
+                return empty ? range(attribute, equal, false, equal, false)
+                        : predicate(Operator.EQUALS, attribute, equal);
+            }
+            if (lower != null && upper != null) {
+                int cmp = order.compare(lower, upper);
+                if (cmp > 0 || (cmp == 0 && !(lowerInclusive && upperInclusive))) {
+                    return range(attribute, lower, false, lower, false);
+                }
+                if (lowerInclusive && upperInclusive && order.compare(lower, upper) == 0) {
+                    return predicate(Operator.EQUALS, attribute, lower);
+                }
+                return range(attribute, lower, lowerInclusive, upper, upperInclusive);
+            } else if (lower != null) {
+                return predicate(lowerInclusive ? Operator.GE : Operator.GT, attribute, lower);
+            } else {
+                return predicate(upperInclusive ? Operator.LE : Operator.LT, attribute, upper);
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Orders literals the way an index on a key of the given type orders the parsed keys, null if unknown
+    private static Comparator<String> literalOrder(Class<?> type) {
+        if (type == Integer.class || type == Double.class) {
+            return Comparator.comparingDouble(Double::parseDouble);
+        } else if (type == LocalDate.class) {
+            return Comparator.comparing(LocalDate::parse);
+        } else if (type == String.class) {
+            return Comparator.naturalOrder();
+        }
+        return null;
+    }
+
+    // A literal together with its parameter index and bound key, so that rewriting keeps prepared queries intact
+    private static class Bound {
+        final String literal;
+        final int parameter;
+        final Object key;
+
+        Bound(String literal, int parameter, Object key) {
+            this.literal = literal;
+            this.parameter = parameter;
+            this.key = key;
+        }
+
+        static Bound lower(QueryNode node) {
+            return new Bound(node.value, node.parameter, node.key);
+        }
+
+        static Bound upper(QueryNode node) {
+            return new Bound(node.secondValue, node.secondParameter, node.secondKey);
+        }
+    }
+
+    private static QueryNode predicate(Operator operator, String attribute, Bound bound) {
+        QueryNode node = new QueryNode(operator, attribute, bound.literal);
+        node.parameter = bound.parameter;
+        node.key = bound.key;
+        return node;
+    }
+
+    private static QueryNode range(String attribute, Bound lower, boolean lowerInclusive, Bound upper,
+                                   boolean upperInclusive) {
+        QueryNode node = predicate(Operator.RANGE, attribute, lower);
+        node.secondValue = upper.literal;
+        node.secondParameter = upper.parameter;
+        node.secondKey = upper.key;
+        node.lowerInclusive = lowerInclusive;
+        node.upperInclusive = upperInclusive;
+        return node;
+    }
+}
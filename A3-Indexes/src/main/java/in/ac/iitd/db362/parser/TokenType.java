@@ -1,5 +1,5 @@
 package in.ac.iitd.db362.parser;
 
 public enum TokenType {
-    LPAREN, RPAREN, AND, OR, NOT, EQ, LT, GT, NUMBER, STRING, IDENTIFIER, EOF
+    LPAREN, RPAREN, AND, OR, NOT, EQ, LT, GT, LE, GE, NE, COMMA, IN, BETWEEN, NUMBER, STRING, IDENTIFIER, PARAM, EOF
 }
@@ -5,6 +5,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // The tokenizer uses a regex with named capturing groups to extract tokens.
+// The Parser no longer uses it: Lexer scans the query in a single pass without allocating per token. This class is
+// kept as the baseline the Lexer is benchmarked against.
 public class Tokenizer {
 
     // Regex for tokens. Note that the order matters.
@@ -14,7 +16,13 @@ public class Tokenizer {
                     "(?<AND>AND)|" +
                     "(?<OR>OR)|" +
                     "(?<NOT>NOT)|" +
+                    "(?<IN>IN\\b)|" +
+                    "(?<BETWEEN>BETWEEN\\b)|" +
+                    "(?<COMMA>,)|" +
                     "(?<EQ>=)|" +
+                    "(?<NE>!=)|" +
+                    "(?<LE><=)|" +
+                    "(?<GE>>=)|" +
                     "(?<LT><)|" +
                     "(?<GT>>)|" +
                     "(?<NUMBER>\\d+(?:\\.\\d+)?)|" +
@@ -38,8 +46,20 @@ public class Tokenizer {
                     tokens.add(new Token(TokenType.OR, "OR"));
                 } else if (matcher.group("NOT") != null) {
                     tokens.add(new Token(TokenType.NOT, "NOT"));
+                } else if (matcher.group("IN") != null) {
+                    tokens.add(new Token(TokenType.IN, "IN"));
+                } else if (matcher.group("BETWEEN") != null) {
+                    tokens.add(new Token(TokenType.BETWEEN, "BETWEEN"));
+                } else if (matcher.group("COMMA") != null) {
+                    tokens.add(new Token(TokenType.COMMA, ","));
                 } else if (matcher.group("EQ") != null) {
                     tokens.add(new Token(TokenType.EQ, "="));
+                } else if (matcher.group("NE") != null) {
+                    tokens.add(new Token(TokenType.NE, "!="));
+                } else if (matcher.group("LE") != null) {
+                    tokens.add(new Token(TokenType.LE, "<="));
+                } else if (matcher.group("GE") != null) {
+                    tokens.add(new Token(TokenType.GE, ">="));
                 } else if (matcher.group("LT") != null) {
                     tokens.add(new Token(TokenType.LT, "<"));
                 } else if (matcher.group("GT") != null) {
@@ -0,0 +1,225 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.parser.Lexer;
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.parser.QueryNode;
+import in.ac.iitd.db362.parser.QueryRewriter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A query that is parsed once and executed many times with different parameter values, e.g.
+ *
+ *   PreparedQuery query = PreparedQuery.prepare("customer_id = ? AND 10 < amount < ?");
+ *   List<Integer> rows = query.execute(maxRowId, 42, 99.5);
+ *
+ * Preparing parses the template and resolves, for every predicate, the key type of the indexes on its attribute.
+ * Literals are converted to that type right away and each parameter learns the type it must be converted to. The
+ * first execution plans the query (see QueryPlanner) with its parameters unbound, and the plan is kept: executing
+ * only converts the parameter values, binds them into the plan's leaves and evaluates the plan. Nothing is
+ * tokenized, parsed, rewritten or planned again.
+ *
+ * The resolution and the plan are redone if indexes are added to, spilled from (see MemoryManager) or cleared from
+ * the catalog after preparing, or when the query is executed with another maxRowId. A query is prepared against one
+ * table's catalog (the default table's, unless given) and always executes against it.
+ */
+public class PreparedQuery {
+
+    private final String template;
+    private final Catalog catalog;
+    private final QueryNode tree;           // parsed and rewritten, literals not yet converted
+    private final int parameterCount;
+    private volatile Resolved resolved;
+
+    // The template resolved (and planned, for one maxRowId) against one generation of the catalog
+    private static class Resolved {
+        final long generation;
+        final QueryNode tree;               // literals converted to their key types
+        final Class<?>[] parameterTypes;
+        final int maxRowId;
+        final QueryPlanner.PlanNode plan;   // null until executed
+
+        Resolved(long generation, QueryNode tree, Class<?>[] parameterTypes, int maxRowId,
+                 QueryPlanner.PlanNode plan) {
+            this.generation = generation;
+            this.tree = tree;
+            this.parameterTypes = parameterTypes;
+            this.maxRowId = maxRowId;
+            this.plan = plan;
+        }
+    }
+
+    private PreparedQuery(String template, Catalog catalog, QueryNode tree, int parameterCount) {
+        this.template = template;
+        this.catalog = catalog;
+        this.tree = tree;
+        this.parameterCount = parameterCount;
+        this.resolved = resolve(-1);
+    }
+
+    /**
+     * Parses a query in which literals may be replaced by '?' parameters.
+     * @throws IllegalArgumentException if a predicate's attribute has no index, or a literal does not match its type
+     * @throws RuntimeException if the query does not parse
+     */
+    public static PreparedQuery prepare(String template) {
+        return prepare(Catalog.getInstance(), template);
+    }
+
+    /**
+     * Same as above, for a query on the table described by the given catalog.
+     */
+    public static PreparedQuery prepare(Catalog catalog, String template) {
+        Lexer lexer = new Lexer();
+        lexer.tokenize(template);
+        Parser parser = new Parser(lexer);
+        QueryNode tree = QueryRewriter.rewrite(parser.parseExpression(), catalog::getKeyType);
+        return new PreparedQuery(template, catalog, tree, parser.getParameterCount());
+    }
+
+    /**
+     * Binds the parameters, in order of appearance in the template, and evaluates the query.
+     * A parameter may be given as its key type or as a string; integral numbers are accepted for double attributes.
+     * @param maxRowId The maximum row ID (min is assumed to be 0).
+     * @return row IDs that satisfy the query, in ascending order
+     * @throws IllegalArgumentException on a wrong number of parameters, or a value that does not convert
+     */
+    public List<Integer> execute(int maxRowId, Object... parameters) {
+        if (parameters.length != parameterCount) {
+            throw new IllegalArgumentException("Query " + template + " takes " + parameterCount
+                    + " parameters but got " + parameters.length);
+        }
+        // the plan is made and evaluated under the same read lock, so no index is added or spilled in between
+        return catalog.withReadLock(() -> {
+            Resolved current = resolved;
+            if (current.generation != catalog.getGeneration() || current.plan == null
+                    || current.maxRowId != maxRowId) {
+                current = resolve(maxRowId);
+                resolved = current;
+            }
+            Class<?>[] parameterTypes = current.parameterTypes;
+            QueryPlanner.PlanNode plan = QueryPlanner.bind(current.plan, predicate -> {
+                if (predicate.parameter < 0 && predicate.secondParameter < 0) {
+                    return predicate;
+                }
+                QueryNode bound = predicate.copy();
+                bind(bound, parameterTypes, parameters);
+                return bound;
+            });
+            return QueryEvaluator.evaluatePlan(plan, maxRowId);
+        });
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * @return the key type each parameter is converted to
+     */
+    public Class<?>[] getParameterTypes() {
+        return resolved.parameterTypes.clone();
+    }
+
+    /* resolves the template against the current catalog, and plans it unless maxRowId is negative */
+    private Resolved resolve(int maxRowId) {
+        long generation = catalog.getGeneration();
+        QueryNode copy = tree.copy();
+        Class<?>[] parameterTypes = new Class<?>[parameterCount];
+        resolve(copy, catalog, parameterTypes);
+        QueryPlanner.PlanNode plan = maxRowId < 0 ? null : QueryPlanner.plan(copy, catalog, maxRowId);
+        return new Resolved(generation, copy, parameterTypes, maxRowId, plan);
+    }
+
+    private static void resolve(QueryNode node, Catalog catalog, Class<?>[] parameterTypes) {
+        if (node.operator == Operator.AND || node.operator == Operator.OR || node.operator == Operator.NOT) {
+            resolve(node.left, catalog, parameterTypes);
+            if (node.right != null) {
+                resolve(node.right, catalog, parameterTypes);
+            }
+            return;
+        }
+        Class<?> type = catalog.getKeyType(node.attribute);
+        if (type == null) {
+            throw new IllegalArgumentException("No index available on attribute " + node.attribute);
+        }
+        if (node.operator == Operator.IN) {
+            node.keys = new ArrayList<>();
+            for (String value : node.values) {
+                node.keys.add(convert(type, value, node.attribute));
+            }
+            return;
+        }
+        if (node.parameter >= 0) {
+            parameterTypes[node.parameter] = type;
+        } else {
+            node.key = convert(type, node.value, node.attribute);
+        }
+        if (node.operator == Operator.RANGE) {
+            if (node.secondParameter >= 0) {
+                parameterTypes[node.secondParameter] = type;
+            } else {
+                node.secondKey = convert(type, node.secondValue, node.attribute);
+            }
+        }
+    }
+
+    private static void bind(QueryNode node, Class<?>[] parameterTypes, Object[] parameters) {
+        if (node.left != null) {
+            bind(node.left, parameterTypes, parameters);
+        }
+        if (node.right != null) {
+            bind(node.right, parameterTypes, parameters);
+        }
+        if (node.parameter >= 0) {
+            node.key = convert(parameterTypes[node.parameter], parameters[node.parameter], node.attribute);
+            node.value = String.valueOf(node.key);
+        }
+        if (node.secondParameter >= 0) {
+            node.secondKey = convert(parameterTypes[node.secondParameter], parameters[node.secondParameter],
+                    node.attribute);
+            node.secondValue = String.valueOf(node.secondKey);
+        }
+    }
+
+    /* converts a literal or parameter value to the key type of the attribute's indexes */
+    private static Object convert(Class<?> type, Object value, String attribute) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for attribute " + attribute);
+        }
+        try {
+            if (type == Integer.class) {
+                if (value instanceof Integer) {
+                    return value;
+                } else if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+                    return Math.toIntExact(((Number) value).longValue());
+                } else if (value instanceof String) {
+                    return Integer.valueOf((String) value);
+                }
+            } else if (type == Double.class) {
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                } else if (value instanceof String) {
+                    return Double.valueOf((String) value);
+                }
+            } else if (type == LocalDate.class) {
+                if (value instanceof LocalDate) {
+                    return value;
+                } else if (value instanceof String) {
+                    return LocalDate.parse((String) value);
+                }
+            } else if (type == String.class && value instanceof String) {
+                return value;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Value " + value + " does not convert to " + type.getSimpleName()
+                    + " for attribute " + attribute, e);
+        }
+        throw new IllegalArgumentException("Value " + value + " of type " + value.getClass().getSimpleName()
+                + " does not convert to " + type.getSimpleName() + " for attribute " + attribute);
+    }
+}
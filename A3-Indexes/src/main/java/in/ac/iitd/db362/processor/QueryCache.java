@@ -0,0 +1,134 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.index.Bitmap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache of query results, keyed by the table and the canonical key of a plan node (see QueryPlanner), so
+ * that repeated queries and repeated subexpressions are answered without touching the indexes. All tables share
+ * the one memory budget.
+ *
+ * Results are kept as bitmaps and evicted least recently used first once their total size exceeds MEMORY_BUDGET.
+ * An entry remembers the table's catalog, its generation and the modification count of every attribute it reads: once an index
+ * on one of those attributes receives an insert or delete the entry is stale, and it is dropped on the next lookup.
+ */
+public class QueryCache {
+
+    // Approximate number of bytes the cached results may take. 0 disables caching.
+    public static long MEMORY_BUDGET = 64L << 20;
+
+    // Rough per entry overhead (map entry, key, bookkeeping) on top of the bitmap words
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static class Entry {
+        final Bitmap rows;
+        final Catalog catalog;
+        final long generation;
+        final Map<String, Long> modificationCounts;
+        final long bytes;
+
+        Entry(Bitmap rows, Catalog catalog, long generation, Map<String, Long> modificationCounts, long bytes) {
+            this.rows = rows;
+            this.catalog = catalog;
+            this.generation = generation;
+            this.modificationCounts = modificationCounts;
+            this.bytes = bytes;
+        }
+    }
+
+    // Access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @return a copy of the cached rows (the caller may modify it), or null if absent or stale
+     */
+    synchronized Bitmap get(Catalog catalog, String key, int maxRowId) {
+        String fullKey = catalog.getName() + "|" + maxRowId + "|" + key;
+        Entry entry = entries.get(fullKey);
+        if (entry != null && !isValid(entry, catalog)) {
+            remove(fullKey);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.rows.copy();
+    }
+
+    /**
+     * Caches a copy of the complete result of a subtree over the given attributes.
+     */
+    synchronized void put(Catalog catalog, String key, int maxRowId, Set<String> attributes, Bitmap rows) {
+        String fullKey = catalog.getName() + "|" + maxRowId + "|" + key;
+        long size = rows.wordCount() * 8L + key.length() * 2L + ENTRY_OVERHEAD;
+        if (size > MEMORY_BUDGET) {
+            return;
+        }
+        long generation = catalog.getGeneration();
+        Map<String, Long> counts = new HashMap<>();
+        for (String attribute : attributes) {
+            counts.put(attribute, catalog.getModificationCount(attribute));
+        }
+        remove(fullKey);
+        entries.put(fullKey, new Entry(rows.copy(), catalog, generation, counts, size));
+        bytes += size;
+
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > MEMORY_BUDGET && lru.hasNext()) {
+            bytes -= lru.next().bytes;
+            lru.remove();
+        }
+    }
+
+    /* stale once the table was dropped (and recreated), an index was added or removed, or an attribute modified */
+    private boolean isValid(Entry entry, Catalog catalog) {
+        if (entry.catalog != catalog || entry.generation != catalog.getGeneration()) {
+            return false;
+        }
+        for (Map.Entry<String, Long> count : entry.modificationCounts.entrySet()) {
+            if (catalog.getModificationCount(count.getKey()) != count.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remove(String fullKey) {
+        Entry removed = entries.remove(fullKey);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
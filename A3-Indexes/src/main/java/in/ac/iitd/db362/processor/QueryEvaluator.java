@@ -1,14 +1,25 @@
 package in.ac.iitd.db362.processor;
 
 import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.IndexAdvisor;
+import in.ac.iitd.db362.index.Bitmap;
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.IncludedColumns;
 import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.ScannableIndex;
 import in.ac.iitd.db362.parser.Operator;
 import in.ac.iitd.db362.parser.QueryNode;
+import in.ac.iitd.db362.parser.QueryRewriter;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnarTable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Starter code for Query Evaluator
@@ -17,6 +28,20 @@ public class QueryEvaluator {
 
     protected static final Logger logger = LogManager.getLogger();
 
+    // AND/OR nodes over fewer rows than this are evaluated on the calling thread.
+    public static volatile int PARALLEL_THRESHOLD = 1 << 16;
+
+    // Merges of large bitmaps are split into tasks of this many 64 bit words.
+    public static volatile int MERGE_CHUNK_WORDS = 1 << 12;
+
+    // Results of whole queries and of their subexpressions
+    static final QueryCache CACHE = new QueryCache();
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // Catalog the leaf being evaluated on this thread was planned against (see evaluateLeaf)
+    private static final ThreadLocal<Catalog> PLANNED_CATALOG = new ThreadLocal<>();
+
     /**
      * Note: do not change or remove this function! This method **must** be called from the evaluateQuery() method
      * when processing a leaf (predicate) node.
@@ -24,16 +49,24 @@ public class QueryEvaluator {
      * @return row IDs for which the predicate holds.
      */
     private static List<Integer> evaluatePredicate(QueryNode node) {
-        logger.info("Evaluating predicate: " + node.attribute + " " + node.operator + " " + node.value
-                + (node.operator == Operator.RANGE ? " and " + node.secondValue : ""));
+        logger.debug("Evaluating predicate: {} {} {}{}", node.attribute, node.operator, node.value,
+                node.operator == Operator.RANGE ? " and " + node.secondValue : "");
 
         //Let's get an index to work with
-        Catalog catalog = Catalog.getInstance();
-        Index index = catalog.getIndex(node.attribute, node.operator);
+        Catalog catalog = PLANNED_CATALOG.get();
+        Index index = catalog.getIndex(node);
+        if (index == null) {
+            throw new IllegalStateException("No index available on attribute " + node.attribute);
+        }
 
-        logger.info("Using " + index.prettyName());
+        logger.debug("Using {}", index::prettyName);
 
-        return index.evaluate(node);
+        List<Integer> rowIds = index.evaluate(node);
+        IndexAdvisor advisor = catalog.getAdvisor();
+        if (advisor != null) {
+            advisor.record(node, index, rowIds.size());
+        }
+        return rowIds;
     }
 
     /**
@@ -44,49 +77,350 @@ public class QueryEvaluator {
      * - OR: Union of left and right results.
      * - NOT: Complement of the result (assume row IDs from 0 to maxRowId).
      *
+     * The tree is first planned by QueryPlanner: AND/OR chains are flattened and ordered by estimated result size.
+     * Each operand is then only evaluated against the rows that can still change the result (see evaluatePlan).
+     *
+     * The query runs against the default table; see evaluateQuery(Catalog, QueryNode, int) for other tables.
+     *
      * @param node The current query node.
      * @param maxRowId The maximum row ID (min is assumed to be 0).
-     * @return A list of row IDs that satisfy the query.
+     * @return A list of row IDs that satisfy the query, in ascending order.
      */
     public static List<Integer> evaluateQuery(QueryNode node, int maxRowId) {
+        return evaluateQuery(Catalog.getInstance(), node, maxRowId);
+    }
+
+    /**
+     * Same as above, against the table described by the given catalog. Queries on different tables only share the
+     * thread pool and the QueryCache; loading rows into one table never holds up queries on another.
+     */
+    public static List<Integer> evaluateQuery(Catalog catalog, QueryNode node, int maxRowId) {
         // Note: When traversing the parse tree, for each leaf node you must call
         // the evalautePredicate(node) method that is provided.
-        // TODO: Implement me!
         if (node == null) {
             return Collections.emptyList();
         }
 
-        switch (node.operator) {
-            case AND:
-                // Use TreeSet to optimize intersection
-                Set<Integer> leftResult = new TreeSet<>(evaluateQuery(node.left, maxRowId));
-                leftResult.retainAll(evaluateQuery(node.right, maxRowId));
-                return new ArrayList<>(leftResult);
-
-            case OR:
-                // Use HashSet to optimize union
-                Set<Integer> unionSet = new HashSet<>(evaluateQuery(node.left, maxRowId));
-                unionSet.addAll(evaluateQuery(node.right, maxRowId));
-                return new ArrayList<>(unionSet);
-
-            case NOT:
-                // Use boolean array for efficient NOT operation
-                boolean[] present = new boolean[maxRowId + 1];
-                for (int id : evaluateQuery(node.left, maxRowId)) {
-                    present[id] = true;
+        // rows appended to a followed file are inserted under the write lock, never halfway through a query
+        return catalog.withReadLock(() -> {
+            QueryNode rewritten = QueryRewriter.rewrite(node, catalog::getKeyType);
+            logger.debug("Rewritten query on {}: {}", catalog.getName(), rewritten);
+            QueryPlanner.PlanNode plan = QueryPlanner.plan(rewritten, catalog, maxRowId);
+            logger.debug("Query plan: {}", plan);
+            return evaluatePlan(plan, maxRowId);
+        });
+    }
+
+    /**
+     * Evaluates a plan made by QueryPlanner, e.g. the kept plan of a PreparedQuery with its parameters bound. The
+     * caller holds the read lock of the plan's catalog.
+     * @return row IDs that satisfy the plan, in ascending order
+     */
+    static List<Integer> evaluatePlan(QueryPlanner.PlanNode plan, int maxRowId) {
+        Bitmap result = evaluatePlan(plan, null, maxRowId);
+        List<Integer> rowIds = new ArrayList<>(result.cardinality());
+        result.forEach(rowIds::add);
+        return rowIds;
+    }
+
+    /**
+     * Same as evaluateQuery(Catalog, QueryNode, int), but returns the values of the given columns for every matching
+     * row, in rowId order (null where a row has no value). A column is read from a covering index that carries it
+     * (see IncludedColumns) when there is one, so a query whose predicates have indexes and whose columns are indexed
+     * or included is answered by the indexes alone (an index-only scan). Other columns are read from the retained
+     * columns.
+     * @throws IllegalStateException if neither a covering index nor a retained column holds one of the columns
+     */
+    public static List<Object[]> evaluateQuery(Catalog catalog, QueryNode node, int maxRowId, List<String> columns) {
+        return catalog.withReadLock(() -> {
+            // per column: the covering index that carries it (the ones carrying the most columns first), or null
+            List<IncludedColumns> covering = new ArrayList<>();
+            for (ScannableIndex<?> index : catalog.getCoveringIndexes()) {
+                covering.add(index.getIncludedColumns());
+            }
+            covering.sort(Comparator.comparingLong(
+                    c -> -columns.stream().filter(name -> c.indexOf(name) >= 0).count()));
+            IncludedColumns[] sources = new IncludedColumns[columns.size()];
+            Column[] retained = new Column[columns.size()];
+            ColumnarTable table = catalog.getTable();
+            for (int i = 0; i < columns.size(); i++) {
+                String name = columns.get(i);
+                for (IncludedColumns included : covering) {
+                    if (included.indexOf(name) >= 0) {
+                        sources[i] = included;
+                        break;
+                    }
+                }
+                // also the fallback for rows a covering index does not hold (its key was missing)
+                retained[i] = table == null ? null : table.getColumn(name);
+                if (sources[i] == null && retained[i] == null) {
+                    throw new IllegalStateException("No covering index or retained column holds " + name);
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Reading {} {}", columns, Arrays.stream(sources).allMatch(Objects::nonNull)
+                        ? "from covering indexes only" : "from covering indexes and retained columns");
+            }
+
+            List<Object[]> rows = new ArrayList<>();
+            for (int rowId : evaluateQuery(catalog, node, maxRowId)) {
+                Object[] row = new Object[columns.size()];
+                for (int i = 0; i < row.length; i++) {
+                    if (sources[i] != null) {
+                        row[i] = sources[i].get(rowId, sources[i].indexOf(columns.get(i)));
+                    }
+                    if (row[i] == null && retained[i] != null && rowId < retained[i].size()) {
+                        row[i] = retained[i].get(rowId);
+                    }
                 }
+                rows.add(row);
+            }
+            return rows;
+        });
+    }
 
-                List<Integer> complementList = new ArrayList<>();
-                for (int i = 0; i <= maxRowId; i++) {
-                    if (!present[i]) {
-                        complementList.add(i);
+    /**
+     * Evaluates a plan node restricted to the given candidate rows.
+     * - AND: conjuncts run most selective first, each one only against the rows that survived the previous ones;
+     *   NOT conjuncts subtract from the candidates instead of materializing a complement. Stops once empty.
+     * - OR: disjuncts run against the rows that are not in the result yet. Stops once no candidate is left.
+     * - Leaf: an equality predicate with a bitmap index is tested bit by bit when there are fewer candidates than
+     *   its access path would touch; otherwise it is evaluated through evaluatePredicate() and intersected.
+     * AND/OR nodes over at least PARALLEL_THRESHOLD rows evaluate their operands as fork-join tasks instead, and
+     * merge the results in word ranges of MERGE_CHUNK_WORDS.
+     * Complete results (of subtrees evaluated against all rows, and of every predicate) go to the QueryCache, and a
+     * cached result is used instead of evaluating the subtree again.
+     *
+     * @param candidates rows that may be in the result, or null for all rows 0..maxRowId
+     * @return the matching rows (a subset of candidates); never shared with the caller's candidates
+     */
+    private static Bitmap evaluatePlan(QueryPlanner.PlanNode plan, Bitmap candidates, int maxRowId) {
+        Bitmap cached = CACHE.get(plan.catalog, plan.key, maxRowId);
+        if (cached != null) {
+            if (candidates != null) {
+                cached.and(candidates);
+            }
+            return cached;
+        }
+        Bitmap result = evaluateOperator(plan, candidates, maxRowId);
+        // Only complete results can be reused; leaves cache theirs before intersecting with the candidates
+        if (candidates == null && !plan.isLeaf()) {
+            CACHE.put(plan.catalog, plan.key, maxRowId, plan.attributes, result);
+        }
+        return result;
+    }
+
+    private static Bitmap evaluateOperator(QueryPlanner.PlanNode plan, Bitmap candidates, int maxRowId) {
+        switch (plan.operator) {
+            case AND: {
+                if (runsInParallel(plan, maxRowId)) {
+                    return evaluateAndInParallel(plan, candidates, maxRowId);
+                }
+                Bitmap current = candidates;
+                List<QueryPlanner.PlanNode> negated = new ArrayList<>();
+                for (QueryPlanner.PlanNode child : plan.children) {
+                    if (child.operator == Operator.NOT) {
+                        negated.add(child.children.get(0));
+                        continue;
+                    }
+                    current = evaluatePlan(child, current, maxRowId);
+                    if (current.isEmpty()) {
+                        return current;
+                    }
+                }
+                if (current == null) {
+                    current = allRows(maxRowId);
+                } else if (current == candidates) {
+                    current = candidates.copy();
+                }
+                for (QueryPlanner.PlanNode child : negated) {
+                    current.andNot(evaluatePlan(child, current, maxRowId));
+                    if (current.isEmpty()) {
+                        return current;
                     }
                 }
-                return complementList;
+                return current;
+            }
+            case OR: {
+                if (runsInParallel(plan, maxRowId)) {
+                    Bitmap result = new Bitmap(maxRowId + 1);
+                    merge(Operator.OR, result, evaluateAll(plan.children, candidates, maxRowId));
+                    return result;
+                }
+                Bitmap remaining = candidates == null ? allRows(maxRowId) : candidates.copy();
+                Bitmap result = new Bitmap(maxRowId + 1);
+                for (QueryPlanner.PlanNode child : plan.children) {
+                    Bitmap matched = evaluatePlan(child, remaining, maxRowId);
+                    result.or(matched);
+                    remaining.andNot(matched);
+                    if (remaining.isEmpty()) {
+                        break;
+                    }
+                }
+                return result;
+            }
+            case NOT: {
+                Bitmap base = candidates == null ? allRows(maxRowId) : candidates.copy();
+                base.andNot(evaluatePlan(plan.children.get(0), base, maxRowId));
+                return base;
+            }
+            default: {
+                if (candidates != null && canProbe(plan, candidates)) {
+                    Bitmap result = candidates.copy();
+                    ((BitmapIndex<?>) plan.accessPath.getIndex()).retainMatching(plan.predicate, result);
+                    return result;
+                }
+                Bitmap result = new Bitmap(maxRowId + 1);
+                for (int rowId : evaluateLeaf(plan)) {
+                    result.set(rowId);
+                }
+                CACHE.put(plan.catalog, plan.key, maxRowId, plan.attributes, result);
+                if (candidates != null) {
+                    result.and(candidates);
+                }
+                return result;
+            }
+        }
+    }
+
+    /*
+     * evaluatePredicate() on the leaf's predicate, resolving its catalog from the plan instead of by table name:
+     * Catalog.getInstance() would create the catalog of a table dropped while the query runs again
+     */
+    private static List<Integer> evaluateLeaf(QueryPlanner.PlanNode leaf) {
+        Catalog previous = PLANNED_CATALOG.get();
+        PLANNED_CATALOG.set(leaf.catalog);
+        try {
+            return evaluatePredicate(leaf.predicate);
+        } finally {
+            PLANNED_CATALOG.set(previous);
+        }
+    }
+
+    private static boolean runsInParallel(QueryPlanner.PlanNode plan, int maxRowId) {
+        return plan.children.size() > 1 && maxRowId + 1L >= PARALLEL_THRESHOLD;
+    }
+
+    /*
+     * Parallel AND: the most selective conjunct runs first on its own so that the others still see a narrowed
+     * candidate set (and bitmap probes stay cheap); the remaining conjuncts, NOTs included, then run concurrently.
+     */
+    private static Bitmap evaluateAndInParallel(QueryPlanner.PlanNode plan, Bitmap candidates, int maxRowId) {
+        List<QueryPlanner.PlanNode> positive = new ArrayList<>();
+        List<QueryPlanner.PlanNode> negated = new ArrayList<>();
+        for (QueryPlanner.PlanNode child : plan.children) {
+            if (child.operator == Operator.NOT) {
+                negated.add(child.children.get(0));
+            } else {
+                positive.add(child);
+            }
+        }
+        Bitmap current;
+        if (positive.isEmpty()) {
+            current = candidates == null ? allRows(maxRowId) : candidates.copy();
+        } else {
+            current = evaluatePlan(positive.remove(0), candidates, maxRowId);
+            if (current.isEmpty()) {
+                return current;
+            }
+        }
+        List<QueryPlanner.PlanNode> rest = new ArrayList<>(positive);
+        rest.addAll(negated);
+        List<Bitmap> results = evaluateAll(rest, current, maxRowId);
+        merge(Operator.AND, current, results.subList(0, positive.size()));
+        merge(Operator.NOT, current, results.subList(positive.size(), results.size()));
+        return current;
+    }
 
-            default:
-                // Leaf node: Call evaluatePredicate
-                return evaluatePredicate(node);
+    /* evaluates independent plan nodes concurrently against the same (read only) candidates */
+    private static List<Bitmap> evaluateAll(List<QueryPlanner.PlanNode> plans, Bitmap candidates, int maxRowId) {
+        List<ForkJoinTask<Bitmap>> tasks = new ArrayList<>(plans.size());
+        for (QueryPlanner.PlanNode child : plans) {
+            tasks.add(ForkJoinTask.adapt(() -> evaluatePlan(child, candidates, maxRowId)));
         }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            POOL.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        List<Bitmap> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Bitmap> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /* target = target AND/OR/AND NOT each source, split into word ranges that are merged concurrently */
+    private static void merge(Operator operator, Bitmap target, List<Bitmap> sources) {
+        if (sources.isEmpty()) {
+            return;
+        }
+        if (operator == Operator.OR) {
+            for (Bitmap source : sources) {
+                target.ensureWords(source.wordCount());
+            }
+        }
+        MergeTask task = new MergeTask(operator, target, sources, 0, target.wordCount());
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            POOL.invoke(task);
+        }
+    }
+
+    private static class MergeTask extends RecursiveAction {
+        private final Operator operator;
+        private final Bitmap target;
+        private final List<Bitmap> sources;
+        private final int fromWord;
+        private final int toWord;
+
+        MergeTask(Operator operator, Bitmap target, List<Bitmap> sources, int fromWord, int toWord) {
+            this.operator = operator;
+            this.target = target;
+            this.sources = sources;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+        }
+
+        @Override
+        protected void compute() {
+            if (toWord - fromWord > Math.max(1, MERGE_CHUNK_WORDS)) {
+                int mid = (fromWord + toWord) >>> 1;
+                invokeAll(new MergeTask(operator, target, sources, fromWord, mid),
+                        new MergeTask(operator, target, sources, mid, toWord));
+                return;
+            }
+            for (Bitmap source : sources) {
+                switch (operator) {
+                    case AND:
+                        target.and(source, fromWord, toWord);
+                        break;
+                    case OR:
+                        target.or(source, fromWord, toWord);
+                        break;
+                    case NOT:
+                        target.andNot(source, fromWord, toWord);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Not a merge operator: " + operator);
+                }
+            }
+        }
+    }
+
+    /* probing pays off when the predicate has a bitmap and there are fewer candidates than its lookup would touch */
+    private static boolean canProbe(QueryPlanner.PlanNode leaf, Bitmap candidates) {
+        if ((leaf.operator != Operator.EQUALS && leaf.operator != Operator.IN) || leaf.accessPath == null
+                || !(leaf.accessPath.getIndex() instanceof BitmapIndex)) {
+            return false;
+        }
+        return candidates.cardinality() < leaf.accessPath.getCost();
+    }
+
+    private static Bitmap allRows(int maxRowId) {
+        Bitmap all = new Bitmap(maxRowId + 1);
+        all.set(0, maxRowId + 1);
+        return all;
     }
 }
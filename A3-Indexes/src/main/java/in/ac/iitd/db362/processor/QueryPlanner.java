@@ -0,0 +1,362 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.AccessPath;
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.CostModel;
+import in.ac.iitd.db362.index.CompositeKey;
+import in.ac.iitd.db362.index.bplustree.CompositeBPlusTreeIndex;
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.QueryNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Planning pass over a parse tree, run before evaluation.
+ *
+ * Nested AND and OR chains are flattened into a single node with many children, and every node gets an estimate of
+ * its result size from the catalog's cost model (children are assumed independent). Conjuncts are ordered most
+ * selective first, so that the evaluator can narrow the candidate set early and stop as soon as it is empty.
+ * Disjuncts are ordered least selective first, so that the rows still to be found shrink as fast as possible.
+ * Every node also gets a canonical key, under which the evaluator caches its result (see QueryCache).
+ * Plans are made against the catalog of one table, and every node carries that catalog so that evaluatePredicate()
+ * looks the predicate up in it.
+ * Conjuncts that are equalities on a prefix of a composite index's attributes, optionally followed by a range on the
+ * next attribute, are replaced by a single RANGE leaf on the index's attribute set whose bounds are CompositeKeys,
+ * when the cost model finds the one range scan cheaper than their separate lookups.
+ */
+public class QueryPlanner {
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * A node of the plan: a predicate (leaf), a flattened AND/OR with its children in evaluation order, or a NOT.
+     */
+    static class PlanNode {
+        final Operator operator;
+        final Catalog catalog;
+        final QueryNode predicate;      // leaves only, with its table set to the catalog's
+        final AccessPath accessPath;    // leaves only, null if the attribute has no index
+        final List<PlanNode> children = new ArrayList<>();
+        final Set<String> attributes = new HashSet<>();  // attributes read by this subtree
+        double estimatedRows;
+        String key;                     // the same for equivalent subtrees, whatever the order of their operands
+
+        PlanNode(Operator operator, Catalog catalog, QueryNode predicate, AccessPath accessPath) {
+            this.operator = operator;
+            this.catalog = catalog;
+            this.predicate = predicate;
+            this.accessPath = accessPath;
+        }
+
+        boolean isLeaf() {
+            return predicate != null;
+        }
+
+        @Override
+        public String toString() {
+            String estimate = " ~" + String.format("%.1f", estimatedRows);
+            if (isLeaf()) {
+                return predicate + estimate;
+            }
+            return operator + children.toString() + estimate;
+        }
+    }
+
+    /**
+     * Builds the plan for the given parse tree against the default table's catalog.
+     * @param maxRowId The maximum row ID (min is assumed to be 0).
+     */
+    static PlanNode plan(QueryNode node, int maxRowId) {
+        return plan(node, Catalog.getInstance(), maxRowId);
+    }
+
+    /**
+     * Builds the plan for the given parse tree against the given table's catalog.
+     * @param maxRowId The maximum row ID (min is assumed to be 0).
+     */
+    static PlanNode plan(QueryNode node, Catalog catalog, int maxRowId) {
+        double totalRows = maxRowId + 1.0;
+        switch (node.operator) {
+            case AND: {
+                PlanNode plan = new PlanNode(Operator.AND, catalog, null, null);
+                flatten(node, Operator.AND, plan.children, catalog, maxRowId);
+                useCompositeIndexes(plan.children, catalog, totalRows);
+                if (plan.children.size() == 1) {
+                    return plan.children.get(0);
+                }
+                double selectivity = 1;
+                for (PlanNode child : plan.children) {
+                    selectivity *= child.estimatedRows / totalRows;
+                }
+                plan.estimatedRows = selectivity * totalRows;
+                plan.children.sort(Comparator.comparingDouble(c -> c.estimatedRows));
+                deriveKey(plan);
+                return plan;
+            }
+            case OR: {
+                PlanNode plan = new PlanNode(Operator.OR, catalog, null, null);
+                flatten(node, Operator.OR, plan.children, catalog, maxRowId);
+                double missed = 1;
+                for (PlanNode child : plan.children) {
+                    missed *= 1 - child.estimatedRows / totalRows;
+                }
+                plan.estimatedRows = (1 - missed) * totalRows;
+                plan.children.sort(Comparator.comparingDouble(c -> -c.estimatedRows));
+                deriveKey(plan);
+                return plan;
+            }
+            case NOT: {
+                PlanNode plan = new PlanNode(Operator.NOT, catalog, null, null);
+                PlanNode child = plan(node.left, catalog, maxRowId);
+                plan.children.add(child);
+                plan.estimatedRows = totalRows - child.estimatedRows;
+                deriveKey(plan);
+                return plan;
+            }
+            default: {
+                QueryNode predicate = node;
+                if (!catalog.getName().equals(node.table)) {
+                    predicate = node.copy();
+                    predicate.table = catalog.getName();
+                }
+                AccessPath path = catalog.getAccessPath(predicate);
+                PlanNode plan = new PlanNode(node.operator, catalog, predicate, path);
+                plan.estimatedRows = path == null ? totalRows : Math.min(totalRows, path.getEstimatedRows());
+                plan.attributes.add(node.attribute);
+                plan.key = node.toString();
+                return plan;
+            }
+        }
+    }
+
+    /**
+     * Copy of the plan whose leaves carry the predicates returned by the binder (e.g. with the parameters of a
+     * prepared query bound to values), keyed again so that results of different bindings are cached apart. Access
+     * paths, estimates and the order of operands are kept. Subtrees the binder does not change are shared.
+     */
+    static PlanNode bind(PlanNode plan, UnaryOperator<QueryNode> binder) {
+        if (plan.isLeaf()) {
+            QueryNode predicate = binder.apply(plan.predicate);
+            if (predicate == plan.predicate) {
+                return plan;
+            }
+            PlanNode bound = new PlanNode(plan.operator, plan.catalog, predicate, plan.accessPath);
+            bound.estimatedRows = plan.estimatedRows;
+            bound.attributes.addAll(plan.attributes);
+            bound.key = predicate.toString();
+            return bound;
+        }
+        PlanNode bound = new PlanNode(plan.operator, plan.catalog, null, null);
+        boolean changed = false;
+        for (PlanNode child : plan.children) {
+            PlanNode boundChild = bind(child, binder);
+            changed |= boundChild != child;
+            bound.children.add(boundChild);
+        }
+        if (!changed) {
+            return plan;
+        }
+        bound.estimatedRows = plan.estimatedRows;
+        deriveKey(bound);
+        return bound;
+    }
+
+    /* replaces conjuncts by composite index ranges, best match first, while that is cheaper */
+    private static void useCompositeIndexes(List<PlanNode> conjuncts, Catalog catalog, double totalRows) {
+        List<CompositeBPlusTreeIndex> indexes = catalog.getCompositeIndexes();
+        while (!indexes.isEmpty()) {
+            CompositeMatch best = null;
+            for (CompositeBPlusTreeIndex index : indexes) {
+                CompositeMatch match = match(index, conjuncts, catalog, totalRows);
+                if (match != null && (best == null || match.saving() > best.saving())) {
+                    best = match;
+                }
+            }
+            if (best == null) {
+                return;
+            }
+            conjuncts.removeAll(best.covered);
+            conjuncts.add(best.plan);
+        }
+    }
+
+    /* conjuncts answered by one range scan of a composite index */
+    private static class CompositeMatch {
+        final List<PlanNode> covered = new ArrayList<>();
+        PlanNode plan;
+        double cost;
+        double separateCost;
+
+        double saving() {
+            return separateCost - cost;
+        }
+    }
+
+    /*
+     * Equalities on the longest prefix of the index's attributes, then at most one lower and one upper bound on the
+     * next attribute. Returns null unless at least two conjuncts match and the range scan is the cheaper way.
+     */
+    private static CompositeMatch match(CompositeBPlusTreeIndex index, List<PlanNode> conjuncts, Catalog catalog,
+                                        double totalRows) {
+        List<String> attributes = index.getAttributes();
+        CompositeMatch match = new CompositeMatch();
+        List<Object> prefix = new ArrayList<>();
+        int i = 0;
+        for (; i < attributes.size(); i++) {
+            PlanNode equality = null;
+            for (PlanNode conjunct : conjuncts) {
+                if (conjunct.operator == Operator.EQUALS && isComponent(conjunct, attributes.get(i))) {
+                    equality = conjunct;
+                    break;
+                }
+            }
+            Object value = equality == null ? null : component(index, i, equality.predicate, false);
+            if (value == null) {
+                break;
+            }
+            prefix.add(value);
+            match.covered.add(equality);
+        }
+
+        List<Object> lower = new ArrayList<>(prefix);
+        List<Object> upper = new ArrayList<>(prefix);
+        boolean lowerInclusive = true;
+        boolean upperInclusive = true;
+        if (i < attributes.size()) {
+            boolean hasLower = false;
+            boolean hasUpper = false;
+            for (PlanNode conjunct : conjuncts) {
+                if (!isComponent(conjunct, attributes.get(i))) {
+                    continue;
+                }
+                QueryNode predicate = conjunct.predicate;
+                boolean lowerBound = conjunct.operator == Operator.GT || conjunct.operator == Operator.GE
+                        || conjunct.operator == Operator.RANGE;
+                boolean upperBound = conjunct.operator == Operator.LT || conjunct.operator == Operator.LE
+                        || conjunct.operator == Operator.RANGE;
+                if ((!lowerBound && !upperBound) || (lowerBound && hasLower) || (upperBound && hasUpper)) {
+                    continue;
+                }
+                Object low = lowerBound ? component(index, i, predicate, false) : null;
+                Object high = conjunct.operator == Operator.RANGE ? component(index, i, predicate, true)
+                        : upperBound ? component(index, i, predicate, false) : null;
+                if ((lowerBound && low == null) || (upperBound && high == null)) {
+                    continue;
+                }
+                if (lowerBound) {
+                    lower.add(low);
+                    lowerInclusive = conjunct.operator == Operator.GE
+                            || (conjunct.operator == Operator.RANGE && predicate.lowerInclusive);
+                    hasLower = true;
+                }
+                if (upperBound) {
+                    upper.add(high);
+                    upperInclusive = conjunct.operator == Operator.LE
+                            || (conjunct.operator == Operator.RANGE && predicate.upperInclusive);
+                    hasUpper = true;
+                }
+                match.covered.add(conjunct);
+            }
+        }
+        if (match.covered.size() < 2) {
+            return null;
+        }
+
+        // bounds never equal a key: an inclusive lower bound sorts before its extensions, an exclusive one after
+        CompositeKey start = lowerInclusive ? CompositeKey.lowerBound(lower.toArray())
+                : CompositeKey.upperBound(lower.toArray());
+        CompositeKey end = upperInclusive ? CompositeKey.upperBound(upper.toArray())
+                : CompositeKey.lowerBound(upper.toArray());
+        QueryNode predicate = match.covered.get(0).predicate.copy();
+        predicate.operator = Operator.RANGE;
+        predicate.attribute = index.getAttribute();
+        predicate.value = start.toString();
+        predicate.secondValue = end.toString();
+        predicate.key = start;
+        predicate.secondKey = end;
+        predicate.lowerInclusive = true;
+        predicate.upperInclusive = true;
+        predicate.parameter = -1;
+        predicate.secondParameter = -1;
+        predicate.values = null;
+        predicate.keys = null;
+
+        // conjuncts are assumed independent, as for AND
+        double selectivity = 1;
+        match.separateCost = 0;
+        for (PlanNode conjunct : match.covered) {
+            selectivity *= conjunct.estimatedRows / totalRows;
+            match.separateCost += conjunct.accessPath == null ? Double.POSITIVE_INFINITY
+                    : conjunct.accessPath.getCost();
+        }
+        double rows = selectivity * totalRows;
+        match.cost = CostModel.lookupCost(index, Operator.RANGE, index.getStatistics(), rows);
+        if (!(match.cost < match.separateCost)) {
+            return null;
+        }
+
+        PlanNode plan = new PlanNode(Operator.RANGE, catalog, predicate, catalog.getAccessPath(predicate));
+        plan.estimatedRows = rows;
+        plan.attributes.add(predicate.attribute);
+        for (PlanNode conjunct : match.covered) {
+            plan.attributes.addAll(conjunct.attributes);
+        }
+        plan.key = predicate.toString();
+        match.plan = plan;
+        return match;
+    }
+
+    private static boolean isComponent(PlanNode conjunct, String attribute) {
+        return conjunct.isLeaf() && attribute.equals(conjunct.predicate.attribute)
+                && !conjunct.predicate.hasUnboundParameter();
+    }
+
+    /* value (or secondValue) of the predicate as a key component of the i-th attribute, null if it does not convert */
+    private static Object component(CompositeBPlusTreeIndex index, int i, QueryNode predicate, boolean second) {
+        Object key = second ? predicate.secondKey : predicate.key;
+        if (index.getTypes().get(i).isInstance(key)) {
+            return key;
+        }
+        String literal = second ? predicate.secondValue : predicate.value;
+        if (literal == null) {
+            return null;
+        }
+        try {
+            return index.parseComponent(i, literal);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /* key of an AND/OR/NOT: its operator over the sorted keys of its children */
+    private static void deriveKey(PlanNode plan) {
+        List<String> keys = new ArrayList<>();
+        for (PlanNode child : plan.children) {
+            keys.add(child.key);
+            plan.attributes.addAll(child.attributes);
+        }
+        if (plan.operator == Operator.NOT) {
+            plan.key = "NOT " + keys.get(0);
+        } else {
+            keys.sort(null);
+            plan.key = "(" + String.join(" " + plan.operator + " ", keys) + ")";
+        }
+    }
+
+    /* collects the operands of a chain of the same boolean operator, e.g. ((a AND b) AND c) -> [a, b, c] */
+    private static void flatten(QueryNode node, Operator operator, List<PlanNode> operands, Catalog catalog,
+                                int maxRowId) {
+        if (node.operator == operator) {
+            flatten(node.left, operator, operands, catalog, maxRowId);
+            flatten(node.right, operator, operands, catalog, maxRowId);
+        } else {
+            operands.add(plan(node, catalog, maxRowId));
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package in.ac.iitd.db362.storage;
+
+import in.ac.iitd.db362.index.Bitmap;
+import in.ac.iitd.db362.index.IndexStatistics;
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.QueryNode;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of one column, stored as a primitive array indexed by rowId: int[] for integers and dates (as epoch
+ * days), double[] for doubles, and int[] codes into a dictionary for strings.
+ *
+ * Predicates are evaluated by scan(), a single loop over the array per predicate, so an attribute can be queried
+ * without an index. Values that did not convert to the column's type are remembered in an invalid bitmap and never
+ * match.
+ */
+public class Column {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String name;
+    private final Class<?> type;    // Integer, Double, LocalDate or String, as for the indexes
+
+    private int[] ints;             // Integer values, LocalDate epoch days, or String dictionary codes
+    private double[] doubles;       // Double values
+    private int size;
+
+    private List<String> dictionary;          // code -> string
+    private Map<String, Integer> codes;       // string -> code
+
+    private final Bitmap invalid = new Bitmap(0);
+    private int invalidCount;
+    private Object minKey;
+    private Object maxKey;
+
+    // distinct values are counted lazily, and recounted once the column has grown
+    private int distinctValues;
+    private int distinctValuesSize = -1;
+
+    public Column(String name, Class<?> type) {
+        if (type != Integer.class && type != Double.class && type != LocalDate.class && type != String.class) {
+            throw new IllegalArgumentException("Unsupported column type " + type.getSimpleName());
+        }
+        this.name = name;
+        this.type = type;
+        if (type == Double.class) {
+            doubles = new double[INITIAL_CAPACITY];
+        } else {
+            ints = new int[INITIAL_CAPACITY];
+        }
+        if (type == String.class) {
+            dictionary = new ArrayList<>();
+            codes = new HashMap<>();
+        }
+    }
+
+    /**
+     * Appends the value of the next row. A value that does not convert to the column's type is kept as invalid.
+     * @return false if the value was invalid
+     */
+    public boolean append(String raw) {
+        Object value;
+        try {
+            value = convert(raw);
+        } catch (RuntimeException e) {
+            value = null;
+        }
+        return appendKey(value);
+    }
+
+    /**
+     * Same as append() for a value already converted to the column's type; null is kept as invalid.
+     * @return false if the value was invalid
+     */
+    public boolean appendKey(Object value) {
+        if (size == (doubles != null ? doubles.length : ints.length)) {
+            grow();
+        }
+        int row = size++;
+        if (value == null) {
+            invalid.set(row);
+            invalidCount++;
+            return false;
+        }
+        if (type == Integer.class) {
+            ints[row] = (Integer) value;
+        } else if (type == Double.class) {
+            doubles[row] = (Double) value;
+        } else if (type == LocalDate.class) {
+            ints[row] = Math.toIntExact(((LocalDate) value).toEpochDay());
+        } else {
+            ints[row] = codes.computeIfAbsent((String) value, s -> {
+                dictionary.add(s);
+                return dictionary.size() - 1;
+            });
+        }
+        if (minKey == null || compare(value, minKey) < 0) {
+            minKey = value;
+        }
+        if (maxKey == null || compare(value, maxKey) > 0) {
+            maxKey = value;
+        }
+        return true;
+    }
+
+    /**
+     * Same as appendKey() for the value of an Integer column, or the epoch day of a LocalDate column, without boxing
+     * it (only a new minimum or maximum is).
+     */
+    public void appendInt(int value) {
+        if (type != Integer.class && type != LocalDate.class) {
+            throw new IllegalStateException("Column " + name + " of type " + type.getSimpleName() + " holds no ints");
+        }
+        if (size == ints.length) {
+            grow();
+        }
+        ints[size++] = value;
+        if (minKey == null || value < intValue(minKey)) {
+            minKey = intKey(value);
+        }
+        if (maxKey == null || value > intValue(maxKey)) {
+            maxKey = intKey(value);
+        }
+    }
+
+    /**
+     * Same as appendKey() for the value of a Double column, without boxing it (only a new minimum or maximum is).
+     */
+    public void appendDouble(double value) {
+        if (type != Double.class) {
+            throw new IllegalStateException("Column " + name + " of type " + type.getSimpleName() + " holds no doubles");
+        }
+        if (size == doubles.length) {
+            grow();
+        }
+        doubles[size++] = value;
+        if (minKey == null || Double.compare(value, (Double) minKey) < 0) {
+            minKey = value;
+        }
+        if (maxKey == null || Double.compare(value, (Double) maxKey) > 0) {
+            maxKey = value;
+        }
+    }
+
+    private static int intValue(Object key) {
+        return key instanceof LocalDate ? (int) ((LocalDate) key).toEpochDay() : (Integer) key;
+    }
+
+    private Object intKey(int value) {
+        return type == LocalDate.class ? LocalDate.ofEpochDay(value) : Integer.valueOf(value);
+    }
+
+    private void grow() {
+        int capacity = size + Math.max(size >> 1, INITIAL_CAPACITY);
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, capacity);
+        } else {
+            ints = Arrays.copyOf(ints, capacity);
+        }
+    }
+
+    private Object convert(String literal) {
+        if (type == Integer.class) {
+            return Integer.parseInt(literal);
+        } else if (type == Double.class) {
+            return Double.parseDouble(literal);
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse(literal);
+        }
+        if (literal == null) {
+            throw new IllegalArgumentException("Missing value");
+        }
+        return literal;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    /**
+     * @return the value of the row (Integer, Double, LocalDate or String), or null if it was invalid
+     */
+    public Object get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        if (invalid.get(row)) {
+            return null;
+        }
+        if (type == Integer.class) {
+            return ints[row];
+        } else if (type == Double.class) {
+            return doubles[row];
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(ints[row]);
+        }
+        return dictionary.get(ints[row]);
+    }
+
+    /**
+     * Evaluates a predicate (EQUALS, NE, LT, LE, GT, GE, RANGE or IN) on every row.
+     * @return the matching rows
+     */
+    public Bitmap scan(QueryNode node) {
+        Bitmap result = new Bitmap(size);
+        if (node.operator == Operator.NE) {
+            QueryNode equals = node.copy();
+            equals.operator = Operator.EQUALS;
+            result.set(0, size);
+            result.andNot(scan(equals));
+        } else if (type == String.class) {
+            scanCodes(matchingCodes(node), result);
+        } else if (node.operator == Operator.IN) {
+            scanIn(node, result);
+        } else if (type == Double.class) {
+            scanDoubles(node, result);
+        } else {
+            scanInts(node, result);
+        }
+        result.andNot(invalid);
+        return result;
+    }
+
+    /* integers and dates: the predicate becomes an inclusive interval [lo, hi] of ints */
+    private void scanInts(QueryNode node, Bitmap result) {
+        double[] bounds = bounds(node);
+        long lo = bounds[1] != 0 ? (long) Math.ceil(bounds[0]) : (long) Math.floor(bounds[0]) + 1;
+        long hi = bounds[3] != 0 ? (long) Math.floor(bounds[2]) : (long) Math.ceil(bounds[2]) - 1;
+        if (bounds[0] == Double.NEGATIVE_INFINITY) {
+            lo = Long.MIN_VALUE;
+        }
+        if (bounds[2] == Double.POSITIVE_INFINITY) {
+            hi = Long.MAX_VALUE;
+        }
+        int[] values = ints;
+        for (int row = 0; row < size; row++) {
+            int v = values[row];
+            if (v >= lo && v <= hi) {
+                result.set(row);
+            }
+        }
+    }
+
+    private void scanDoubles(QueryNode node, Bitmap result) {
+        double[] bounds = bounds(node);
+        double lo = bounds[0];
+        double hi = bounds[2];
+        boolean loInclusive = bounds[1] != 0;
+        boolean hiInclusive = bounds[3] != 0;
+        double[] values = doubles;
+        for (int row = 0; row < size; row++) {
+            double v = values[row];
+            if ((v > lo || (loInclusive && v == lo)) && (v < hi || (hiInclusive && v == hi))) {
+                result.set(row);
+            }
+        }
+    }
+
+    private void scanIn(QueryNode node, Bitmap result) {
+        int n = node.values.size();
+        if (type == Double.class) {
+            double[] keys = new double[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = toDouble(node.keys != null ? node.keys.get(i) : node.values.get(i));
+            }
+            Arrays.sort(keys);
+            double[] values = doubles;
+            for (int row = 0; row < size; row++) {
+                if (Arrays.binarySearch(keys, values[row]) >= 0) {
+                    result.set(row);
+                }
+            }
+            return;
+        }
+        long[] keys = new long[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            double key = toDouble(node.keys != null ? node.keys.get(i) : node.values.get(i));
+            if (key == Math.rint(key)) {    // a fraction never equals an int
+                keys[count++] = (long) key;
+            }
+        }
+        keys = Arrays.copyOf(keys, count);
+        Arrays.sort(keys);
+        int[] values = ints;
+        for (int row = 0; row < size; row++) {
+            if (Arrays.binarySearch(keys, values[row]) >= 0) {
+                result.set(row);
+            }
+        }
+    }
+
+    private void scanCodes(boolean[] matching, Bitmap result) {
+        int[] values = ints;
+        for (int row = 0; row < size; row++) {
+            if (matching[values[row]]) {
+                result.set(row);
+            }
+        }
+    }
+
+    /* strings: the predicate is evaluated once per dictionary entry, the scan only looks the code up */
+    private boolean[] matchingCodes(QueryNode node) {
+        boolean[] matching = new boolean[dictionary.size()];
+        if (node.operator == Operator.IN) {
+            for (int i = 0; i < node.values.size(); i++) {
+                Integer code = codes.get(node.keys != null ? (String) node.keys.get(i) : node.values.get(i));
+                if (code != null) {
+                    matching[code] = true;
+                }
+            }
+            return matching;
+        }
+        String value = (String) (node.key != null ? node.key : node.value);
+        String second = (String) (node.secondKey != null ? node.secondKey : node.secondValue);
+        for (int code = 0; code < matching.length; code++) {
+            int cmp = dictionary.get(code).compareTo(value);
+            switch (node.operator) {
+                case EQUALS:
+                    matching[code] = cmp == 0;
+                    break;
+                case LT:
+                    matching[code] = cmp < 0;
+                    break;
+                case LE:
+                    matching[code] = cmp <= 0;
+                    break;
+                case GT:
+                    matching[code] = cmp > 0;
+                    break;
+                case GE:
+                    matching[code] = cmp >= 0;
+                    break;
+                case RANGE:
+                    int cmpUpper = dictionary.get(code).compareTo(second);
+                    matching[code] = (cmp > 0 || (node.lowerInclusive && cmp == 0))
+                            && (cmpUpper < 0 || (node.upperInclusive && cmpUpper == 0));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a predicate operator: " + node.operator);
+            }
+        }
+        return matching;
+    }
+
+    /* {lo, loInclusive, hi, hiInclusive} of a comparison on a numeric or date column, flags as 0/1 */
+    private double[] bounds(QueryNode node) {
+        double v = toDouble(node.key != null ? node.key : node.value);
+        switch (node.operator) {
+            case EQUALS:
+                return new double[]{v, 1, v, 1};
+            case LT:
+                return new double[]{Double.NEGATIVE_INFINITY, 0, v, 0};
+            case LE:
+                return new double[]{Double.NEGATIVE_INFINITY, 0, v, 1};
+            case GT:
+                return new double[]{v, 0, Double.POSITIVE_INFINITY, 0};
+            case GE:
+                return new double[]{v, 1, Double.POSITIVE_INFINITY, 0};
+            case RANGE:
+                double v2 = toDouble(node.secondKey != null ? node.secondKey : node.secondValue);
+                return new double[]{v, node.lowerInclusive ? 1 : 0, v2, node.upperInclusive ? 1 : 0};
+            default:
+                throw new IllegalArgumentException("Not a predicate operator: " + node.operator);
+        }
+    }
+
+    /* a literal or key of a numeric or date column on the number line the scan compares on */
+    private double toDouble(Object literal) {
+        if (literal instanceof Number) {
+            return ((Number) literal).doubleValue();
+        } else if (literal instanceof LocalDate) {
+            return ((LocalDate) literal).toEpochDay();
+        } else if (type == LocalDate.class) {
+            return LocalDate.parse((String) literal).toEpochDay();
+        }
+        return Double.parseDouble((String) literal);
+    }
+
+    /**
+     * Statistics in the shape the cost model expects from an index; every valid row is one entry.
+     */
+    public IndexStatistics getStatistics() {
+        return new IndexStatistics(size - invalidCount, getDistinctValues(), 1, 0, minKey, maxKey);
+    }
+
+    private int getDistinctValues() {
+        if (type == String.class) {
+            return dictionary.size();
+        }
+        if (distinctValuesSize != size) {
+            int count = 0;
+            if (doubles != null) {
+                double[] sorted = Arrays.copyOf(doubles, size);
+                Arrays.sort(sorted);
+                for (int i = 0; i < size; i++) {
+                    if (i == 0 || sorted[i] != sorted[i - 1]) {
+                        count++;
+                    }
+                }
+            } else {
+                int[] sorted = Arrays.copyOf(ints, size);
+                Arrays.sort(sorted);
+                for (int i = 0; i < size; i++) {
+                    if (i == 0 || sorted[i] != sorted[i - 1]) {
+                        count++;
+                    }
+                }
+            }
+            distinctValues = count;
+            distinctValuesSize = size;
+        }
+        return distinctValues;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return number of rows, including invalid ones
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,72 @@
+package in.ac.iitd.db362.storage;
+
+import in.ac.iitd.db362.index.Bitmap;
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.parser.QueryNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full scan over a retained column. The catalog hands this out for predicates on attributes that have no index, or
+ * when scanning the column is cheaper than any index on the attribute.
+ * The column is a read-only copy of the file, so inserts and deletes are not supported.
+ */
+public class ColumnScan implements Index<Object> {
+
+    protected static final Logger logger = LogManager.getLogger();
+
+    private final Column column;
+
+    public ColumnScan(Column column) {
+        this.column = column;
+    }
+
+    @Override
+    public List<Integer> evaluate(QueryNode node) {
+        logger.debug("Evaluating predicate by scanning column {} for operator {}", column.getName(), node.operator);
+        Bitmap matches = scan(node);
+        List<Integer> result = new ArrayList<>(matches.cardinality());
+        matches.forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Same as evaluate(), returning the matching rows as a bitmap.
+     */
+    public Bitmap scan(QueryNode node) {
+        return column.scan(node);
+    }
+
+    @Override
+    public void insert(Object key, int rowId) {
+        throw new UnsupportedOperationException("Column " + column.getName() + " is read-only");
+    }
+
+    @Override
+    public boolean delete(Object key) {
+        throw new UnsupportedOperationException("Column " + column.getName() + " is read-only");
+    }
+
+    @Override
+    public List<Integer> search(Object key) {
+        List<Integer> result = new ArrayList<>();
+        for (int row = 0; row < column.size(); row++) {
+            if (key.equals(column.get(row))) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    public Column getColumn() {
+        return column;
+    }
+
+    @Override
+    public String prettyName() {
+        return "Column scan on " + column.getName();
+    }
+}
@@ -0,0 +1,52 @@
+package in.ac.iitd.db362.storage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Columnar in-memory copy of a CSV file: one Column per attribute, in header order, all of the same length.
+ * Filled by CSVParser when asked to retain columns, and registered with the catalog so that predicates on attributes
+ * without an index can be answered by scanning a column (see ColumnScan).
+ */
+public class ColumnarTable {
+
+    private final String name;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    public ColumnarTable(String name) {
+        this.name = name;
+    }
+
+    public Column addColumn(String attribute, Class<?> type) {
+        if (columns.containsKey(attribute)) {
+            throw new IllegalArgumentException("Duplicate column " + attribute);
+        }
+        Column column = new Column(attribute, type);
+        columns.put(attribute, column);
+        return column;
+    }
+
+    /**
+     * @return the column of the attribute, or null if the table has none
+     */
+    public Column getColumn(String attribute) {
+        return columns.get(attribute);
+    }
+
+    public Collection<Column> getColumns() {
+        return Collections.unmodifiableCollection(columns.values());
+    }
+
+    /**
+     * @return number of rows, i.e. the length of every column
+     */
+    public int getRowCount() {
+        return columns.isEmpty() ? 0 : columns.values().iterator().next().size();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
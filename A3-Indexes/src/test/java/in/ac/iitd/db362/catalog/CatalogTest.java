@@ -0,0 +1,134 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.IndexScan;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogTest {
+
+    Catalog catalog;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = Catalog.getInstance();
+        catalog.clear();
+    }
+
+    @Test
+    public void testRangeOnHashIndexFallsBackToScan() {
+        ExtendibleHashing<Integer> hash = new ExtendibleHashing<>(Integer.class, "store_id");
+        for (int rowId = 0; rowId < 100; rowId++) {
+            hash.insert(rowId % 20, rowId);
+        }
+        catalog.addIndex("store_id", hash);
+
+        AccessPath path = catalog.getAccessPath(Parser.parse("store_id < 2"));
+        assertTrue(path.isScan(), "A hash index cannot serve LT natively");
+        assertSame(hash, ((IndexScan<?>) path.getIndex()).getIndex());
+
+        List<Integer> rows = new ArrayList<>(QueryEvaluator.evaluateQuery(Parser.parse("store_id < 2"), 99));
+        rows.sort(null);
+        assertEquals(List.of(0, 1, 20, 21, 40, 41, 60, 61, 80, 81), rows);
+    }
+
+    @Test
+    public void testSelectivePredicatePrefersLookup() {
+        BPlusTreeIndex<Integer> tree = new BPlusTreeIndex<>(Integer.class, "customer_id");
+        BitmapIndex<Integer> bitmap = new BitmapIndex<>(Integer.class, "customer_id", 999);
+        for (int rowId = 0; rowId < 1000; rowId++) {
+            tree.insert(rowId, rowId);
+            bitmap.insert(rowId, rowId);
+        }
+        catalog.addIndex("customer_id", bitmap);
+        catalog.addIndex("customer_id", tree);
+
+        // Unique keys: one bitmap word scan per lookup loses against a short tree descent
+        AccessPath point = catalog.getAccessPath(Parser.parse("customer_id = 500"));
+        assertSame(tree, point.getIndex());
+        assertEquals(1.0, point.getEstimatedRows(), 1e-9);
+
+        AccessPath range = catalog.getAccessPath(Parser.parse("100 < customer_id < 200"));
+        assertSame(tree, range.getIndex());
+        assertEquals(100.0, range.getEstimatedRows(), 1.0);
+    }
+
+    @Test
+    public void testRangePrefersTreeOverHashScan() {
+        ExtendibleHashing<Integer> hash = new ExtendibleHashing<>(Integer.class, "store_id");
+        BPlusTreeIndex<Integer> tree = new BPlusTreeIndex<>(Integer.class, "store_id");
+        for (int rowId = 0; rowId < 1000; rowId++) {
+            hash.insert(rowId, rowId);
+            tree.insert(rowId, rowId);
+        }
+        catalog.addIndex("store_id", hash);
+        catalog.addIndex("store_id", tree);
+
+        AccessPath path = catalog.getAccessPath(Parser.parse("store_id > 900"));
+        assertSame(tree, path.getIndex());
+        assertFalse(path.isScan());
+        assertEquals(99, QueryEvaluator.evaluateQuery(Parser.parse("store_id > 900"), 999).size());
+    }
+
+    @Test
+    public void testNoIndex() {
+        assertNull(catalog.getAccessPath(Parser.parse("salary = 10")));
+        assertThrows(IllegalStateException.class,
+                () -> QueryEvaluator.evaluateQuery(Parser.parse("salary = 10"), 10));
+    }
+
+    @Test
+    public void testTablesAreIndependent() throws Exception {
+        Catalog orders = Catalog.getInstance("orders");
+        Catalog stores = Catalog.getInstance("stores");
+        try {
+            BPlusTreeIndex<Integer> ordersById = new BPlusTreeIndex<>(Integer.class, "id");
+            ExtendibleHashing<Integer> storesById = new ExtendibleHashing<>(Integer.class, "id");
+            for (int rowId = 0; rowId < 100; rowId++) {
+                ordersById.insert(rowId, rowId);
+                storesById.insert(rowId % 10, rowId);
+            }
+            orders.addIndex("id", ordersById);
+            stores.addIndex("id", storesById);
+
+            assertSame(orders, Catalog.getInstance("orders"));
+            assertTrue(catalog.getIndexes("id").isEmpty(), "The default table has no index on id");
+            assertEquals(List.of(3), QueryEvaluator.evaluateQuery(orders, Parser.parse("id = 3"), 99));
+            assertEquals(List.of(3, 13, 23, 33, 43, 53, 63, 73, 83, 93),
+                    QueryEvaluator.evaluateQuery(stores, Parser.parse("id = 3"), 99));
+
+            // a load into one table (holding its write lock) does not hold up queries on another
+            Lock loading = stores.getLock().writeLock();
+            loading.lock();
+            try {
+                List<Integer> rows = CompletableFuture.supplyAsync(
+                        () -> QueryEvaluator.evaluateQuery(orders, Parser.parse("id < 2"), 99)).get(10, TimeUnit.SECONDS);
+                assertEquals(List.of(0, 1), rows);
+            } finally {
+                loading.unlock();
+            }
+        } finally {
+            assertTrue(Catalog.dropTable("orders"));
+            assertTrue(Catalog.dropTable("stores"));
+        }
+        assertFalse(Catalog.getTableNames().contains("orders"));
+        // a query still holding the dropped catalog evaluates against it and does not bring the table back
+        assertThrows(IllegalStateException.class,
+                () -> QueryEvaluator.evaluateQuery(orders, Parser.parse("id = 3"), 99));
+        assertFalse(Catalog.getTableNames().contains("orders"));
+        assertTrue(Catalog.getInstance("orders").getIndexes("id").isEmpty());
+        Catalog.dropTable("orders");
+    }
+}
@@ -0,0 +1,131 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnScan;
+import in.ac.iitd.db362.storage.ColumnarTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexAdvisorTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    Catalog catalog;
+    IndexAdvisor advisor;
+    long budget;
+
+    @BeforeEach
+    public void setUp() {
+        budget = IndexAdvisor.MEMORY_BUDGET;
+        catalog = Catalog.getInstance("advised");
+        catalog.clear();
+        ColumnarTable table = new ColumnarTable("advised");
+        Column id = table.addColumn("id", Integer.class);
+        Column city = table.addColumn("city", String.class);
+        for (int row = 0; row < 10000; row++) {
+            id.append(Integer.toString(row));
+            city.append("city" + row % 4);
+        }
+        catalog.setTable(table);
+        advisor = new IndexAdvisor(catalog);
+        catalog.setAdvisor(advisor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        IndexAdvisor.MEMORY_BUDGET = budget;
+        advisor.close();
+        Catalog.dropTable("advised");
+    }
+
+    private List<Integer> query(String query) {
+        return QueryEvaluator.evaluateQuery(catalog, Parser.parse(query), 9999);
+    }
+
+    @Test
+    public void testBuildsIndexForSelectivePredicatesAndDropsItWhenUnused() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(List.of(i * 7), query("id = " + i * 7));
+            assertEquals(List.of(9998, 9999), query("id > " + (9997 - i) + " AND id > 9997"));
+        }
+        // city = 'city1' matches a quarter of the rows: scanning the column is as good as any index
+        assertEquals(2500, query("city = city1").size());
+
+        List<IndexAdvisor.Decision> decisions = advisor.advise();
+        assertEquals(1, decisions.size(), decisions.toString());
+        assertEquals(IndexAdvisor.Action.BUILD, decisions.get(0).getAction());
+        assertEquals("id", decisions.get(0).getAttribute());
+        assertTrue(catalog.getIndexes("city").isEmpty());
+
+        List<Index> indexes = catalog.getIndexes("id");
+        assertEquals(1, indexes.size());
+        assertTrue(indexes.get(0) instanceof BPlusTreeIndex, "Serves both the point and the range predicates");
+        assertFalse(catalog.getIndex(Parser.parse("id = 4242")) instanceof ColumnScan);
+        assertEquals(List.of(4242), query("id = 4242"));
+        assertTrue(advisor.getBytes() > 0);
+
+        // not used again: dropped after UNUSED_ROUNDS more rounds
+        for (int round = 0; round <= IndexAdvisor.UNUSED_ROUNDS && !catalog.getIndexes("id").isEmpty(); round++) {
+            advisor.advise();
+        }
+        assertTrue(catalog.getIndexes("id").isEmpty());
+        assertEquals(0, advisor.getBytes());
+        IndexAdvisor.Decision last = advisor.getDecisions().get(advisor.getDecisions().size() - 1);
+        assertEquals(IndexAdvisor.Action.DROP, last.getAction());
+        assertTrue(advisor.getReport().contains("DROP " + last.getIndexType() + " on id"), advisor.getReport());
+        assertEquals(List.of(4242), query("id = 4242"));
+    }
+
+    @Test
+    public void testRespectsMemoryBudget() {
+        IndexAdvisor.MEMORY_BUDGET = 1024;
+        for (int i = 0; i < 5; i++) {
+            query("id = " + i);
+        }
+        List<IndexAdvisor.Decision> decisions = advisor.advise();
+        assertEquals(1, decisions.size());
+        assertEquals(IndexAdvisor.Action.SKIP, decisions.get(0).getAction());
+        assertTrue(catalog.getIndexes("id").isEmpty());
+    }
+
+    @Test
+    public void testAdviseDoesNotReloadSpilledIndexes() {
+        long memoryBudget = MemoryManager.MEMORY_BUDGET;
+        String directory = MemoryManager.SPILL_DIRECTORY;
+        MemoryManager.SPILL_DIRECTORY = spillDirectory.toString();
+        try {
+            for (int i = 0; i < 5; i++) {
+                query("id = " + i * 7);
+            }
+            assertEquals(IndexAdvisor.Action.BUILD, advisor.advise().get(0).getAction());
+            Index id = catalog.getIndexes("id").get(0);
+            for (int i = 0; i < 5; i++) {
+                query("id > " + (9997 - i) + " AND id > 9997");
+            }
+            MemoryManager memory = MemoryManager.getInstance();
+            MemoryManager.MEMORY_BUDGET = 0;
+            assertEquals(1, memory.enforceBudget());
+
+            // the round costs the spilled index from the statistics kept at the spill, it leaves it on disk
+            advisor.advise();
+            assertTrue(memory.isSpilled(id));
+            assertEquals(List.of(4242), query("id = 4242"));
+            assertFalse(memory.isSpilled(id));
+        } finally {
+            MemoryManager.MEMORY_BUDGET = memoryBudget;
+            MemoryManager.SPILL_DIRECTORY = directory;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.IncludedColumns;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.bplustree.CompositeBPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import in.ac.iitd.db362.storage.Column;
+import in.ac.iitd.db362.storage.ColumnarTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryManagerTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    long budget;
+    String directory;
+    Catalog hot;
+    Catalog cold;
+
+    @BeforeEach
+    public void setUp() {
+        budget = MemoryManager.MEMORY_BUDGET;
+        directory = MemoryManager.SPILL_DIRECTORY;
+        MemoryManager.SPILL_DIRECTORY = spillDirectory.toString();
+        hot = Catalog.getInstance("hot");
+        cold = Catalog.getInstance("cold");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MemoryManager.MEMORY_BUDGET = budget;
+        MemoryManager.SPILL_DIRECTORY = directory;
+        Catalog.dropTable("hot");
+        Catalog.dropTable("cold");
+    }
+
+    @Test
+    public void testSpillsLeastRecentlyUsedIndexAndReloadsOnDemand() throws IOException {
+        MemoryManager memory = MemoryManager.getInstance();
+        BitmapIndex<String> city = new BitmapIndex<>(String.class, "city", 999);
+        ExtendibleHashing<LocalDate> day = new ExtendibleHashing<>(LocalDate.class, "day");
+        BPlusTreeIndex<Integer> id = new BPlusTreeIndex<>(Integer.class, "id");
+        for (int row = 0; row < 1000; row++) {
+            city.insert("city" + row % 5, row);
+            day.insert(LocalDate.of(2024, 1, 1).plusDays(row % 30), row);
+            id.insert(row, row);
+        }
+        city.deleteRow(7);
+        cold.addIndex("city", city);
+        cold.addIndex("day", day);
+        hot.addIndex("id", id);
+        assertEquals(List.of(42), QueryEvaluator.evaluateQuery(hot, Parser.parse("id = 42"), 999));
+
+        // room for the tree only: the cold table's indexes were used longest ago
+        MemoryManager.MEMORY_BUDGET = id.getMemoryUsage();
+        assertEquals(2, memory.enforceBudget());
+        assertTrue(memory.isSpilled(city));
+        assertTrue(memory.isSpilled(day));
+        assertFalse(memory.isSpilled(id));
+        assertEquals(0, city.getStatistics().getEntryCount());
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertEquals(2, files.count());
+        }
+        long spilled = memory.getIndexMemory().stream()
+                .filter(m -> m.getTable().equals("cold") && m.isSpilled() && m.getSpillFileBytes() > 0).count();
+        assertEquals(2, spilled);
+        assertTrue(memory.getResidentBytes() <= MemoryManager.MEMORY_BUDGET);
+
+        // queried again: reloaded with the same rows (row 7 stays deleted)
+        List<Integer> rows = QueryEvaluator.evaluateQuery(cold, Parser.parse("city = city2"), 999);
+        assertEquals(199, rows.size());
+        assertEquals(List.of(2, 12, 17), rows.subList(0, 3));
+        assertFalse(memory.isSpilled(city));
+        assertEquals(999, city.getStatistics().getEntryCount());
+        assertSame(day, cold.getIndexes("day").get(0));
+        assertEquals(34, day.search(LocalDate.of(2024, 1, 2)).size());
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testOnlyTheChosenIndexIsReloaded() {
+        MemoryManager memory = MemoryManager.getInstance();
+        ExtendibleHashing<Integer> hash = new ExtendibleHashing<>(Integer.class, "id");
+        BPlusTreeIndex<Integer> tree = new BPlusTreeIndex<>(Integer.class, "id");
+        for (int row = 0; row < 1000; row++) {
+            hash.insert(row, row);
+            tree.insert(row, row);
+        }
+        cold.addIndex("id", hash);
+        cold.addIndex("id", tree);
+        MemoryManager.MEMORY_BUDGET = 0;
+        assertEquals(2, memory.enforceBudget());
+
+        // both are costed from the statistics kept at the spill; the hash lookup wins and the tree stays on disk
+        AccessPath path = cold.getAccessPath(Parser.parse("id = 42"));
+        assertSame(hash, path.getIndex());
+        assertEquals(1.0, path.getEstimatedRows(), 0.01);
+        assertFalse(memory.isSpilled(hash));
+        assertTrue(memory.isSpilled(tree));
+
+        assertEquals(List.of(0, 1, 2), QueryEvaluator.evaluateQuery(cold, Parser.parse("id < 3"), 999));
+        assertFalse(memory.isSpilled(tree));
+    }
+
+    @Test
+    public void testReloadWaitsForReaders() throws Exception {
+        MemoryManager memory = MemoryManager.getInstance();
+        BPlusTreeIndex<Integer> id = new BPlusTreeIndex<>(Integer.class, "id");
+        for (int row = 0; row < 1000; row++) {
+            id.insert(row, row);
+        }
+        cold.addIndex("id", id);
+        MemoryManager.MEMORY_BUDGET = 0;
+        assertEquals(1, memory.enforceBudget());
+
+        // a reader walks the table's indexes (as the metrics do): the reload inserts, so it waits for the reader
+        CompletableFuture<List<Integer>> query;
+        Lock reader = cold.getLock().readLock();
+        reader.lock();
+        try {
+            query = CompletableFuture.supplyAsync(
+                    () -> QueryEvaluator.evaluateQuery(cold, Parser.parse("id = 42"), 999));
+            assertThrows(TimeoutException.class, () -> query.get(200, TimeUnit.MILLISECONDS));
+            assertTrue(memory.isSpilled(id));
+        } finally {
+            reader.unlock();
+        }
+        assertEquals(List.of(42), query.get(10, TimeUnit.SECONDS));
+        assertFalse(memory.isSpilled(id));
+    }
+
+    @Test
+    public void testCompositeIndexSurvivesSpill() {
+        ColumnarTable table = new ColumnarTable("cold");
+        Column city = table.addColumn("city", String.class);
+        Column store = table.addColumn("store", Integer.class);
+        for (int row = 0; row < 1000; row++) {
+            city.appendKey("city" + row % 5);
+            store.appendKey(row % 7);
+        }
+        cold.setTable(table);
+        CompositeBPlusTreeIndex composite = cold.addCompositeIndex(List.of("city", "store"));
+        assertEquals(1000, composite.getStatistics().getEntryCount());
+
+        MemoryManager.MEMORY_BUDGET = 0;
+        assertEquals(1, MemoryManager.getInstance().enforceBudget());
+        assertEquals(0, composite.getStatistics().getEntryCount());
+
+        // reloaded while planning, then answered by one range scan
+        List<Integer> rows = QueryEvaluator.evaluateQuery(cold, Parser.parse("city = city2 AND store < 3"), 999);
+        assertEquals(1000, composite.getStatistics().getEntryCount());
+        for (int row = 0; row < 1000; row++) {
+            assertEquals(row % 5 == 2 && row % 7 < 3, rows.contains(row));
+        }
+    }
+
+    @Test
+    public void testIncludedColumnsSurviveSpill() {
+        IncludedColumns included = new IncludedColumns(List.of("id", "city", "amount"),
+                List.of(Integer.class, String.class, Double.class));
+        ExtendibleHashing<Integer> id = new ExtendibleHashing<>(Integer.class, "id", included);
+        for (int row = 0; row < 500; row++) {
+            id.insert(row, row);
+            included.set(row, 1, "city" + row % 5);
+            included.set(row, 2, row % 3 == 0 ? null : row * 1.5);
+        }
+        cold.addIndex("id", id);
+
+        MemoryManager.MEMORY_BUDGET = 0;
+        assertEquals(1, MemoryManager.getInstance().enforceBudget());
+        assertNull(included.get(42, 1));
+
+        List<Object[]> rows = QueryEvaluator.evaluateQuery(cold, Parser.parse("id = 43"), 499,
+                List.of("city", "amount", "id"));
+        assertArrayEquals(new Object[]{"city3", 64.5, 43}, rows.get(0));
+        assertNull(included.get(42, 2));
+    }
+}
@@ -0,0 +1,170 @@
+package in.ac.iitd.db362.catalog;
+
+import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        Catalog.dropTable("wal");
+        Catalog.dropTable("recovered");
+    }
+
+    private static Catalog catalog(String table) {
+        Catalog catalog = Catalog.getInstance(table);
+        catalog.addIndex("id", new BPlusTreeIndex<>(Integer.class, "id"));
+        catalog.addIndex("city", new ExtendibleHashing<>(String.class, "city"));
+        return catalog;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer> search(Catalog catalog, String attribute, Object key) {
+        List<Integer> rowIds = ((Index<Object>) catalog.getIndexes(attribute).get(0)).search(key);
+        Collections.sort(rowIds);
+        return rowIds;
+    }
+
+    @Test
+    void testRecoveryReplaysTheTail() throws IOException {
+        Catalog catalog = catalog("wal");
+        WriteAheadLog log = WriteAheadLog.open(directory, catalog);
+        for (int rowId = 0; rowId < 100; rowId++) {
+            log.insert("id", rowId, rowId);
+            log.insert("city", rowId % 2 == 0 ? "Delhi" : "Pune", rowId);
+        }
+        log.checkpoint();
+        log.delete("city", "Pune");
+        log.insert("city", "Agra", 100);
+        log.insert("id", 7, 100);
+        assertEquals(Arrays.asList(7, 100), search(catalog, "id", 7));
+        // no close(): the tail after the checkpoint is only in the log
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("wal-")).count());
+        }
+
+        // a new process: the catalog starts without indexes
+        Catalog recovered = Catalog.getInstance("recovered");
+        try (WriteAheadLog reopened = WriteAheadLog.open(directory, recovered)) {
+            assertEquals(Arrays.asList(7, 100), search(recovered, "id", 7));
+            assertEquals(50, search(recovered, "city", "Delhi").size());
+            // a delete removes one entry of the key
+            assertEquals(49, search(recovered, "city", "Pune").size());
+            assertEquals(search(catalog, "city", "Pune"), search(recovered, "city", "Pune"));
+            assertEquals(Collections.singletonList(100), search(recovered, "city", "Agra"));
+        }
+        log.close();
+    }
+
+    @Test
+    void testTornTailIsCutOff() throws IOException {
+        Catalog catalog = catalog("wal");
+        try (WriteAheadLog log = WriteAheadLog.open(directory, catalog)) {
+            for (int rowId = 0; rowId < 10; rowId++) {
+                log.appendInsert("id", rowId, rowId);
+            }
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("wal-")).findFirst().get();
+        }
+        // half a record, as left by a crash during a write
+        Files.write(segment, new byte[]{0, 0, 0, 20, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Catalog recovered = catalog("recovered");
+        try (WriteAheadLog log = WriteAheadLog.open(directory, recovered)) {
+            for (int rowId = 0; rowId < 10; rowId++) {
+                assertEquals(Collections.singletonList(rowId), search(recovered, "id", rowId));
+            }
+            assertEquals(1, log.getCheckpointCount());
+        }
+    }
+
+    @Test
+    void testConcurrentCommitsAreDurable() throws Exception {
+        Catalog catalog = catalog("wal");
+        WriteAheadLog log = WriteAheadLog.open(directory, catalog);
+        int threads = 8;
+        int perThread = 200;
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int rowId = first; rowId < first + perThread; rowId++) {
+                        log.insert("id", rowId % 100, rowId);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(threads * perThread, log.getCommitCount());
+
+        Catalog recovered = catalog("recovered");
+        try (WriteAheadLog reopened = WriteAheadLog.open(directory, recovered)) {
+            List<Integer> rowIds = search(recovered, "id", 42);
+            assertEquals(threads * perThread / 100, rowIds.size());
+            assertEquals(search(catalog, "id", 42), rowIds);
+        }
+        log.close();
+    }
+
+    @Test
+    void testWaitingWritersShareOneSync() throws Exception {
+        Catalog catalog = catalog("wal");
+        try (WriteAheadLog log = WriteAheadLog.open(directory, catalog)) {
+            int threads = 8;
+            long[] lsns = new long[threads];
+            for (int t = 0; t < threads; t++) {
+                lsns[t] = log.appendInsert("id", t, t);
+            }
+            long syncs = log.getSyncCount();
+            // whichever writer leads forces every record appended so far; the others only wait for it
+            List<Thread> writers = new ArrayList<>();
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < threads; t++) {
+                long lsn = lsns[t];
+                writers.add(new Thread(() -> {
+                    try {
+                        log.sync(lsn);
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(syncs + 1, log.getSyncCount());
+            assertEquals(threads, log.getCommitCount());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package in.ac.iitd.db362.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmapIndexTest {
+
+    @Test
+    public void testInsertBeyondInitialCapacity() {
+        // Sized for 10 rows, but rows keep arriving
+        BitmapIndex<Integer> index = new BitmapIndex<>(Integer.class, "store_id", 10);
+        for (int rowId = 0; rowId < 5000; rowId++) {
+            index.insert(rowId % 7, rowId);
+        }
+
+        List<Integer> rows = index.search(3);
+        assertEquals(714, rows.size());
+        assertEquals(3, rows.get(0));
+        assertEquals(4994, rows.get(rows.size() - 1));
+        assertEquals(4999, index.getMaxRowId());
+    }
+
+    @Test
+    public void testRowIdOnWordBoundary() {
+        // maxRowId = 32 used to allocate a single word and overflow on rowId 32
+        BitmapIndex<String> index = new BitmapIndex<>(String.class, "department", 32);
+        index.insert("HR", 32);
+        assertEquals(List.of(32), index.search("HR"));
+    }
+
+    @Test
+    public void testDeleteRowTombstone() {
+        BitmapIndex<String> index = new BitmapIndex<>(String.class, "department", 4);
+        index.insert("HR", 0);
+        index.insert("Engineering", 1);
+        index.insert("HR", 2);
+
+        assertTrue(index.deleteRow(0));
+        assertFalse(index.deleteRow(0), "Row was already deleted");
+        assertFalse(index.isLive(0));
+        assertTrue(index.isLive(2));
+        assertEquals(List.of(2), index.search("HR"));
+    }
+
+    @Test
+    public void testDeletedRowReinsertedUnderAnotherKey() {
+        BitmapIndex<String> index = new BitmapIndex<>(String.class, "department", 4);
+        index.insert("HR", 0);
+        index.insert("HR", 1);
+
+        assertTrue(index.deleteRow(0));
+        index.insert("Engineering", 0);
+        assertEquals(List.of(1), index.search("HR"));
+        assertEquals(List.of(0), index.search("Engineering"));
+
+        // the last row of a key takes the key with it
+        assertTrue(index.deleteRow(1));
+        index.insert("Sales", 1);
+        assertTrue(index.search("HR").isEmpty());
+        assertEquals(2, index.getStatistics().getDistinctKeys());
+    }
+
+    @Test
+    public void testDeleteKey() {
+        BitmapIndex<String> index = new BitmapIndex<>(String.class, "department", 4);
+        index.insert("HR", 0);
+        index.insert("Engineering", 1);
+        index.insert("HR", 2);
+
+        assertTrue(index.delete("HR"));
+        assertFalse(index.delete("HR"));
+        assertTrue(index.search("HR").isEmpty());
+        assertFalse(index.isLive(0));
+        assertFalse(index.isLive(2));
+        assertEquals(List.of(1), index.search("Engineering"));
+    }
+}
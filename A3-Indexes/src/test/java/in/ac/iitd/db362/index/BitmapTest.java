@@ -0,0 +1,59 @@
+package in.ac.iitd.db362.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitmapTest {
+
+    @Test
+    public void testForEachVisitsSetBitsInOrder() {
+        Bitmap bitmap = new Bitmap(10);
+        int[] bits = {0, 1, 63, 64, 127, 128, 5000};
+        for (int bit : bits) {
+            bitmap.set(bit);
+        }
+        List<Integer> visited = new ArrayList<>();
+        bitmap.forEach(visited::add);
+        assertEquals(List.of(0, 1, 63, 64, 127, 128, 5000), visited);
+        assertEquals(bits.length, bitmap.cardinality());
+    }
+
+    @Test
+    public void testMaskedFillAndCardinality() {
+        Bitmap bitmap = new Bitmap(256);
+        Bitmap mask = new Bitmap(256);
+        for (int i = 0; i < 200; i++) {
+            bitmap.set(i);
+            if (i % 3 == 0) {
+                mask.set(i);
+            }
+        }
+        int[] buffer = new int[bitmap.cardinality(mask)];
+        assertEquals(67, buffer.length);
+        assertEquals(67, bitmap.fill(mask, buffer, 0));
+        assertEquals(0, buffer[0]);
+        assertEquals(198, buffer[66]);
+    }
+
+    @Test
+    public void testClearAndAndNot() {
+        Bitmap bitmap = new Bitmap(128);
+        Bitmap other = new Bitmap(128);
+        bitmap.set(3);
+        bitmap.set(70);
+        bitmap.set(100);
+        other.set(70);
+
+        bitmap.andNot(other);
+        bitmap.clear(3);
+        bitmap.clear(100000); // out of range is a no-op
+        assertFalse(bitmap.get(3));
+        assertFalse(bitmap.get(70));
+        assertTrue(bitmap.get(100));
+        assertEquals(1, bitmap.cardinality());
+    }
+}
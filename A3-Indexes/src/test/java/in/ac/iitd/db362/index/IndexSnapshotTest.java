@@ -0,0 +1,129 @@
+package in.ac.iitd.db362.index;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.io.CSVParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        Catalog.getInstance().clear();
+    }
+
+    @Test
+    void testSnapshotsRoundTrip() throws IOException {
+        IncludedColumns included = new IncludedColumns(Arrays.asList("amount", "store"),
+                Arrays.asList(Double.class, String.class));
+        BPlusTreeIndex<Double> tree = new BPlusTreeIndex<>(Double.class, "amount", included);
+        ExtendibleHashing<LocalDate> hash = new ExtendibleHashing<>(LocalDate.class, "day", null);
+        BitmapIndex<String> bitmap = new BitmapIndex<>(String.class, "store", 1000);
+        for (int rowId = 0; rowId < 1000; rowId++) {
+            tree.insert(rowId % 17 * 2.5, rowId);
+            included.set(rowId, 1, rowId % 3 == 0 ? null : "s" + rowId % 5);
+            hash.insert(LocalDate.of(2025, 1, 1).plusDays(rowId % 40), rowId);
+            bitmap.insert("s" + rowId % 5, rowId);
+        }
+
+        tree.save(directory.resolve("amount.idx"));
+        hash.save(directory.resolve("day.idx"));
+        bitmap.save(directory.resolve("store.idx"));
+
+        BPlusTreeIndex<?> loadedTree = (BPlusTreeIndex<?>) IndexSnapshot.load(directory.resolve("amount.idx"));
+        assertEquals(sorted(tree.search(5.0)), sorted(((BPlusTreeIndex<Double>) loadedTree).search(5.0)));
+        assertEquals("s2", loadedTree.getIncludedColumns().get(2, 1));
+        assertNull(loadedTree.getIncludedColumns().get(3, 1));
+
+        ExtendibleHashing<LocalDate> loadedHash = new ExtendibleHashing<>(LocalDate.class, "day", null);
+        loadedHash.insert(LocalDate.of(1999, 1, 1), 5000);
+        loadedHash.load(directory.resolve("day.idx"));
+        assertEquals(sorted(hash.search(LocalDate.of(2025, 1, 3))),
+                sorted(loadedHash.search(LocalDate.of(2025, 1, 3))));
+        assertTrue(loadedHash.search(LocalDate.of(1999, 1, 1)).isEmpty());
+
+        @SuppressWarnings("unchecked")
+        BitmapIndex<String> loadedBitmap = (BitmapIndex<String>) IndexSnapshot.load(directory.resolve("store.idx"));
+        assertEquals(1000, loadedBitmap.getMaxRowId());
+        assertEquals(sorted(bitmap.search("s4")), sorted(loadedBitmap.search("s4")));
+
+        // a snapshot of another kind of index does not load into this one
+        assertThrows(IOException.class, () -> loadedHash.load(directory.resolve("amount.idx")));
+    }
+
+    @Test
+    void testCorruptSnapshotIsRejected() throws IOException {
+        BPlusTreeIndex<Integer> tree = new BPlusTreeIndex<>(Integer.class, "id");
+        for (int rowId = 0; rowId < 100; rowId++) {
+            tree.insert(rowId, rowId);
+        }
+        Path file = directory.resolve("id.idx");
+        tree.save(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> IndexSnapshot.load(file));
+        assertTrue(e.getMessage().contains("Checksum"));
+    }
+
+    @Test
+    void testStaleSnapshotsAreRebuilt() throws IOException {
+        Path csv = directory.resolve("data.csv");
+        Files.write(csv, String.join("\n", "id:integer,city:string", "1,Delhi", "2,Pune", "3,Delhi").getBytes());
+        Path snapshots = directory.resolve("snapshots");
+        Map<String, List<String>> indexes = new HashMap<>();
+        indexes.put("city", Arrays.asList("Hash", "Bitmap"));
+        indexes.put("id", Collections.singletonList("BPlusTree"));
+
+        Catalog catalog = Catalog.getInstance();
+        CSVParser.parseCSV(csv.toString(), ",", catalog, indexes, 10, false, snapshots);
+        Path file = snapshots.resolve("city.hash.idx");
+        assertTrue(Files.exists(file));
+        long checksum = IndexSnapshot.checksum(csv);
+        assertEquals(checksum, IndexSnapshot.readHeader(file).getSourceChecksum());
+
+        // unchanged file: the indexes come from the snapshots
+        catalog.clear();
+        Object written = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        CSVParser.parseCSV(csv.toString(), ",", catalog, indexes, 10, false, snapshots);
+        assertEquals(written, Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+        assertEquals(3, catalog.getIndexes("city").size() + catalog.getIndexes("id").size());
+        Index hash = catalog.getIndexes("city").get(0);
+        assertEquals(Long.valueOf(checksum), catalog.getSnapshotChecksum(hash));
+        assertEquals(Arrays.asList(0, 2), sorted(((ExtendibleHashing<String>) hash).search("Delhi")));
+
+        // changed file: the snapshots are stale and rebuilt
+        catalog.clear();
+        Files.write(csv, String.join("\n", "id:integer,city:string", "1,Delhi", "2,Delhi", "3,Pune").getBytes());
+        CSVParser.parseCSV(csv.toString(), ",", catalog, indexes, 10, false, snapshots);
+        assertEquals(IndexSnapshot.checksum(csv), IndexSnapshot.readHeader(file).getSourceChecksum());
+        for (Index index : catalog.getIndexes("city")) {
+            assertEquals(Arrays.asList(0, 1), sorted(((ScannableIndex<String>) index).search("Delhi")));
+        }
+    }
+
+    private static List<Integer> sorted(List<Integer> rowIds) {
+        Collections.sort(rowIds);
+        return rowIds;
+    }
+}
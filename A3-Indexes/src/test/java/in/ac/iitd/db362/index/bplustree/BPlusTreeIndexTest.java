@@ -0,0 +1,49 @@
+package in.ac.iitd.db362.index.bplustree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BPlusTreeIndexTest {
+
+    @Test
+    public void testSearchAllMatchesSearch() {
+        // Keys repeat 7 times, so duplicates spill over leaf boundaries
+        BPlusTreeIndex<Integer> index = new BPlusTreeIndex<>(Integer.class, "store_id");
+        for (int rowId = 0; rowId < 700; rowId++) {
+            index.insert(rowId % 100, rowId);
+        }
+        List<Integer> keys = List.of(42, 3, 99, 4, 3, 500, 0, 43);
+        List<Integer> expected = new ArrayList<>();
+        for (int key : List.of(0, 3, 4, 42, 43, 99)) {
+            expected.addAll(index.search(key));
+        }
+        List<Integer> actual = index.searchAll(keys);
+        assertEquals(6 * 7, actual.size());
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSearchAllOnEmptyTree() {
+        BPlusTreeIndex<Integer> index = new BPlusTreeIndex<>(Integer.class, "store_id");
+        assertTrue(index.searchAll(List.of(1, 2)).isEmpty());
+    }
+
+    @Test
+    public void testDuplicatesInsertedInKeyOrder() {
+        // the order a spilled index is reloaded in: splits then put equal separators next to each other
+        BPlusTreeIndex<Integer> index = new BPlusTreeIndex<>(Integer.class, "store_id");
+        for (int rowId = 0; rowId < 1000; rowId++) {
+            index.insert(rowId / 29, rowId);
+        }
+        assertEquals(29, index.search(17).size());
+        assertEquals(3 * 29, index.rangeQuery(10, true, 12, true).size());
+        assertEquals(index.getAllKeys().size(), index.rangeQuery(0, true, 34, true).size());
+    }
+}
@@ -0,0 +1,104 @@
+package in.ac.iitd.db362.io;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSVFollowerTest {
+
+    private Path file;
+    private CSVFollower follower;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Catalog.getInstance().clear();
+        file = Files.createTempFile("follow", ".csv");
+        // the last row is still being written
+        Files.write(file, "id:integer,department:string\n0,HR\n1,Sales\n2,H".getBytes());
+        Map<String, List<String>> indexesToCreate = new HashMap<>();
+        indexesToCreate.put("id", Collections.singletonList("BPlusTree"));
+        indexesToCreate.put("department", Arrays.asList("Hash", "Bitmap"));
+        follower = CSVParser.followCSV(file.toString(), ",", Catalog.getInstance(), indexesToCreate, 10, false);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        follower.close();
+        Files.deleteIfExists(file);
+    }
+
+    private void append(String rows) throws IOException {
+        Files.write(file, rows.getBytes(), StandardOpenOption.APPEND);
+    }
+
+    private List<Integer> query(String query) {
+        return QueryEvaluator.evaluateQuery(Parser.parse(query), follower.getRowCount() - 1);
+    }
+
+    @Test
+    public void testPollLoadsOnlyCompleteAppendedRows() throws IOException {
+        assertEquals(2, follower.getRowCount());
+        assertEquals(List.of(0), query("department = HR"));
+
+        append("R\n3,Sales\n\n4,HR");
+        assertEquals(2, follower.poll());
+        assertEquals(List.of(0, 2), query("department = HR"));
+        assertEquals(List.of(1, 3), query("department = Sales"));
+        assertEquals(List.of(2, 3), query("id >= 2"));
+
+        assertEquals(0, follower.poll());
+        append("\n");
+        assertEquals(1, follower.poll());
+        assertEquals(List.of(0, 2, 4), query("department = HR"));
+    }
+
+    @Test
+    public void testIdlePollTakesNoLock() throws Exception {
+        // a query holds the read lock; a poll that finds nothing new must not wait for the write lock
+        Lock read = Catalog.getInstance().getLock().readLock();
+        read.lock();
+        try {
+            assertEquals(0, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> follower.poll()));
+            append("R");    // still no complete row
+            assertEquals(0, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> follower.poll()));
+        } finally {
+            read.unlock();
+        }
+        append("\n");
+        assertEquals(1, follower.poll());
+    }
+
+    @Test
+    public void testBackgroundPollingMakesRowsVisible() throws Exception {
+        long interval = CSVFollower.POLL_INTERVAL_MILLIS;
+        CSVFollower.POLL_INTERVAL_MILLIS = 10;
+        try {
+            follower.start();
+            append("R\n3,HR\n");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (follower.getRowCount() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(0, 2, 3), query("department = HR"));
+        } finally {
+            CSVFollower.POLL_INTERVAL_MILLIS = interval;
+        }
+    }
+}
@@ -2,11 +2,16 @@ package in.ac.iitd.db362.io;
 
 
 
+import in.ac.iitd.db362.index.IncludedColumns;
 import in.ac.iitd.db362.index.Index;
+import in.ac.iitd.db362.index.ScannableIndex;
 import in.ac.iitd.db362.catalog.Catalog;
 import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
 import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
 import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import in.ac.iitd.db362.storage.ColumnScan;
 import org.junit.jupiter.api.*;
 import java.nio.file.*;
 import java.io.IOException;
@@ -22,6 +27,7 @@ class CSVParserTest {
     void setUp() {
         // Reinitialize the catalog so that tests are independent.
         Catalog catalog = Catalog.getInstance();
+        catalog.clear();
     }
 
     //TODO: remove @Disabled after your implementation to test your code
@@ -150,4 +156,121 @@ class CSVParserTest {
         assertTrue(salaryIndexes == null || salaryIndexes.isEmpty());
         Files.deleteIfExists(tempFile);
     }
+
+    @Test
+    void testRetainedColumnsAnswerUnindexedPredicates() throws IOException {
+        Path tempFile = Files.createTempFile("columns", ".csv");
+        String csvContent = String.join("\n",
+                "salary:double,department:string,date:date",
+                "10000,HR,2025-01-01",
+                "20000,Engineering,2025-01-02",
+                "15000,HR",
+                "oops,Sales,2025-01-04"
+        );
+        Files.write(tempFile, csvContent.getBytes());
+
+        Map<String, List<String>> indexesToCreate = new HashMap<>();
+        indexesToCreate.put("department", Collections.singletonList("Hash"));
+
+        Catalog catalog = Catalog.getInstance();
+        CSVParser.parseCSV(tempFile.toString(), ",", catalog, indexesToCreate, 3, true);
+
+        assertEquals(4, catalog.getTable().getRowCount());
+        assertEquals(Double.class, catalog.getKeyType("salary"));
+        assertTrue(catalog.getIndex(Parser.parse("salary > 12000")) instanceof ColumnScan);
+        assertEquals(List.of(1, 2), QueryEvaluator.evaluateQuery(Parser.parse("salary > 12000"), 3));
+        assertEquals(List.of(2), QueryEvaluator.evaluateQuery(Parser.parse("salary > 12000 AND department = HR"), 3));
+
+        Files.deleteIfExists(tempFile);
+    }
+
+    /* loads the file with the given parser settings and answers a fixed set of queries */
+    private static List<List<Integer>> loadAndQuery(Path file, boolean parallel) {
+        long threshold = CSVParser.PARALLEL_THRESHOLD;
+        int chunkBytes = CSVParser.CHUNK_BYTES;
+        int threads = CSVParser.LOAD_THREADS;
+        int queueCapacity = CSVParser.BUILD_QUEUE_CAPACITY;
+        try {
+            if (parallel) {
+                CSVParser.PARALLEL_THRESHOLD = 0;
+                CSVParser.CHUNK_BYTES = 500;   // many chunks, most boundaries in the middle of a line
+                CSVParser.LOAD_THREADS = 4;
+                CSVParser.BUILD_QUEUE_CAPACITY = 1;   // builders of fast indexes wait on the parser
+            }
+            Catalog catalog = Catalog.getInstance();
+            catalog.clear();
+            Map<String, List<String>> indexesToCreate = new HashMap<>();
+            indexesToCreate.put("customer_id", Arrays.asList("BPlusTree", "Hash"));
+            indexesToCreate.put("product_category", Collections.singletonList("Bitmap"));
+            indexesToCreate.put("purchase_amount", Collections.singletonList("BPlusTree"));
+            CSVParser.parseCSV(file.toString(), ",", catalog, indexesToCreate, 300, true);
+
+            List<List<Integer>> results = new ArrayList<>();
+            for (String query : new String[]{"customer_id < 40", "customer_id IN (7, 150, 203)",
+                    "product_category = Books", "purchase_amount > 50000", "store_id = 5", "customer_rating >= 4.5",
+                    "customer_name = Bob", "customer_id > 200"}) {
+                results.add(QueryEvaluator.evaluateQuery(Parser.parse(query), catalog.getTable().getRowCount() - 1));
+            }
+            @SuppressWarnings("unchecked")
+            BPlusTreeIndex<Integer> ids = (BPlusTreeIndex<Integer>) catalog.getIndexes("customer_id").get(0);
+            results.add(ids.search(201));
+            return results;
+        } finally {
+            CSVParser.PARALLEL_THRESHOLD = threshold;
+            CSVParser.CHUNK_BYTES = chunkBytes;
+            CSVParser.LOAD_THREADS = threads;
+            CSVParser.BUILD_QUEUE_CAPACITY = queueCapacity;
+        }
+    }
+
+    @Test
+    void testParallelLoadMatchesSerialLoad() throws IOException {
+        Path tempFile = Files.createTempFile("parallel", ".csv");
+        String extra = String.join("\n",
+                "",
+                "201,Bob,100.5,2024-01-01,Books,4.5,5\r",
+                "   ",
+                "202,Bob,oops,2024-02-30,Books,,",
+                "203,Alice,300,2024-03-01,,4.9,5,extra",
+                "not-a-number,Carol,400,2024-03-02,Toys,1.0,5",
+                "204,\"Smith, \"\"J\"\"\nJr\",500,2024-03-03,Toys,2.0,5");
+        Files.write(tempFile, (Files.readString(Paths.get("src/test/resources/purchase-data.csv")).trim()
+                + "\n" + extra).getBytes());
+
+        List<List<Integer>> serial = loadAndQuery(tempFile, false);
+        List<List<Integer>> parallel = loadAndQuery(tempFile, true);
+        assertEquals(serial, parallel);
+        assertEquals(List.of(200), serial.get(8));
+        assertEquals(4, serial.get(7).size(), "The quoted name spans two lines but is one row");
+        assertFalse(serial.get(4).isEmpty());
+
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void testCoveringIndexesAnswerProjections() {
+        // "[,]" is not a single character, so the file is split line by line; "," is memory-mapped
+        for (String delimiter : new String[]{",", "[,]"}) {
+            Catalog catalog = Catalog.getInstance();
+            catalog.clear();
+            Map<String, List<String>> indexesToCreate = new HashMap<>();
+            indexesToCreate.put("customer_id", List.of("BPlusTree INCLUDE (purchase_amount, store_id)"));
+            indexesToCreate.put("product_category", List.of("Hash INCLUDE (purchase_date)"));
+            CSVParser.parseCSV("src/test/resources/purchase-data.csv", delimiter, catalog, indexesToCreate, 199);
+
+            IncludedColumns included = ((ScannableIndex<?>) catalog.getIndexes("customer_id").get(0))
+                    .getIncludedColumns();
+            assertEquals(List.of("customer_id", "purchase_amount", "store_id"), included.getNames());
+            assertEquals(2, catalog.getCoveringIndexes().size());
+
+            // no columns were retained, so every value comes from the indexes
+            List<Object[]> rows = QueryEvaluator.evaluateQuery(catalog, Parser.parse("customer_id < 3"), 199,
+                    List.of("store_id", "customer_id", "purchase_amount", "purchase_date"));
+            assertEquals(2, rows.size(), delimiter);
+            assertArrayEquals(new Object[]{46, 1, 80139.8, LocalDate.of(2020, 6, 22)}, rows.get(0), delimiter);
+            assertArrayEquals(new Object[]{5, 2, 64967.14, LocalDate.of(2024, 5, 22)}, rows.get(1), delimiter);
+            assertThrows(IllegalStateException.class, () -> QueryEvaluator.evaluateQuery(catalog,
+                    Parser.parse("customer_id < 3"), 199, List.of("customer_name")));
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package in.ac.iitd.db362.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSVReaderTest {
+
+    private static final String CSV = String.join("\n",
+            "1,Shane Myers,80139.8,2020-06-22",
+            "  -42 ,\"Delgado, David\" , 1e3 ,2024-05-22\r",
+            "",
+            "7,\"He said \"\"hi\"\"\nand left\",-0.5,2024-02-29",
+            "2147483647,a very long name that spans several eight byte words,.25,1999-12-31",
+            "8,,3,");
+
+    /* every row of the reader as a list of field strings */
+    private static List<List<String>> rows(CSVReader reader) {
+        List<List<String>> rows = new ArrayList<>();
+        while (reader.nextRow()) {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < reader.fieldCount(); i++) {
+                fields.add(reader.getString(i));
+            }
+            rows.add(fields);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testSplitsTrimsAndUnquotes() {
+        List<List<String>> rows = rows(new CSVReader(ByteBuffer.wrap(CSV.getBytes(StandardCharsets.UTF_8)), (byte) ','));
+        assertEquals(6, rows.size());
+        assertEquals(List.of("-42", "Delgado, David", "1e3", "2024-05-22"), rows.get(1));
+        assertEquals(List.of(""), rows.get(2));
+        assertEquals("He said \"hi\"\nand left", rows.get(3).get(1));
+        assertEquals(List.of("8", "", "3", ""), rows.get(5));
+    }
+
+    @Test
+    public void testChannelWithSmallBufferReadsTheSameRows() {
+        List<List<String>> expected = rows(new CSVReader(ByteBuffer.wrap(CSV.getBytes(StandardCharsets.UTF_8)), (byte) ','));
+        // a 64 byte buffer is refilled in the middle of rows and grown for the quoted field
+        CSVReader reader = new CSVReader(Channels.newChannel(
+                new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8))), (byte) ',', 64);
+        assertEquals(expected, rows(reader));
+    }
+
+    @Test
+    public void testEpochDayMatchesLocalDate() {
+        StringBuilder csv = new StringBuilder();
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() < 2105; date = date.plusDays(13)) {
+            dates.add(date);
+            csv.append(date).append('\n');
+        }
+        csv.append("2023-02-29\n+10000-01-01\n");
+        CSVReader reader = new CSVReader(ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8)), (byte) ',');
+        for (LocalDate date : dates) {
+            assertTrue(reader.nextRow());
+            assertEquals(date.toEpochDay(), reader.getEpochDay(0));
+        }
+        reader.nextRow();
+        assertThrows(DateTimeException.class, () -> reader.getEpochDay(0));
+        reader.nextRow();
+        assertEquals(LocalDate.of(10000, 1, 1).toEpochDay(), reader.getEpochDay(0));
+    }
+
+    @Test
+    public void testTypedGetters() {
+        CSVReader reader = new CSVReader(ByteBuffer.wrap(CSV.getBytes(StandardCharsets.UTF_8)), (byte) ',');
+        reader.nextRow();
+        assertEquals(1, reader.getInt(0));
+        assertEquals(80139.8, reader.getDouble(2));
+        assertEquals(LocalDate.of(2020, 6, 22), reader.getDate(3));
+        reader.nextRow();
+        assertEquals(-42, reader.getInt(0));
+        assertEquals(1000.0, reader.getDouble(2));
+        assertThrows(NumberFormatException.class, () -> reader.getInt(1));
+        reader.nextRow();
+        assertTrue(reader.isBlankRow());
+        reader.nextRow();
+        assertEquals(-0.5, reader.getDouble(2));
+        reader.nextRow();
+        assertEquals(Integer.MAX_VALUE, reader.getInt(0));
+        assertEquals(0.25, reader.getDouble(2));
+        reader.nextRow();
+        assertTrue(reader.isEmpty(1));
+        assertThrows(NumberFormatException.class, () -> reader.getDouble(1));
+    }
+
+    @Test
+    public void testDoublesMatchDoubleParseDouble() {
+        Random random = new Random(362);
+        StringBuilder csv = new StringBuilder();
+        List<String> literals = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String literal;
+            switch (i % 4) {
+                case 0:
+                    literal = String.valueOf(random.nextDouble() * 100000);
+                    break;
+                case 1:
+                    literal = String.format(Locale.ROOT, "%.2f", random.nextGaussian() * 1000);
+                    break;
+                case 2:
+                    literal = random.nextInt(1000) + "e-" + random.nextInt(30);
+                    break;
+                default:
+                    literal = "0.000" + random.nextInt(Integer.MAX_VALUE) + random.nextInt(Integer.MAX_VALUE);
+            }
+            literals.add(literal);
+            csv.append(literal).append('\n');
+        }
+        CSVReader reader = new CSVReader(ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8)), (byte) ',');
+        for (String literal : literals) {
+            assertTrue(reader.nextRow());
+            assertEquals(Double.parseDouble(literal), reader.getDouble(0), literal);
+        }
+    }
+
+    @Test
+    public void testCountQuotes() {
+        byte[] bytes = "a,\"b\"\"c\",d,\"e\"\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(6, CSVReader.countQuotes(ByteBuffer.wrap(bytes), 0, bytes.length));
+        assertEquals(1, CSVReader.countQuotes(ByteBuffer.wrap(bytes), 0, 3));
+    }
+}
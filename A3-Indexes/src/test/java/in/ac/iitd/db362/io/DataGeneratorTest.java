@@ -0,0 +1,86 @@
+package in.ac.iitd.db362.io;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.processor.QueryEvaluator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    public void tearDown() {
+        Catalog.dropTable("generated");
+    }
+
+    private static String generate(DataGenerator generator) throws IOException {
+        StringWriter out = new StringWriter();
+        generator.write(out);
+        return out.toString();
+    }
+
+    /* number of rows whose field (0-based) is value */
+    private static long count(String csv, int field, String value) {
+        return Arrays.stream(csv.split("\n")).skip(1)
+                .filter(line -> value.equals(line.split(",", -1)[field]))
+                .count();
+    }
+
+    @Test
+    public void testSameSeedSameData() throws IOException {
+        String first = generate(new DataGenerator().scale(0.001).seed(7).skew(0.5).nullRate(0.1));
+        String second = generate(new DataGenerator().scale(0.001).seed(7).skew(0.5).nullRate(0.1));
+        assertEquals(first, second);
+        assertNotEquals(first, generate(new DataGenerator().scale(0.001).seed(8).skew(0.5).nullRate(0.1)));
+        assertTrue(first.startsWith(DataGenerator.HEADER + "\n"));
+        assertEquals(1001, first.split("\n").length);
+    }
+
+    @Test
+    public void testSkewAndNulls() throws IOException {
+        String uniform = generate(new DataGenerator().scale(0.01).stores(100));
+        String skewed = generate(new DataGenerator().scale(0.01).stores(100).skew(0.99));
+        // about 100 of 10000 rows per store when uniform, the hottest store gets far more when skewed
+        assertTrue(count(uniform, 6, "1") < 200);
+        assertTrue(count(skewed, 6, "1") > 1000);
+
+        String sparse = generate(new DataGenerator().scale(0.01).nullRate(0.2));
+        long empty = count(sparse, 6, "");
+        assertTrue(empty > 1600 && empty < 2400, "empty store_ids: " + empty);
+        assertEquals(0, count(sparse, 0, ""));
+    }
+
+    @Test
+    public void testLoads() throws IOException {
+        Path file = directory.resolve("purchases.csv");
+        String csv = generate(new DataGenerator().scale(0.002).customers(300).skew(0.8).nullRate(0.05));
+        Files.write(file, csv.getBytes());
+
+        Map<String, List<String>> indexesToCreate = new HashMap<>();
+        indexesToCreate.put("customer_id", Collections.singletonList("BPlusTree"));
+        indexesToCreate.put("store_id", Collections.singletonList("Hash"));
+        Catalog catalog = Catalog.getInstance("generated");
+        CSVParser.parseCSV(file.toString(), ",", catalog, indexesToCreate, 1999);
+
+        assertEquals(count(csv, 0, "1"),
+                QueryEvaluator.evaluateQuery(catalog, Parser.parse("customer_id = 1"), 1999).size());
+        assertEquals(count(csv, 6, "3"),
+                QueryEvaluator.evaluateQuery(catalog, Parser.parse("store_id = 3"), 1999).size());
+    }
+}
@@ -0,0 +1,112 @@
+package in.ac.iitd.db362.metrics;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Parser;
+import in.ac.iitd.db362.parser.QueryNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexMetricsTest {
+
+    @AfterEach
+    public void tearDown() {
+        Catalog.dropTable("metrics");
+    }
+
+    private static QueryNode equals(String attribute, String value) {
+        return Parser.parse(attribute + " = " + value);
+    }
+
+    @Test
+    public void testCountsWork() {
+        int order = BPlusTreeIndex.ORDER;
+        BPlusTreeIndex.ORDER = 3;
+        try {
+            BPlusTreeIndex<Integer> tree = new BPlusTreeIndex<>(Integer.class, "id");
+            for (int i = 0; i < 50; i++) {
+                tree.insert(i, i);
+            }
+            IndexMetrics metrics = tree.getMetrics();
+            assertTrue(metrics.getSplits() > 0);
+            metrics.reset();
+
+            assertEquals(1, tree.evaluate(equals("id", "17")).size());
+            assertEquals(1, metrics.getLookups());
+            // one node per level below the root, plus the leaf chain walked for duplicates
+            assertTrue(metrics.getNodeVisits() >= tree.getHeight());
+            assertTrue(metrics.getKeyComparisons() > 0);
+            assertTrue(metrics.getLookupLatency().getPercentile(0.5) > 0);
+        } finally {
+            BPlusTreeIndex.ORDER = order;
+        }
+    }
+
+    @Test
+    public void testDirectoryDoublings() {
+        int depth = ExtendibleHashing.INITIAL_GLOBAL_DEPTH;
+        ExtendibleHashing.INITIAL_GLOBAL_DEPTH = 1;
+        try {
+            ExtendibleHashing<Integer> hash = new ExtendibleHashing<>(Integer.class, "id");
+            for (int i = 0; i < 64; i++) {
+                hash.insert(i, i);
+            }
+            IndexMetrics metrics = hash.getMetrics();
+            assertEquals(hash.getGlobalDepth() - 1, metrics.getDirectoryDoublings());
+            assertTrue(metrics.getSplits() >= metrics.getDirectoryDoublings());
+
+            long buckets = 0;
+            long entries = 0;
+            long[] occupancy = hash.getBucketOccupancy();
+            for (int size = 0; size < occupancy.length; size++) {
+                buckets += occupancy[size];
+                entries += size * occupancy[size];
+            }
+            assertTrue(buckets >= 64 / ExtendibleHashing.BUCKET_SIZE);
+            assertEquals(64, entries);
+        } finally {
+            ExtendibleHashing.INITIAL_GLOBAL_DEPTH = depth;
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+        assertEquals(100, histogram.getCount());
+        assertTrue(histogram.getPercentile(0.5) >= 100 && histogram.getPercentile(0.5) < 256);
+        assertTrue(histogram.getPercentile(1.0) >= 1_000_000);
+    }
+
+    @Test
+    public void testMBeanFollowsCatalog() throws Exception {
+        Catalog catalog = Catalog.getInstance("metrics");
+        ExtendibleHashing<Integer> hash = new ExtendibleHashing<>(Integer.class, "id");
+        for (int i = 0; i < 10; i++) {
+            hash.insert(i % 5, i);
+        }
+        catalog.addIndex("id", hash);
+        hash.evaluate(equals("id", "3"));
+
+        ObjectName name = MetricsRegistry.getInstance().getObjectName(hash);
+        assertNotNull(name);
+        assertEquals("\"metrics\"", name.getKeyProperty("table"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(10, server.getAttribute(name, "EntryCount"));
+        assertEquals(5, server.getAttribute(name, "DistinctKeys"));
+        assertEquals(1L, server.getAttribute(name, "Lookups"));
+
+        catalog.removeIndex("id", hash);
+        assertFalse(server.isRegistered(name));
+    }
+}
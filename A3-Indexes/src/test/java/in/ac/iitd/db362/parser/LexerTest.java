@@ -0,0 +1,72 @@
+package in.ac.iitd.db362.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LexerTest {
+
+    @Test
+    public void testSameTokensAsTokenizer() {
+        String[] queries = {
+                "age < 50",
+                "5000 < salary < 10000",
+                "(salary > 10000.5 AND department = HR) OR NOT name = \"John Smith\""
+        };
+        Lexer lexer = new Lexer();
+        for (String query : queries) {
+            List<Token> expected = Tokenizer.tokenize(query);
+            lexer.tokenize(query);
+            assertEquals(expected.size(), lexer.size(), query);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).type, lexer.type(i), query);
+                assertEquals(expected.get(i).text, lexer.text(i), query);
+            }
+        }
+    }
+
+    @Test
+    public void testOffsets() {
+        Lexer lexer = new Lexer();
+        lexer.tokenize("  age<50 ");
+        assertEquals(4, lexer.size());
+        assertEquals(2, lexer.start(0));
+        assertEquals(5, lexer.end(0));
+        assertEquals(TokenType.LT, lexer.type(1));
+        assertEquals(TokenType.EOF, lexer.type(3));
+    }
+
+    @Test
+    public void testKeywordsAreWholeWords() {
+        Lexer lexer = new Lexer();
+        lexer.tokenize("ORDER = NOTE AND x = 1");
+        assertEquals(TokenType.IDENTIFIER, lexer.type(0));
+        assertEquals("ORDER", lexer.text(0));
+        assertEquals(TokenType.IDENTIFIER, lexer.type(2));
+        assertEquals(TokenType.AND, lexer.type(3));
+    }
+
+    @Test
+    public void testBufferReusedAcrossQueries() {
+        Lexer lexer = new Lexer();
+        StringBuilder longQuery = new StringBuilder("a = 1");
+        for (int i = 0; i < 50; i++) {
+            longQuery.append(" OR a = ").append(i);
+        }
+        lexer.tokenize(longQuery.toString());
+        assertEquals(4 + 50 * 4, lexer.size());
+        lexer.tokenize("b > 2");
+        assertEquals(4, lexer.size());
+        assertEquals("b", lexer.text(0));
+    }
+
+    @Test
+    public void testUnexpectedCharacter() {
+        Lexer lexer = new Lexer();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> lexer.tokenize("age ! 5"));
+        assertTrue(e.getMessage().contains("position 4"));
+        assertThrows(RuntimeException.class, () -> lexer.tokenize("name = \"open"));
+    }
+}
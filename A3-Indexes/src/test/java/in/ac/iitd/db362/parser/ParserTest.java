@@ -3,10 +3,14 @@ package in.ac.iitd.db362.parser;
 import in.ac.iitd.db362.parser.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 public class ParserTest {
 
@@ -103,5 +107,39 @@ public class ParserTest {
         QueryNode node = Parser.parse(query);
         //Parser.printParseTree(node, 0);
     }
-}
 
+    @Test
+    public void testInList() {
+        QueryNode node = Parser.parse("department IN (HR, \"Sales\", 42)");
+        assertEquals(Operator.IN, node.operator, "Operator should be IN.");
+        assertEquals("department", node.attribute, "Attribute should be 'department'.");
+        assertEquals(List.of("HR", "\"Sales\"", "42"), node.values);
+
+        QueryNode negated = Parser.parse("department NOT IN (HR)");
+        assertEquals(Operator.NOT, negated.operator, "NOT IN should parse as NOT over IN.");
+        assertEquals(Operator.IN, negated.left.operator);
+    }
+
+    @Test
+    public void testBetween() {
+        QueryNode node = Parser.parse("salary BETWEEN 5000 AND 10000 AND age > 30");
+        assertEquals(Operator.AND, node.operator, "BETWEEN's AND must not end the conjunction.");
+        QueryNode range = node.left;
+        assertEquals(Operator.RANGE, range.operator);
+        assertEquals("5000", range.value);
+        assertEquals("10000", range.secondValue);
+        assertTrue(range.lowerInclusive && range.upperInclusive, "BETWEEN includes both bounds.");
+    }
+
+    @Test
+    public void testInclusiveComparisons() {
+        assertEquals(Operator.LE, Parser.parse("age <= 50").operator);
+        assertEquals(Operator.GE, Parser.parse("age >= 50").operator);
+        assertEquals(Operator.NE, Parser.parse("age != 50").operator);
+
+        QueryNode range = Parser.parse("5000 <= salary < 10000");
+        assertEquals(Operator.RANGE, range.operator);
+        assertTrue(range.lowerInclusive, "Lower bound should be inclusive.");
+        assertFalse(range.upperInclusive, "Upper bound should be exclusive.");
+    }
+}
@@ -0,0 +1,94 @@
+package in.ac.iitd.db362.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryRewriterTest {
+
+    private static final Function<String, Class<?>> TYPES = attribute -> {
+        switch (attribute) {
+            case "salary":
+                return Double.class;
+            case "age":
+                return Integer.class;
+            case "department":
+                return String.class;
+            default:
+                return null;
+        }
+    };
+
+    private static String rewrite(String query) {
+        return QueryRewriter.rewrite(Parser.parse(query), TYPES).toString();
+    }
+
+    @Test
+    public void testDeMorgan() {
+        assertEquals("(age GE 30 OR NOT department EQUALS HR)", rewrite("NOT (age < 30 AND department = HR)"));
+        assertEquals("(age LE 30 OR NOT department EQUALS HR)", rewrite("NOT (age > 30 AND department = HR)"));
+    }
+
+    @Test
+    public void testDoubleNegation() {
+        assertEquals("department EQUALS HR", rewrite("NOT NOT department = HR"));
+    }
+
+    @Test
+    public void testNegatedRange() {
+        assertEquals("(age LE 20 OR age GE 30)", rewrite("NOT 20 < age < 30"));
+    }
+
+    @Test
+    public void testMergeBoundsIntoRange() {
+        assertEquals("5000 < salary < 8000", rewrite("salary > 5000 AND salary < 10000 AND salary < 8000"));
+        // numeric, not lexicographic, comparison
+        assertEquals("age GT 100", rewrite("age > 9 AND age > 100 AND age > 10"));
+    }
+
+    @Test
+    public void testNegationMergesWithBounds() {
+        assertEquals("(30 <= age < 40 AND department EQUALS HR)",
+                rewrite("NOT age < 30 AND department = HR AND age < 40"));
+    }
+
+    @Test
+    public void testEqualityInsideBounds() {
+        assertEquals("age EQUALS 35", rewrite("age > 30 AND age = 35 AND age < 40"));
+        assertEquals("age EQUALS 30", rewrite("NOT age < 30 AND NOT age > 30"));
+    }
+
+    @Test
+    public void testContradiction() {
+        assertEquals("30 < age < 30", rewrite("age = 30 AND age > 30"));
+        assertEquals("31 < age < 31", rewrite("age = 30 AND age = 31"));
+        assertEquals("40 < age < 40", rewrite("NOT (age > 30 OR age < 40)"));
+    }
+
+    @Test
+    public void testDuplicatesRemoved() {
+        assertEquals("(department EQUALS HR OR age LT 30)",
+                rewrite("department = HR OR age < 30 OR department = HR"));
+    }
+
+    @Test
+    public void testUnknownTypeLeftAlone() {
+        assertEquals("(bonus GT 5 AND bonus LT 10)", rewrite("bonus > 5 AND bonus < 10"));
+    }
+
+    @Test
+    public void testEqualitiesBecomeInList() {
+        assertEquals("(age IN [9, 10, 30] OR department EQUALS HR)",
+                rewrite("age = 30 OR department = HR OR age IN (10, 9) OR age = 10"));
+        assertEquals("age EQUALS 5", rewrite("age IN (5, 5.0)"));
+    }
+
+    @Test
+    public void testNotEqualsAndNotIn() {
+        assertEquals("NOT age EQUALS 5", rewrite("age != 5"));
+        assertEquals("age EQUALS 5", rewrite("NOT age != 5"));
+        assertEquals("(NOT age IN [1, 2] AND age LE 10)", rewrite("NOT (age IN (2, 1) OR age > 10)"));
+    }
+}
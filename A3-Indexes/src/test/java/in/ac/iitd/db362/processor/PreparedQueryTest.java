@@ -0,0 +1,113 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.catalog.MemoryManager;
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.hashindex.ExtendibleHashing;
+import in.ac.iitd.db362.parser.Parser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreparedQueryTest {
+
+    static final int ROWS = 200;
+
+    @BeforeEach
+    public void setUp() {
+        // customer_id takes 20 values, amount is rowId / 2
+        Catalog catalog = Catalog.getInstance();
+        catalog.clear();
+        ExtendibleHashing<Integer> customer = new ExtendibleHashing<>(Integer.class, "customer_id");
+        BPlusTreeIndex<Double> amount = new BPlusTreeIndex<>(Double.class, "amount");
+        BitmapIndex<String> region = new BitmapIndex<>(String.class, "region", ROWS - 1);
+        for (int rowId = 0; rowId < ROWS; rowId++) {
+            customer.insert(rowId % 20, rowId);
+            amount.insert(rowId / 2.0, rowId);
+            region.insert(rowId % 3 == 0 ? "north" : "south", rowId);
+        }
+        catalog.addIndex("customer_id", customer);
+        catalog.addIndex("amount", amount);
+        catalog.addIndex("region", region);
+    }
+
+    @Test
+    public void testMatchesLiteralQuery() {
+        PreparedQuery query = PreparedQuery.prepare("customer_id = ? AND 10 < amount < ?");
+        assertEquals(2, query.getParameterCount());
+        assertArrayEquals(new Class<?>[]{Integer.class, Double.class}, query.getParameterTypes());
+        for (int customer = 0; customer < 20; customer += 7) {
+            List<Integer> expected = QueryEvaluator.evaluateQuery(
+                    Parser.parse("customer_id = " + customer + " AND 10 < amount < 60.5"), ROWS - 1);
+            assertEquals(expected, query.execute(ROWS - 1, customer, 60.5));
+        }
+    }
+
+    @Test
+    public void testParametersUnderNot() {
+        PreparedQuery query = PreparedQuery.prepare("NOT (region = ? OR amount > ?)");
+        List<Integer> rows = query.execute(ROWS - 1, "south", 30);
+        // north rows with amount <= 30, i.e. rowId <= 60 and a multiple of 3
+        assertEquals(21, rows.size());
+        assertEquals(60, rows.get(rows.size() - 1));
+    }
+
+    @Test
+    public void testConversions() {
+        PreparedQuery query = PreparedQuery.prepare("customer_id = ?");
+        assertEquals(query.execute(ROWS - 1, 5), query.execute(ROWS - 1, "5"));
+        assertEquals(query.execute(ROWS - 1, 5), query.execute(ROWS - 1, 5L));
+        assertThrows(IllegalArgumentException.class, () -> query.execute(ROWS - 1, 5.5));
+        assertThrows(IllegalArgumentException.class, () -> query.execute(ROWS - 1));
+    }
+
+    @Test
+    public void testPrepareChecksAttributes() {
+        assertThrows(IllegalArgumentException.class, () -> PreparedQuery.prepare("bonus = ?"));
+        assertThrows(IllegalArgumentException.class, () -> PreparedQuery.prepare("customer_id = abc"));
+    }
+
+    @Test
+    public void testReresolvedAfterCatalogChange() {
+        PreparedQuery query = PreparedQuery.prepare("customer_id = ?");
+        setUp();
+        assertEquals(10, query.execute(ROWS - 1, 3).size());
+    }
+
+    @Test
+    public void testInListOnHash() {
+        PreparedQuery query = PreparedQuery.prepare("customer_id IN (1, 3, 3) AND amount < ?");
+        assertEquals(List.of(1, 3, 21, 23), query.execute(ROWS - 1, 20));
+    }
+
+    @Test
+    public void testKeptPlanSurvivesSpill() {
+        // few customer rows: the region bitmap is probed through the plan's access path
+        PreparedQuery query = PreparedQuery.prepare("customer_id = ? AND region = north");
+        assertEquals(List.of(3, 63, 123, 183), query.execute(ROWS - 1, 3));
+
+        long budget = MemoryManager.MEMORY_BUDGET;
+        MemoryManager.MEMORY_BUDGET = 0;
+        try {
+            assertEquals(3, MemoryManager.getInstance().enforceBudget());
+            assertEquals(List.of(6, 66, 126, 186), query.execute(ROWS - 1, 6));
+        } finally {
+            MemoryManager.MEMORY_BUDGET = budget;
+        }
+    }
+
+    @Test
+    public void testKeptPlanIsBoundPerExecution() {
+        PreparedQuery query = PreparedQuery.prepare("NOT customer_id = ? AND amount < ?");
+        // the same plan serves every binding; the results of one are not cached for another
+        assertEquals(List.of(1, 2, 3), query.execute(ROWS - 1, 0, 2));
+        assertEquals(List.of(0, 2, 3), query.execute(ROWS - 1, 1, 2));
+        // planned again for another maxRowId
+        assertEquals(QueryEvaluator.evaluateQuery(Parser.parse("NOT customer_id = 1 AND amount < 50"), 99),
+                query.execute(99, 1, 50));
+    }
+}
@@ -0,0 +1,91 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.parser.Parser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCacheTest {
+
+    static final int ROWS = 100;
+
+    private BPlusTreeIndex<Integer> id;
+    private BitmapIndex<Integer> store;
+    private long budget;
+
+    @BeforeEach
+    public void setUp() {
+        Catalog catalog = Catalog.getInstance();
+        catalog.clear();
+        id = new BPlusTreeIndex<>(Integer.class, "id");
+        store = new BitmapIndex<>(Integer.class, "store", ROWS - 1);
+        for (int rowId = 0; rowId < ROWS; rowId++) {
+            id.insert(rowId, rowId);
+            store.insert(rowId % 10, rowId);
+        }
+        catalog.addIndex("id", id);
+        catalog.addIndex("store", store);
+        budget = QueryCache.MEMORY_BUDGET;
+        QueryEvaluator.CACHE.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        QueryCache.MEMORY_BUDGET = budget;
+    }
+
+    @Test
+    public void testRepeatedQueryIsServedFromCache() {
+        List<Integer> first = QueryEvaluator.evaluateQuery(Parser.parse("store = 3 AND id < 50"), ROWS - 1);
+        long hits = QueryEvaluator.CACHE.getHits();
+        // same query with the operands swapped
+        List<Integer> second = QueryEvaluator.evaluateQuery(Parser.parse("id < 50 AND store = 3"), ROWS - 1);
+        assertEquals(List.of(3, 13, 23, 33, 43), first);
+        assertEquals(first, second);
+        assertEquals(hits + 1, QueryEvaluator.CACHE.getHits());
+    }
+
+    @Test
+    public void testSubexpressionIsReused() {
+        QueryEvaluator.evaluateQuery(Parser.parse("store = 3"), ROWS - 1);
+        long hits = QueryEvaluator.CACHE.getHits();
+        assertEquals(List.of(3, 13), QueryEvaluator.evaluateQuery(Parser.parse("store = 3 AND id < 20"), ROWS - 1));
+        assertTrue(QueryEvaluator.CACHE.getHits() > hits);
+    }
+
+    @Test
+    public void testInsertInvalidates() {
+        assertEquals(List.of(3, 13), QueryEvaluator.evaluateQuery(Parser.parse("store = 3 AND id < 20"), ROWS - 1));
+        store.insert(3, 5);
+        assertEquals(List.of(3, 5, 13), QueryEvaluator.evaluateQuery(Parser.parse("store = 3 AND id < 20"), ROWS - 1));
+    }
+
+    @Test
+    public void testDeleteInvalidates() {
+        assertEquals(10, QueryEvaluator.evaluateQuery(Parser.parse("store = 3"), ROWS - 1).size());
+        store.delete(3);
+        assertTrue(QueryEvaluator.evaluateQuery(Parser.parse("store = 3"), ROWS - 1).isEmpty());
+    }
+
+    @Test
+    public void testMemoryBudgetEvicts() {
+        QueryCache.MEMORY_BUDGET = 1024;
+        for (int i = 0; i < 10; i++) {
+            QueryEvaluator.evaluateQuery(Parser.parse("store = " + i), ROWS - 1);
+        }
+        assertTrue(QueryEvaluator.CACHE.getBytes() <= 1024);
+        assertTrue(QueryEvaluator.CACHE.size() < 10);
+
+        QueryCache.MEMORY_BUDGET = 0;
+        QueryEvaluator.CACHE.clear();
+        QueryEvaluator.evaluateQuery(Parser.parse("store = 1"), ROWS - 1);
+        assertEquals(0, QueryEvaluator.CACHE.size());
+    }
+}
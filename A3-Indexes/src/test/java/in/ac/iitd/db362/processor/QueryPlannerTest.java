@@ -0,0 +1,171 @@
+package in.ac.iitd.db362.processor;
+
+import in.ac.iitd.db362.catalog.Catalog;
+import in.ac.iitd.db362.index.BitmapIndex;
+import in.ac.iitd.db362.index.bplustree.BPlusTreeIndex;
+import in.ac.iitd.db362.index.bplustree.CompositeBPlusTreeIndex;
+import in.ac.iitd.db362.parser.Operator;
+import in.ac.iitd.db362.parser.Parser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryPlannerTest {
+
+    static final int ROWS = 1000;
+
+    @BeforeEach
+    public void setUp() {
+        // id is unique, store takes 10 values, flag takes 2
+        Catalog catalog = Catalog.getInstance();
+        catalog.clear();
+        BPlusTreeIndex<Integer> id = new BPlusTreeIndex<>(Integer.class, "id");
+        BitmapIndex<Integer> store = new BitmapIndex<>(Integer.class, "store", ROWS - 1);
+        BitmapIndex<Integer> flag = new BitmapIndex<>(Integer.class, "flag", ROWS - 1);
+        for (int rowId = 0; rowId < ROWS; rowId++) {
+            id.insert(rowId, rowId);
+            store.insert(rowId % 10, rowId);
+            flag.insert(rowId % 2, rowId);
+        }
+        catalog.addIndex("id", id);
+        catalog.addIndex("store", store);
+        catalog.addIndex("flag", flag);
+    }
+
+    @Test
+    public void testConjunctsFlattenedAndOrdered() {
+        QueryPlanner.PlanNode plan = QueryPlanner.plan(
+                Parser.parse("flag = 1 AND (store = 3 AND id < 100)"), ROWS - 1);
+        assertEquals(Operator.AND, plan.operator);
+        assertEquals(3, plan.children.size());
+        // id < 100 and store = 3 match ~100 rows each, flag = 1 matches ~500 and goes last
+        assertEquals("flag", plan.children.get(2).predicate.attribute);
+        assertTrue(plan.children.get(0).estimatedRows <= plan.children.get(1).estimatedRows);
+        assertEquals(ROWS * 0.1 * 0.1 * 0.5, plan.estimatedRows, 1.0);
+    }
+
+    @Test
+    public void testDisjunctsOrderedLeastSelectiveFirst() {
+        QueryPlanner.PlanNode plan = QueryPlanner.plan(
+                Parser.parse("store = 3 OR (flag = 1 OR id < 10)"), ROWS - 1);
+        assertEquals(Operator.OR, plan.operator);
+        assertEquals(3, plan.children.size());
+        assertEquals("flag", plan.children.get(0).predicate.attribute);
+        assertEquals("id", plan.children.get(2).predicate.attribute);
+    }
+
+    @Test
+    public void testCompositeIndexAnswersPrefixConjunction() {
+        Catalog catalog = Catalog.getInstance();
+        CompositeBPlusTreeIndex composite = new CompositeBPlusTreeIndex(List.of("store", "id"),
+                List.of(Integer.class, Integer.class));
+        for (int rowId = 0; rowId < ROWS; rowId++) {
+            composite.insert(composite.key(rowId % 10, rowId), rowId);
+        }
+        catalog.addIndex(composite.getAttribute(), composite);
+
+        QueryPlanner.PlanNode plan = QueryPlanner.plan(Parser.parse("flag = 1 AND store = 3 AND id < 100"), ROWS - 1);
+        assertEquals(Operator.AND, plan.operator);
+        assertEquals(2, plan.children.size());
+        QueryPlanner.PlanNode range = plan.children.get(0);
+        assertEquals("store,id", range.predicate.attribute);
+        assertEquals(Operator.RANGE, range.operator);
+        assertSame(composite, range.accessPath.getIndex());
+        assertEquals("flag", plan.children.get(1).predicate.attribute);
+
+        assertQueryMatches("flag = 1 AND store = 3 AND id < 100", id -> id % 2 == 1 && id % 10 == 3 && id < 100);
+        assertQueryMatches("store = 7 AND 100 <= id <= 307", id -> id % 10 == 7 && 100 <= id && id <= 307);
+        assertQueryMatches("id > 950 AND store = 1", id -> id % 10 == 1 && id > 950);
+        assertQueryMatches("store = 4 AND id = 14", id -> id == 14);
+        assertQueryMatches("store = 4 AND id = 15", id -> false);
+        assertQueryMatches("store = 2 AND id >= 100 AND id < 130 AND id != 112",
+                id -> id % 10 == 2 && id >= 100 && id < 130 && id != 112);
+    }
+
+    private static void assertQueryMatches(String query, IntPredicate definition) {
+        List<Integer> expected = new ArrayList<>();
+        for (int rowId = 0; rowId < ROWS; rowId++) {
+            if (definition.test(rowId)) {
+                expected.add(rowId);
+            }
+        }
+        assertEquals(expected, QueryEvaluator.evaluateQuery(Parser.parse(query), ROWS - 1), query);
+    }
+
+    static final String[] QUERIES = {
+            "flag = 1 AND (store = 3 AND id < 100)",
+            "store = 3 OR (flag = 1 OR id < 10)",
+            "NOT (store = 3) AND id < 30 AND NOT flag = 0",
+            "NOT (store = 3 OR flag = 0)",
+            "id < 5 AND id > 10",
+            "(store = 1 OR store = 2) AND NOT (100 < id < 900)",
+            "store IN (1, 4, 4) AND id BETWEEN 100 AND 200",
+            "store != 3 AND 5 <= id <= 40 AND flag NOT IN (0)",
+            "id IN (5, 999, 500, 1200) OR id >= 995"
+    };
+
+    @Test
+    public void testEvaluationMatchesDefinition() {
+        assertAllQueriesMatchDefinition();
+    }
+
+    @Test
+    public void testParallelEvaluationMatchesDefinition() {
+        int threshold = QueryEvaluator.PARALLEL_THRESHOLD;
+        int chunk = QueryEvaluator.MERGE_CHUNK_WORDS;
+        try {
+            // every AND/OR forks, and every merge is split down to single words
+            QueryEvaluator.PARALLEL_THRESHOLD = 0;
+            QueryEvaluator.MERGE_CHUNK_WORDS = 1;
+            assertAllQueriesMatchDefinition();
+        } finally {
+            QueryEvaluator.PARALLEL_THRESHOLD = threshold;
+            QueryEvaluator.MERGE_CHUNK_WORDS = chunk;
+        }
+    }
+
+    private static void assertAllQueriesMatchDefinition() {
+        for (String query : QUERIES) {
+            List<Integer> expected = new ArrayList<>();
+            for (int rowId = 0; rowId < ROWS; rowId++) {
+                if (matches(query, rowId)) {
+                    expected.add(rowId);
+                }
+            }
+            assertEquals(expected, QueryEvaluator.evaluateQuery(Parser.parse(query), ROWS - 1), query);
+        }
+    }
+
+    // The queries above, evaluated row by row
+    private static boolean matches(String query, int id) {
+        int store = id % 10;
+        int flag = id % 2;
+        switch (query) {
+            case "flag = 1 AND (store = 3 AND id < 100)":
+                return flag == 1 && store == 3 && id < 100;
+            case "store = 3 OR (flag = 1 OR id < 10)":
+                return store == 3 || flag == 1 || id < 10;
+            case "NOT (store = 3) AND id < 30 AND NOT flag = 0":
+                return store != 3 && id < 30 && flag != 0;
+            case "NOT (store = 3 OR flag = 0)":
+                return !(store == 3 || flag == 0);
+            case "id < 5 AND id > 10":
+                return false;
+            case "(store = 1 OR store = 2) AND NOT (100 < id < 900)":
+                return (store == 1 || store == 2) && !(100 < id && id < 900);
+            case "store IN (1, 4, 4) AND id BETWEEN 100 AND 200":
+                return (store == 1 || store == 4) && 100 <= id && id <= 200;
+            case "store != 3 AND 5 <= id <= 40 AND flag NOT IN (0)":
+                return store != 3 && 5 <= id && id <= 40 && flag != 0;
+            case "id IN (5, 999, 500, 1200) OR id >= 995":
+                return id == 5 || id == 500 || id >= 995;
+            default:
+                throw new IllegalArgumentException(query);
+        }
+    }
+}
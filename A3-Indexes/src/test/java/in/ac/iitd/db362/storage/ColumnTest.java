@@ -0,0 +1,64 @@
+package in.ac.iitd.db362.storage;
+
+import in.ac.iitd.db362.index.Bitmap;
+import in.ac.iitd.db362.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnTest {
+
+    private static List<Integer> scan(Column column, String query) {
+        Bitmap matches = column.scan(Parser.parse(query));
+        List<Integer> rows = new ArrayList<>();
+        matches.forEach(rows::add);
+        return rows;
+    }
+
+    @Test
+    public void testIntegerColumn() {
+        Column column = new Column("age", Integer.class);
+        for (int rowId = 0; rowId < 3000; rowId++) {
+            column.append(String.valueOf(rowId % 100));
+        }
+        assertEquals(3000, column.size());
+        assertEquals(30, scan(column, "age = 7").size());
+        assertEquals(30 * 10, scan(column, "age < 10").size());
+        assertEquals(30 * 11, scan(column, "age <= 10").size());
+        assertEquals(30 * 3, scan(column, "10 < age < 14").size());
+        assertEquals(30 * 5, scan(column, "age BETWEEN 10 AND 14").size());
+        assertEquals(30 * 2, scan(column, "age IN (1, 98, 1000)").size());
+        assertEquals(3000 - 30, scan(column, "age != 7").size());
+        assertEquals(30 * 49, scan(column, "age > 50.5").size());
+    }
+
+    @Test
+    public void testStringColumnUsesDictionary() {
+        Column column = new Column("department", String.class);
+        String[] departments = {"HR", "Engineering", "Sales", "HR"};
+        for (String department : departments) {
+            column.append(department);
+        }
+        assertEquals(List.of(0, 3), scan(column, "department = HR"));
+        assertEquals(List.of(1, 2), scan(column, "department IN (Sales, Engineering)"));
+        assertEquals(List.of(0, 2, 3), scan(column, "department > Engineering"));
+        assertEquals(3, column.getStatistics().getDistinctKeys());
+        assertEquals("Sales", column.get(2));
+    }
+
+    @Test
+    public void testInvalidValuesNeverMatch() {
+        Column column = new Column("salary", Double.class);
+        column.append("100.5");
+        assertFalse(column.append("n/a"));
+        column.append("200");
+        assertNull(column.get(1));
+        assertEquals(List.of(0, 2), scan(column, "salary > 0"));
+        assertEquals(List.of(0), scan(column, "salary != 200"));
+        assertEquals(2, column.getStatistics().getEntryCount());
+        assertEquals(100.5, column.getStatistics().getMinKey());
+    }
+}
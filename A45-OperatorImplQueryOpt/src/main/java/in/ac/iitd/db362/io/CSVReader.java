@@ -0,0 +1,520 @@
+package in.ac.iitd.db362.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Byte level CSV reader, shared by the CSV parser of the indexes and the scan operator and data loader of the query
+ * engine (the same file lives in both projects).
+ *
+ * The reader works on the raw bytes of a ByteBuffer (e.g. a memory-mapped chunk of the file) or of a channel read
+ * through a reusable buffer. nextRow() only records where each field starts and ends; fields are converted on
+ * demand, and integers, doubles and dates are parsed straight from the bytes. Apart from getString() and getDate(),
+ * reading a row allocates nothing once the buffers have grown to fit the widest row; getEpochDay() reads a date
+ * without allocating.
+ *
+ * Delimiters and newlines are found 8 bytes at a time: every byte of a word is XORed with the byte looked for, and
+ * the classic (x - 0x01..01) & ~x & 0x80..80 test flags the bytes that became zero. The lowest flag is always exact,
+ * so Long.numberOfTrailingZeros gives the position of the first match.
+ *
+ * Rows end at \n; fields are trimmed, so a \r before the \n is dropped. A field whose first non-blank byte is a
+ * double quote is read on a slow path following RFC 4180: it may contain delimiters and newlines, and "" stands for
+ * one quote. A quote anywhere else is an ordinary byte.
+ */
+public class CSVReader {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long NEWLINES = ONES * '\n';
+
+    // Clinger's fast path: a decimal with at most 15 digits and a power of ten up to 22 converts exactly
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ReadableByteChannel channel;   // null if the buffer holds all the input
+    private final byte delimiter;
+    private final long delimiters;
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // fields of the current row; quoted fields are unescaped into scratch
+    private int fields;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] inScratch = new boolean[16];
+    private byte[] scratch = new byte[256];
+    private int scratchSize;
+    private byte[] bytes = new byte[256];  // copy of a field being converted
+
+    /**
+     * Reads the bytes between the buffer's position and limit.
+     */
+    public CSVReader(ByteBuffer buffer, byte delimiter) {
+        this.channel = null;
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.limit = this.buffer.limit();
+        this.endOfInput = true;
+        this.delimiter = delimiter;
+        this.delimiters = ONES * (delimiter & 0xff);
+    }
+
+    /**
+     * Reads the channel through a buffer of the given size, which grows if a row does not fit.
+     */
+    public CSVReader(ReadableByteChannel channel, byte delimiter, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(64, bufferSize)).order(ByteOrder.LITTLE_ENDIAN);
+        this.limit = 0;
+        this.delimiter = delimiter;
+        this.delimiters = ONES * (delimiter & 0xff);
+    }
+
+    /**
+     * Moves to the next row.
+     * @return false if there are no more rows
+     * @throws UncheckedIOException if reading the channel fails
+     */
+    public boolean nextRow() {
+        while (true) {
+            if (position >= limit && !refill()) {
+                fields = 0;
+                return false;
+            }
+            int end = parseRow(position);
+            if (end >= 0) {
+                position = end;
+                return true;
+            }
+            // the row runs past the end of the buffer and there is more input: read it and start over
+            if (!refill()) {
+                throw new IllegalStateException("Input ended in the middle of a row");
+            }
+        }
+    }
+
+    /**
+     * Splits the row starting at from into fields.
+     * @return where the next row starts, or -1 if more input is needed
+     */
+    private int parseRow(int from) {
+        fields = 0;
+        scratchSize = 0;
+        int i = from;
+        while (true) {
+            int start = i;
+            while (start < limit && isBlank(buffer.get(start)) && buffer.get(start) != '\n'
+                    && buffer.get(start) != delimiter) {
+                start++;
+            }
+            if (start < limit && buffer.get(start) == '"') {
+                i = parseQuoted(start + 1);
+                if (i < 0) {
+                    return -1;
+                }
+            } else {
+                i = find(start, limit);
+                if (i == limit && !endOfInput) {
+                    return -1;
+                }
+                int end = i;
+                while (end > start && isBlank(buffer.get(end - 1))) {
+                    end--;
+                }
+                addField(start, end, false);
+            }
+            if (i >= limit) {
+                return limit;
+            }
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+            i++;    // past the delimiter
+        }
+    }
+
+    /* unescapes a quoted field into scratch; returns the position of the delimiter or newline after it */
+    private int parseQuoted(int from) {
+        int start = scratchSize;
+        int i = from;
+        while (true) {
+            if (i >= limit) {
+                if (!endOfInput) {
+                    return -1;
+                }
+                break;      // unterminated: the field runs to the end of the input
+            }
+            byte b = buffer.get(i++);
+            if (b == '"') {
+                if (i < limit && buffer.get(i) == '"') {
+                    i++;
+                } else if (i >= limit && !endOfInput) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+            appendScratch(b);
+        }
+        // anything between the closing quote and the next delimiter is kept, except blanks
+        int next = find(i, limit);
+        if (next == limit && !endOfInput) {
+            return -1;
+        }
+        int end = next;
+        while (end > i && isBlank(buffer.get(end - 1))) {
+            end--;
+        }
+        for (int j = i; j < end; j++) {
+            appendScratch(buffer.get(j));
+        }
+        addField(start, scratchSize, true);
+        return next;
+    }
+
+    private void appendScratch(byte b) {
+        if (scratchSize == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchSize++] = b;
+    }
+
+    private void addField(int start, int end, boolean quoted) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+            inScratch = Arrays.copyOf(inScratch, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = end;
+        inScratch[fields] = quoted;
+        fields++;
+    }
+
+    /* position of the first delimiter or newline in [from, to), or to */
+    private int find(int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i);
+            long mask = matches(word ^ delimiters) | matches(word ^ NEWLINES);
+            if (mask != 0) {
+                return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == delimiter || b == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /* high bit set in every byte of x that is zero (and possibly in bytes above the lowest zero byte) */
+    private static long matches(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    private static boolean isBlank(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    /**
+     * Reads more input, keeping the part of the buffer from the current position on.
+     * @return false if there is no more input
+     */
+    private boolean refill() {
+        if (endOfInput) {
+            return false;
+        }
+        int kept = limit - position;
+        if (position == 0 && limit == buffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(0).limit(limit);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.position(position).limit(limit);
+            buffer.compact();
+        }
+        position = 0;
+        buffer.position(kept).limit(buffer.capacity());
+        try {
+            int read = 0;
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+            if (read < 0) {
+                endOfInput = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        limit = buffer.position();
+        buffer.clear();
+        return limit > 0 || !endOfInput;
+    }
+
+    /**
+     * Counts the double quotes in [from, to) of the buffer, 8 bytes at a time. An even count from the start of a
+     * row means the position after it is outside any quoted field (assuming quotes only appear in quoted fields).
+     */
+    public static long countQuotes(ByteBuffer buffer, int from, int to) {
+        ByteBuffer words = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long quotes = ONES * '"';
+        long count = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long x = words.getLong(i) ^ quotes;
+            // exact per byte variant: no borrow can cross bytes because the high bit is masked off first
+            long zero = ~(((x & ~HIGHS) + ~HIGHS) | x | ~HIGHS);
+            count += Long.bitCount(zero);
+        }
+        for (; i < to; i++) {
+            if (words.get(i) == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of fields of the current row (a blank line has one empty field)
+     */
+    public int fieldCount() {
+        return fields;
+    }
+
+    /**
+     * @return true if the current row is a blank line
+     */
+    public boolean isBlankRow() {
+        return fields == 1 && !inScratch[0] && starts[0] == ends[0];
+    }
+
+    /**
+     * @return true if the (trimmed) field is empty
+     */
+    public boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * @return length in bytes of the (trimmed, unescaped) field
+     */
+    public int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    private byte byteAt(int field, int i) {
+        return inScratch[field] ? scratch[starts[field] + i] : buffer.get(starts[field] + i);
+    }
+
+    /* copies the field into bytes, returns its length */
+    private int copy(int field) {
+        int length = length(field);
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        if (inScratch[field]) {
+            System.arraycopy(scratch, starts[field], bytes, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(starts[field] + i);
+            }
+        }
+        return length;
+    }
+
+    public String getString(int field) {
+        int length = copy(field);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the field like Integer.parseInt.
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int field) {
+        int length = length(field);
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (byteAt(field, 0) == '-' || byteAt(field, 0) == '+')) {
+            negative = byteAt(field, 0) == '-';
+            i = 1;
+        }
+        if (i == length) {
+            throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+        }
+        if (length - i > 10) {
+            return Integer.parseInt(getString(field));     // leading zeros, or out of range
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = byteAt(field, i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the field like Double.parseDouble. Plain decimals ("-12.5", "3e4") are converted from the bytes; other
+     * shapes, and decimals that cannot be converted exactly that way, go through Double.parseDouble.
+     * @throws NumberFormatException if the field is not a double
+     */
+    public double getDouble(int field) {
+        int length = length(field);
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (byteAt(field, 0) == '-' || byteAt(field, 0) == '+')) {
+            negative = byteAt(field, 0) == '-';
+            i = 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean sawDigit = false;
+        for (; i < length; i++) {
+            byte b = byteAt(field, i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (digits < 16) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (point) {
+                        scale--;
+                    }
+                } else {
+                    return slowDouble(field);
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (i < length) {
+            byte b = byteAt(field, i);
+            if ((b != 'e' && b != 'E') || i + 1 == length) {
+                return slowDouble(field);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (byteAt(field, i) == '-' || byteAt(field, i) == '+') {
+                negativeExponent = byteAt(field, i) == '-';
+                i++;
+            }
+            int exponent = 0;
+            if (i == length || length - i > 3) {
+                return slowDouble(field);
+            }
+            for (; i < length; i++) {
+                int digit = byteAt(field, i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return slowDouble(field);
+                }
+                exponent = exponent * 10 + digit;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (!sawDigit || digits > 15 || Math.abs(scale) >= POWERS_OF_TEN.length) {
+            return slowDouble(field);
+        }
+        double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int field) {
+        return Double.parseDouble(getString(field));
+    }
+
+    /**
+     * Parses the field like LocalDate.parse (yyyy-MM-dd).
+     * @throws java.time.DateTimeException if the field is not a valid date
+     */
+    public LocalDate getDate(int field) {
+        if (length(field) == 10 && byteAt(field, 4) == '-' && byteAt(field, 7) == '-') {
+            int year = digits(field, 0, 4);
+            int month = digits(field, 5, 7);
+            int day = digits(field, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(getString(field));
+    }
+
+    /**
+     * Same as getDate(), as the number of days since 1970-01-01; allocates nothing unless the field is not of the
+     * form yyyy-MM-dd.
+     * @throws java.time.DateTimeException if the field is not a valid date
+     */
+    public long getEpochDay(int field) {
+        if (length(field) == 10 && byteAt(field, 4) == '-' && byteAt(field, 7) == '-') {
+            int year = digits(field, 0, 4);
+            int month = digits(field, 5, 7);
+            int day = digits(field, 8, 10);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= monthLength(year, month)) {
+                return epochDay(year, month, day);
+            }
+        }
+        return LocalDate.parse(getString(field)).toEpochDay();
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int monthLength(int year, int month) {
+        switch (month) {
+            case 2: return isLeap(year) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    /* as LocalDate.toEpochDay, for a valid date of a year in [0, 9999] */
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            total -= isLeap(year) ? 1 : 2;
+        }
+        return total - 719528;  // days from 0000-01-01 to 1970-01-01
+    }
+
+    /* value of the decimal digits in [from, to) of the field, or -1 if there is another character */
+    private int digits(int field, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = byteAt(field, i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,323 @@
+package in.ac.iitd.db362.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic customer.csv, product.csv and orders.csv with the headers of data/csvTables, at any scale, to test
+ * and benchmark the operators and the optimizer on more than a handful of rows. The files only depend on the settings
+ * and the seed; each table draws from its own random stream, so e.g. changing the skew of orders leaves customers
+ * and products as they were.
+ *
+ * - scale: scale * CUSTOMERS_PER_SCALE customers, scale * PRODUCTS_PER_SCALE products and scale * ORDERS_PER_SCALE
+ *   orders
+ * - names: number of distinct c_name and p_product_name values
+ * - skew: Zipf exponent in [0, 1) for the customer and the product an order refers to (0 uniform, 0.99 heavy skew);
+ *   low ids are the hot ones
+ * - correlation: in [0, 1], how much a product's price follows its popularity (1: the most ordered products are
+ *   the cheapest), so that a filter on price changes the size of a join with orders
+ * - nullRate: fraction of c_name and p_product_name fields left empty. Numbers are never left empty, since the scan
+ *   and the data loader cannot parse an empty number
+ * - danglingRate: fraction of orders whose customer or product does not exist, i.e. that no join keeps
+ *
+ * Usage: DataGenerator directory [scale=1] [seed=42] [names=1000] [skew=0] [correlation=0] [nullRate=0]
+ *        [danglingRate=0]
+ */
+public class DataGenerator {
+
+    protected final static Logger logger = LogManager.getLogger();
+
+    public static final String CUSTOMER_HEADER = "c_customer_id:integer,c_name:string,c_age:integer";
+    public static final String PRODUCT_HEADER = "p_product_id:integer,p_product_name:string,p_price:double";
+    public static final String ORDERS_HEADER = "o_order_id:integer,o_customer_id:integer,o_product_id:integer";
+
+    public static final int CUSTOMERS_PER_SCALE = 100_000;
+    public static final int PRODUCTS_PER_SCALE = 10_000;
+    public static final int ORDERS_PER_SCALE = 1_000_000;
+
+    private static final String[] CUSTOMER_NAMES = {"John", "Jane", "Mark", "Alice", "Bob", "Carol", "Dave", "Eve",
+            "Frank", "Grace", "Heidi", "Ivan", "Judy", "Karan", "Leela", "Mallory", "Nikhil", "Olivia", "Peggy",
+            "Rupert", "Sybil", "Trent", "Uma", "Victor", "Walter"};
+    private static final String[] PRODUCT_NAMES = {"Widget", "Gadget", "Thingamajig", "Doohickey", "Gizmo",
+            "Contraption", "Whatsit", "Sprocket", "Gear", "Lever", "Knob", "Dial", "Switch", "Valve", "Nozzle"};
+
+    private static final int MIN_AGE = 18;
+    private static final int MAX_AGE = 80;
+    private static final double MIN_PRICE = 1;
+    private static final double MAX_PRICE = 1000;
+
+    private long seed = 42;
+    private double scale = 1;
+    private int names = 1000;
+    private double skew;
+    private double correlation;
+    private double nullRate;
+    private double danglingRate;
+
+    public DataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DataGenerator scale(double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        return this;
+    }
+
+    public DataGenerator names(int names) {
+        if (names < 1) {
+            throw new IllegalArgumentException("Need at least one name: " + names);
+        }
+        this.names = names;
+        return this;
+    }
+
+    public DataGenerator skew(double skew) {
+        if (skew < 0 || skew >= 1) {
+            throw new IllegalArgumentException("Skew must be in [0, 1): " + skew);
+        }
+        this.skew = skew;
+        return this;
+    }
+
+    public DataGenerator correlation(double correlation) {
+        if (correlation < 0 || correlation > 1) {
+            throw new IllegalArgumentException("Correlation must be in [0, 1]: " + correlation);
+        }
+        this.correlation = correlation;
+        return this;
+    }
+
+    public DataGenerator nullRate(double nullRate) {
+        if (nullRate < 0 || nullRate > 1) {
+            throw new IllegalArgumentException("Null rate must be in [0, 1]: " + nullRate);
+        }
+        this.nullRate = nullRate;
+        return this;
+    }
+
+    public DataGenerator danglingRate(double danglingRate) {
+        if (danglingRate < 0 || danglingRate > 1) {
+            throw new IllegalArgumentException("Dangling rate must be in [0, 1]: " + danglingRate);
+        }
+        this.danglingRate = danglingRate;
+        return this;
+    }
+
+    public int getCustomers() {
+        return rows(CUSTOMERS_PER_SCALE);
+    }
+
+    public int getProducts() {
+        return rows(PRODUCTS_PER_SCALE);
+    }
+
+    public int getOrders() {
+        return rows(ORDERS_PER_SCALE);
+    }
+
+    private int rows(int perScale) {
+        return (int) Math.max(1, Math.round(scale * perScale));
+    }
+
+    /**
+     * Writes customer.csv, product.csv and orders.csv into the directory, replacing them.
+     */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer out = open(directory.resolve("customer.csv"))) {
+            writeCustomers(out);
+        }
+        try (Writer out = open(directory.resolve("product.csv"))) {
+            writeProducts(out);
+        }
+        try (Writer out = open(directory.resolve("orders.csv"))) {
+            writeOrders(out);
+        }
+        logger.info("Generated " + getCustomers() + " customers, " + getProducts() + " products and " + getOrders()
+                + " orders in " + directory + " (seed " + seed + ", skew " + skew + ")");
+    }
+
+    private static Writer open(Path file) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /* one stream per table, derived from the seed */
+    private SplittableRandom random(int table) {
+        return new SplittableRandom(seed * 31 + table);
+    }
+
+    public void writeCustomers(Writer out) throws IOException {
+        SplittableRandom random = random(1);
+        SplittableRandom nulls = random.split();
+        out.write(CUSTOMER_HEADER);
+        out.write('\n');
+        StringBuilder row = new StringBuilder(64);
+        for (int id = 1; id <= getCustomers(); id++) {
+            row.setLength(0);
+            int name = random.nextInt(names);
+            int age = MIN_AGE + random.nextInt(MAX_AGE - MIN_AGE + 1);
+            row.append(id).append(',');
+            if (present(nulls)) {
+                appendName(row, CUSTOMER_NAMES, name);
+            }
+            row.append(',').append(age).append('\n');
+            out.append(row);
+        }
+    }
+
+    public void writeProducts(Writer out) throws IOException {
+        SplittableRandom random = random(2);
+        SplittableRandom nulls = random.split();
+        int products = getProducts();
+        out.write(PRODUCT_HEADER);
+        out.write('\n');
+        StringBuilder row = new StringBuilder(64);
+        for (int id = 1; id <= products; id++) {
+            row.setLength(0);
+            int name = random.nextInt(names);
+            // ids are popularity ranks, see writeOrders()
+            double rank = (double) (id - 1) / products;
+            double price = correlation * rank + (1 - correlation) * random.nextDouble();
+            row.append(id).append(',');
+            if (present(nulls)) {
+                appendName(row, PRODUCT_NAMES, name);
+            }
+            row.append(',');
+            appendCents(row, Math.round((MIN_PRICE + price * (MAX_PRICE - MIN_PRICE)) * 100));
+            row.append('\n');
+            out.append(row);
+        }
+    }
+
+    public void writeOrders(Writer out) throws IOException {
+        SplittableRandom random = random(3);
+        int customers = getCustomers();
+        int products = getProducts();
+        Zipf customer = new Zipf(customers, skew);
+        Zipf product = new Zipf(products, skew);
+        out.write(ORDERS_HEADER);
+        out.write('\n');
+        StringBuilder row = new StringBuilder(64);
+        for (int id = 1; id <= getOrders(); id++) {
+            row.setLength(0);
+            int customerId = customer.next(random) + 1;
+            int productId = product.next(random) + 1;
+            if (danglingRate > 0 && random.nextDouble() < danglingRate) {
+                // past the last id, so the order joins with nothing
+                if (random.nextBoolean()) {
+                    customerId += customers;
+                } else {
+                    productId += products;
+                }
+            }
+            row.append(id).append(',').append(customerId).append(',').append(productId).append('\n');
+            out.append(row);
+        }
+    }
+
+    /* false with probability nullRate, i.e. when the next field is to be left empty */
+    private boolean present(SplittableRandom nulls) {
+        return nullRate == 0 || nulls.nextDouble() >= nullRate;
+    }
+
+    /* the i-th distinct name: the base names, then the base names numbered 1, 2, ... */
+    private static void appendName(StringBuilder out, String[] base, int i) {
+        out.append(base[i % base.length]);
+        if (i >= base.length) {
+            out.append(i / base.length);
+        }
+    }
+
+    /* appends cents / 100 with exactly two decimals */
+    private static void appendCents(StringBuilder out, long cents) {
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /**
+     * Zipfian ranks in [0, n) following Gray et al., "Quickly generating billion-record synthetic databases": one
+     * pass to compute zeta(n), then constant time per value. An exponent of 0 is uniform.
+     */
+    static class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetan = zeta(n, theta);
+            this.eta = n < 3 ? 0 : (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            if (n < 3) {
+                // the closed form needs n > 2; pick from the exact probabilities
+                return n == 1 || u * zetan < 1 ? 0 : 1;
+            }
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DataGenerator directory [scale=1] [seed=42] [names=1000] [skew=0] "
+                    + "[correlation=0] [nullRate=0] [danglingRate=0]");
+            System.exit(1);
+        }
+        DataGenerator generator = new DataGenerator();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected key=value: " + args[i]);
+            }
+            switch (option[0]) {
+                case "scale": generator.scale(Double.parseDouble(option[1])); break;
+                case "seed": generator.seed(Long.parseLong(option[1])); break;
+                case "names": generator.names(Integer.parseInt(option[1])); break;
+                case "skew": generator.skew(Double.parseDouble(option[1])); break;
+                case "correlation": generator.correlation(Double.parseDouble(option[1])); break;
+                case "nullRate": generator.nullRate(Double.parseDouble(option[1])); break;
+                case "danglingRate": generator.danglingRate(Double.parseDouble(option[1])); break;
+                default: throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        generator.write(Paths.get(args[0]));
+    }
+}
@@ -6,6 +6,7 @@ import in.ac.iitd.db362.catalog.IntColumnStatistics;
 import in.ac.iitd.db362.catalog.StringColumnStatistics;
 
 import in.ac.iitd.db362.catalog.TableStatistics;
+import in.ac.iitd.db362.io.CSVReader;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
@@ -13,9 +14,11 @@ import it.unimi.dsi.fastutil.ints.IntList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +27,7 @@ import java.util.List;
  *
  * Read a CSV file and populate the catalog. Particularly, for each column, based on its type
  * it creates column statistics and stores it in the catalog.
+ * Values are parsed straight from the file's bytes by a CSVReader into a typed list per column.
  */
 public class DataLoader {
 
@@ -38,15 +42,14 @@ public class DataLoader {
      * @throws IOException if file reading fails or header is invalid
      */
     public static void createStatistics(String filePath, Catalog catalog) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String headerLine = br.readLine();
-            if (headerLine == null) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            CSVReader reader = new CSVReader(channel, (byte) ',', 1 << 16);
+            if (!reader.nextRow()) {
                 throw new IOException("Empty CSV file");
             }
 
             // Process header to extract column names and types
-            String[] headerTokens = headerLine.split(",");
-            int numColumns = headerTokens.length;
+            int numColumns = reader.fieldCount();
             Schema schema = new Schema();
             // Create a table using the file name as tableName (or use another naming convention)
             Table table = new Table(filePath, schema);
@@ -54,8 +57,13 @@ public class DataLoader {
             String[] colNames = new String[numColumns];
             String[] colTypes = new String[numColumns];
 
+            // Prepare typed storage per column
+            IntList[] intColumns = new IntList[numColumns];
+            DoubleList[] doubleColumns = new DoubleList[numColumns];
+            List<List<String>> stringColumns = new ArrayList<>();
+
             for (int i = 0; i < numColumns; i++) {
-                String[] parts = headerTokens[i].split(":");
+                String[] parts = reader.getString(i).split(":");
                 if (parts.length != 2) {
                     throw new IOException("Invalid header format. Expected attributeName:attributeType");
                 }
@@ -63,74 +71,64 @@ public class DataLoader {
                 colTypes[i] = parts[1].trim().toLowerCase();
                 schema.addColumnMeta(new ColumnMeta(colNames[i], colTypes[i]));
                 catalog.registerColumn(colNames[i], table.getTableName());
+                stringColumns.add(null);
+                switch (colTypes[i]) {
+                    case "integer":
+                        intColumns[i] = new IntArrayList();
+                        break;
+                    case "double":
+                        doubleColumns[i] = new DoubleArrayList();
+                        break;
+                    case "string":
+                        stringColumns.set(i, new ArrayList<>());
+                        break;
+                    default:
+                        throw new IOException("Unsupported column type: " + colTypes[i]);
+                }
             }
 
-            // Prepare storage for raw data per column
-            List<List<String>> rawColumns = new ArrayList<>();
-            for (int i = 0; i < numColumns; i++) {
-                rawColumns.add(new ArrayList<>());
-            }
-
-            // Read each line and split into tokens
+            // Read each row and parse its fields into the columns
             int numRows = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] tokens = line.split(",");
+            while (reader.nextRow()) {
+                if (reader.isBlankRow()) {
+                    continue;
+                }
+                if (reader.fieldCount() < numColumns) {
+                    throw new IOException("Row " + numRows + " has " + reader.fieldCount() + " fields, expected "
+                            + numColumns);
+                }
                 for (int i = 0; i < numColumns; i++) {
-                    rawColumns.get(i).add(tokens[i].trim());
+                    if (intColumns[i] != null) {
+                        intColumns[i].add(reader.getInt(i));
+                    } else if (doubleColumns[i] != null) {
+                        doubleColumns[i].add(reader.getDouble(i));
+                    } else {
+                        stringColumns.get(i).add(reader.getString(i));
+                    }
                 }
                 numRows++;
             }
 
-
-
             // Create a TableStatistics object to accumulate column statistics
             TableStatistics tableStats = new TableStatistics(numRows);
 
-
-
-            // Process each column based on its declared type and add it to the table
-            IntList intData = new IntArrayList();
-            DoubleList doubleData = new DoubleArrayList();
-
+            // Create the statistics of each column based on its declared type
             for (int i = 0; i < numColumns; i++) {
                 String colName = colNames[i];
-                String colType = colTypes[i];
-                List<String> rawData = rawColumns.get(i);
-
-                switch (colType) {
-                    case "integer":
-                        for (String s : rawData) {
-                            intData.add(Integer.parseInt(s));
-                        }
-//                        IntCompressedColumn intCol = new IntCompressedColumn();
-//                        intCol.loadData(intData);
-//                        table.addColumn(colName, intCol);
-                        tableStats.addColumnStatistics(colName, new IntColumnStatistics(intData));
-                        intData.clear();
-
-                        logger.info("Created column statistics for " + colName + " of type " + colType);
-                        break;
-                    case "double":
-
-                        for (String s : rawData) {
-                            doubleData.add(Double.parseDouble(s));
-                        }
-                        tableStats.addColumnStatistics(colName, new DoubleColumnStatistics(doubleData));
-                        doubleData.clear();
-                        logger.info("Created column statistics for " + colName + " of type " + colType);
-                        break;
-                    case "string":
-                        tableStats.addColumnStatistics(colName, new StringColumnStatistics(rawData));
-                        logger.info("Created column statistics for " + colName + " of type " + colType);
-                        break;
-                    default:
-                        throw new IOException("Unsupported column type: " + colType);
+                if (intColumns[i] != null) {
+                    tableStats.addColumnStatistics(colName, new IntColumnStatistics(intColumns[i]));
+                } else if (doubleColumns[i] != null) {
+                    tableStats.addColumnStatistics(colName, new DoubleColumnStatistics(doubleColumns[i]));
+                } else {
+                    tableStats.addColumnStatistics(colName, new StringColumnStatistics(stringColumns.get(i)));
                 }
+                logger.info("Created column statistics for " + colName + " of type " + colTypes[i]);
             }
             // Register the computed statistics in the Catalog using the table's name
             catalog.registerTable(table.getTableName(), tableStats);
             logger.info("Created table statistics for " + table.getTableName());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 }